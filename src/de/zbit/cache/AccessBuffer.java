@@ -0,0 +1,148 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import de.zbit.util.ThreadManager;
+
+/**
+ * Buffers accesses of cached keys without locking, such that they can be
+ * replayed to an {@link EvictionPolicy} by the thread, that holds the lock
+ * of the cache.
+ *
+ * <p>Accesses are appended to one of several ring buffers (stripes),
+ * selected by the current thread, such that concurrent readers rarely
+ * compete for the same buffer. Accesses are never discarded: if the
+ * stripe of a thread is full, {@link #offer(Object)} does not record the
+ * access and the caller has to drain the buffer and record the access
+ * itself.
+ *
+ * @version $Rev$
+ * @param <K> the key type of the cache
+ */
+class AccessBuffer<K> {
+
+  /**
+   * Capacity of each stripe. Must be a power of two.
+   */
+  static final int STRIPE_CAPACITY = 32;
+
+  /**
+   * Number of buffered accesses of a stripe, from which on the buffer
+   * should be drained, if the lock of the cache is available.
+   */
+  static final int DRAIN_THRESHOLD = STRIPE_CAPACITY/2;
+
+  /**
+   * A ring buffer.
+   */
+  private static class Stripe<K> {
+    final AtomicReferenceArray<K> elements = new AtomicReferenceArray<K>(STRIPE_CAPACITY);
+    /**
+     * Number of reserved slots since the creation of this stripe.
+     */
+    final AtomicLong writes = new AtomicLong();
+    /**
+     * Number of drained slots since the creation of this stripe. Only
+     * changed by {@link AccessBuffer#drainTo(EvictionPolicy)}.
+     */
+    final AtomicLong reads = new AtomicLong();
+  }
+
+  private final Stripe<K>[] stripes;
+
+  /**
+   * {@code stripes.length-1}.
+   */
+  private final int stripeMask;
+
+  /**
+   * Creates a buffer with (up to 64) stripes for twice the number of
+   * processors.
+   */
+  @SuppressWarnings("unchecked")
+  AccessBuffer() {
+    super();
+    int n = 1;
+    while (n<ThreadManager.NUMBER_OF_PROCESSORS*2 && n<64) {
+      n <<= 1;
+    }
+    stripes = new Stripe[n];
+    for (int i=0; i<n; i++) {
+      stripes[i] = new Stripe<K>();
+    }
+    stripeMask = n-1;
+  }
+
+  /**
+   * @return the stripe of the current thread.
+   */
+  private Stripe<K> getStripe() {
+    long id = Thread.currentThread().getId();
+    return stripes[(int) ((id * 0x9e3779b97f4a7c15L) >>> 32) & stripeMask];
+  }
+
+  /**
+   * Buffers an access of the given key. Does not block.
+   * @param key
+   * @return the number of buffered accesses in the stripe of the current
+   * thread, including this one, or -1 if the stripe is full and the
+   * access has NOT been buffered.
+   */
+  int offer(K key) {
+    Stripe<K> stripe = getStripe();
+    while (true) {
+      long tail = stripe.writes.get();
+      long size = tail - stripe.reads.get();
+      if (size>=STRIPE_CAPACITY) {
+        return -1;
+      }
+      if (stripe.writes.compareAndSet(tail, tail+1)) {
+        stripe.elements.lazySet((int) tail & (STRIPE_CAPACITY-1), key);
+        return (int) size+1;
+      }
+    }
+  }
+
+  /**
+   * Replays all buffered accesses to the given policy, in the order of
+   * each thread. Must not be called concurrently, i.e., only while
+   * holding the lock of the cache.
+   * @param policy
+   */
+  void drainTo(EvictionPolicy<K> policy) {
+    for (Stripe<K> stripe : stripes) {
+      long head = stripe.reads.get();
+      long tail = stripe.writes.get();
+      while (head<tail) {
+        int index = (int) head & (STRIPE_CAPACITY-1);
+        K key = stripe.elements.get(index);
+        if (key==null) {
+          // Reserved, but not yet written. Drained next time.
+          break;
+        }
+        stripe.elements.lazySet(index, null);
+        policy.recordAccess(key);
+        head++;
+      }
+      stripe.reads.lazySet(head);
+    }
+  }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hit, miss and eviction counters of an {@link InfoManagement} cache.
+ * These help to choose a reasonable cache size. Counters are not
+ * persisted and start at zero with every new or loaded cache.
+ *
+ * @version $Rev$
+ */
+public class CacheStatistics {
+
+  private final AtomicLong hits = new AtomicLong(0);
+  private final AtomicLong misses = new AtomicLong(0);
+  private final AtomicLong evictions = new AtomicLong(0);
+
+  /**
+   * Increments the number of requests answered from the cache.
+   */
+  void recordHit() {
+    hits.incrementAndGet();
+  }
+
+  /**
+   * Increments the number of requests, that required fetching the
+   * information.
+   */
+  void recordMiss() {
+    misses.incrementAndGet();
+  }
+
+  /**
+   * Adds the given number of requests, that required fetching the
+   * information.
+   * @param count
+   */
+  void recordMisses(int count) {
+    misses.addAndGet(count);
+  }
+
+  /**
+   * Increments the number of entries, removed due to the cache size.
+   */
+  void recordEviction() {
+    evictions.incrementAndGet();
+  }
+
+  /**
+   * @return number of requests that have been answered from the cache.
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * @return number of requests that could not be answered from the cache.
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * @return number of entries that have been discarded, because the
+   * maximum cache size has been reached.
+   */
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  /**
+   * @return total number of requests.
+   */
+  public long getRequestCount() {
+    return getHitCount() + getMissCount();
+  }
+
+  /**
+   * @return the fraction of requests, that have been answered from the
+   * cache, or 1 if there were no requests yet.
+   */
+  public double getHitRate() {
+    long requests = getRequestCount();
+    return requests==0 ? 1d : (double) getHitCount() / requests;
+  }
+
+  /**
+   * Sets all counters to zero.
+   */
+  public void reset() {
+    hits.set(0);
+    misses.set(0);
+    evictions.set(0);
+  }
+
+  /* (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return String.format("[hits=%s, misses=%s, evictions=%s, hitRate=%.3f]",
+      getHitCount(), getMissCount(), getEvictionCount(), getHitRate());
+  }
+
+}
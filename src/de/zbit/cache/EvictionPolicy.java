@@ -0,0 +1,83 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.cache;
+
+/**
+ * Decides which keys of an {@link InfoManagement} cache are discarded,
+ * once the cache is full. A policy only keeps track of the keys, the
+ * actual values are stored in the cache itself.
+ *
+ * <p>All methods should run in (amortized) constant time, because they
+ * are called on every cache access. Implementations do not need to be
+ * thread-safe, the {@link InfoManagement} synchronizes all calls.
+ *
+ * @version $Rev$
+ * @param <K> the key type of the cache
+ * @see LRUEvictionPolicy
+ * @see WTinyLFUEvictionPolicy
+ */
+public interface EvictionPolicy<K> {
+
+  /**
+   * Sets the maximum number of keys, the cache should hold. Exceeding
+   * keys are reported by {@link #selectVictim()}.
+   * @param maximumSize
+   */
+  public void setMaximumSize(int maximumSize);
+
+  /**
+   * Notifies the policy that the given key has been read from the cache.
+   * @param key
+   */
+  public void recordAccess(K key);
+
+  /**
+   * Notifies the policy that the given key has been put into the cache.
+   * Inserting a key that is already known is treated as access.
+   * @param key
+   */
+  public void recordInsertion(K key);
+
+  /**
+   * Notifies the policy that the given key has been removed from the
+   * cache by any other means than {@link #selectVictim()}.
+   * @param key
+   */
+  public void recordRemoval(K key);
+
+  /**
+   * Selects the next key that should be removed from the cache. The
+   * returned key is no longer tracked by this policy. Callers should
+   * invoke this method after each insertion until it returns
+   * {@code null}.
+   *
+   * @return a key to evict, or {@code null} if the number of tracked
+   * keys does not exceed the maximum size.
+   */
+  public K selectVictim();
+
+  /**
+   * @return the number of keys currently tracked by this policy.
+   */
+  public int size();
+
+  /**
+   * Forgets all tracked keys.
+   */
+  public void clear();
+
+}
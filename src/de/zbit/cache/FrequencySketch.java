@@ -0,0 +1,193 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.cache;
+
+/**
+ * A count-min sketch with four rows of 4-bit counters, that estimates
+ * how often a key has been seen recently. All counters are halved after
+ * a sample of {@code 10 * maximumSize} increments, such that old
+ * popularity fades out.
+ *
+ * <p>Sixteen counters are packed into one {@code long}, so the sketch
+ * needs roughly 8 bytes per cached element.
+ *
+ * @version $Rev$
+ */
+class FrequencySketch {
+
+  /**
+   * Seeds for the four hash functions (one per row).
+   */
+  private static final long[] SEEDS = new long[] {
+    0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+  /**
+   * Mask to halve all sixteen counters of a word at once.
+   */
+  private static final long RESET_MASK = 0x7777777777777777L;
+
+  /**
+   * Counters. Each row uses a quarter of the table.
+   */
+  private long[] table;
+
+  /**
+   * {@code table.length/4 - 1}. Used to map a hash to a word of a row.
+   */
+  private int rowMask;
+
+  /**
+   * Number of increments until the next aging.
+   */
+  private int sampleSize;
+
+  /**
+   * Increments since the last aging.
+   */
+  private int size;
+
+  /**
+   * @param maximumSize the expected number of distinct, cached keys.
+   */
+  public FrequencySketch(int maximumSize) {
+    super();
+    ensureCapacity(maximumSize);
+  }
+
+  /**
+   * Resizes the sketch to the given number of keys. All
+   * frequencies are lost, if the size of the table changes.
+   * @param maximumSize
+   */
+  public void ensureCapacity(int maximumSize) {
+    int words = ceilingPowerOfTwo(Math.max(4, Math.min(maximumSize, 1<<22) / 4));
+    if (table==null || table.length != words*4) {
+      table = new long[words*4];
+      rowMask = words-1;
+      size = 0;
+    }
+    sampleSize = (maximumSize<=0) ? 10 : (int) Math.min(10L * maximumSize, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param key
+   * @return the estimated number of occurrences of {@code key}
+   * (between 0 and 15).
+   */
+  public int frequency(Object key) {
+    int hash = spread(key);
+    int frequency = Integer.MAX_VALUE;
+    for (int row=0; row<4; row++) {
+      long h = rehash(hash, row);
+      int index = indexOf(h, row);
+      int offset = counterOffset(h);
+      frequency = Math.min(frequency, (int) ((table[index] >>> offset) & 0xfL));
+    }
+    return frequency;
+  }
+
+  /**
+   * Increments the popularity of the given key, if it did not reach the
+   * maximum yet.
+   * @param key
+   */
+  public void increment(Object key) {
+    int hash = spread(key);
+    boolean added = false;
+    for (int row=0; row<4; row++) {
+      long h = rehash(hash, row);
+      int index = indexOf(h, row);
+      int offset = counterOffset(h);
+      long mask = 0xfL << offset;
+      if ((table[index] & mask) != mask) {
+        table[index] += 1L << offset;
+        added = true;
+      }
+    }
+    if (added && (++size >= sampleSize)) {
+      reset();
+    }
+  }
+
+  /**
+   * Halves all counters.
+   */
+  private void reset() {
+    for (int i=0; i<table.length; i++) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    size = (size >>> 1);
+  }
+
+  /**
+   * Forgets all frequencies.
+   */
+  public void clear() {
+    java.util.Arrays.fill(table, 0L);
+    size = 0;
+  }
+
+  /**
+   * @param h
+   * @param row
+   * @return index of the word in {@link #table}, containing the counter.
+   */
+  private int indexOf(long h, int row) {
+    return (row * (rowMask+1)) + (int) ((h >>> 32) & rowMask);
+  }
+
+  /**
+   * @param h
+   * @return bit offset of the counter in the word.
+   */
+  private static int counterOffset(long h) {
+    return ((int) h & 15) << 2;
+  }
+
+  /**
+   * @param hash
+   * @param row
+   * @return a well distributed hash for the given row.
+   */
+  private static long rehash(int hash, int row) {
+    long h = (hash + SEEDS[row]) * SEEDS[(row+1) & 3];
+    return h ^ (h >>> 29);
+  }
+
+  /**
+   * @param key
+   * @return supplemental hash of the keys {@link Object#hashCode()}.
+   */
+  private static int spread(Object key) {
+    int h = (key==null) ? 0 : key.hashCode();
+    h ^= (h >>> 17);
+    h *= 0xed5ad4bb;
+    h ^= (h >>> 11);
+    h *= 0xac4c1b51;
+    h ^= (h >>> 15);
+    return h;
+  }
+
+  /**
+   * @param x
+   * @return the smallest power of two that is at least {@code x}.
+   */
+  private static int ceilingPowerOfTwo(int x) {
+    return 1 << (32 - Integer.numberOfLeadingZeros(Math.max(1, x) - 1));
+  }
+
+}
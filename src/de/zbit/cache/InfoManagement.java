@@ -23,22 +23,31 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Array;
+import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import de.zbit.exception.UnsuccessfulRetrieveException;
 import de.zbit.io.SerializableTools;
-import de.zbit.util.SortedArrayList;
+import de.zbit.util.ThreadManager;
 import de.zbit.util.progressbar.AbstractProgressBar;
 
 /**
@@ -48,6 +57,11 @@ import de.zbit.util.progressbar.AbstractProgressBar;
  * 
  * A better name for this class is maybe "Cache".
  * 
+ * <p>This class is thread-safe. Cached elements are kept in concurrent
+ * collections, such that lookups do not block each other. If multiple
+ * threads request the same missing id at the same time, only one of them
+ * fetches the information and all others wait for this result.
+ * 
  * @author Clemens Wrzodek
  * @version $Rev$
  * @since 1.0
@@ -63,13 +77,21 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
   public static final transient Logger log = Logger.getLogger(InfoManagement.class.getName());
   
   /**
-   * Actual cache content
+   * Actual cache content. A {@link ConcurrentHashMap} (older serialized
+   * caches contain a {@link java.util.HashMap} that is converted upon loading).
    */
   private Map<IDtype, ObjectAndTimestamp<INFOtype>> rememberedInfos;
   /**
-   * Additional cache to remember unsuccessful queries
+   * Additional cache to remember unsuccessful queries. A concurrent set
+   * (older serialized caches contain a {@link java.util.HashSet}).
    */
   private Set<IDtype> unsuccessfulQueries; // Remember those separately
+  /**
+   * Time of each unsuccessful query, required for
+   * {@link #setNegativeTimeToLive(long)}. Caches serialized by older versions
+   * do not contain this map.
+   */
+  private Map<IDtype, Long> unsuccessfulQueryTimes;
   
   /**
    * Cache size limit
@@ -80,7 +102,7 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
    * If true, the cache has changed since last reading/writing
    * and should be saved to disk upon exit.
    */
-  private transient boolean cacheChangedSinceLastLoading=false;
+  private transient volatile boolean cacheChangedSinceLastLoading=false;
   
   /**
    * Version number of this java class.
@@ -93,6 +115,99 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
    */
   private int version=latestVersion;
   
+  /**
+   * Decides which elements to remove, if the cache is full. Not
+   * serialized, it is rebuilt from the timestamps upon loading.
+   */
+  private transient EvictionPolicy<IDtype> evictionPolicy;
+  
+  /**
+   * Hit, miss and eviction counters.
+   */
+  private transient CacheStatistics statistics;
+  
+  /**
+   * Guards all modifications of the {@link #evictionPolicy} and removals
+   * from {@link #rememberedInfos}. Reading from the cache requires no lock.
+   * Use {@link #lockEviction()} to acquire it.
+   */
+  private transient ReentrantLock evictionLock;
+  
+  /**
+   * Accesses of cached elements, that have not yet been recorded in the
+   * {@link #evictionPolicy}, because readers never wait for the
+   * {@link #evictionLock}.
+   */
+  private transient AccessBuffer<IDtype> accessBuffer;
+  
+  /**
+   * Fetches that are currently running for a single id. Used to let
+   * concurrent requests for the same id share one fetch.
+   */
+  private transient ConcurrentMap<IDtype, FutureTask<INFOtype>> pendingFetches;
+  
+  /**
+   * Default time in milliseconds, that {@link #getInformationAsync(Comparable)}
+   * waits for further requests, before the batch is dispatched.
+   */
+  public static final long DEFAULT_BATCH_WINDOW = 20;
+  
+  /**
+   * Time in milliseconds to collect single requests for one batch.
+   */
+  private transient long batchWindow;
+  
+  /**
+   * Maximum number of ids per batch.
+   */
+  private transient int batchSize;
+  
+  /**
+   * Ids requested by {@link #getInformationAsync(Comparable)}, that have
+   * not been dispatched yet.
+   */
+  private transient List<IDtype> batchBuffer;
+  
+  /**
+   * Requests of {@link #getInformationAsync(Comparable)}, that are buffered
+   * or currently fetched.
+   */
+  private transient ConcurrentMap<IDtype, InformationFuture<INFOtype>> batchedFetches;
+  
+  /**
+   * Time in milliseconds after which cached infos are refreshed. Not
+   * positive, if infos never expire.
+   */
+  private transient long timeToLive;
+  
+  /**
+   * Time in milliseconds after which unsuccessful queries are retried.
+   * Not positive, if unsuccessful queries are never retried.
+   */
+  private transient long negativeTimeToLive;
+  
+  /**
+   * Ids of expired infos, that are waiting for or currently being refreshed.
+   */
+  private transient Set<IDtype> refreshing;
+  
+  /**
+   * Expired ids that wait for a refresh.
+   */
+  private transient List<IDtype> refreshBuffer;
+  
+  /**
+   * Optional persistent second level of this cache. See
+   * {@link #setPersistentStore(MappedInfoStore)}.
+   */
+  private transient MappedInfoStore<IDtype, INFOtype> store = null;
+  
+  /**
+   * Executes batches of {@link #getInformationAsync(Comparable)}. Shared by
+   * all caches and created on first use.
+   */
+  private static ScheduledExecutorService batchExecutor = null;
+  
   public InfoManagement() {
     this(100000);
   }
@@ -108,8 +223,272 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
       log.warning("Initialized a InfoManagement cache with size of " + maxCacheSize);
     }
     this.maxListSize = maxCacheSize;
-    rememberedInfos = new HashMap<IDtype, ObjectAndTimestamp<INFOtype>>(Math.max(this.maxListSize+1, 1));
-    unsuccessfulQueries = new HashSet<IDtype>((10*this.maxListSize)+1); // so many, since usually this does not take much memory.
+    rememberedInfos = new ConcurrentHashMap<IDtype, ObjectAndTimestamp<INFOtype>>(Math.max(this.maxListSize+1, 1));
+    unsuccessfulQueries = createConcurrentSet(Math.max(this.maxListSize+1, 1));
+    unsuccessfulQueryTimes = new ConcurrentHashMap<IDtype, Long>(Math.max(this.maxListSize+1, 1));
+    evictionPolicy = createDefaultEvictionPolicy(this.maxListSize);
+    initTransientFields();
+  }
+  
+  /**
+   * Initializes all transient helpers (for new and loaded caches).
+   */
+  private void initTransientFields() {
+    statistics = new CacheStatistics();
+    evictionLock = new ReentrantLock();
+    accessBuffer = new AccessBuffer<IDtype>();
+    pendingFetches = new ConcurrentHashMap<IDtype, FutureTask<INFOtype>>();
+    batchWindow = DEFAULT_BATCH_WINDOW;
+    batchSize = getPreferredBatchSize();
+    batchBuffer = new ArrayList<IDtype>();
+    batchedFetches = new ConcurrentHashMap<IDtype, InformationFuture<INFOtype>>();
+    timeToLive = 0;
+    negativeTimeToLive = 0;
+    refreshing = createConcurrentSet(16);
+    refreshBuffer = new ArrayList<IDtype>();
+  }
+  
+  /**
+   * @param initialCapacity
+   * @return a new thread-safe and serializable {@link Set}.
+   */
+  private static <T> Set<T> createConcurrentSet(int initialCapacity) {
+    return Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>(initialCapacity));
+  }
+  
+  /**
+   * {@link ConcurrentHashMap} does not permit {@code null} keys.
+   * If a {@link #store} is attached, elements that are not in memory are
+   * loaded from the store.
+   * @param id
+   * @return the cached element for the given id or {@code null} if
+   * {@code id} is {@code null} or not cached.
+   */
+  private ObjectAndTimestamp<INFOtype> getCached(IDtype id) {
+    if (id==null) {
+      return null;
+    }
+    ObjectAndTimestamp<INFOtype> o = rememberedInfos.get(id);
+    if (o==null && store!=null && store.contains(id)) {
+      try {
+        INFOtype info = store.get(id);
+        if (info!=null) {
+          o = new ObjectAndTimestamp<INFOtype>(info);
+          o.setInsertionTime(store.getTimestamp(id));
+          putIntoMemory(id, o);
+        }
+      } catch (IOException e) {
+        log.log(Level.WARNING, "Could not read " + id + " from " + store.getFile(), e);
+      }
+    }
+    return o;
+  }
+  
+  /**
+   * @param id
+   * @return true if the given id has been marked as unretrievable.
+   */
+  private boolean isUnsuccessful(IDtype id) {
+    if (id==null) {
+      return false;
+    }
+    long now = System.currentTimeMillis();
+    if (unsuccessfulQueries.contains(id)) {
+      if (negativeTimeToLive>0) {
+        Long time = unsuccessfulQueryTimes.get(id);
+        if (time!=null && (now - time.longValue()) > negativeTimeToLive) {
+          // Expired => allow to query it again
+          unsuccessfulQueries.remove(id);
+          unsuccessfulQueryTimes.remove(id);
+          cacheChangedSinceLastLoading=true;
+          return false;
+        }
+      }
+      return true;
+    } else if (store!=null && store.isUnsuccessful(id)) {
+      return negativeTimeToLive<=0 || (now - store.getTimestamp(id)) <= negativeTimeToLive;
+    }
+    return false;
+  }
+  
+  /**
+   * Remembers the given id as unsuccessful query.
+   * @param id
+   */
+  private void addUnsuccessful(IDtype id) {
+    unsuccessfulQueryTimes.put(id, Long.valueOf(System.currentTimeMillis()));
+    unsuccessfulQueries.add(id);
+  }
+  
+  /**
+   * Sets the time after which cached infos expire. Expired infos are
+   * still returned immediately, but trigger a refresh in the background
+   * (stale-while-revalidate). Refreshes are combined to batches, as
+   * described for {@link #getInformationAsync(Comparable)}. If a refresh
+   * fails temporarily (e.g., timeout), the old info is kept for another
+   * {@code timeToLive} milliseconds. This setting is not serialized.
+   * 
+   * @param timeToLive in milliseconds. Not positive (default) if infos
+   * should never expire.
+   */
+  public void setTimeToLive(long timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+  
+  /**
+   * @return the time in milliseconds after which infos are refreshed.
+   * @see #setTimeToLive(long)
+   */
+  public long getTimeToLive() {
+    return timeToLive;
+  }
+  
+  /**
+   * Sets the time after which unsuccessful queries are retried. This
+   * should usually be shorter than the {@link #getTimeToLive()}. This
+   * setting is not serialized.
+   * 
+   * @param negativeTimeToLive in milliseconds. Not positive (default) if
+   * unsuccessful queries should never be retried.
+   */
+  public void setNegativeTimeToLive(long negativeTimeToLive) {
+    this.negativeTimeToLive = negativeTimeToLive;
+  }
+  
+  /**
+   * @return the time in milliseconds after which unsuccessful queries are
+   * retried.
+   * @see #setNegativeTimeToLive(long)
+   */
+  public long getNegativeTimeToLive() {
+    return negativeTimeToLive;
+  }
+  
+  /**
+   * Attaches a persistent store to this cache. Elements that are not in
+   * memory are then loaded from the store on first access, elements that
+   * are removed from memory because the cache is full are appended to the
+   * store, and {@link #saveToStore()} appends all other new elements.
+   * In contrast to {@link #saveToFilesystem(String, InfoManagement)}, the
+   * store does not need to be read completely upon startup.
+   * 
+   * @param store the store or {@code null} to detach the current store.
+   * @see #convertToStore(File, File)
+   */
+  public void setPersistentStore(MappedInfoStore<IDtype, INFOtype> store) {
+    this.store = store;
+  }
+  
+  /**
+   * @return the store, attached by {@link #setPersistentStore(MappedInfoStore)}
+   * or {@code null}.
+   */
+  public MappedInfoStore<IDtype, INFOtype> getPersistentStore() {
+    return store;
+  }
+  
+  /**
+   * Appends all elements and unsuccessful queries, that are not yet in
+   * the {@link #getPersistentStore()}, to the store.
+   * @throws IOException
+   */
+  public void saveToStore() throws IOException {
+    if (store==null) {
+      throw new IllegalStateException("No persistent store attached.");
+    }
+    for (Entry<IDtype, ObjectAndTimestamp<INFOtype>> entry : rememberedInfos.entrySet()) {
+      long time = entry.getValue().getInsertionTime();
+      if (!store.contains(entry.getKey()) || store.getTimestamp(entry.getKey())<time) {
+        store.put(entry.getKey(), entry.getValue().getInformation(false), time);
+      }
+    }
+    for (IDtype id : unsuccessfulQueries) {
+      Long time = unsuccessfulQueryTimes.get(id);
+      long t = (time==null) ? System.currentTimeMillis() : time.longValue();
+      if (!store.isUnsuccessful(id) || store.getTimestamp(id)<t) {
+        store.putUnsuccessful(id, t);
+      }
+    }
+    store.flush();
+    cacheChangedSinceLastLoading = false;
+  }
+  
+  /**
+   * Creates the {@link EvictionPolicy} that is used for new and loaded
+   * caches. Override this method to change the default for all
+   * instances of a subclass.
+   * 
+   * @param maxCacheSize the maximum number of cached entries
+   * @return an {@link LRUEvictionPolicy} by default.
+   */
+  protected EvictionPolicy<IDtype> createDefaultEvictionPolicy(int maxCacheSize) {
+    return new LRUEvictionPolicy<IDtype>(maxCacheSize);
+  }
+  
+  /**
+   * @return the policy that decides which elements are removed if the
+   * cache is full.
+   */
+  public EvictionPolicy<IDtype> getEvictionPolicy() {
+    return evictionPolicy;
+  }
+  
+  /**
+   * Changes the policy that decides which elements are removed if the
+   * cache is full. The given policy is initialized with all currently
+   * cached elements (in the order of their last usage).
+   * 
+   * @param policy e.g., {@link LRUEvictionPolicy} or
+   * {@link WTinyLFUEvictionPolicy}.
+   */
+  public void setEvictionPolicy(EvictionPolicy<IDtype> policy) {
+    if (policy==null) {
+      throw new IllegalArgumentException("Eviction policy must not be null.");
+    }
+    List<Entry<IDtype, ObjectAndTimestamp<INFOtype>>> evicted;
+    lockEviction();
+    try {
+      evictionPolicy = policy;
+      evicted = rebuildEvictionPolicy();
+    } finally {
+      evictionLock.unlock();
+    }
+    persistEvicted(evicted);
+  }
+  
+  /**
+   * @return hit, miss and eviction counters of this cache since it has
+   * been created or loaded.
+   */
+  public CacheStatistics getStatistics() {
+    return statistics;
+  }
+  
+  /**
+   * Fills the {@link #evictionPolicy} with all keys of the cache,
+   * the least recently used first. Should be called while holding the
+   * {@link #evictionLock}.
+   * @return see {@link #evictExceedingElements()}.
+   */
+  private List<Entry<IDtype, ObjectAndTimestamp<INFOtype>>> rebuildEvictionPolicy() {
+    List<Entry<IDtype, ObjectAndTimestamp<INFOtype>>> entries =
+        new ArrayList<Entry<IDtype, ObjectAndTimestamp<INFOtype>>>(rememberedInfos.entrySet());
+    Collections.sort(entries, new Comparator<Entry<IDtype, ObjectAndTimestamp<INFOtype>>>() {
+      public int compare(Entry<IDtype, ObjectAndTimestamp<INFOtype>> o1,
+        Entry<IDtype, ObjectAndTimestamp<INFOtype>> o2) {
+        long t1 = o1.getValue().getLastUsage();
+        long t2 = o2.getValue().getLastUsage();
+        return t1<t2 ? -1 : (t1==t2 ? 0 : 1);
+      }
+    });
+    
+    evictionPolicy.clear();
+    evictionPolicy.setMaximumSize(Math.max(maxListSize, entries.size()));
+    for (Entry<IDtype, ObjectAndTimestamp<INFOtype>> entry : entries) {
+      evictionPolicy.recordInsertion(entry.getKey());
+    }
+    evictionPolicy.setMaximumSize(maxListSize);
+    return evictExceedingElements();
   }
   
   /**
@@ -147,7 +526,16 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
    * @param cacheSize
    */
   public void setCacheSize(int cacheSize) {
-    this.maxListSize = cacheSize;
+    List<Entry<IDtype, ObjectAndTimestamp<INFOtype>>> evicted;
+    lockEviction();
+    try {
+      this.maxListSize = cacheSize;
+      evictionPolicy.setMaximumSize(cacheSize);
+      evicted = evictExceedingElements();
+    } finally {
+      evictionLock.unlock();
+    }
+    persistEvicted(evicted);
   }
   
   /**
@@ -155,11 +543,22 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
    */
   public void clearCache() {
     cacheChangedSinceLastLoading |= (unsuccessfulQueries.size()>0 || rememberedInfos.size()>0);
-    synchronized (rememberedInfos) {
+    lockEviction();
+    try {
       rememberedInfos.clear();
+      evictionPolicy.clear();
+    } finally {
+      evictionLock.unlock();
     }
-    synchronized (unsuccessfulQueries) {
-      unsuccessfulQueries.clear();
+    unsuccessfulQueries.clear();
+    unsuccessfulQueryTimes.clear();
+    if (store!=null) {
+      try {
+        cacheChangedSinceLastLoading |= (store.size()>0 || !store.unsuccessfulKeySet().isEmpty());
+        store.clear();
+      } catch (IOException e) {
+        log.log(Level.WARNING, "Could not clear " + store.getFile(), e);
+      }
     }
   }
   
@@ -168,8 +567,17 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
    */
   public void clearFailCache() {
     cacheChangedSinceLastLoading |= (unsuccessfulQueries.size()>0);
-    synchronized (unsuccessfulQueries) {
-      unsuccessfulQueries.clear();
+    unsuccessfulQueries.clear();
+    unsuccessfulQueryTimes.clear();
+    if (store!=null) {
+      try {
+        for (IDtype id : store.unsuccessfulKeySet()) {
+          store.remove(id);
+        }
+        store.flush();
+      } catch (IOException e) {
+        log.log(Level.WARNING, "Could not clear " + store.getFile(), e);
+      }
     }
   }
   
@@ -203,16 +611,41 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
    * @param infoObject
    */
   private void addInformation(IDtype id, ObjectAndTimestamp<INFOtype> info) {
-    // Ensure constant max list capacity. Remove least frequently used item.
-    if (isCacheFull()) {
-      freeCache(Math.max(10, (int)((maxListSize)*0.1)));
-    }
-    synchronized (rememberedInfos) {
-      rememberedInfos.put(id, info);
+    if (id==null) {
+      return;
     }
+    putIntoMemory(id, info);
     cacheChangedSinceLastLoading=true;
   }
   
+  /**
+   * Puts the given element into {@link #rememberedInfos} and removes
+   * other elements if the cache is full.
+   * @param id
+   * @param info
+   */
+  private void putIntoMemory(IDtype id, ObjectAndTimestamp<INFOtype> info) {
+    if (rememberedInfos.put(id, info)!=null) {
+      // Already known to the policy, replacing the info is an access.
+      recordAccess(id);
+      return;
+    }
+    
+    // Ensure constant max list capacity. Let the policy decide, which item to remove.
+    List<Entry<IDtype, ObjectAndTimestamp<INFOtype>>> evicted;
+    lockEviction();
+    try {
+      // The element might have been removed meanwhile
+      if (rememberedInfos.containsKey(id)) {
+        evictionPolicy.recordInsertion(id);
+      }
+      evicted = evictExceedingElements();
+    } finally {
+      evictionLock.unlock();
+    }
+    persistEvicted(evicted);
+  }
+  
   /**
    * @return true if and only if rememberedInfos.size() is at least maxListSize.
    */
@@ -221,49 +654,199 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
   }
   
   /**
-   * Removes the given number of elements from the cache.
-   * Tries to remove the least used object first and to preserve
-   * objects, that are recently added/used.
-   * 
-   * <p>You should try to remove a bunch of elements at once,
-   * because removing elements might take some time O(n).
-   * 
-   * @param elements number of elements to remove.
+   * Removes elements from the cache, until the {@link #evictionPolicy}
+   * reports no more victims. Usually, this removes at most one element
+   * per insertion (amortized O(1)). Should be called while holding the
+   * {@link #evictionLock}.
+   * @return the removed elements, that have to be written to the
+   * persistent store by {@link #persistEvicted(List)}, after releasing
+   * the {@link #evictionLock}, or {@code null} if there are none.
    */
-  private void freeCache(int elements) {
-    // Sort the list by lastUsage and delete lowest time-stamps.
-    List<IDtype> keysToDelete = new ArrayList<IDtype>(elements+1);
-    SortedArrayList<Long> minDate = new SortedArrayList<Long>(elements+1);
-    long maxMinDate = Long.MAX_VALUE;
+  private List<Entry<IDtype, ObjectAndTimestamp<INFOtype>>> evictExceedingElements() {
+    int removedElements = 0;
+    List<Entry<IDtype, ObjectAndTimestamp<INFOtype>>> evicted = null;
+    IDtype victim;
+    while ((victim = evictionPolicy.selectVictim()) != null) {
+      ObjectAndTimestamp<INFOtype> removed = rememberedInfos.remove(victim);
+      if (removed!=null) {
+        removedElements++;
+        statistics.recordEviction();
+        if (store!=null) {
+          if (evicted==null) {
+            evicted = new ArrayList<Entry<IDtype, ObjectAndTimestamp<INFOtype>>>(1);
+          }
+          evicted.add(new SimpleEntry<IDtype, ObjectAndTimestamp<INFOtype>>(victim, removed));
+        }
+      }
+    }
     
-    int removedElements =0;
-    synchronized (rememberedInfos) {
-      Iterator<Entry<IDtype, ObjectAndTimestamp<INFOtype>>> it = rememberedInfos.entrySet().iterator();
-      while (it.hasNext()) {
-        Entry<IDtype, ObjectAndTimestamp<INFOtype>> entry = it.next();
-        long usageDate = entry.getValue().getLastUsage();
-        
-        if(usageDate<maxMinDate || keysToDelete.size() < elements) {
-          minDate.add(usageDate);
-          keysToDelete.add(minDate.getIndexOfLastAddedItem(), entry.getKey());
-          maxMinDate = minDate.get(minDate.size()-1);
-          // XXX: It would be good to have a break condition (i.e. good enough)
-          // here, to speedup the whole process.
-          //if (minMaxDate<1) break;
+    if (removedElements>0 && log.isLoggable(Level.FINEST)) {
+      log.finest(String.format("Removed %s elements from %s-Cache.", removedElements, getClass().getName()));
+    }
+    return evicted;
+  }
+  
+  /**
+   * Keeps elements, removed by {@link #evictExceedingElements()}, in the
+   * persistent store. Must not be called while holding the
+   * {@link #evictionLock}, to keep the file I/O outside of it.
+   * @param evicted may be {@code null}.
+   */
+  private void persistEvicted(List<Entry<IDtype, ObjectAndTimestamp<INFOtype>>> evicted) {
+    MappedInfoStore<IDtype, INFOtype> store = this.store;
+    if (evicted==null || store==null) {
+      return;
+    }
+    for (Entry<IDtype, ObjectAndTimestamp<INFOtype>> entry : evicted) {
+      IDtype victim = entry.getKey();
+      try {
+        if (!store.contains(victim)) {
+          store.put(victim, entry.getValue().getInformation(false), entry.getValue().getInsertionTime());
         }
+      } catch (IOException e) {
+        log.log(Level.WARNING, "Could not write " + victim + " to " + store.getFile(), e);
+      }
+    }
+  }
+  
+  /**
+   * Notifies the {@link #evictionPolicy} and {@link #statistics} about
+   * a cache hit. Expired infos are scheduled for a refresh.
+   * @param id
+   * @param o the cached element
+   */
+  private void recordHit(IDtype id, ObjectAndTimestamp<INFOtype> o) {
+    statistics.recordHit();
+    recordAccess(id);
+    if (o.isExpired(timeToLive)) {
+      scheduleRefresh(id);
+    }
+  }
+  
+  /**
+   * Records an access of the given id in the {@link #evictionPolicy}.
+   * The access is buffered in the {@link #accessBuffer} and replayed by
+   * the next thread, that acquires the {@link #evictionLock}. Only if the
+   * buffer of the current thread is full, this thread waits for the lock
+   * and drains the buffer itself. Accesses are never discarded.
+   * @param id
+   */
+  private void recordAccess(IDtype id) {
+    int buffered = accessBuffer.offer(id);
+    if (buffered<0) {
+      lockEviction();
+      try {
+        evictionPolicy.recordAccess(id);
+      } finally {
+        evictionLock.unlock();
+      }
+    } else if (buffered>=AccessBuffer.DRAIN_THRESHOLD && evictionLock.tryLock()) {
+      try {
+        accessBuffer.drainTo(evictionPolicy);
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+  
+  /**
+   * Acquires the {@link #evictionLock} and records all buffered accesses
+   * in the {@link #evictionPolicy}. Release the lock with
+   * {@code evictionLock.unlock()}.
+   */
+  private void lockEviction() {
+    evictionLock.lock();
+    try {
+      accessBuffer.drainTo(evictionPolicy);
+    } catch (RuntimeException e) {
+      evictionLock.unlock();
+      throw e;
+    }
+  }
+  
+  /**
+   * Queues the given id for a refresh in the background. Does nothing, if
+   * the id is already queued.
+   * @param id
+   */
+  private void scheduleRefresh(IDtype id) {
+    if (!refreshing.add(id)) {
+      return;
+    }
+    boolean first;
+    synchronized (refreshBuffer) {
+      refreshBuffer.add(id);
+      first = refreshBuffer.size()==1;
+    }
+    if (first) {
+      getBatchExecutor().schedule(new Runnable() {
+        public void run() {
+          refreshExpiredElements();
+        }
+      }, batchWindow, TimeUnit.MILLISECONDS);
+    }
+  }
+  
+  /**
+   * Fetches all ids from the {@link #refreshBuffer} again, in batches of
+   * {@link #batchSize}, and replaces the cached infos.
+   */
+  @SuppressWarnings("unchecked")
+  private void refreshExpiredElements() {
+    while (true) {
+      List<IDtype> batch;
+      synchronized (refreshBuffer) {
+        if (refreshBuffer.isEmpty()) {
+          return;
+        }
+        List<IDtype> head = refreshBuffer.subList(0, Math.min(batchSize, refreshBuffer.size()));
+        batch = new ArrayList<IDtype>(head);
+        head.clear();
       }
       
-      // If some honks set list size to 0 or -1, itemToDelete is -1.
-      if (keysToDelete.size()>=0) {
-        for (int i=0; i<Math.min(elements, keysToDelete.size()); i++) {
-          if (rememberedInfos.remove(keysToDelete.get(i))!=null) {
-            removedElements++;
+      IDtype[] ids = (IDtype[]) createNewArray(batch.get(0), batch.size());
+      for (int i=0; i<ids.length; i++) {
+        Array.set(ids, i, batch.get(i));
+      }
+      INFOtype[] infos = null;
+      try {
+        if (ids.length==1 || batchSize<=1) {
+          infos = (INFOtype[]) new Serializable[ids.length];
+          for (int i=0; i<ids.length; i++) {
+            infos[i] = fetchInformationWrapper(ids[i]);
+          }
+        } else {
+          infos = fetchMultipleInformationWrapper(ids, null);
+        }
+      } catch (Throwable t) {
+        log.log(Level.WARNING, "Catched an unknown exception while refreshing informations", t);
+      } finally {
+        for (int i=0; i<ids.length; i++) {
+          INFOtype info = (infos==null || infos.length<=i) ? null : infos[i];
+          if (info!=null) {
+            addInformation(ids[i], info);
+          } else if (unsuccessfulQueries.contains(ids[i])) {
+            // Does not exist anymore
+            lockEviction();
+            try {
+              if (rememberedInfos.remove(ids[i])!=null) {
+                evictionPolicy.recordRemoval(ids[i]);
+                cacheChangedSinceLastLoading=true;
+              }
+            } finally {
+              evictionLock.unlock();
+            }
+          } else {
+            // Temporary error => keep the old info for now
+            ObjectAndTimestamp<INFOtype> o = rememberedInfos.get(ids[i]);
+            if (o!=null) {
+              o.setInsertionTime(System.currentTimeMillis());
+            }
           }
+          refreshing.remove(ids[i]);
         }
       }
     }
-    
-    log.fine(String.format("Removed %s elements from %s-Cache.", removedElements, getClass().getName()));
   }
   
   /**
@@ -272,14 +855,29 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
    * @return true, if the element has been found and removed. False instead.
    */
   public boolean removeInformation(IDtype id) {
+    if (id==null) {
+      return false;
+    }
     boolean found = false;
-    synchronized (rememberedInfos) {
+    lockEviction();
+    try {
       found = rememberedInfos.remove(id)!=null;
+      if (found) {
+        evictionPolicy.recordRemoval(id);
+      }
+    } finally {
+      evictionLock.unlock();
     }
     
     if (!found) {
-      synchronized (unsuccessfulQueries) {
-        found = unsuccessfulQueries.remove(id);
+      found = unsuccessfulQueries.remove(id);
+      unsuccessfulQueryTimes.remove(id);
+    }
+    if (store!=null) {
+      try {
+        found |= store.remove(id);
+      } catch (IOException e) {
+        log.log(Level.WARNING, "Could not remove " + id + " from " + store.getFile(), e);
       }
     }
     
@@ -314,7 +912,7 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
    * @return INFOtype if info could be retrieved successfully, null instead.
    */
   private INFOtype fetchInformationWrapper(IDtype id) {
-    if (unsuccessfulQueries.contains(id))
+    if (isUnsuccessful(id))
     {
       return null; // Don't have to try it again.
     }
@@ -358,8 +956,8 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
   private void markAsUnretrievable(IDtype id, UnsuccessfulRetrieveException e) {
     log.log(Level.FINE, "Unsuccessful retrieval, marking " +
         (id ==null?"null": id.toString()) + " as unretrievable", e);
-    synchronized (unsuccessfulQueries) {
-      unsuccessfulQueries.add(id);
+    if (id!=null) {
+      addUnsuccessful(id);
     }
     cacheChangedSinceLastLoading=true;
   }
@@ -436,8 +1034,10 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
         }
         log.log(Level.FINE, "Unsuccessful retrieval, marking ALL IDs as unretrievable"+
             (example!=null?" (e.g., '" +example+"')": ""), e);
-        synchronized (unsuccessfulQueries) {
-          unsuccessfulQueries.addAll(Arrays.asList(ids));
+        for (IDtype id: ids) {
+          if (id!=null) {
+            addUnsuccessful(id);
+          }
         }
         cacheChangedSinceLastLoading=true;
         break;
@@ -458,15 +1058,66 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
   /**
    * Retrieve a single information. This will use the cached information, if available. Else,
    * it will call the fetchInformation method and cache the answer.
+   * 
+   * <p>Concurrent calls for the same missing id share a single fetch.
    * @param id - id to query.
    * @return INFOtype - the answer.
    */
   public INFOtype getInformation(IDtype id) {
-    ObjectAndTimestamp<INFOtype> o = rememberedInfos.get(id);
+    ObjectAndTimestamp<INFOtype> o = getCached(id);
     if (o!=null) {
+      recordHit(id, o);
       return o.getInformation();
-    } else {
-      // Retrieve object and store it.
+    } else if (id==null) {
+      return fetchInformationWrapper(id);
+    }
+    
+    // Retrieve object and store it. Join a running fetch for the same id, if any.
+    statistics.recordMiss();
+    FutureTask<INFOtype> fetch = new FutureTask<INFOtype>(new SingleFetch(id));
+    FutureTask<INFOtype> running = pendingFetches.putIfAbsent(id, fetch);
+    if (running==null) {
+      try {
+        fetch.run();
+      } finally {
+        pendingFetches.remove(id, fetch);
+      }
+      running = fetch;
+    }
+    
+    try {
+      return running.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      log.log(Level.WARNING, "Catched an unknown exception while fetching informations", e.getCause());
+      return null;
+    }
+  }
+  
+  /**
+   * Fetches and caches a single id. Runs only once per id, even if
+   * multiple threads request it at the same time.
+   */
+  private class SingleFetch implements Callable<INFOtype> {
+    private final IDtype id;
+    
+    public SingleFetch(IDtype id) {
+      super();
+      this.id = id;
+    }
+    
+    /* (non-Javadoc)
+     * @see java.util.concurrent.Callable#call()
+     */
+    public INFOtype call() {
+      // Another thread might have finished fetching this id, right before
+      // we registered the fetch.
+      ObjectAndTimestamp<INFOtype> o = getCached(id);
+      if (o!=null) {
+        return o.getInformation();
+      }
       INFOtype info = fetchInformationWrapper(id);
       if (info!=null) {
         addInformation(id, info);
@@ -508,10 +1159,10 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
       if (id==null) {
         continue;
       }
-      ObjectAndTimestamp<INFOtype> o = rememberedInfos.get(id);
-      if (o==null && !unsuccessfulQueries.contains(id)) { // Same if-order as below!
+      ObjectAndTimestamp<INFOtype> o = getCached(id);
+      if (o==null && !isUnsuccessful(id)) { // Same if-order as below!
         unknownIDs.add(id);
-      } else {
+      } else if (o!=null) {
         if (anyCachedInfo==null) {
           anyCachedInfo=o.getInformation(false);
         }
@@ -532,11 +1183,6 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
         
         // Fetch new items
         newItems = fetchMultipleInformationWrapper(filtIDs, progress);
-        
-        // Free enough cache for them
-        if (isCacheFull()) {
-          freeCache(Math.max(Math.max(10, unknownIDs.size()), (int)((maxListSize)*0.1)));
-        }
       }
       
       // Big Problem: Java does not permit creating an generic array
@@ -549,11 +1195,13 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
       // Iterate in parallel through ids, infos and filteredIDs
       int infos_i=0;
       for (int i=0; i<ids.length; i++) {
-        ObjectAndTimestamp<INFOtype> o = rememberedInfos.get(ids[i]);
+        ObjectAndTimestamp<INFOtype> o = getCached(ids[i]);
         if (o!=null) { // Same if-order as above!
+          recordHit(ids[i], o);
           infos[i] = o.getInformation();
-        } else if (unknownIDs.size()>0 && ids[i].equals(filtIDs[infos_i])) {
+        } else if (unknownIDs.size()>infos_i && ids[i]!=null && ids[i].equals(filtIDs[infos_i])) {
           // Newly fetched infos (filteredIDs==0 if all in cache).
+          statistics.recordMiss();
           if (newItems!=null && newItems.length<infos_i) {
             // should never happen. (=null => unsuccessfulQueries)
             log.warning("Something went badly wrong. Your fetchMultipleInformations method must return an array of exactly the same size as the input id array!");
@@ -567,7 +1215,7 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
             infos[i] = null;
           }
           infos_i++;
-        } else if (unsuccessfulQueries.contains(ids[i])) {
+        } else if (isUnsuccessful(ids[i])) {
           // Must be below "Newly fetched infos" because it is modified in fetchMultipleInformationWrapper.
           infos[i] = null;
         }
@@ -576,6 +1224,7 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
       return infos;
     } else {
       // No id is cached.
+      statistics.recordMisses(unknownIDs.size());
       INFOtype[] infos = fetchMultipleInformationWrapper(ids, progress);
       if (infos==null) {
         return null;
@@ -589,6 +1238,16 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
     }
   }
   
+  /**
+   * @param id
+   * @return {@code true} if the information for {@code id} is cached or
+   * {@code id} is known to be unretrievable. In both cases, querying
+   * {@code id} does not result in a fetch.
+   */
+  public boolean isCached(IDtype id) {
+    return getCached(id)!=null || isUnsuccessful(id);
+  }
+  
   /**
    * Precache ids, so they are available as soon as you query them.
    * This is useful if you know that you are going to query multiple ids with
@@ -623,8 +1282,8 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
       if (id==null) {
         continue;
       }
-      ObjectAndTimestamp<INFOtype> o = rememberedInfos.get(id);
-      if (o==null && !unsuccessfulQueries.contains(id)) { // Same if-order as below!
+      ObjectAndTimestamp<INFOtype> o = getCached(id);
+      if (o==null && !isUnsuccessful(id)) { // Same if-order as below!
         unknownIDs.add(id);
       } else {
         containsAtLeastOneID = true;
@@ -662,11 +1321,6 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
       return;
     }
     
-    // Free enough cache for them
-    if (isCacheFull()) {
-      freeCache(Math.max(Math.max(10, infos.length), (int)((maxListSize)*0.1)));
-    }
-    
     // Add retrieved infos
     for (int i=0; i<infos.length; i++) {
       if (infos[i]!=null && filtIDs[i]!=null) {
@@ -675,6 +1329,165 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
     }
   }
   
+  /**
+   * The default number of ids, that {@link #getInformationAsync(Comparable)}
+   * collects before calling {@link #fetchMultipleInformations(Comparable[])}.
+   * Overwrite this method, if the source limits the number of ids per
+   * request. If this returns 1 or less, requests are not batched but
+   * fetched with {@link #fetchInformation(Comparable)}.
+   * @return 50 by default.
+   */
+  protected int getPreferredBatchSize() {
+    return 50;
+  }
+  
+  /**
+   * Configures the batching of {@link #getInformationAsync(Comparable)}.
+   * These settings are not serialized.
+   * @param windowMillis maximum time in milliseconds to wait for further
+   * requests before a batch is dispatched. See {@link #DEFAULT_BATCH_WINDOW}.
+   * @param maxBatchSize a batch is dispatched immediately, as soon as it
+   * contains this number of ids. See {@link #getPreferredBatchSize()}.
+   */
+  public void setBatching(long windowMillis, int maxBatchSize) {
+    this.batchWindow = Math.max(0, windowMillis);
+    this.batchSize = Math.max(1, maxBatchSize);
+  }
+  
+  /**
+   * @return time in milliseconds, that {@link #getInformationAsync(Comparable)}
+   * waits for further requests.
+   */
+  public long getBatchWindow() {
+    return batchWindow;
+  }
+  
+  /**
+   * @return maximum number of ids per batch of {@link #getInformationAsync(Comparable)}.
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+  
+  /**
+   * Retrieve a single information asynchronously. If the information is
+   * not cached, the id is buffered for at most {@link #getBatchWindow()}
+   * milliseconds or until {@link #getBatchSize()} ids have been requested.
+   * All buffered ids are then fetched with one call to
+   * {@link #fetchMultipleInformations(Comparable[])}.
+   * 
+   * <p>This reduces the number of requests, if many ids are requested one
+   * at a time, without having to call {@link #precacheIDs(Comparable[])}.
+   * 
+   * @param id id to query.
+   * @return a {@link Future} for the answer. The value is {@code null}, if
+   * the information could not be retrieved.
+   */
+  public Future<INFOtype> getInformationAsync(IDtype id) {
+    ObjectAndTimestamp<INFOtype> o = getCached(id);
+    if (o!=null) {
+      recordHit(id, o);
+      return InformationFuture.completed(o.getInformation());
+    } else if (id==null || isUnsuccessful(id)) {
+      return InformationFuture.completed(null);
+    }
+    
+    InformationFuture<INFOtype> request = new InformationFuture<INFOtype>();
+    InformationFuture<INFOtype> pending = batchedFetches.putIfAbsent(id, request);
+    if (pending!=null) {
+      return pending;
+    }
+    // The answer might have been cached, right before we registered the request.
+    o = getCached(id);
+    if (o!=null) {
+      batchedFetches.remove(id, request);
+      request.complete(o.getInformation());
+      return request;
+    }
+    
+    boolean first, full;
+    synchronized (batchBuffer) {
+      batchBuffer.add(id);
+      first = batchBuffer.size()==1;
+      full = (batchBuffer.size() % batchSize)==0;
+    }
+    if (full) {
+      // Dispatch one full batch immediately
+      getBatchExecutor().execute(new Runnable() {
+        public void run() {
+          dispatchBatch(true);
+        }
+      });
+    }
+    if (first) {
+      // Dispatch everything that is left after the window
+      getBatchExecutor().schedule(new Runnable() {
+        public void run() {
+          while (dispatchBatch(false));
+        }
+      }, batchWindow, TimeUnit.MILLISECONDS);
+    }
+    
+    return request;
+  }
+  
+  /**
+   * Takes up to {@link #batchSize} ids from the {@link #batchBuffer},
+   * fetches them and completes the corresponding futures.
+   * @param onlyFull if true, nothing is dispatched unless the buffer
+   * contains at least {@link #batchSize} ids.
+   * @return true if a batch has been dispatched.
+   */
+  @SuppressWarnings("unchecked")
+  private boolean dispatchBatch(boolean onlyFull) {
+    List<IDtype> batch;
+    synchronized (batchBuffer) {
+      if (batchBuffer.isEmpty() || (onlyFull && batchBuffer.size()<batchSize)) {
+        return false;
+      }
+      List<IDtype> head = batchBuffer.subList(0, Math.min(batchSize, batchBuffer.size()));
+      batch = new ArrayList<IDtype>(head);
+      head.clear();
+    }
+    
+    IDtype[] ids = (IDtype[]) createNewArray(batch.get(0), batch.size());
+    for (int i=0; i<ids.length; i++) {
+      Array.set(ids, i, batch.get(i));
+    }
+    INFOtype[] infos = null;
+    try {
+      if (ids.length==1 || batchSize<=1) {
+        infos = (INFOtype[]) new Serializable[ids.length];
+        for (int i=0; i<ids.length; i++) {
+          infos[i] = getInformation(ids[i]);
+        }
+      } else {
+        infos = getInformations(ids);
+      }
+    } catch (Throwable t) {
+      log.log(Level.WARNING, "Catched an unknown exception while fetching a batch of informations", t);
+    } finally {
+      for (int i=0; i<ids.length; i++) {
+        InformationFuture<INFOtype> request = batchedFetches.remove(ids[i]);
+        if (request!=null) {
+          request.complete((infos==null || infos.length<=i) ? null : infos[i]);
+        }
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * @return the shared executor for {@link #getInformationAsync(Comparable)}.
+   */
+  private static synchronized ScheduledExecutorService getBatchExecutor() {
+    if (batchExecutor==null) {
+      batchExecutor = new ScheduledThreadPoolExecutor(4,
+        ThreadManager.createDaemonThreadFactory("InfoManagement-batch"));
+    }
+    return batchExecutor;
+  }
+  
   /**
    * Load an instance of the cache (InfoManagement) from the filesystem.
    * @param file
@@ -723,6 +1536,26 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
     return ret;
   }
   
+  /**
+   * Imports a cache, that has been saved with
+   * {@link #saveToFilesystem(String, InfoManagement)}, into a
+   * {@link MappedInfoStore}.
+   * @param serializedCache file of the serialized cache.
+   * @param storeFile data file of the store. Existing entries are kept.
+   * @return the loaded cache with the new store attached.
+   * @throws IOException
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public static InfoManagement<?, ?> convertToStore(File serializedCache, File storeFile) throws IOException {
+    InfoManagement m = loadFromFilesystem(serializedCache);
+    if (m==null) {
+      throw new IOException("Could not load cache from " + serializedCache);
+    }
+    m.setPersistentStore(new MappedInfoStore(storeFile));
+    m.saveToStore();
+    return m;
+  }
+  
   /**
    * Creates a new array, of the given size, that contains all items
    * from the old one and has the new size.
@@ -796,12 +1629,13 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
    * @throws IOException
    */
   private void writeObject(ObjectOutputStream out) throws IOException {
-    synchronized (rememberedInfos) {
-      synchronized (unsuccessfulQueries) {
-        cleanupUnserializableObject();
-        
-        out.defaultWriteObject();
-      }
+    lockEviction();
+    try {
+      cleanupUnserializableObject();
+      
+      out.defaultWriteObject();
+    } finally {
+      evictionLock.unlock();
     }
     cacheChangedSinceLastLoading=false;
   }
@@ -821,6 +1655,40 @@ public abstract class InfoManagement<IDtype extends Comparable<?> & Serializable
       throw new IOException("Could not read cache from disk.", exc);
     }
     
+    // Older caches used non-concurrent collections (that permit null)
+    if (!(rememberedInfos instanceof ConcurrentHashMap)) {
+      Map<IDtype, ObjectAndTimestamp<INFOtype>> concurrentMap =
+          new ConcurrentHashMap<IDtype, ObjectAndTimestamp<INFOtype>>(Math.max(rememberedInfos.size(), maxListSize)+1);
+      for (Entry<IDtype, ObjectAndTimestamp<INFOtype>> entry : rememberedInfos.entrySet()) {
+        if (entry.getKey()!=null && entry.getValue()!=null) {
+          concurrentMap.put(entry.getKey(), entry.getValue());
+        }
+      }
+      rememberedInfos = concurrentMap;
+    }
+    Set<IDtype> concurrentSet = createConcurrentSet(unsuccessfulQueries.size()+1);
+    for (IDtype id : unsuccessfulQueries) {
+      if (id!=null) {
+        concurrentSet.add(id);
+      }
+    }
+    unsuccessfulQueries = concurrentSet;
+    if (unsuccessfulQueryTimes==null) {
+      unsuccessfulQueryTimes = new ConcurrentHashMap<IDtype, Long>(unsuccessfulQueries.size()+1);
+    }
+    // Unknown query times are treated as if they were queried right now.
+    Long now = Long.valueOf(System.currentTimeMillis());
+    for (IDtype id : unsuccessfulQueries) {
+      if (!unsuccessfulQueryTimes.containsKey(id)) {
+        unsuccessfulQueryTimes.put(id, now);
+      }
+    }
+    
+    initTransientFields();
+    evictionPolicy = createDefaultEvictionPolicy(maxListSize);
+    // There is no store yet, hence, nothing to persist
+    rebuildEvictionPolicy();
+    
     restoreUnserializableObject();
     cacheChangedSinceLastLoading=false;
     
@@ -0,0 +1,109 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.cache;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link Future} that is completed by the {@link InfoManagement}, once
+ * the batch containing the requested id has been fetched. Cancelling is
+ * not supported, because other requests might wait for the same batch.
+ *
+ * @version $Rev$
+ * @param <T> the information type
+ */
+class InformationFuture<T> implements Future<T> {
+
+  private final CountDownLatch done = new CountDownLatch(1);
+
+  private volatile T information = null;
+
+  /**
+   * Creates a future, that is not yet completed.
+   */
+  public InformationFuture() {
+    super();
+  }
+
+  /**
+   * @param information
+   * @return a completed future, holding the given information.
+   */
+  public static <T> InformationFuture<T> completed(T information) {
+    InformationFuture<T> f = new InformationFuture<T>();
+    f.complete(information);
+    return f;
+  }
+
+  /**
+   * Sets the result and wakes up all waiting threads. Only the first
+   * invocation has an effect.
+   * @param information might be {@code null} if the id could not be
+   * retrieved.
+   */
+  void complete(T information) {
+    synchronized (done) {
+      if (done.getCount()>0) {
+        this.information = information;
+        done.countDown();
+      }
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.concurrent.Future#cancel(boolean)
+   */
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    return false;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.concurrent.Future#isCancelled()
+   */
+  public boolean isCancelled() {
+    return false;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.concurrent.Future#isDone()
+   */
+  public boolean isDone() {
+    return done.getCount()==0;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.concurrent.Future#get()
+   */
+  public T get() throws InterruptedException {
+    done.await();
+    return information;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.concurrent.Future#get(long, java.util.concurrent.TimeUnit)
+   */
+  public T get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+    if (!done.await(timeout, unit)) {
+      throw new TimeoutException();
+    }
+    return information;
+  }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Evicts the least recently used key. Keys are kept in an access-ordered
+ * {@link LinkedHashMap}, such that every operation runs in constant time.
+ *
+ * <p>This resembles the behavior of the former timestamp-based cleanup
+ * of {@link InfoManagement}, without scanning the whole cache.
+ *
+ * @version $Rev$
+ * @param <K> the key type of the cache
+ */
+public class LRUEvictionPolicy<K> implements EvictionPolicy<K> {
+
+  /**
+   * All tracked keys, the least recently used first.
+   */
+  private final LinkedHashMap<K, Boolean> order;
+
+  /**
+   * Maximum number of keys.
+   */
+  private int maximumSize;
+
+  /**
+   * @param maximumSize the maximum number of keys to keep.
+   */
+  public LRUEvictionPolicy(int maximumSize) {
+    super();
+    this.maximumSize = maximumSize;
+    order = new LinkedHashMap<K, Boolean>(Math.max(16, Math.min(maximumSize, 1<<20)), 0.75f, true);
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.cache.EvictionPolicy#setMaximumSize(int)
+   */
+  public void setMaximumSize(int maximumSize) {
+    this.maximumSize = maximumSize;
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.cache.EvictionPolicy#recordAccess(java.lang.Object)
+   */
+  public void recordAccess(K key) {
+    // Access-ordered map moves the key to the end.
+    order.get(key);
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.cache.EvictionPolicy#recordInsertion(java.lang.Object)
+   */
+  public void recordInsertion(K key) {
+    order.put(key, Boolean.TRUE);
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.cache.EvictionPolicy#recordRemoval(java.lang.Object)
+   */
+  public void recordRemoval(K key) {
+    order.remove(key);
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.cache.EvictionPolicy#selectVictim()
+   */
+  public K selectVictim() {
+    if (order.size()<=Math.max(0, maximumSize)) {
+      return null;
+    }
+    Iterator<K> it = order.keySet().iterator();
+    K victim = it.next();
+    it.remove();
+    return victim;
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.cache.EvictionPolicy#size()
+   */
+  public int size() {
+    return order.size();
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.cache.EvictionPolicy#clear()
+   */
+  public void clear() {
+    order.clear();
+  }
+
+}
@@ -0,0 +1,784 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.zbit.io.BinaryCacheFile;
+
+/**
+ * An append-only, memory-mapped file store for {@link InfoManagement}
+ * caches. In contrast to serializing the whole cache, opening a store
+ * only reads a small index (keys and file offsets), values are
+ * deserialized on first access, and saving just appends new entries.
+ *
+ * <p>A store consists of two files: the data file (given file name)
+ * contains all records, an index file (with suffix {@value #INDEX_SUFFIX})
+ * contains keys and offsets of all records. If the index is missing or
+ * damaged, it is rebuilt from the data file. Both headers contain the
+ * same generation id, which changes whenever the files are rewritten,
+ * such that an index is never used with the data file of another
+ * generation (e.g., after a crash while replacing the files by
+ * {@link #compact()}). Since both files are only
+ * appended, outdated and removed entries remain in the files until
+ * {@link #compact()} is called.
+ *
+ * <p>Keys of type {@link String} are stored as UTF-8, all other keys and
+ * values are stored by Java serialization.
+ *
+ * @version $Rev$
+ * @param <IDtype> the key type of the cache
+ * @param <INFOtype> the value type of the cache
+ */
+public class MappedInfoStore<IDtype extends Comparable<?> & Serializable, INFOtype extends Serializable> implements Closeable {
+
+  /**
+   * A {@link Logger} for this class.
+   */
+  private static final transient Logger log = Logger.getLogger(MappedInfoStore.class.getName());
+
+  /**
+   * Suffix of the index file.
+   */
+  public static final String INDEX_SUFFIX = ".idx";
+
+  /**
+   * File header ("SBIS").
+   */
+  private static final int MAGIC = 0x53424953;
+  /**
+   * Version of the file format.
+   */
+  private static final int FORMAT_VERSION = 2;
+  /**
+   * Length of the header (magic, version and generation).
+   */
+  private static final int HEADER_LENGTH = 16;
+
+  /**
+   * Record types.
+   */
+  private static final byte TYPE_VALUE = 1, TYPE_UNSUCCESSFUL = 2, TYPE_REMOVED = 3;
+  /**
+   * Key encodings.
+   */
+  private static final byte KEY_STRING = 1, KEY_SERIALIZED = 2;
+
+  /**
+   * Location of a record in the data file.
+   */
+  private static class Record {
+    final long offset;
+    final long timestamp;
+    Record(long offset, long timestamp) {
+      this.offset = offset;
+      this.timestamp = timestamp;
+    }
+  }
+
+  private final File dataFile;
+  private final File indexFile;
+
+  /**
+   * Offsets of the latest record of all stored keys.
+   */
+  private Map<IDtype, Record> values;
+  /**
+   * Keys that are stored as unsuccessful query with their timestamp.
+   */
+  private Map<IDtype, Long> unsuccessful;
+
+  private RandomAccessFile data;
+  private DataOutputStream dataOut;
+  private DataOutputStream indexOut;
+  /**
+   * Logical length of the data file, including buffered appends.
+   */
+  private long dataLength;
+  /**
+   * Read-only mapping of the data file. Might cover less than
+   * {@link #dataLength}, is remapped on demand.
+   */
+  private MappedByteBuffer mapped = null;
+  /**
+   * Number of records in the files, including outdated ones.
+   */
+  private int records;
+  /**
+   * Generation id of the data file, that must be contained in the
+   * header of the index.
+   */
+  private long generation;
+
+  /**
+   * Opens or creates a store. This reads the index only.
+   * @param file the data file. The index is stored next to it.
+   * @throws IOException
+   */
+  public MappedInfoStore(File file) throws IOException {
+    super();
+    this.dataFile = file;
+    this.indexFile = new File(file.getPath() + INDEX_SUFFIX);
+    open();
+  }
+
+  /**
+   * Reads the index and prepares the files for appending.
+   * @throws IOException
+   */
+  private void open() throws IOException {
+    values = new HashMap<IDtype, Record>();
+    unsuccessful = new HashMap<IDtype, Long>();
+    records = 0;
+
+    if (!dataFile.exists() || dataFile.length()<HEADER_LENGTH) {
+      writeHeaders();
+    }
+    data = new RandomAccessFile(dataFile, "r");
+    if (data.readInt()!=MAGIC || data.readInt()!=FORMAT_VERSION) {
+      data.close();
+      throw new IOException(String.format("'%s' is not a cache store of version %s.", dataFile, FORMAT_VERSION));
+    }
+    generation = data.readLong();
+
+    long validDataLength = HEADER_LENGTH;
+    boolean indexValid = indexFile.exists();
+    if (indexValid) {
+      try {
+        validDataLength = readIndex(data.length());
+      } catch (IOException e) {
+        log.log(Level.INFO, "Rebuilding damaged cache index " + indexFile, e);
+        indexValid = false;
+      } catch (RuntimeException e) {
+        log.log(Level.INFO, "Rebuilding damaged cache index " + indexFile, e);
+        indexValid = false;
+      }
+    }
+    if (!indexValid) {
+      validDataLength = rebuildIndex();
+    }
+
+    // Strip incomplete records, e.g., from an interrupted saving
+    if (validDataLength<data.length()) {
+      data.close();
+      RandomAccessFile truncate = new RandomAccessFile(dataFile, "rw");
+      truncate.setLength(validDataLength);
+      truncate.close();
+      data = new RandomAccessFile(dataFile, "r");
+    }
+    dataLength = validDataLength;
+
+    dataOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile, true), 1<<16));
+    indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true), 1<<16));
+  }
+
+  /**
+   * Creates an empty data and index file with a new generation id.
+   * @throws IOException
+   */
+  private void writeHeaders() throws IOException {
+    long generation = new Random().nextLong();
+    writeHeader(dataFile, generation);
+    writeHeader(indexFile, generation);
+  }
+
+  /**
+   * Creates an empty file with header.
+   * @param file
+   * @param generation the generation id of the store.
+   * @throws IOException
+   */
+  private static void writeHeader(File file, long generation) throws IOException {
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(generation);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Reads the index file into {@link #values} and {@link #unsuccessful}.
+   * @param dataFileLength
+   * @return the end of the last complete record in the data file.
+   * @throws IOException if the index is damaged or belongs to another
+   * generation of the data file.
+   */
+  private long readIndex(long dataFileLength) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 1<<16));
+    long validLength = HEADER_LENGTH;
+    long validIndexLength = HEADER_LENGTH;
+    try {
+      if (in.readInt()!=MAGIC || in.readInt()!=FORMAT_VERSION) {
+        throw new IOException("Invalid index header.");
+      }
+      if (in.readLong()!=generation) {
+        throw new IOException("Index does not belong to the data file.");
+      }
+      while (true) {
+        byte type;
+        try {
+          type = in.readByte();
+        } catch (EOFException e) {
+          break;
+        }
+        long timestamp, offset, end;
+        IDtype key;
+        try {
+          timestamp = in.readLong();
+          offset = in.readLong();
+          end = in.readLong();
+          key = readKey(in);
+        } catch (EOFException e) {
+          break; // Incomplete index entry
+        }
+        if (end>dataFileLength) {
+          break; // Record has not been written completely
+        }
+        addToIndex(type, key, offset, timestamp);
+        validLength = end;
+        validIndexLength += 1 + 8 + 8 + 8 + lastKeyLength;
+      }
+    } finally {
+      in.close();
+    }
+    if (validIndexLength<indexFile.length()) {
+      RandomAccessFile truncate = new RandomAccessFile(indexFile, "rw");
+      truncate.setLength(validIndexLength);
+      truncate.close();
+    }
+    return validLength;
+  }
+
+  /**
+   * Scans the data file and writes a new index.
+   * @return the end of the last complete record in the data file.
+   * @throws IOException
+   */
+  private long rebuildIndex() throws IOException {
+    values.clear();
+    unsuccessful.clear();
+    records = 0;
+    writeHeader(indexFile, generation);
+    DataOutputStream idx = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true), 1<<16));
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFile), 1<<16));
+    long position = HEADER_LENGTH;
+    try {
+      in.skipBytes(HEADER_LENGTH);
+      while (true) {
+        byte type;
+        long timestamp;
+        IDtype key;
+        int valueLength;
+        try {
+          type = in.readByte();
+          timestamp = in.readLong();
+          key = readKey(in);
+          valueLength = in.readInt();
+          if (in.skipBytes(valueLength)<valueLength) {
+            break;
+          }
+        } catch (EOFException e) {
+          break;
+        }
+        long end = position + 1 + 8 + lastKeyLength + 4 + valueLength;
+        writeIndexEntry(idx, type, timestamp, position, end, key);
+        addToIndex(type, key, position, timestamp);
+        position = end;
+      }
+    } finally {
+      in.close();
+      idx.close();
+    }
+    return position;
+  }
+
+  /**
+   * @param type
+   * @param key
+   * @param offset
+   * @param timestamp
+   */
+  private void addToIndex(byte type, IDtype key, long offset, long timestamp) {
+    records++;
+    if (type==TYPE_VALUE) {
+      values.put(key, new Record(offset, timestamp));
+      unsuccessful.remove(key);
+    } else if (type==TYPE_UNSUCCESSFUL) {
+      values.remove(key);
+      unsuccessful.put(key, Long.valueOf(timestamp));
+    } else {
+      values.remove(key);
+      unsuccessful.remove(key);
+    }
+  }
+
+  /**
+   * @param out
+   * @param type
+   * @param timestamp
+   * @param offset
+   * @param end
+   * @param key
+   * @throws IOException
+   */
+  private static void writeIndexEntry(DataOutputStream out, byte type, long timestamp,
+    long offset, long end, Object key) throws IOException {
+    out.writeByte(type);
+    out.writeLong(timestamp);
+    out.writeLong(offset);
+    out.writeLong(end);
+    writeKey(out, key);
+  }
+
+  /**
+   * Number of bytes of the key, that has been read last by
+   * {@link #readKey(DataInputStream)} (including encoding and length).
+   */
+  private int lastKeyLength = 0;
+
+  /**
+   * @param key
+   * @return the encoded key, including encoding type and length.
+   * @throws IOException
+   */
+  private static byte[] encodeKey(Object key) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    writeKey(new DataOutputStream(bytes), key);
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @param out
+   * @param key
+   * @throws IOException
+   */
+  private static void writeKey(DataOutputStream out, Object key) throws IOException {
+    byte[] bytes;
+    if (key instanceof String) {
+      out.writeByte(KEY_STRING);
+      bytes = ((String) key).getBytes("UTF-8");
+    } else {
+      out.writeByte(KEY_SERIALIZED);
+      bytes = serialize(key);
+    }
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * @param in
+   * @return the key
+   * @throws IOException
+   */
+  private IDtype readKey(DataInputStream in) throws IOException {
+    byte encoding = in.readByte();
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    lastKeyLength = 1 + 4 + bytes.length;
+    return decodeKey(encoding, bytes);
+  }
+
+  /**
+   * @param encoding
+   * @param bytes
+   * @return the key
+   * @throws IOException
+   */
+  @SuppressWarnings("unchecked")
+  private IDtype decodeKey(byte encoding, byte[] bytes) throws IOException {
+    if (encoding==KEY_STRING) {
+      return (IDtype) new String(bytes, "UTF-8");
+    } else if (encoding==KEY_SERIALIZED) {
+      return (IDtype) deserialize(bytes);
+    }
+    throw new IOException("Unknown key encoding " + encoding);
+  }
+
+  /**
+   * @param o
+   * @return serialized object
+   * @throws IOException
+   */
+  private static byte[] serialize(Object o) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(o);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @param bytes
+   * @return deserialized object
+   * @throws IOException
+   */
+  private static Object deserialize(byte[] bytes) throws IOException {
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+    try {
+      return in.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Could not deserialize cached object.", e);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Appends a record to both files.
+   * @param type
+   * @param key
+   * @param value might be {@code null}.
+   * @param timestamp
+   * @throws IOException
+   */
+  private void append(byte type, IDtype key, Serializable value, long timestamp) throws IOException {
+    byte[] keyBytes = encodeKey(key);
+    byte[] valueBytes = (value==null) ? new byte[0] : serialize(value);
+    long offset = dataLength;
+    dataOut.writeByte(type);
+    dataOut.writeLong(timestamp);
+    dataOut.write(keyBytes);
+    dataOut.writeInt(valueBytes.length);
+    dataOut.write(valueBytes);
+    dataLength += 1 + 8 + keyBytes.length + 4 + valueBytes.length;
+
+    indexOut.writeByte(type);
+    indexOut.writeLong(timestamp);
+    indexOut.writeLong(offset);
+    indexOut.writeLong(dataLength);
+    indexOut.write(keyBytes);
+
+    addToIndex(type, key, offset, timestamp);
+  }
+
+  /**
+   * Appends the given information. Call {@link #flush()} to ensure that
+   * it is written to disk.
+   * @param key
+   * @param value
+   * @param timestamp time of retrieval (see {@link System#currentTimeMillis()}).
+   * @throws IOException
+   */
+  public synchronized void put(IDtype key, INFOtype value, long timestamp) throws IOException {
+    append(TYPE_VALUE, key, value, timestamp);
+  }
+
+  /**
+   * Appends the given key as unsuccessful query.
+   * @param key
+   * @param timestamp time of the query
+   * @throws IOException
+   */
+  public synchronized void putUnsuccessful(IDtype key, long timestamp) throws IOException {
+    append(TYPE_UNSUCCESSFUL, key, null, timestamp);
+  }
+
+  /**
+   * Marks the given key as removed (value and unsuccessful query).
+   * @param key
+   * @return true if the key was contained in this store.
+   * @throws IOException
+   */
+  public synchronized boolean remove(IDtype key) throws IOException {
+    if (values.containsKey(key) || unsuccessful.containsKey(key)) {
+      append(TYPE_REMOVED, key, null, System.currentTimeMillis());
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @param key
+   * @return true if a value is stored for the given key.
+   */
+  public synchronized boolean contains(IDtype key) {
+    return values.containsKey(key);
+  }
+
+  /**
+   * @param key
+   * @return true if the given key is stored as unsuccessful query.
+   */
+  public synchronized boolean isUnsuccessful(IDtype key) {
+    return unsuccessful.containsKey(key);
+  }
+
+  /**
+   * @param key
+   * @return the time, when the value or unsuccessful query has been
+   * stored, or -1 if the key is unknown.
+   */
+  public synchronized long getTimestamp(IDtype key) {
+    Record r = values.get(key);
+    if (r!=null) {
+      return r.timestamp;
+    }
+    Long t = unsuccessful.get(key);
+    return t==null ? -1 : t.longValue();
+  }
+
+  /**
+   * Reads and deserializes the value of the given key.
+   * @param key
+   * @return the value or {@code null} if there is no value for this key
+   * or the record at the indexed position does not belong to this key.
+   * @throws IOException
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized INFOtype get(IDtype key) throws IOException {
+    Record r = values.get(key);
+    if (r==null) {
+      return null;
+    }
+    byte type, encoding;
+    byte[] keyBytes, bytes;
+    try {
+      ByteBuffer buffer = getBuffer(r.offset);
+      if (buffer!=null) {
+        buffer.position((int) r.offset);
+        type = buffer.get();
+        buffer.getLong();
+        encoding = buffer.get();
+        keyBytes = new byte[checkLength(buffer.getInt(), buffer.remaining())];
+        buffer.get(keyBytes);
+        bytes = new byte[checkLength(buffer.getInt(), buffer.remaining())];
+        buffer.get(bytes);
+      } else {
+        // Beyond 2 GB, which cannot be mapped at once.
+        data.seek(r.offset);
+        type = data.readByte();
+        data.readLong();
+        encoding = data.readByte();
+        keyBytes = new byte[checkLength(data.readInt(), data.length()-data.getFilePointer())];
+        data.readFully(keyBytes);
+        bytes = new byte[checkLength(data.readInt(), data.length()-data.getFilePointer())];
+        data.readFully(bytes);
+      }
+      if (type!=TYPE_VALUE || !key.equals(decodeKey(encoding, keyBytes))) {
+        throw new IOException("Record does not belong to the key.");
+      }
+    } catch (IOException e) {
+      log.log(Level.FINE, String.format("Invalid record of '%s' in %s.", key, dataFile), e);
+      return null;
+    } catch (RuntimeException e) {
+      log.log(Level.FINE, String.format("Invalid record of '%s' in %s.", key, dataFile), e);
+      return null;
+    }
+    return (INFOtype) deserialize(bytes);
+  }
+
+  /**
+   * @param length a length, read from the data file.
+   * @param remaining number of bytes after the length.
+   * @return {@code length}
+   * @throws IOException if the length is negative or exceeds the file.
+   */
+  private static int checkLength(int length, long remaining) throws IOException {
+    if (length<0 || length>remaining) {
+      throw new IOException("Invalid length " + length);
+    }
+    return length;
+  }
+
+  /**
+   * @param offset
+   * @return a buffer mapping the whole data file up to a position beyond
+   * {@code offset}, or {@code null} if the file is too large to be mapped.
+   * @throws IOException
+   */
+  private ByteBuffer getBuffer(long offset) throws IOException {
+    if (mapped==null || offset>=mapped.limit()) {
+      dataOut.flush();
+      long length = data.length();
+      if (length>Integer.MAX_VALUE) {
+        return null;
+      }
+      unmap();
+      mapped = data.getChannel().map(MapMode.READ_ONLY, 0, length);
+    }
+    return mapped;
+  }
+
+  /**
+   * Releases the {@link #mapped} buffer immediately, instead of waiting
+   * for the garbage collector. Otherwise, the data file cannot be
+   * truncated, deleted or renamed on some platforms (e.g., Windows). The
+   * buffer is never passed outside of synchronized methods, hence, it is
+   * not used anymore.
+   */
+  private void unmap() {
+    MappedByteBuffer buffer = mapped;
+    mapped = null;
+    if (buffer==null) {
+      return;
+    }
+    try {
+      Method getCleaner = buffer.getClass().getMethod("cleaner");
+      getCleaner.setAccessible(true);
+      Object cleaner = getCleaner.invoke(buffer);
+      if (cleaner!=null) {
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+    } catch (Throwable e) {
+      // Not supported by this VM, the mapping is released by the garbage collector
+      log.log(Level.FINEST, "Could not unmap " + dataFile, e);
+    }
+  }
+
+  /**
+   * @return all keys with a stored value.
+   */
+  public synchronized Set<IDtype> keySet() {
+    return Collections.unmodifiableSet(new java.util.HashSet<IDtype>(values.keySet()));
+  }
+
+  /**
+   * @return all keys that are stored as unsuccessful queries.
+   */
+  public synchronized Set<IDtype> unsuccessfulKeySet() {
+    return Collections.unmodifiableSet(new java.util.HashSet<IDtype>(unsuccessful.keySet()));
+  }
+
+  /**
+   * @return number of keys with a stored value.
+   */
+  public synchronized int size() {
+    return values.size();
+  }
+
+  /**
+   * @return the ratio of records in the files, that are outdated or
+   * removed. Use this to decide, when to {@link #compact()}.
+   */
+  public synchronized double getGarbageRatio() {
+    if (records==0) {
+      return 0d;
+    }
+    return 1d - ((double) (values.size() + unsuccessful.size()) / records);
+  }
+
+  /**
+   * Writes all appended records to disk.
+   * @throws IOException
+   */
+  public synchronized void flush() throws IOException {
+    dataOut.flush();
+    indexOut.flush();
+  }
+
+  /**
+   * Rewrites both files, keeping only the latest record of each key.
+   * @throws IOException
+   */
+  public synchronized void compact() throws IOException {
+    flush();
+    File tempFile = new File(dataFile.getPath() + ".compact");
+    MappedInfoStore<IDtype, INFOtype> compacted = new MappedInfoStore<IDtype, INFOtype>(createEmpty(tempFile));
+    try {
+      List<Map.Entry<IDtype, Record>> entries = new ArrayList<Map.Entry<IDtype, Record>>(values.entrySet());
+      for (Map.Entry<IDtype, Record> entry : entries) {
+        compacted.put(entry.getKey(), get(entry.getKey()), entry.getValue().timestamp);
+      }
+      for (Map.Entry<IDtype, Long> entry : unsuccessful.entrySet()) {
+        compacted.putUnsuccessful(entry.getKey(), entry.getValue().longValue());
+      }
+    } finally {
+      compacted.close();
+    }
+
+    // Releases the mapping, before the files are replaced. The compacted
+    // files have a new generation id, hence, the new index is not used
+    // with the old data file, if replacing the data file fails.
+    close();
+    BinaryCacheFile.replace(compacted.indexFile, indexFile);
+    BinaryCacheFile.replace(tempFile, dataFile);
+    open();
+  }
+
+  /**
+   * Removes all entries from this store.
+   * @throws IOException
+   */
+  public synchronized void clear() throws IOException {
+    close();
+    writeHeaders();
+    open();
+  }
+
+  /**
+   * Deletes the given file and its index, if they exist.
+   * @param file
+   * @return file
+   */
+  private static File createEmpty(File file) {
+    file.delete();
+    new File(file.getPath() + INDEX_SUFFIX).delete();
+    return file;
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.Closeable#close()
+   */
+  public synchronized void close() throws IOException {
+    unmap();
+    try {
+      dataOut.close();
+      indexOut.close();
+    } finally {
+      data.close();
+    }
+  }
+
+  /**
+   * @return the data file of this store.
+   */
+  public File getFile() {
+    return dataFile;
+  }
+
+}
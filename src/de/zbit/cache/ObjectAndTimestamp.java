@@ -16,11 +16,14 @@
  */
 package de.zbit.cache;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 /**
  * Stores an object together with a timestamp. Updates the timestamp
- * whenever this information is accessed.
+ * whenever this information is accessed. Additionally, the time when the
+ * information has been set is stored, to allow expiring old information.
  * @author Clemens Wrzodek
  * @version $Rev$
  * @param <INFOtype>
@@ -39,6 +42,13 @@ public class ObjectAndTimestamp<INFOtype> implements Comparable, Serializable {
    */
   private long lastUsage;
   
+  /**
+   * Datestamp, when this information has been set (or revalidated).
+   * See {@link System#currentTimeMillis()}. Older serialized objects
+   * do not contain this field, see {@link #readObject(ObjectInputStream)}.
+   */
+  private long insertionTime;
+  
   
   /**
    * Construct a new element.
@@ -98,6 +108,47 @@ public class ObjectAndTimestamp<INFOtype> implements Comparable, Serializable {
   public void setInformation(INFOtype information) {
     this.information = information;
     resetTimestamp();
+    insertionTime = lastUsage;
+  }
+  
+  /**
+   * @return date stamp, when this information has been set or
+   * revalidated the last time.
+   */
+  public long getInsertionTime() {
+    return insertionTime;
+  }
+  
+  /**
+   * @param insertionTime date stamp, when this information has been
+   * retrieved or revalidated.
+   */
+  void setInsertionTime(long insertionTime) {
+    this.insertionTime = insertionTime;
+  }
+  
+  /**
+   * @param timeToLive in milliseconds
+   * @return true if this information has been set more than
+   * {@code timeToLive} milliseconds ago. Always false if
+   * {@code timeToLive} is not positive.
+   */
+  public boolean isExpired(long timeToLive) {
+    return (timeToLive>0) && ((System.currentTimeMillis() - insertionTime) > timeToLive);
+  }
+  
+  /**
+   * Objects that have been serialized before {@link #insertionTime} has
+   * been introduced are treated as inserted at their last usage.
+   * @param in
+   * @throws IOException
+   * @throws ClassNotFoundException
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (insertionTime<=0) {
+      insertionTime = lastUsage;
+    }
   }
   
   /*
@@ -0,0 +1,226 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A frequency-aware eviction policy (W-TinyLFU). New keys enter a small
+ * LRU window (1% of the cache). Keys that fall out of the window have to
+ * compete with the least recently used key of the main area for
+ * admission: the key that has been requested more often (estimated by a
+ * {@link FrequencySketch}) stays. The main area is a segmented LRU,
+ * i.e., keys that are accessed a second time are protected from
+ * eviction by keys that have been seen just once.
+ *
+ * <p>This is robust against scans, e.g., when a whole pathway is
+ * precached once, while frequently requested compounds stay cached.
+ *
+ * @version $Rev$
+ * @param <K> the key type of the cache
+ */
+public class WTinyLFUEvictionPolicy<K> implements EvictionPolicy<K> {
+
+  /**
+   * Fraction of the cache that is reserved for the admission window.
+   */
+  private static final double WINDOW_FRACTION = 0.01;
+
+  /**
+   * Fraction of the main area that is reserved for protected keys.
+   */
+  private static final double PROTECTED_FRACTION = 0.8;
+
+  /**
+   * Recently inserted keys. Each map is access-ordered and lists the
+   * least recently used key first.
+   */
+  private final LinkedHashMap<K, Boolean> window;
+  /**
+   * Keys of the main area, that have been accessed only once.
+   */
+  private final LinkedHashMap<K, Boolean> probation;
+  /**
+   * Keys of the main area, that have been accessed at least twice.
+   */
+  private final LinkedHashMap<K, Boolean> protectedKeys;
+
+  /**
+   * Popularity estimates for admission decisions.
+   */
+  private final FrequencySketch sketch;
+
+  /**
+   * The key that has been moved from the window to the probation
+   * segment most recently and did not yet pass the admission.
+   */
+  private K candidate = null;
+
+  private int maximumSize;
+  private int maxWindow;
+  private int maxProtected;
+
+  /**
+   * @param maximumSize the maximum number of keys to keep.
+   */
+  public WTinyLFUEvictionPolicy(int maximumSize) {
+    super();
+    int initialCapacity = Math.max(16, Math.min(maximumSize, 1<<20));
+    window = new LinkedHashMap<K, Boolean>(16, 0.75f, true);
+    probation = new LinkedHashMap<K, Boolean>(initialCapacity, 0.75f, true);
+    protectedKeys = new LinkedHashMap<K, Boolean>(initialCapacity, 0.75f, true);
+    sketch = new FrequencySketch(maximumSize);
+    setMaximumSize(maximumSize);
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.cache.EvictionPolicy#setMaximumSize(int)
+   */
+  public void setMaximumSize(int maximumSize) {
+    this.maximumSize = Math.max(0, maximumSize);
+    maxWindow = Math.max(1, (int) (this.maximumSize * WINDOW_FRACTION));
+    maxProtected = (int) (Math.max(0, this.maximumSize - maxWindow) * PROTECTED_FRACTION);
+    sketch.ensureCapacity(this.maximumSize);
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.cache.EvictionPolicy#recordAccess(java.lang.Object)
+   */
+  public void recordAccess(K key) {
+    sketch.increment(key);
+    if (window.get(key)!=null) {
+      return;
+    } else if (probation.remove(key)!=null) {
+      // Second access => promote
+      if (key.equals(candidate)) {
+        candidate = null;
+      }
+      protectedKeys.put(key, Boolean.TRUE);
+      while (protectedKeys.size()>maxProtected) {
+        K demoted = removeEldest(protectedKeys);
+        if (demoted==null) {
+          break;
+        }
+        probation.put(demoted, Boolean.TRUE);
+      }
+    } else {
+      protectedKeys.get(key);
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.cache.EvictionPolicy#recordInsertion(java.lang.Object)
+   */
+  public void recordInsertion(K key) {
+    if (window.containsKey(key) || probation.containsKey(key) || protectedKeys.containsKey(key)) {
+      recordAccess(key);
+      return;
+    }
+    sketch.increment(key);
+    window.put(key, Boolean.TRUE);
+    if (window.size()>maxWindow) {
+      // Move to main area and let it compete for admission
+      K moved = removeEldest(window);
+      probation.put(moved, Boolean.TRUE);
+      candidate = moved;
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.cache.EvictionPolicy#recordRemoval(java.lang.Object)
+   */
+  public void recordRemoval(K key) {
+    if (window.remove(key)==null && probation.remove(key)==null) {
+      protectedKeys.remove(key);
+    }
+    if (key!=null && key.equals(candidate)) {
+      candidate = null;
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.cache.EvictionPolicy#selectVictim()
+   */
+  public K selectVictim() {
+    if (size()<=maximumSize) {
+      candidate = null;
+      return null;
+    }
+
+    // Prefer to let the window-candidate compete against the LRU key
+    // of the probation segment.
+    K victim = probation.isEmpty()?null:probation.keySet().iterator().next();
+    if (candidate!=null && victim!=null && !victim.equals(candidate)) {
+      K loser;
+      if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+        loser = victim;
+      } else {
+        loser = candidate;
+      }
+      probation.remove(loser);
+      candidate = null;
+      return loser;
+    }
+    candidate = null;
+
+    // No admission decision possible => evict in LRU order from
+    // probation, protected and window.
+    victim = removeEldest(probation);
+    if (victim==null) {
+      victim = removeEldest(protectedKeys);
+    }
+    if (victim==null) {
+      victim = removeEldest(window);
+    }
+    return victim;
+  }
+
+  /**
+   * @param map
+   * @return the removed, least recently used key of {@code map} or
+   * {@code null} if it is empty.
+   */
+  private static <K> K removeEldest(LinkedHashMap<K, Boolean> map) {
+    if (map.isEmpty()) {
+      return null;
+    }
+    Iterator<K> it = map.keySet().iterator();
+    K eldest = it.next();
+    it.remove();
+    return eldest;
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.cache.EvictionPolicy#size()
+   */
+  public int size() {
+    return window.size() + probation.size() + protectedKeys.size();
+  }
+
+  /* (non-Javadoc)
+   * @see de.zbit.cache.EvictionPolicy#clear()
+   */
+  public void clear() {
+    window.clear();
+    probation.clear();
+    protectedKeys.clear();
+    sketch.clear();
+    candidate = null;
+  }
+
+}
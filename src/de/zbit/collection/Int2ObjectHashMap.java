@@ -0,0 +1,415 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.collection;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A {@link Map} from primitive {@code int}s to objects, using open
+ * addressing with linear probing. This is the counterpart of
+ * {@link Object2IntHashMap}, e.g., for maps from NCBI Gene IDs to gene
+ * symbols. Keys are not boxed, unless they are requested via the
+ * {@link Map} interface.
+ *
+ * <p>Use {@link #get(int)} and {@link #put(int, Object)} to avoid
+ * boxing. {@code null} keys and values are not supported.
+ *
+ * @version $Rev$
+ * @param <V> the value type
+ */
+public class Int2ObjectHashMap<V> extends AbstractMap<Integer, V> implements Serializable {
+  private static final long serialVersionUID = -2640212437101851938L;
+
+  /**
+   * Marks a slot of a removed key. Required to keep probe sequences intact.
+   */
+  private static final Object REMOVED = new Object();
+
+  /**
+   * Maximum fraction of used (including removed) slots.
+   */
+  private static final float LOAD_FACTOR = 0.6f;
+
+  /**
+   * Keys, at the same index as {@link #values}.
+   */
+  private transient int[] keys;
+
+  /**
+   * Values, {@code null} for free slots and {@link #REMOVED} for deleted ones.
+   */
+  private transient Object[] values;
+
+  /**
+   * Number of mappings.
+   */
+  private transient int size;
+
+  /**
+   * Number of slots, containing {@link #REMOVED}.
+   */
+  private transient int removed;
+
+  /**
+   * Incremented with every structural modification.
+   */
+  private transient int modCount;
+
+  public Int2ObjectHashMap() {
+    this(16);
+  }
+
+  /**
+   * @param expectedSize the number of mappings to keep without resizing.
+   */
+  public Int2ObjectHashMap(int expectedSize) {
+    super();
+    allocate(Object2IntHashMap.capacityFor(expectedSize));
+  }
+
+  /**
+   * @param capacity
+   */
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    values = new Object[capacity];
+    size = 0;
+    removed = 0;
+  }
+
+  /**
+   * @param key
+   * @return the slot of {@code key} or {@code -1} if it is not contained.
+   */
+  private int indexOf(int key) {
+    int mask = keys.length-1;
+    int i = Object2IntHashMap.mix(key) & mask;
+    Object v;
+    while ((v = values[i])!=null) {
+      if (v!=REMOVED && keys[i]==key) {
+        return i;
+      }
+      i = (i+1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * @param key
+   * @return the value of {@code key} or {@code null}.
+   */
+  @SuppressWarnings("unchecked")
+  public V get(int key) {
+    int i = indexOf(key);
+    return i<0 ? null : (V) values[i];
+  }
+
+  /**
+   * @param key
+   * @return {@code true} if {@code key} is mapped to a value.
+   */
+  public boolean containsKey(int key) {
+    return indexOf(key)>=0;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractMap#get(java.lang.Object)
+   */
+  @Override
+  public V get(Object key) {
+    return (key instanceof Integer) ? get(((Integer) key).intValue()) : null;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractMap#containsKey(java.lang.Object)
+   */
+  @Override
+  public boolean containsKey(Object key) {
+    return (key instanceof Integer) && containsKey(((Integer) key).intValue());
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractMap#put(java.lang.Object, java.lang.Object)
+   */
+  @Override
+  public V put(Integer key, V value) {
+    if (key==null) {
+      throw new NullPointerException("Null keys are not supported.");
+    }
+    return put(key.intValue(), value);
+  }
+
+  /**
+   * Sets the value of {@code key}, without boxing the key.
+   * @param key
+   * @param value
+   * @return the previous value or {@code null}.
+   */
+  @SuppressWarnings("unchecked")
+  public V put(int key, V value) {
+    if (value==null) {
+      throw new NullPointerException("Null values are not supported.");
+    }
+    int mask = keys.length-1;
+    int i = Object2IntHashMap.mix(key) & mask;
+    int firstRemoved = -1;
+    Object v;
+    while ((v = values[i])!=null) {
+      if (v==REMOVED) {
+        if (firstRemoved<0) {
+          firstRemoved = i;
+        }
+      } else if (keys[i]==key) {
+        values[i] = value;
+        return (V) v;
+      }
+      i = (i+1) & mask;
+    }
+    if (firstRemoved>=0) {
+      i = firstRemoved;
+      removed--;
+    }
+    keys[i] = key;
+    values[i] = value;
+    size++;
+    modCount++;
+    if ((size+removed) > keys.length*LOAD_FACTOR) {
+      rehash(size > keys.length*LOAD_FACTOR/2 ? keys.length*2 : keys.length);
+    }
+    return null;
+  }
+
+  /**
+   * Copies all mappings to a new table of the given size. This also
+   * purges all {@link #REMOVED} markers.
+   * @param capacity
+   */
+  private void rehash(int capacity) {
+    int[] oldKeys = keys;
+    Object[] oldValues = values;
+    allocate(capacity);
+    int mask = capacity-1;
+    for (int j=0; j<oldKeys.length; j++) {
+      Object v = oldValues[j];
+      if (v!=null && v!=REMOVED) {
+        int i = Object2IntHashMap.mix(oldKeys[j]) & mask;
+        while (values[i]!=null) {
+          i = (i+1) & mask;
+        }
+        keys[i] = oldKeys[j];
+        values[i] = v;
+        size++;
+      }
+    }
+  }
+
+  /**
+   * @param key
+   * @return the removed value or {@code null}.
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(int key) {
+    int i = indexOf(key);
+    if (i<0) {
+      return null;
+    }
+    V old = (V) values[i];
+    removeAt(i);
+    return old;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractMap#remove(java.lang.Object)
+   */
+  @Override
+  public V remove(Object key) {
+    return (key instanceof Integer) ? remove(((Integer) key).intValue()) : null;
+  }
+
+  /**
+   * @param i
+   */
+  private void removeAt(int i) {
+    values[i] = REMOVED;
+    size--;
+    removed++;
+    modCount++;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractMap#size()
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractMap#clear()
+   */
+  @Override
+  public void clear() {
+    java.util.Arrays.fill(values, null);
+    size = 0;
+    removed = 0;
+    modCount++;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractMap#entrySet()
+   */
+  @Override
+  public Set<Map.Entry<Integer, V>> entrySet() {
+    return new AbstractSet<Map.Entry<Integer, V>>() {
+      @Override
+      public Iterator<Map.Entry<Integer, V>> iterator() {
+        return new EntryIterator();
+      }
+      @Override
+      public int size() {
+        return size;
+      }
+      @Override
+      public void clear() {
+        Int2ObjectHashMap.this.clear();
+      }
+    };
+  }
+
+  /**
+   * Iterates over all occupied slots. The returned entries write through
+   * to the map.
+   */
+  private class EntryIterator implements Iterator<Map.Entry<Integer, V>> {
+    private int next = -1;
+    private int current = -1;
+    private int expectedModCount = modCount;
+
+    EntryIterator() {
+      advance();
+    }
+
+    private void advance() {
+      do {
+        next++;
+      } while (next<values.length && (values[next]==null || values[next]==REMOVED));
+    }
+
+    public boolean hasNext() {
+      return next<values.length;
+    }
+
+    public Map.Entry<Integer, V> next() {
+      if (expectedModCount!=modCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      current = next;
+      advance();
+      final int slot = current;
+      return new Map.Entry<Integer, V>() {
+        public Integer getKey() {
+          return Integer.valueOf(keys[slot]);
+        }
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+          return (V) values[slot];
+        }
+        public V setValue(V value) {
+          if (value==null) {
+            throw new NullPointerException("Null values are not supported.");
+          }
+          V old = getValue();
+          values[slot] = value;
+          return old;
+        }
+        @Override
+        public boolean equals(Object o) {
+          if (!(o instanceof Map.Entry<?, ?>)) {
+            return false;
+          }
+          Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+          return getKey().equals(e.getKey()) && getValue().equals(e.getValue());
+        }
+        @Override
+        public int hashCode() {
+          return keys[slot] ^ values[slot].hashCode();
+        }
+        @Override
+        public String toString() {
+          return keys[slot] + "=" + values[slot];
+        }
+      };
+    }
+
+    public void remove() {
+      if (current<0) {
+        throw new IllegalStateException();
+      }
+      if (expectedModCount!=modCount) {
+        throw new ConcurrentModificationException();
+      }
+      removeAt(current);
+      expectedModCount = modCount;
+      current = -1;
+    }
+  }
+
+  /**
+   * Writes the number of mappings, followed by all keys and values.
+   * @param out
+   * @throws IOException
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeInt(size);
+    for (int i=0; i<keys.length; i++) {
+      if (values[i]!=null && values[i]!=REMOVED) {
+        out.writeInt(keys[i]);
+        out.writeObject(values[i]);
+      }
+    }
+  }
+
+  /**
+   * @param in
+   * @throws IOException
+   * @throws ClassNotFoundException
+   */
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    int n = in.readInt();
+    allocate(Object2IntHashMap.capacityFor(n));
+    for (int i=0; i<n; i++) {
+      put(in.readInt(), (V) in.readObject());
+    }
+  }
+
+}
@@ -0,0 +1,469 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.collection;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A {@link Map} from objects to primitive {@code int}s, using open
+ * addressing with linear probing. In contrast to a
+ * {@link java.util.HashMap}, there is no entry object per mapping and the
+ * values are not boxed. Thus, e.g., a map from gene symbols to NCBI Gene IDs
+ * requires less than half of the memory.
+ *
+ * <p>Use {@link #getInt(Object)} and {@link #put(Object, int)} to avoid
+ * boxing. {@code null} keys and values are not supported.
+ *
+ * @version $Rev$
+ * @param <K> the key type
+ */
+public class Object2IntHashMap<K> extends AbstractMap<K, Integer> implements Serializable {
+  private static final long serialVersionUID = 4436297120447564712L;
+
+  /**
+   * Marks a slot of a removed key. Required to keep probe sequences intact.
+   */
+  private static final Object REMOVED = new Object();
+
+  /**
+   * Maximum fraction of used (including removed) slots.
+   */
+  private static final float LOAD_FACTOR = 0.6f;
+
+  /**
+   * Keys, {@code null} for free slots and {@link #REMOVED} for deleted ones.
+   */
+  private transient Object[] keys;
+
+  /**
+   * Values, at the same index as {@link #keys}.
+   */
+  private transient int[] values;
+
+  /**
+   * Number of mappings.
+   */
+  private transient int size;
+
+  /**
+   * Number of slots, containing {@link #REMOVED}.
+   */
+  private transient int removed;
+
+  /**
+   * Incremented with every structural modification.
+   */
+  private transient int modCount;
+
+  /**
+   * Value returned by {@link #getInt(Object)} for unknown keys.
+   */
+  private int noEntryValue;
+
+  public Object2IntHashMap() {
+    this(16);
+  }
+
+  /**
+   * @param expectedSize the number of mappings to keep without resizing.
+   */
+  public Object2IntHashMap(int expectedSize) {
+    this(expectedSize, Integer.MIN_VALUE);
+  }
+
+  /**
+   * @param expectedSize the number of mappings to keep without resizing.
+   * @param noEntryValue returned by {@link #getInt(Object)} for unknown keys.
+   */
+  public Object2IntHashMap(int expectedSize, int noEntryValue) {
+    super();
+    this.noEntryValue = noEntryValue;
+    allocate(capacityFor(expectedSize));
+  }
+
+  /**
+   * @param expectedSize
+   * @return the table size (power of two) for the given number of mappings.
+   */
+  static int capacityFor(int expectedSize) {
+    long required = (long) Math.ceil(Math.max(expectedSize, 2) / LOAD_FACTOR);
+    int capacity = 1;
+    while (capacity < required) {
+      capacity <<= 1;
+      if (capacity >= (1<<30)) {
+        break;
+      }
+    }
+    return capacity;
+  }
+
+  /**
+   * @param capacity
+   */
+  private void allocate(int capacity) {
+    keys = new Object[capacity];
+    values = new int[capacity];
+    size = 0;
+    removed = 0;
+  }
+
+  /**
+   * @param h
+   * @return a supplemental hash, that distributes poor {@link Object#hashCode()}s.
+   */
+  static int mix(int h) {
+    h *= 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * @param key
+   * @return the slot of {@code key} or {@code -1} if it is not contained.
+   */
+  private int indexOf(Object key) {
+    if (key==null) {
+      return -1;
+    }
+    int mask = keys.length-1;
+    int i = mix(key.hashCode()) & mask;
+    Object k;
+    while ((k = keys[i])!=null) {
+      if (k!=REMOVED && (k==key || k.equals(key))) {
+        return i;
+      }
+      i = (i+1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * @return the value, returned by {@link #getInt(Object)} for unknown keys.
+   */
+  public int getNoEntryValue() {
+    return noEntryValue;
+  }
+
+  /**
+   * @param key
+   * @return the value of {@code key}, or {@link #getNoEntryValue()}.
+   */
+  public int getInt(Object key) {
+    int i = indexOf(key);
+    return i<0 ? noEntryValue : values[i];
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractMap#get(java.lang.Object)
+   */
+  @Override
+  public Integer get(Object key) {
+    int i = indexOf(key);
+    return i<0 ? null : Integer.valueOf(values[i]);
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractMap#containsKey(java.lang.Object)
+   */
+  @Override
+  public boolean containsKey(Object key) {
+    return indexOf(key)>=0;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractMap#containsValue(java.lang.Object)
+   */
+  @Override
+  public boolean containsValue(Object value) {
+    if (!(value instanceof Integer)) {
+      return false;
+    }
+    int v = ((Integer) value).intValue();
+    for (int i=0; i<keys.length; i++) {
+      if (keys[i]!=null && keys[i]!=REMOVED && values[i]==v) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractMap#put(java.lang.Object, java.lang.Object)
+   */
+  @Override
+  public Integer put(K key, Integer value) {
+    if (value==null) {
+      throw new NullPointerException("Null values are not supported.");
+    }
+    int i = indexOf(key);
+    if (i>=0) {
+      int old = values[i];
+      values[i] = value.intValue();
+      return Integer.valueOf(old);
+    }
+    put(key, value.intValue());
+    return null;
+  }
+
+  /**
+   * Sets the value of {@code key}, without boxing.
+   * @param key
+   * @param value
+   * @return the previous value or {@link #getNoEntryValue()}.
+   */
+  public int put(K key, int value) {
+    if (key==null) {
+      throw new NullPointerException("Null keys are not supported.");
+    }
+    int mask = keys.length-1;
+    int i = mix(key.hashCode()) & mask;
+    int firstRemoved = -1;
+    Object k;
+    while ((k = keys[i])!=null) {
+      if (k==REMOVED) {
+        if (firstRemoved<0) {
+          firstRemoved = i;
+        }
+      } else if (k==key || k.equals(key)) {
+        int old = values[i];
+        values[i] = value;
+        return old;
+      }
+      i = (i+1) & mask;
+    }
+    if (firstRemoved>=0) {
+      i = firstRemoved;
+      removed--;
+    }
+    keys[i] = key;
+    values[i] = value;
+    size++;
+    modCount++;
+    if ((size+removed) > keys.length*LOAD_FACTOR) {
+      rehash(size > keys.length*LOAD_FACTOR/2 ? keys.length*2 : keys.length);
+    }
+    return noEntryValue;
+  }
+
+  /**
+   * Copies all mappings to a new table of the given size. This also
+   * purges all {@link #REMOVED} markers.
+   * @param capacity
+   */
+  @SuppressWarnings("unchecked")
+  private void rehash(int capacity) {
+    Object[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(capacity);
+    int mask = capacity-1;
+    for (int j=0; j<oldKeys.length; j++) {
+      Object k = oldKeys[j];
+      if (k!=null && k!=REMOVED) {
+        int i = mix(k.hashCode()) & mask;
+        while (keys[i]!=null) {
+          i = (i+1) & mask;
+        }
+        keys[i] = (K) k;
+        values[i] = oldValues[j];
+        size++;
+      }
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractMap#remove(java.lang.Object)
+   */
+  @Override
+  public Integer remove(Object key) {
+    int i = indexOf(key);
+    if (i<0) {
+      return null;
+    }
+    int old = values[i];
+    removeAt(i);
+    return Integer.valueOf(old);
+  }
+
+  /**
+   * @param i
+   */
+  private void removeAt(int i) {
+    keys[i] = REMOVED;
+    size--;
+    removed++;
+    modCount++;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractMap#size()
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractMap#clear()
+   */
+  @Override
+  public void clear() {
+    java.util.Arrays.fill(keys, null);
+    size = 0;
+    removed = 0;
+    modCount++;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.AbstractMap#entrySet()
+   */
+  @Override
+  public Set<Map.Entry<K, Integer>> entrySet() {
+    return new AbstractSet<Map.Entry<K, Integer>>() {
+      @Override
+      public Iterator<Map.Entry<K, Integer>> iterator() {
+        return new EntryIterator();
+      }
+      @Override
+      public int size() {
+        return size;
+      }
+      @Override
+      public void clear() {
+        Object2IntHashMap.this.clear();
+      }
+    };
+  }
+
+  /**
+   * Iterates over all occupied slots. The returned entries write through
+   * to the map.
+   */
+  private class EntryIterator implements Iterator<Map.Entry<K, Integer>> {
+    private int next = -1;
+    private int current = -1;
+    private int expectedModCount = modCount;
+
+    EntryIterator() {
+      advance();
+    }
+
+    private void advance() {
+      do {
+        next++;
+      } while (next<keys.length && (keys[next]==null || keys[next]==REMOVED));
+    }
+
+    public boolean hasNext() {
+      return next<keys.length;
+    }
+
+    public Map.Entry<K, Integer> next() {
+      if (expectedModCount!=modCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      current = next;
+      advance();
+      final int slot = current;
+      return new Map.Entry<K, Integer>() {
+        @SuppressWarnings("unchecked")
+        public K getKey() {
+          return (K) keys[slot];
+        }
+        public Integer getValue() {
+          return Integer.valueOf(values[slot]);
+        }
+        public Integer setValue(Integer value) {
+          int old = values[slot];
+          values[slot] = value.intValue();
+          return Integer.valueOf(old);
+        }
+        @Override
+        public boolean equals(Object o) {
+          if (!(o instanceof Map.Entry<?, ?>)) {
+            return false;
+          }
+          Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+          return getKey().equals(e.getKey()) && getValue().equals(e.getValue());
+        }
+        @Override
+        public int hashCode() {
+          return getKey().hashCode() ^ values[slot];
+        }
+        @Override
+        public String toString() {
+          return getKey() + "=" + values[slot];
+        }
+      };
+    }
+
+    public void remove() {
+      if (current<0) {
+        throw new IllegalStateException();
+      }
+      if (expectedModCount!=modCount) {
+        throw new ConcurrentModificationException();
+      }
+      removeAt(current);
+      expectedModCount = modCount;
+      current = -1;
+    }
+  }
+
+  /**
+   * Writes the number of mappings, followed by all keys and values.
+   * @param out
+   * @throws IOException
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeInt(size);
+    for (int i=0; i<keys.length; i++) {
+      if (keys[i]!=null && keys[i]!=REMOVED) {
+        out.writeObject(keys[i]);
+        out.writeInt(values[i]);
+      }
+    }
+  }
+
+  /**
+   * @param in
+   * @throws IOException
+   * @throws ClassNotFoundException
+   */
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    int n = in.readInt();
+    allocate(capacityFor(n));
+    for (int i=0; i<n; i++) {
+      put((K) in.readObject(), in.readInt());
+    }
+  }
+
+}
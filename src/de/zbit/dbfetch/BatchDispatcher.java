@@ -0,0 +1,328 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.dbfetch;
+
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import uk.ac.ebi.webservices.jaxws.stubs.wsdbfetch.DbfNoEntryFoundException_Exception;
+import de.zbit.util.ThreadManager;
+import de.zbit.util.progressbar.AbstractProgressBar;
+
+/**
+ * Fetches many ids of a {@link DBFetcher} with concurrent batch requests.
+ * <ul>
+ * <li>Up to {@link DBFetcher#maxConcurrentRequests} batches are in
+ * flight at the same time.</li>
+ * <li>The size of new batches adapts to the observed latency and errors:
+ * it grows by an eighth, if batches are answered in less than half of
+ * {@link DBFetcher#targetLatency}, is reduced proportionally, if they take
+ * longer, and is reduced to half of the size of any failed batch.</li>
+ * <li>A failed batch is split into two halves, which are fetched again
+ * (in batches of the reduced size). Only single ids, that still fail,
+ * are fetched with {@link DBFetcher#fetchInformation(String)}.</li>
+ * </ul>
+ * Instances are used for a single call of
+ * {@link DBFetcher#fetchMultipleInformations(String[], AbstractProgressBar)}
+ * and are not thread-safe.
+ * 
+ * @version $Rev$
+ */
+class BatchDispatcher {
+  
+  private static final transient Logger log = Logger.getLogger(BatchDispatcher.class.getName());
+  
+  /**
+   * Maximum number of ids per batch, supported by WSDbfetch.
+   */
+  static final int MAX_BATCH_SIZE = 99;
+  
+  /**
+   * A batch is dispatched, as soon as its query exceeds this length.
+   */
+  static final int MAX_QUERY_LENGTH = 500;
+  
+  /**
+   * A range of ids, that is fetched with one request.
+   */
+  private static class Batch {
+    /** First and last index (inclusive) in the ids. */
+    final int start, end;
+    /** If {@code true}, the single id is fetched with {@link DBFetcher#fetchInformation(String)}. */
+    final boolean single;
+    /** The answer of a batch request. */
+    String entries = null;
+    Exception error = null;
+    /** Duration of the request in milliseconds. */
+    long latency = 0;
+    
+    Batch(int start, int end, boolean single) {
+      this.start = start;
+      this.end = end;
+      this.single = single;
+    }
+    
+    int size() {
+      return end-start+1;
+    }
+  }
+  
+  private final DBFetcher fetcher;
+  private final String[] ids;
+  private final String[] ret;
+  
+  private final int maxConcurrentRequests;
+  private final long targetLatency;
+  
+  /**
+   * Size of the next new batch.
+   */
+  private double batchSize = MAX_BATCH_SIZE;
+  
+  /**
+   * Index of the first id, that has not been part of any batch.
+   */
+  private int next = 0;
+  
+  /**
+   * Halves of failed batches, that must be fetched again.
+   */
+  private final LinkedList<Batch> retry = new LinkedList<Batch>();
+  
+  /**
+   * Statistics for logging.
+   */
+  private int requests = 0, failures = 0;
+  
+  /**
+   * @param fetcher
+   * @param ids
+   */
+  BatchDispatcher(DBFetcher fetcher, String[] ids) {
+    this(fetcher, ids, DBFetcher.maxConcurrentRequests, DBFetcher.targetLatency);
+  }
+  
+  /**
+   * @param fetcher
+   * @param ids
+   * @param maxConcurrentRequests maximum number of batches in flight.
+   * @param targetLatency latency in milliseconds, that batches should not
+   * exceed.
+   */
+  BatchDispatcher(DBFetcher fetcher, String[] ids, int maxConcurrentRequests, long targetLatency) {
+    super();
+    this.fetcher = fetcher;
+    this.ids = ids;
+    this.ret = new String[ids.length];
+    this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+    this.targetLatency = Math.max(1, targetLatency);
+  }
+  
+  /**
+   * Fetches all ids.
+   * @param progress might be null. Is called once for each id.
+   * @return the entries of all ids (or {@code null}), with the same
+   * indices as the ids.
+   * @throws InterruptedException
+   */
+  String[] run(AbstractProgressBar progress) throws InterruptedException {
+    ExecutorService pool = ThreadManager.getSharedDaemonPool("DBFetcher", maxConcurrentRequests);
+    CompletionService<Batch> completion = new ExecutorCompletionService<Batch>(pool);
+    LinkedList<Future<Batch>> pending = new LinkedList<Future<Batch>>();
+    boolean done = false;
+    try {
+      while (true) {
+        while (pending.size()<maxConcurrentRequests && (!retry.isEmpty() || next<ids.length)) {
+          pending.add(completion.submit(createTask(nextBatch())));
+        }
+        if (pending.isEmpty()) {
+          break;
+        }
+        Future<Batch> f = completion.take();
+        pending.remove(f);
+        int finished = handle(get(f));
+        if (progress!=null) {
+          for (int i=0; i<finished; i++) {
+            progress.DisplayBar();
+          }
+        }
+      }
+      done = true;
+    } finally {
+      if (!done) {
+        for (Future<Batch> f : pending) {
+          f.cancel(true);
+        }
+      }
+    }
+    log.fine(String.format("Fetched %s ids with %s requests, %s failed.", ids.length, requests, failures));
+    return ret;
+  }
+  
+  /**
+   * @return the next batch, either a half of a failed batch or new ids.
+   */
+  private Batch nextBatch() {
+    int size = getBatchSize();
+    if (!retry.isEmpty()) {
+      Batch batch = retry.removeFirst();
+      if (batch.single || batch.size()<=size) {
+        return batch;
+      }
+      // The batch size has been reduced since the batch has been split
+      retry.addFirst(new Batch(batch.start+size, batch.end, false));
+      return new Batch(batch.start, batch.start+size-1, false);
+    }
+    int start = next;
+    int length = 0;
+    int end = start;
+    for (; end<ids.length; end++) {
+      length += (length>0 ? 1 : 0) + ids[end].length();
+      if (length>MAX_QUERY_LENGTH || end-start+1>=size) {
+        break;
+      }
+    }
+    end = Math.min(end, ids.length-1);
+    next = end+1;
+    return new Batch(start, end, false);
+  }
+  
+  /**
+   * @param batch
+   * @return a task that fetches the given batch.
+   */
+  private Callable<Batch> createTask(final Batch batch) {
+    requests++;
+    return new Callable<Batch>() {
+      public Batch call() {
+        long start = System.currentTimeMillis();
+        try {
+          if (batch.single) {
+            ret[batch.start] = fetcher.fetchInformation(ids[batch.start]);
+          } else {
+            batch.entries = fetcher.fetchBatch(getQuery(batch));
+          }
+        } catch (Exception e) {
+          batch.error = e;
+        }
+        batch.latency = System.currentTimeMillis()-start;
+        return batch;
+      }
+    };
+  }
+  
+  /**
+   * @param batch
+   * @return comma separated ids of the batch.
+   */
+  private String getQuery(Batch batch) {
+    StringBuilder query = new StringBuilder();
+    for (int i=batch.start; i<=batch.end; i++) {
+      if (query.length()>0) query.append(',');
+      query.append(ids[i]);
+    }
+    return query.toString();
+  }
+  
+  /**
+   * Processes the answer of a batch and adapts the batch size.
+   * @param batch
+   * @return number of ids, that are finished.
+   */
+  private int handle(Batch batch) {
+    if (batch.single) {
+      if (batch.error!=null) {
+        ret[batch.start] = null;
+      }
+      return 1;
+    } else if (batch.error instanceof DbfNoEntryFoundException_Exception) {
+      // None of the ids exists
+      for (int i=batch.start; i<=batch.end; i++) {
+        ret[i] = null;
+      }
+      adapt(batch.latency);
+      return batch.size();
+    } else if (batch.error!=null || batch.entries==null || batch.entries.length()==0) {
+      failures++;
+      batchSize = Math.max(1, Math.min(batchSize, batch.size()/2d));
+      log.log(Level.FINE, String.format("Batch of %s ids failed. Splitting it.", batch.size()), batch.error);
+      if (batch.size()>1) {
+        int mid = (batch.start+batch.end)>>>1;
+        retry.addFirst(new Batch(mid+1, batch.end, false));
+        retry.addFirst(new Batch(batch.start, mid, false));
+      } else {
+        retry.addFirst(new Batch(batch.start, batch.end, true));
+      }
+      return 0;
+    } else {
+      fetcher.mapEntries(ids, ret, batch.entries, batch.start, batch.end);
+      adapt(batch.latency);
+      return batch.size();
+    }
+  }
+  
+  /**
+   * Adapts the batch size to the latency of a successful batch.
+   * @param latency
+   */
+  private void adapt(long latency) {
+    if (latency>targetLatency) {
+      batchSize = Math.max(1, batchSize*targetLatency/latency);
+    } else if (latency<targetLatency/2) {
+      batchSize = Math.min(MAX_BATCH_SIZE, batchSize+Math.max(1, batchSize/8));
+    }
+  }
+  
+  /**
+   * @return current size of new batches.
+   */
+  int getBatchSize() {
+    return Math.max(1, (int) Math.round(batchSize));
+  }
+  
+  /**
+   * @return number of requests.
+   */
+  int getRequests() {
+    return requests;
+  }
+  
+  /**
+   * @param f
+   * @return the result of {@code f}.
+   * @throws InterruptedException
+   */
+  private static Batch get(Future<Batch> f) throws InterruptedException {
+    try {
+      return f.get();
+    } catch (ExecutionException e) {
+      // Tasks catch all exceptions
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+  
+}
@@ -23,6 +23,7 @@ import java.util.regex.Pattern;
 
 import uk.ac.ebi.webservices.jaxws.WSDbfetchClient;
 import uk.ac.ebi.webservices.jaxws.stubs.wsdbfetch.DbfNoEntryFoundException_Exception;
+import uk.ac.ebi.webservices.jaxws.stubs.wsdbfetch.WSDBFetchServer;
 import de.zbit.cache.InfoManagement;
 import de.zbit.exception.UnsuccessfulRetrieveException;
 import de.zbit.util.StringUtil;
@@ -74,9 +75,15 @@ public abstract class DBFetcher extends InfoManagement<String, String> {
   private static final long serialVersionUID = -1996313057043843757L;
 
   /**
-   * The actual WSDBFetch client
+   * The actual WSDBFetch clients. Clients are not thread-safe, hence,
+   * each thread uses its own client.
    */
-  private transient WSDbfetchClient dbfetch = new WSDbfetchClient();
+  private transient ThreadLocal<WSDbfetchClient> dbfetch = createClients();
+  
+  /**
+   * If not {@code null}, this server is used instead of {@link #dbfetch}.
+   */
+  private transient WSDBFetchServer server = null;
 
   /**
    * Displayes a ProgressBar when fetching multiple identifier.
@@ -92,6 +99,20 @@ public abstract class DBFetcher extends InfoManagement<String, String> {
    */
   public static boolean fetchNonMappableIDs = false;
   
+  /**
+   * Maximum number of batch requests, that are sent at the same time when
+   * fetching multiple identifier.
+   * @see BatchDispatcher
+   */
+  public static int maxConcurrentRequests = 4;
+  
+  /**
+   * Latency in milliseconds, that batch requests should not exceed. The
+   * number of identifiers per request is reduced, if requests take longer.
+   * @see BatchDispatcher
+   */
+  public static long targetLatency = 20000;
+  
   /**
    * The style to fetch. Usually "Style.RAW".
    * @see Style
@@ -121,7 +142,19 @@ public abstract class DBFetcher extends InfoManagement<String, String> {
    */
   @Override
   protected void cleanupUnserializableObject() {
-    dbfetch = null;
+    // The clients are transient and still used by concurrent requests.
+  }
+  
+  /**
+   * @return a new {@link ThreadLocal}, that creates one client per thread.
+   */
+  private static ThreadLocal<WSDbfetchClient> createClients() {
+    return new ThreadLocal<WSDbfetchClient>() {
+      @Override
+      protected WSDbfetchClient initialValue() {
+        return new WSDbfetchClient();
+      }
+    };
   }
   
   /*
@@ -141,9 +174,7 @@ public abstract class DBFetcher extends InfoManagement<String, String> {
     final int retryLimit=3;
     while (retried < retryLimit && (entriesStr == null || entriesStr.length() == 0)) {
       try {
-        if (dbfetch==null) restoreUnserializableObject();
-          entriesStr = dbfetch.fetchData(getDbName() + ":" + id.toUpperCase(),
-              getFormat(), getStyleString());
+          entriesStr = fetchData(getDbName() + ":" + id.toUpperCase());
           
         } catch (DbfNoEntryFoundException_Exception e) {
           throw new UnsuccessfulRetrieveException( e );
@@ -187,112 +218,86 @@ public abstract class DBFetcher extends InfoManagement<String, String> {
   }
 
   /**
+   * Fetches a single entry from {@link #server} or {@link #dbfetch}.
+   * @param query "db:id"
+   * @return the answer of WSDbfetch
+   * @throws Exception
+   */
+  private String fetchData(String query) throws Exception {
+    if (server!=null) {
+      return server.fetchData(query, getFormat(), getStyleString());
+    }
+    return dbfetch.get().fetchData(query, getFormat(), getStyleString());
+  }
+  
+  /**
+   * Fetches multiple entries from {@link #server} or {@link #dbfetch}.
+   * @param queryString comma separated ids
+   * @return the answer of WSDbfetch
+   * @throws Exception one of DbfNoEntryFoundException_Exception,
+   * DbfParamsException, DbfConnException, DbfException, InputException, ...
+   */
+  String fetchBatch(String queryString) throws Exception {
+    if (server!=null) {
+      return server.fetchBatch(getDbName(), queryString, getFormat(), getStyleString());
+    }
+    return dbfetch.get().fetchBatch(getDbName(), queryString, getFormat(), getStyleString());
+  }
+  
+  /**
+   * Assigns the entries of a batch request to the requested ids.
    * @param ids
    * @param ret
-   * @param queryString
+   * @param entriesStr answer to the query of {@code ids[startID]} to
+   * {@code ids[endID]} (inclusive).
    * @param startID
    * @param endID
    */
-  private void fetchMultipleChecked(String[] ids, String[] ret,
-            String queryString, int startID, int endID) {
-    String entriesStr = "";
-    final int retryLimit=3;
-    int retried = 0;
-    while (retried < retryLimit && (entriesStr == null || entriesStr.length() == 0)) {
-      try {
-        // I've no idea why, but sometimes the initial restoring call didn't work.
-        if (dbfetch==null) restoreUnserializableObject();
-        entriesStr = dbfetch.fetchBatch(getDbName(), queryString, getFormat(),getStyleString());
-      } catch (DbfNoEntryFoundException_Exception e) {
-      // Propagate to caller.
-      for (int index = startID; index <= endID; index++)
-        ret[index] = null;
-      return;
-        // In older WSDBfetch libraries, DbfNoEntryFoundException was an instance of AxisFault.
-//      } catch (AxisFault e) {
-//        if (e instanceof DbfNoEntryFoundException || e.toString()!=null && e.toString().equalsIgnoreCase("No result found")) {
-//          // Propagate to caller.
-//          for (int index = startID; index <= endID; index++)
-//            ret[index] = null;
-//          return;
-//        } else {
-//          retried++;
-//          if (retried==retryLimit) {
-//            e.printStackTrace();
-//            log.log(Level.FINE, "Attempt " + retried + " to fetch data failed", e);
-//          } else {
-//            log.log(Level.FINE, "Attempt " + retried + " to fetch data failed");
-//          }
-//        }
-      } catch (Exception e) {
-        // One of DbfParamsException, DbfConnException, DbfException, 
-        // InputException, RemoteException, ServiceException
-        retried++;
-        if (retried==retryLimit) {
-          e.printStackTrace();
-          log.log(Level.FINE, "Attempt " + retried + " to fetch data failed", e);
-        } else {
-          log.log(Level.FINE, "Attempt " + retried + " to fetch data failed");
-        }
-      }
-    }
-    if (retried >= retryLimit && (entriesStr == null || entriesStr.length() == 0)) {
-      // Try it protein by protein
-      log.log(Level.FINE, "Falling back on single protein retrievement.");
-      String[] splitt = queryString.split(",");
-      for (int j = 0; j < splitt.length; j++) {
-        try {
-          ret[startID + j] = fetchInformation(splitt[j]);
-        } catch (Exception e) {
-          ret[startID + j] = null;
-        }
+  void mapEntries(String[] ids, String[] ret, String entriesStr, int startID, int endID) {
+    // divided by "//" (in Uniprot, but may be different in other dbs!)
+    String[] splitt = entriesStr.split(getEntrySeparator());
+    
+    // optimal case: as many answers as requests
+    if ((splitt.length - 1) == (endID - startID + 1)) { // -1 due to last "\n"
+      int j = 0;
+      for (int index = startID; index <= endID; index++) {
+        if (!splitt[j].endsWith(getAppendAtEnd()))
+          splitt[j]+=getAppendAtEnd();//"\n//\n"
+        if (!splitt[j].startsWith(getAppendAtStart()))
+          splitt[j]=getAppendAtStart()+splitt[j];//""
+        
+        ret[index] = splitt[j];
+        j++;
       }
     } else {
-      // divided by "//" (in Uniprot, but may be different in other dbs!)
-      String[] splitt = entriesStr.split(getEntrySeparator());
-
-      // optimal case: as many answers as requests
-      if ((splitt.length - 1) == queryString.split(",").length) { // -1 due to last "\n"
-        int j = 0;
+      
+      // Some requests had no results => Mapping.
+      for (String info : splitt) {
+        if (info.length() <= 1)
+          continue; // last split = "\n"
+        
+        String toCheck = getCheckStrFromInfo(info);
+        
+        // Iterate over every ID and try to map the block to the id
         for (int index = startID; index <= endID; index++) {
-          if (!splitt[j].endsWith(getAppendAtEnd()))
-            splitt[j]+=getAppendAtEnd();//"\n//\n"
-          if (!splitt[j].startsWith(getAppendAtStart()))
-            splitt[j]=getAppendAtStart()+splitt[j];//""
-          
-          ret[index] = splitt[j];
-          j++;
-        }
-      } else {
-
-        // Some requests had no results => Mapping.
-        for (String info : splitt) {
-          if (info.length() <= 1)
-            continue; // last split = "\n"
+          // Has the id already an associated block?
+          if (ret[index] != null && (ret[index].length() > 0))
+            continue;
           
-          String toCheck = getCheckStrFromInfo(info);
-          
-          // Iterate over every ID and try to map the block to the id
-          for (int index = startID; index <= endID; index++) {
-            // Has the id already an associated block?
-            if (ret[index] != null && (ret[index].length() > 0))
-              continue;
-
-            // Does the ID or AC line contain this idText?
-            if (matchIDtoInfo(ids[index], toCheck)) {
-              if (!info.endsWith(getAppendAtEnd()))
-                info+=getAppendAtEnd();
-              if (!info.startsWith(getAppendAtStart()))
-                info=getAppendAtStart()+info;
-              
-              ret[index] = info;
-              
-              // Don't break here. 1:n mapping possible. With break,
-              // we would make an 1:1 mapping.
-              // E.g. when fetching "ENOA_MOUSE" and "P17182" the result
-              // is the same data-block.
-              // break;
-            }
+          // Does the ID or AC line contain this idText?
+          if (matchIDtoInfo(ids[index], toCheck)) {
+            if (!info.endsWith(getAppendAtEnd()))
+              info+=getAppendAtEnd();
+            if (!info.startsWith(getAppendAtStart()))
+              info=getAppendAtStart()+info;
+            
+            ret[index] = info;
+            
+            // Don't break here. 1:n mapping possible. With break,
+            // we would make an 1:1 mapping.
+            // E.g. when fetching "ENOA_MOUSE" and "P17182" the result
+            // is the same data-block.
+            // break;
           }
         }
       }
@@ -335,10 +340,6 @@ public abstract class DBFetcher extends InfoManagement<String, String> {
   protected String[] fetchMultipleInformations(String[] ids,
       AbstractProgressBar progress) throws TimeoutException,
       UnsuccessfulRetrieveException {
-    String[] ret = new String[ids.length];
-    StringBuilder queryString = new StringBuilder();
-    int idsInCurrentQueue = 0;
-    int startID = 0;
     AbstractProgressBar prog = progress;
     
 
@@ -350,21 +351,13 @@ public abstract class DBFetcher extends InfoManagement<String, String> {
       prog.setNumberOfTotalCalls(ids.length);
     }
 
-    final int lastI = ids.length-1;
-    for (int i = 0; i < ids.length; i++) {
-      if (queryString.length()>0) queryString.append(',');
-      queryString.append(ids[i]);
-      idsInCurrentQueue++;
-      if (queryString.length() > 500 || idsInCurrentQueue == 99 || i == lastI) {
-        fetchMultipleChecked(ids, ret, queryString.toString(), startID, i);
-
-        queryString = new StringBuilder();
-        idsInCurrentQueue = 0;
-        startID = i + 1;
-      }
-      if (prog!=null) {
-        prog.DisplayBar();
-      }
+    // Concurrent batches with adaptive size
+    String[] ret;
+    try {
+      ret = new BatchDispatcher(this, ids).run(prog);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TimeoutException(e.getLocalizedMessage()); // do not cache as "Unsuccessful".
     }
     
     if (fetchNonMappableIDs) {
@@ -482,7 +475,19 @@ public abstract class DBFetcher extends InfoManagement<String, String> {
    */
   @Override
   protected void restoreUnserializableObject() {
-    dbfetch = new WSDbfetchClient();
+    dbfetch = createClients();
+  }
+  
+  /**
+   * Sets the server, that is queried instead of the WSDbfetch web
+   * service, e.g., a local implementation for testing or a proxy
+   * obtained from {@link WSDbfetchClient#getSrvProxy()} for another
+   * endpoint.
+   * 
+   * @param server the server to use or {@code null} to use the web service.
+   */
+  public void setServer(WSDBFetchServer server) {
+    this.server = server;
   }
 
   /**
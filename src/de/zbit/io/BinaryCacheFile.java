@@ -0,0 +1,517 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes binary cache files, i.e., compiled versions of other
+ * files (or resources), that are faster to load than the original.
+ * 
+ * <p>Every cache file starts with a common header, that identifies the
+ * format and the sources, the cache has been created from:
+ * <pre>
+ * int magic, int version, string key
+ * int sources, {string location, long length, long lastModified, long hash}
+ * </pre>
+ * followed by the content, written by a {@link Writer}. Strings are
+ * written as int length followed by UTF-8 bytes (see
+ * {@link #writeString(DataOutput, String)}).
+ * 
+ * <p>Caches are written to a temporary file first and renamed afterwards.
+ * They are memory-mapped for reading and any failure (including corrupt
+ * or truncated files) is reported as a miss, i.e., the cache has to be
+ * created again.
+ * 
+ * <p>Unless a file is given explicitly, caches are stored in the
+ * {@link #getCacheDirectory() cache directory} of the current user and
+ * never next to the source files.
+ * 
+ * @version $Rev$
+ */
+public final class BinaryCacheFile {
+  
+  private static final transient Logger log = Logger.getLogger(BinaryCacheFile.class.getName());
+  
+  /**
+   * System property to change the {@link #getCacheDirectory() cache
+   * directory}.
+   */
+  public static final String CACHE_DIR_PROPERTY = "de.zbit.cache.dir";
+  
+  /**
+   * Number of bytes at start and end of each source file, covered by
+   * the hash.
+   */
+  private static final int HASHED_BYTES = 1<<20;
+  
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  
+  /**
+   * Writes the content of a cache.
+   */
+  public interface Writer {
+    /**
+     * @param out positioned behind the header.
+     * @throws IOException
+     */
+    void write(DataOutputStream out) throws IOException;
+  }
+  
+  /**
+   * Reads the content of a cache.
+   * @param <T> the type of the content.
+   */
+  public interface Reader<T> {
+    /**
+     * @param buffer positioned behind the header.
+     * @return the content or {@code null}, if the cache cannot be used.
+     * @throws IOException if the content is invalid.
+     */
+    T read(ByteBuffer buffer) throws IOException;
+  }
+  
+  /**
+   * Identifies a source of a cache. A cache is only valid, as long as all
+   * its sources are equal to the ones used for writing.
+   */
+  public static final class Source {
+    final String location;
+    final long length;
+    final long lastModified;
+    final long hash;
+    
+    /**
+     * @param location e.g., an absolute path or an URL.
+     * @param length
+     * @param lastModified
+     * @param hash of the content or 0.
+     */
+    public Source(String location, long length, long lastModified, long hash) {
+      super();
+      this.location = location;
+      this.length = length;
+      this.lastModified = lastModified;
+      this.hash = hash;
+    }
+    
+    /**
+     * @param file
+     * @return a source with the absolute path, size, modification time
+     * and a hash of the first and last megabyte of {@code file}.
+     * @throws IOException
+     */
+    public static Source of(File file) throws IOException {
+      return new Source(file.getAbsolutePath(), file.length(), file.lastModified(), hash(file));
+    }
+    
+    /**
+     * @param files
+     * @return a source for each file.
+     * @throws IOException
+     */
+    public static Source[] allOf(File... files) throws IOException {
+      Source[] ret = new Source[files.length];
+      for (int i=0; i<files.length; i++) {
+        ret[i] = of(files[i]);
+      }
+      return ret;
+    }
+  }
+  
+  private BinaryCacheFile() {
+    // Utility class
+  }
+  
+  /**
+   * @return the directory for caches of the current user, i.e., the value
+   * of the {@link #CACHE_DIR_PROPERTY} or ".sysbio/cache" in the home
+   * directory. The directory is created (readable by its owner only), if
+   * it does not exist.
+   * @throws IOException if the directory could not be created.
+   */
+  public static File getCacheDirectory() throws IOException {
+    String dir = System.getProperty(CACHE_DIR_PROPERTY);
+    File ret = (dir!=null) ? new File(dir) :
+      new File(new File(System.getProperty("user.home"), ".sysbio"), "cache");
+    if (!ret.isDirectory()) {
+      if (!ret.mkdirs() && !ret.isDirectory()) {
+        throw new IOException("Could not create " + ret);
+      }
+      ret.setReadable(false, false);
+      ret.setWritable(false, false);
+      ret.setExecutable(false, false);
+      ret.setReadable(true, true);
+      ret.setWritable(true, true);
+      ret.setExecutable(true, true);
+    }
+    return ret;
+  }
+  
+  /**
+   * @param location of the (first) source, e.g., an absolute path or an URL.
+   * @param suffix file extension of the cache.
+   * @return a file in the {@link #getCacheDirectory() cache directory},
+   * that is unique for {@code location} and {@code suffix}.
+   * @throws IOException if the cache directory could not be created.
+   */
+  public static File getCacheFile(String location, String suffix) throws IOException {
+    return getCacheFile(getCacheDirectory(), location, suffix);
+  }
+  
+  /**
+   * @param directory the directory of the cache.
+   * @param location of the (first) source, e.g., an absolute path or an URL.
+   * @param suffix file extension of the cache.
+   * @return a file in {@code directory}, that is unique for
+   * {@code location} and {@code suffix}.
+   */
+  public static File getCacheFile(File directory, String location, String suffix) {
+    CRC32 crc = new CRC32();
+    crc.update(location.getBytes(UTF8));
+    return new File(directory, getCacheFilePrefix(location) + Long.toHexString(crc.getValue()) + suffix);
+  }
+  
+  /**
+   * @param location of the (first) source, e.g., an absolute path or an URL.
+   * @return the start of the names of all {@link #getCacheFile(String, String)
+   * cache files} of sources with the same name, e.g., caches of the same
+   * file in other directories.
+   */
+  public static String getCacheFilePrefix(String location) {
+    String name = location.substring(Math.max(location.lastIndexOf('/'), location.lastIndexOf('\\'))+1);
+    return name.replaceAll("[^A-Za-z0-9_\\-\\.]", "_") + '_';
+  }
+  
+  /**
+   * Writes a cache. The file is written to a temporary file first and
+   * renamed afterwards.
+   * @param cache
+   * @param magic identifies the format.
+   * @param version increment on any change of the format.
+   * @param key identifies the configuration, the cache has been created
+   * with (may be {@code null}).
+   * @param sources
+   * @param content
+   * @throws IOException
+   */
+  public static void write(File cache, int magic, int version, String key, Source[] sources, Writer content) throws IOException {
+    File dir = cache.getAbsoluteFile().getParentFile();
+    File tmp = File.createTempFile(cache.getName(), ".tmp", dir);
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1<<16));
+      try {
+        out.writeInt(magic);
+        out.writeInt(version);
+        writeString(out, key);
+        out.writeInt(sources.length);
+        for (Source s : sources) {
+          writeString(out, s.location);
+          out.writeLong(s.length);
+          out.writeLong(s.lastModified);
+          out.writeLong(s.hash);
+        }
+        content.write(out);
+      } finally {
+        out.close();
+      }
+      replace(tmp, cache);
+    } finally {
+      tmp.delete();
+    }
+  }
+  
+  /**
+   * Reads a cache.
+   * @param <T>
+   * @param cache
+   * @param magic must be the same as the one used for writing.
+   * @param version must be the same as the one used for writing.
+   * @param key must be the same as the one used for writing.
+   * @param sources must be equal to the ones used for writing.
+   * @param content
+   * @return the content or {@code null}, if the cache is missing,
+   * outdated or cannot be read for any reason.
+   */
+  public static <T> T read(File cache, int magic, int version, String key, Source[] sources, Reader<T> content) {
+    if (!cache.isFile()) {
+      return null;
+    }
+    try {
+      RandomAccessFile raf = new RandomAccessFile(cache, "r");
+      try {
+        FileChannel channel = raf.getChannel();
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.remaining()<8 || buffer.getInt()!=magic || buffer.getInt()!=version) {
+          return null;
+        }
+        String k = readString(buffer);
+        if ((key==null ? k!=null : !key.equals(k)) || buffer.getInt()!=sources.length) {
+          return null;
+        }
+        for (Source s : sources) {
+          if (!s.location.equals(readString(buffer)) || buffer.getLong()!=s.length ||
+              buffer.getLong()!=s.lastModified || buffer.getLong()!=s.hash) {
+            return null;
+          }
+        }
+        return content.read(buffer);
+      } finally {
+        raf.close();
+      }
+    } catch (IOException e) {
+      log.log(Level.FINE, "Could not read " + cache, e);
+    } catch (RuntimeException e) {
+      // Truncated or corrupt cache
+      log.log(Level.FINE, "Could not read " + cache, e);
+    }
+    return null;
+  }
+  
+  /**
+   * Checks, if a cache can never be read again, because it has another
+   * format or one of its source files has been changed or deleted.
+   * Sources, that are no absolute file paths (e.g., URLs), are considered
+   * unchanged.
+   * @param cache
+   * @param magic the current format.
+   * @param version the current version of the format.
+   * @return {@code true} if {@code cache} is outdated or corrupt.
+   */
+  public static boolean isOutdated(File cache, int magic, int version) {
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cache)));
+      try {
+        if (in.readInt()!=magic || in.readInt()!=version) {
+          return true;
+        }
+        readString(in); // key
+        int sources = in.readInt();
+        for (int i=0; i<sources; i++) {
+          File f = new File(readString(in));
+          long length = in.readLong();
+          long lastModified = in.readLong();
+          long hash = in.readLong();
+          if (!f.isAbsolute()) {
+            continue;
+          } else if (!f.isFile() || f.length()!=length || f.lastModified()!=lastModified
+              || (hash!=0 && hash(f)!=hash)) {
+            return true;
+          }
+        }
+        return false;
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      log.log(Level.FINE, "Could not read " + cache, e);
+      return true;
+    }
+  }
+  
+  /**
+   * Deletes all {@link #isOutdated(File, int, int) outdated} caches in the
+   * directory of {@code current}, whose names start with {@code prefix}
+   * and end with {@code suffix}, e.g., caches of moved or deleted sources.
+   * @param current this cache is never deleted.
+   * @param prefix
+   * @param suffix
+   * @param magic the current format.
+   * @param version the current version of the format.
+   */
+  public static void deleteOutdated(final File current, final String prefix, final String suffix, int magic, int version) {
+    File[] candidates = current.getAbsoluteFile().getParentFile().listFiles(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return name.startsWith(prefix) && name.endsWith(suffix) && !name.equals(current.getName());
+      }
+    });
+    if (candidates==null) {
+      return;
+    }
+    for (File f : candidates) {
+      if (isOutdated(f, magic, version) && !f.delete()) {
+        log.fine("Could not delete outdated cache " + f);
+      }
+    }
+  }
+  
+  /**
+   * Moves {@code source} to {@code target}, replacing {@code target}.
+   * @param source
+   * @param target
+   * @throws IOException
+   */
+  public static void replace(File source, File target) throws IOException {
+    if (source.renameTo(target)) {
+      return;
+    }
+    // Some platforms do not replace existing files
+    if (target.exists() && !target.delete()) {
+      throw new IOException("Could not replace " + target);
+    }
+    if (!source.renameTo(target)) {
+      throw new IOException(String.format("Could not rename '%s' to '%s'.", source, target));
+    }
+  }
+  
+  /**
+   * @param out
+   * @param s may be {@code null}.
+   * @throws IOException
+   */
+  public static void writeString(DataOutput out, String s) throws IOException {
+    if (s==null) {
+      out.writeInt(-1);
+    } else {
+      byte[] b = s.getBytes(UTF8);
+      out.writeInt(b.length);
+      out.write(b);
+    }
+  }
+  
+  /**
+   * @param buffer
+   * @return a string written by {@link #writeString(DataOutput, String)}.
+   * @throws IOException if the length is invalid.
+   */
+  public static String readString(ByteBuffer buffer) throws IOException {
+    int length = buffer.getInt();
+    if (length==-1) {
+      return null;
+    }
+    if (length<0 || length>buffer.remaining()) {
+      throw new IOException("Invalid string length " + length);
+    }
+    byte[] b = new byte[length];
+    buffer.get(b);
+    return new String(b, UTF8);
+  }
+  
+  /**
+   * @param in
+   * @return a string written by {@link #writeString(DataOutput, String)}.
+   * @throws IOException if the length is invalid.
+   */
+  public static String readString(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length==-1) {
+      return null;
+    }
+    if (length<0 || length>(1<<20)) {
+      throw new IOException("Invalid string length " + length);
+    }
+    byte[] b = new byte[length];
+    in.readFully(b);
+    return new String(b, UTF8);
+  }
+  
+  /**
+   * @param out
+   * @param data
+   * @throws IOException
+   */
+  public static void writeInts(DataOutput out, int[] data) throws IOException {
+    for (int v : data) {
+      out.writeInt(v);
+    }
+  }
+  
+  /**
+   * @param buffer
+   * @param ints
+   * @return the next {@code ints} integers of {@code buffer}. The position
+   * of {@code buffer} is moved behind those integers.
+   * @throws IOException if {@code buffer} does not contain enough bytes.
+   */
+  public static int[] readInts(ByteBuffer buffer, int ints) throws IOException {
+    checkRemaining(buffer, ints, 4);
+    int[] ret = new int[ints];
+    buffer.asIntBuffer().get(ret);
+    buffer.position(buffer.position() + ints*4);
+    return ret;
+  }
+  
+  /**
+   * Reads a count of elements, that follow in {@code buffer}.
+   * @param buffer
+   * @param elementSize minimum number of bytes of each element.
+   * @return the count.
+   * @throws IOException if the count is negative or {@code buffer} does
+   * not contain enough bytes for this number of elements.
+   */
+  public static int readCount(ByteBuffer buffer, int elementSize) throws IOException {
+    int count = buffer.getInt();
+    checkRemaining(buffer, count, elementSize);
+    return count;
+  }
+  
+  /**
+   * @param buffer
+   * @param count
+   * @param elementSize
+   * @throws IOException if {@code count} is negative or {@code buffer}
+   * does not contain {@code count} elements of the given size.
+   */
+  public static void checkRemaining(ByteBuffer buffer, int count, int elementSize) throws IOException {
+    if (count<0 || (long) count*elementSize>buffer.remaining()) {
+      throw new IOException("Invalid count " + count);
+    }
+  }
+  
+  /**
+   * @param f
+   * @return a CRC32 of the first and last megabyte of {@code f}.
+   * @throws IOException
+   */
+  public static long hash(File f) throws IOException {
+    CRC32 crc = new CRC32();
+    RandomAccessFile raf = new RandomAccessFile(f, "r");
+    try {
+      long length = raf.length();
+      byte[] buffer = new byte[(int) Math.min(HASHED_BYTES, length)];
+      raf.readFully(buffer);
+      crc.update(buffer);
+      if (length>HASHED_BYTES) {
+        buffer = new byte[(int) Math.min(HASHED_BYTES, length-HASHED_BYTES)];
+        raf.seek(length-buffer.length);
+        raf.readFully(buffer);
+        crc.update(buffer);
+      }
+    } finally {
+      raf.close();
+    }
+    return crc.getValue();
+  }
+  
+}
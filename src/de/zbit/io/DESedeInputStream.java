@@ -0,0 +1,330 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.GeneralSecurityException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+
+import de.zbit.util.ThreadManager;
+
+/**
+ * Decrypts a stream, that has been encrypted by
+ * {@link ZIPUtils#enCrypt(InputStream, java.io.OutputStream)}.
+ * In contrast to a {@link CipherInputStream}, large chunks are decrypted
+ * at once. As files are encrypted in ECB mode, all 8 byte blocks are
+ * independent of each other, and chunks are decrypted on multiple
+ * threads, while the result is returned in the original order.
+ *
+ * @version $Rev$
+ */
+public class DESedeInputStream extends InputStream {
+
+  /**
+   * Size of encrypted chunks. Must be a multiple of the DESede block size (8).
+   */
+  public static final int CHUNK_SIZE = 1<<18;
+
+  /**
+   * Cipher without padding for all but the last chunk.
+   */
+  private static final ThreadLocal<Cipher> BLOCK_CIPHER = new ThreadLocal<Cipher>() {
+    @Override
+    protected Cipher initialValue() {
+      return createCipher("DESede/ECB/NoPadding");
+    }
+  };
+
+  /**
+   * Cipher that removes the PKCS5 padding of the last chunk.
+   */
+  private static final ThreadLocal<Cipher> FINAL_CIPHER = new ThreadLocal<Cipher>() {
+    @Override
+    protected Cipher initialValue() {
+      return createCipher("DESede/ECB/PKCS5Padding");
+    }
+  };
+
+  private final InputStream in;
+
+  /**
+   * Chunks in progress, in the order of the stream. {@code null} if
+   * chunks are decrypted in the calling thread.
+   */
+  private final LinkedList<Future<byte[]>> pending;
+
+  /**
+   * Maximum size of {@link #pending}.
+   */
+  private final int maxPending;
+
+  /**
+   * The encrypted chunk that has been read, but not yet submitted,
+   * because it is not known whether it is the last one.
+   */
+  private byte[] lookahead = null;
+  private int lookaheadLength = 0;
+
+  private boolean endOfInput = false;
+
+  /**
+   * Currently returned, decrypted chunk.
+   */
+  private byte[] current = new byte[0];
+  private int position = 0;
+
+  /**
+   * Decrypts chunks in parallel with {@link ThreadManager#NUMBER_OF_PROCESSORS}
+   * threads.
+   * @param in encrypted stream
+   */
+  public DESedeInputStream(InputStream in) {
+    this(in, ThreadManager.NUMBER_OF_PROCESSORS);
+  }
+
+  /**
+   * @param in encrypted stream
+   * @param threads number of chunks to decrypt in parallel. If 1 or
+   * less, all chunks are decrypted in the calling thread.
+   */
+  public DESedeInputStream(InputStream in, int threads) {
+    super();
+    this.in = in;
+    this.maxPending = Math.max(1, threads);
+    this.pending = threads>1 ? new LinkedList<Future<byte[]>>() : null;
+  }
+
+  /**
+   * @param transformation
+   * @return an initialized cipher for decryption.
+   */
+  private static Cipher createCipher(String transformation) {
+    try {
+      Cipher cipher = Cipher.getInstance(transformation);
+      cipher.init(Cipher.DECRYPT_MODE, ZIPUtils.getDESedeKey());
+      return cipher;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Decrypts the given chunk.
+   * @param chunk
+   * @param length
+   * @param last if {@code true}, the padding is removed.
+   * @return decrypted bytes
+   * @throws IOException
+   */
+  private static byte[] decrypt(byte[] chunk, int length, boolean last) throws IOException {
+    try {
+      if (last) {
+        return FINAL_CIPHER.get().doFinal(chunk, 0, length);
+      } else {
+        return BLOCK_CIPHER.get().update(chunk, 0, length);
+      }
+    } catch (GeneralSecurityException e) {
+      IOException exc = new IOException("Could not decrypt stream: " + e.getLocalizedMessage());
+      exc.initCause(e);
+      throw exc;
+    }
+  }
+
+  /**
+   * An encrypted chunk of the input.
+   */
+  private static class Chunk {
+    final byte[] data;
+    final int length;
+    final boolean last;
+    Chunk(byte[] data, int length, boolean last) {
+      this.data = data;
+      this.length = length;
+      this.last = last;
+    }
+    byte[] decrypt() throws IOException {
+      return DESedeInputStream.decrypt(data, length, last);
+    }
+  }
+  
+  /**
+   * Reads the next encrypted chunk into {@link #lookahead} and returns
+   * the previous one.
+   * @return the previous chunk or {@code null} at the end of the stream.
+   * @throws IOException
+   */
+  private Chunk nextEncryptedChunk() throws IOException {
+    if (lookahead==null && !endOfInput) {
+      lookahead = new byte[CHUNK_SIZE];
+      lookaheadLength = readFully(lookahead);
+    }
+    if (lookahead==null) {
+      return null;
+    }
+    byte[] chunk = lookahead;
+    int length = lookaheadLength;
+    lookahead = null;
+    if (length<CHUNK_SIZE) {
+      endOfInput = true;
+    } else {
+      lookahead = new byte[CHUNK_SIZE];
+      lookaheadLength = readFully(lookahead);
+      if (lookaheadLength==0) {
+        lookahead = null;
+        endOfInput = true;
+      }
+    }
+    return new Chunk(chunk, length, lookahead==null);
+  }
+
+  /**
+   * @param buffer
+   * @return number of bytes read. Less than {@code buffer.length} only at
+   * the end of the stream.
+   * @throws IOException
+   */
+  private int readFully(byte[] buffer) throws IOException {
+    int n = 0;
+    while (n<buffer.length) {
+      int r = in.read(buffer, n, buffer.length-n);
+      if (r<0) {
+        break;
+      }
+      n += r;
+    }
+    return n;
+  }
+
+  /**
+   * Fills {@link #current} with the next decrypted chunk.
+   * @return {@code false} if the end of the stream has been reached.
+   * @throws IOException
+   */
+  private boolean fill() throws IOException {
+    while (position>=current.length) {
+      if (pending==null) {
+        Chunk chunk = nextEncryptedChunk();
+        if (chunk==null) {
+          return false;
+        }
+        current = chunk.decrypt();
+      } else {
+        while (pending.size()<maxPending) {
+          final Chunk chunk = nextEncryptedChunk();
+          if (chunk==null) {
+            break;
+          }
+          pending.add(ThreadManager.getSharedDaemonPool("DESedeInputStream").submit(new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+              return chunk.decrypt();
+            }
+          }));
+        }
+        if (pending.isEmpty()) {
+          return false;
+        }
+        current = await(pending.removeFirst());
+      }
+      position = 0;
+    }
+    return true;
+  }
+
+  /**
+   * @param chunk
+   * @return the decrypted chunk.
+   * @throws IOException
+   */
+  private static byte[] await(Future<byte[]> chunk) throws IOException {
+    try {
+      return chunk.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getLocalizedMessage());
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      IOException exc = new IOException(e.getLocalizedMessage());
+      exc.initCause(e.getCause());
+      throw exc;
+    }
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.InputStream#read()
+   */
+  @Override
+  public int read() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+    return current[position++] & 0xff;
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.InputStream#read(byte[], int, int)
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len==0) {
+      return 0;
+    }
+    if (!fill()) {
+      return -1;
+    }
+    int n = Math.min(len, current.length-position);
+    System.arraycopy(current, position, b, off, n);
+    position += n;
+    return n;
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.InputStream#available()
+   */
+  @Override
+  public int available() throws IOException {
+    return current.length-position;
+  }
+
+  /* (non-Javadoc)
+   * @see java.io.InputStream#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (pending!=null) {
+      for (Future<byte[]> f : pending) {
+        f.cancel(false);
+      }
+      pending.clear();
+    }
+    lookahead = null;
+    current = new byte[0];
+    position = 0;
+    endOfInput = true;
+    in.close();
+  }
+
+}
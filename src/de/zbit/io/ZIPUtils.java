@@ -34,6 +34,7 @@ import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.net.URISyntaxException;
+import java.security.GeneralSecurityException;
 import java.util.zip.CRC32;
 import java.util.zip.CheckedInputStream;
 import java.util.zip.CheckedOutputStream;
@@ -45,7 +46,6 @@ import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
@@ -85,6 +85,11 @@ public class ZIPUtils {
    */
   public static Class<?> parentClass = ZIPUtils.class;
   
+  /**
+   * The key, generated from {@link #desKeyData}. See {@link #getDESedeKey()}.
+   */
+  private static SecretKey desKey = null;
+  
   private static byte[] desKeyData = new byte[] {0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05,0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06,0x03, 0x04, 0x03, 0x04,0x03, 0x04,0x05, 0x06};
   
   
@@ -160,35 +165,35 @@ public class ZIPUtils {
   }
   
   /**
-   * 
+   * @return the key for all en- and decryption methods. It is generated
+   * only once.
+   * @throws GeneralSecurityException
+   */
+  static synchronized SecretKey getDESedeKey() throws GeneralSecurityException {
+    if (desKey==null) {
+      DESedeKeySpec keyspec = new DESedeKeySpec(desKeyData);
+      SecretKeyFactory keyfactory = SecretKeyFactory.getInstance("DESede");
+      desKey = keyfactory.generateSecret(keyspec);
+    }
+    return desKey;
+  }
+  
+  /**
+   * Decrypts the whole stream into memory.
    * @param in
-   * @return
+   * @return a {@link ByteArrayOutputStream} with the decrypted content.
+   * @see #deCryptInputStream(InputStream)
    */
   public static OutputStream deCryptStream(InputStream in) {
-    //byte[] buf = new byte[1024];
-    
-    //AlgorithmParameterSpec paramSpec = new IvParameterSpec(desKeyData);
-    OutputStream out = null;
+    ByteArrayOutputStream out = null;
     try {
-      DESedeKeySpec keyspec = new DESedeKeySpec(desKeyData);
-      SecretKeyFactory keyfactory = SecretKeyFactory.getInstance("DESede");
-      SecretKey key = keyfactory.generateSecret(keyspec);
-      
-      Cipher dcipher = Cipher.getInstance("DESede/ECB/PKCS5Padding");
-      dcipher.init(Cipher.DECRYPT_MODE, key);
-      
-      out = new ByteArrayOutputStream();
-      in = new CipherInputStream(in, dcipher);
-      // Read in the decrypted bytes and write the cleartext to out
-      //int numRead = 0;
-      //while ((numRead = in.read(buf)) >= 0) {
-      //  out.write(buf, 0, numRead);
-      //}
-      int x;
-      while ((x = in.read()) != -1) {
-        out.write(x);
+      out = new ByteArrayOutputStream(Math.max(32, in.available()));
+      InputStream dis = deCryptInputStream(in);
+      byte[] buf = new byte[DESedeInputStream.CHUNK_SIZE];
+      int numRead;
+      while ((numRead = dis.read(buf)) >= 0) {
+        out.write(buf, 0, numRead);
       }
-      out.flush();
       out.close();
       
     } catch (Exception e) {e.printStackTrace();}
@@ -196,35 +201,32 @@ public class ZIPUtils {
     return out;
   }
   
+  /**
+   * Returns a stream that decrypts {@code in} while reading. Large chunks
+   * are decrypted in parallel, see {@link DESedeInputStream}.
+   * @param in
+   * @return decrypted stream
+   */
   public static InputStream deCryptInputStream(InputStream in) {
-    CipherInputStream cis = null;
-    try {
-      DESedeKeySpec keyspec = new DESedeKeySpec(desKeyData);
-      SecretKeyFactory keyfactory = SecretKeyFactory.getInstance("DESede");
-      SecretKey key = keyfactory.generateSecret(keyspec);
-      
-      Cipher dcipher = Cipher.getInstance("DESede/ECB/PKCS5Padding");
-      dcipher.init(Cipher.DECRYPT_MODE, key);
-      
-      cis = new CipherInputStream(in, dcipher);
-      
-    } catch (Exception e) {e.printStackTrace();}
-    
-    return cis;
+    return new DESedeInputStream(in);
+  }
+  
+  /**
+   * @param mode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+   * @return an initialized cipher with the {@link #getDESedeKey()}.
+   * @throws GeneralSecurityException
+   */
+  private static Cipher createCipher(int mode) throws GeneralSecurityException {
+    Cipher cipher = Cipher.getInstance("DESede/ECB/PKCS5Padding");
+    cipher.init(mode, getDESedeKey());
+    return cipher;
   }
   
   public static OutputStream enCryptOutputStream(OutputStream out) {
     CipherOutputStream cos = null;
     //AlgorithmParameterSpec paramSpec = new IvParameterSpec(desKeyData);
     try {
-      DESedeKeySpec keyspec = new DESedeKeySpec(desKeyData);
-      SecretKeyFactory keyfactory = SecretKeyFactory.getInstance("DESede");
-      SecretKey key = keyfactory.generateSecret(keyspec);
-      
-      Cipher ecipher = Cipher.getInstance("DESede/ECB/PKCS5Padding");
-      ecipher.init(Cipher.ENCRYPT_MODE, key);
-      
-      cos = new CipherOutputStream(out, ecipher);
+      cos = new CipherOutputStream(out, createCipher(Cipher.ENCRYPT_MODE));
       
     } catch (Exception e) {e.printStackTrace();}
     return cos;
@@ -249,23 +251,12 @@ public class ZIPUtils {
     OutputStream out = out2;
     //AlgorithmParameterSpec paramSpec = new IvParameterSpec(desKeyData);
     try {
-      DESedeKeySpec keyspec = new DESedeKeySpec(desKeyData);
-      SecretKeyFactory keyfactory = SecretKeyFactory.getInstance("DESede");
-      SecretKey key = keyfactory.generateSecret(keyspec);
-      
-      Cipher ecipher = Cipher.getInstance("DESede/ECB/PKCS5Padding");
-      ecipher.init(Cipher.ENCRYPT_MODE, key);
-      
-      //InputStream in = new ByteArrayInputStream(inString.getBytes());
-      out = new CipherOutputStream(out2, ecipher);
+      out = new CipherOutputStream(out2, createCipher(Cipher.ENCRYPT_MODE));
       // Read in the cleartext bytes and write to out to encrypt
-      //int numRead = 0;
-      //while ((numRead = in.read(buf)) >= 0) {
-      //  out.write(buf, 0, numRead);
-      //}
-      int x;
-      while ((x = in.read()) != -1) {
-        out.write(x);
+      byte[] buf = new byte[DESedeInputStream.CHUNK_SIZE];
+      int numRead = 0;
+      while ((numRead = in.read(buf)) >= 0) {
+        out.write(buf, 0, numRead);
       }
       out.flush();
       out.close();
@@ -17,16 +17,20 @@
 package de.zbit.io.csv;
 
 import java.io.BufferedReader;
+import java.io.CharArrayReader;
 import java.io.Closeable;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PushbackReader;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -104,6 +108,17 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
    */
   private List<Integer> setToNull = new ArrayList<Integer>();
   
+  /**
+   * Lookup table for {@link #setToNull}, created on demand.
+   */
+  private transient boolean[] nullColumns = null;
+  
+  /**
+   * Characters that disable the separator between two of them.
+   * '\'' is complicated because of terms like "it's".
+   */
+  static final char[] DEFAULT_STRING_INDICATORS = new char[] {'"'};
+  
   /**
    * Indicates, that this file contains headers
    */
@@ -231,6 +246,42 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
    */
   private transient BufferedReader currentOpenFile = null;
   
+  /**
+   * Reads and splits lines of {@link #currentOpenFile}, once
+   * {@link #nextTokenizedLine()} has been called.
+   */
+  private transient CSVTokenizer tokenizer = null;
+  
+  /**
+   * Number of lines that are buffered by {@link #readColumnar()} to infer
+   * the format of the file. Must cover all lines, inspected by
+   * {@link #initialize()} and {@link #containsHeaders()}.
+   */
+  private static final int SNIFF_LINES = 1100;
+  
+  /**
+   * During {@link #readColumnar()}, the first lines of the file. These
+   * are used to infer the format, instead of opening the file again.
+   */
+  private transient char[] sniffedPrefix = null;
+  
+  /**
+   * During {@link #readColumnar()}, the already opened file (including
+   * {@link #sniffedPrefix}), that is used by {@link #open()}.
+   */
+  private transient BufferedReader singlePassInput = null;
+  
+  /**
+   * Types of columns that should be kept as primitives by
+   * {@link #readColumnar()}.
+   */
+  private Map<Integer, Class<?>> columnTypes = new HashMap<Integer, Class<?>>();
+  
+  /**
+   * The content, if the file has been read by {@link #readColumnar()}.
+   */
+  private transient CSVTable table = null;
+  
   /**
    * Display the progress, while reading the file.
    */
@@ -653,6 +704,11 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
    * @param column numbers.
    */
   public void setNull(int[] columns) {
+    if (table!=null) {
+      for (int column : columns) {
+        table.setNull(column);
+      }
+    }
     if (data==null) {
       for (int i=0; i<columns.length; i++) {
         setNull(columns[i]);
@@ -679,9 +735,13 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
    * @param column numbers.
    */
   public void setNull(int column) {
+    if (table!=null) {
+      table.setNull(column);
+    }
     if (data==null) {
       if (!setToNull.contains(column)) {
         setToNull.add(column);
+        nullColumns = null;
       }
     } else {
       for (int i=0; i<data.length; i++) {
@@ -725,7 +785,9 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
    * @return
    */
   public String[][] getData() {
-    if (data == null) {
+    if (data == null && table != null && !table.hasNumericColumns()) {
+      data = table.toArray();
+    } else if (data == null) {
       try {
         readUsingArrayList();
       } catch (IOException e) {
@@ -966,8 +1028,27 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
    * @throws IOException
    */
   private BufferedReader getAndResetInputReader(String filename, StringBuffer preamble) throws IOException {
+    return getAndResetInputReader(filename, preamble, true);
+  }
+  
+  /**
+   * 
+   * @param filename
+   * @param preamble
+   * @param skip if {@code false}, {@link #skipLines} are not skipped.
+   * @return
+   * @throws IOException
+   */
+  private BufferedReader getAndResetInputReader(String filename, StringBuffer preamble, boolean skip) throws IOException {
     BufferedReader in;
-    if (useOpenFileMethod) {
+    if (singlePassInput!=null && preamble!=null) {
+      // Read the file, that is already opened by readColumnar().
+      in = singlePassInput;
+      singlePassInput = null;
+    } else if (sniffedPrefix!=null) {
+      // Infer the format from the buffered first lines of the file.
+      in = new BufferedReader(new CharArrayReader(sniffedPrefix));
+    } else if (useOpenFileMethod) {
       // Use the OpenFile Method to automatically extract ZIP archives and such.
       in = OpenFile.openFile(filename, useParentPackageForOpeningFiles,isEncrypted);
     } else {
@@ -975,7 +1056,7 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
     }
     
     // Eventually skip first x lines.
-    if (skipLines>0) {
+    if (skip && skipLines>0) {
       String line; int curLine=0;
       while (curLine<skipLines && (line=in.readLine())!=null) {
         if (preamble!=null) {
@@ -1302,6 +1383,10 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
    * @throws IOException
    */
   public String[] getColumn(int colNumber, int maxLinesToRead) throws IOException {
+    if (table!=null && !table.hasNumericColumns()) {
+      // File has already been read.
+      return table.getColumn(colNumber, maxLinesToRead);
+    }
     boolean resetProgress = false;
     if (maxLinesToRead!=0 && displayProgress) {
       displayProgress=false; resetProgress = true;
@@ -1339,37 +1424,122 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
   /**
    * Reads the whole file into memory.
    * Enables to use the getData() function.
+   * 
+   * <p>The file is opened only once (see {@link #readColumnar()}).
    * @param filename
    * @throws IOException
    */
   public String[][] read() throws IOException {
+    // Keep the text of all cells, regardless of declared column types
+    CSVTable table = readColumnar(null);
+    this.table = null;
+    data = table.toArray();
+    return data;
+  }
+  
+  /**
+   * Reads the whole file into memory, opening it only once. The format
+   * (separator char, headers, content start) is inferred from the
+   * buffered first lines. This avoids decompressing or downloading the
+   * file multiple times (see {@link OpenFile}).
+   * 
+   * <p>Rows are stored column by column in a {@link CSVTable}, which is
+   * also used to serve {@link #getData()} and {@link #getColumn(int)}.
+   * Columns, declared by {@link #setColumnType(int, Class)}, are kept as
+   * {@code int} or {@code double} values.
+   * 
+   * @return the content of the file (without headers and preamble).
+   * @throws IOException
+   */
+  public CSVTable readColumnar() throws IOException {
+    return readColumnar(columnTypes);
+  }
+  
+  /**
+   * @param columnTypes types of numeric columns or {@code null} to keep
+   * all cells as strings.
+   * @return the content of the file (without headers and preamble).
+   * @throws IOException
+   * @see #readColumnar()
+   */
+  private CSVTable readColumnar(Map<Integer, Class<?>> columnTypes) throws IOException {
+    close();
+    data = null;
+    table = null;
     
-    // Initializes and opens the file
-    open();
+    // Open the file and buffer the first lines
+    BufferedReader in = getAndResetInputReader(filename, null, false);
+    StringBuilder prefix = new StringBuilder();
+    String line;
+    int lines = 0;
+    while (lines<skipLines+SNIFF_LINES && (line = in.readLine())!=null) {
+      prefix.append(line).append('\n');
+      lines++;
+    }
     
-    // Get total number of lines in the file
-    countNumberOfLines();
+    // Infer the format from the prefix and read the prefix, followed by the rest
+    sniffedPrefix = prefix.toString().toCharArray();
+    PushbackReader pb = new PushbackReader(in, Math.max(1, sniffedPrefix.length));
+    pb.unread(sniffedPrefix);
+    singlePassInput = new BufferedReader(pb);
+    try {
+      if (!isInitialized) {
+        initialize();
+      }
+      open();
+    } finally {
+      sniffedPrefix = null;
+      if (singlePassInput!=null) {
+        singlePassInput.close();
+        singlePassInput = null;
+      }
+    }
     
-    // Finally... get the data
-    data = new String[numDataLines][numCols];
-    int nline=-1;
-    String[] line;
-    while ((line = getNextLine())!=null) {
-      data[++nline] = line;
+    CSVTable table = new CSVTable(columnTypes!=null ? new HashMap<Integer, Class<?>>(columnTypes) : null);
+    CSVTokenizer t;
+    while ((t = nextTokenizedLine())!=null) {
+      table.addRow(t);
     }
-    return data;
+    this.table = table;
+    return table;
+  }
+  
+  /**
+   * Declares the type of a column for {@link #readColumnar()}. Numeric
+   * columns are kept as primitive values, which saves memory and
+   * parsing. Unparseable cells are treated as missing.
+   * 
+   * <p>Column types do not affect {@link #read()}, {@link #getData()}
+   * and {@link #getColumn(int)}, which always return the text of cells.
+   * 
+   * @param column the column index.
+   * @param type {@link Integer}, {@link Double} or {@link String}.
+   */
+  public void setColumnType(int column, Class<?> type) {
+    if (!(Integer.class.equals(type) || Double.class.equals(type) || String.class.equals(type))) {
+      throw new IllegalArgumentException("Unsupported column type " + type);
+    }
+    if (columnTypes==null) {
+      columnTypes = new HashMap<Integer, Class<?>>();
+    }
+    columnTypes.put(column, type);
+  }
+  
+  /**
+   * @return the content, as read by {@link #readColumnar()} or
+   * {@code null} if the file has not been read this way.
+   */
+  public CSVTable getTable() {
+    return table;
   }
   
   /**
    * Reads the whole file into memory.
    * Enables to use the getData() function.
    * 
-   * read() reads the file twice, but declares a perfectly
-   * matching array, speeding up for fast hard drives and
-   * small files.
-   * 
-   * readUsingArrayList() reads the file once, but using an
-   * ArrayList and is slower on fast computers or small files.
+   * In contrast to {@link #read()}, this method opens the file
+   * multiple times (to infer the format), but does not buffer
+   * lines in a {@link CSVTable}.
    * 
    * @param filename
    * @throws IOException
@@ -1412,6 +1582,7 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
     
     // Finally... get the data
     preamble = new StringBuffer();
+    tokenizer = null;
     currentOpenFile = getAndResetInputReader(filename, preamble);
     int j = skipLines;
     String line = null;
@@ -1467,6 +1638,23 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
    * @throws IOException
    */
   public String[] getNextLine() throws IOException {
+    String line = getNextUnsplitLine();
+    if (line==null) {
+      return null;
+    }
+    return splitLine(line);
+  }
+  
+  /**
+   * Returns the next line in the currently opened file without splitting
+   * it into columns, or null if the end of the file has been reached. Use
+   * {@link #splitLine(String)} to get the same result as
+   * {@link #getNextLine()}. This allows to split lines in multiple threads.
+   * 
+   * @return the next line in the currently opened file.
+   * @throws IOException
+   */
+  public String getNextUnsplitLine() throws IOException {
     if (currentOpenFile==null) {
       open(); //throw new Exception("No file is currently opened.");
       if (currentOpenFile==null)
@@ -1482,7 +1670,12 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
     //  return null;
     //}
     
-    // Read next line, draw progress, split into columns
+    if (tokenizer!=null) {
+      // The tokenizer has already buffered parts of the file.
+      return readTokenizerLine() ? tokenizer.getLine() : null;
+    }
+    
+    // Read next line, draw progress
     String line=null;
     while((line = currentOpenFile.readLine())!=null) {
       if (displayProgress && progress!=null) {
@@ -1502,13 +1695,26 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
       close();
       return null;
     }
-    
+    return line;
+  }
+  
+  /**
+   * Splits a line, as returned by {@link #getNextUnsplitLine()}, into
+   * columns. This method does not modify the reader and may be called
+   * concurrently, as long as the configuration of this reader is not
+   * changed.
+   * 
+   * @param line
+   * @return the cells of {@code line}.
+   */
+  public String[] splitLine(String line) {
     // Split
     String [] data = getSplits(line);
     
     // Post Process (trim and remove string indicators).
+    boolean[] nullColumns = getNullColumns();
     for (int i=0; i<data.length; i++) {
-      if (setToNull!=null && setToNull.contains(i)) {
+      if (nullColumns!=null && i<nullColumns.length && nullColumns[i]) {
         data[i]=null;
         continue;
       }
@@ -1520,12 +1726,132 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
     return data;
   }
   
+  /**
+   * @return a lookup table for {@link #setToNull} or {@code null} if no
+   * column should be set to {@code null}.
+   */
+  private boolean[] getNullColumns() {
+    boolean[] ret = nullColumns;
+    if (ret==null && setToNull!=null && !setToNull.isEmpty()) {
+      int max = -1;
+      for (Integer i : setToNull) {
+        max = Math.max(max, i);
+      }
+      ret = new boolean[max+1];
+      for (Integer i : setToNull) {
+        if (i>=0) {
+          ret[i] = true;
+        }
+      }
+      nullColumns = ret;
+    }
+    return ret;
+  }
+  
+  /**
+   * Creates a {@link CSVTokenizer} that splits lines exactly like
+   * {@link #splitLine(String)}, but without creating intermediate
+   * objects. Each thread should use its own instance.
+   * 
+   * @return a new tokenizer with the settings of this reader.
+   * @throws IOException if the file could not be inspected to infer
+   * the separator char.
+   */
+  public CSVTokenizer createTokenizer() throws IOException {
+    if (!isInitialized) {
+      initialize();
+    }
+    CSVTokenizer t = new CSVTokenizer(separatorChar, treatMultipleConsecutiveSeparatorsAsOne, DEFAULT_STRING_INDICATORS);
+    t.removeStringIndicatorsAtCellStartEnd = removeStringIndiciatorsAtCellStartEnd;
+    t.expectedColumns = getNumberOfColumns();
+    t.nullColumns = getNullColumns();
+    return t;
+  }
+  
+  /**
+   * Reads the next line of the currently opened file into a reusable
+   * buffer and splits it. In contrast to {@link #getNextLine()}, no
+   * objects are created per line, and cells are only converted to
+   * strings on demand (see {@link CSVTokenizer#get(int)}). This is the
+   * preferred way to parse very large tables.
+   * 
+   * <p>The returned tokenizer is always the same instance and its cells
+   * are only valid until the next line is read.
+   * 
+   * @return the tokenizer, positioned on the next line, or {@code null}
+   * if the end of the file has been reached.
+   * @throws IOException
+   */
+  public CSVTokenizer nextTokenizedLine() throws IOException {
+    if (currentOpenFile==null) {
+      open();
+      if (currentOpenFile==null) {
+        return null;
+      }
+    }
+    if (tokenizer==null) {
+      tokenizer = createTokenizer();
+      tokenizer.setInput(currentOpenFile);
+    }
+    if (!readTokenizerLine()) {
+      return null;
+    }
+    tokenizer.split();
+    return tokenizer;
+  }
+  
+  /**
+   * Reads the next line of the currently opened file into a
+   * caller-supplied array. No new array is created, even if the line
+   * has less or more cells than {@code cells}.
+   * 
+   * @param cells receives the cells of the next line. Cells that exceed
+   * the line are set to {@code null}.
+   * @return the number of cells of the line (which may exceed
+   * {@code cells.length}) or -1 if the end of the file has been reached.
+   * @throws IOException
+   * @see #nextTokenizedLine()
+   */
+  public int getNextLine(String[] cells) throws IOException {
+    CSVTokenizer t = nextTokenizedLine();
+    if (t==null) {
+      return -1;
+    }
+    return t.toArray(cells);
+  }
+  
+  /**
+   * Reads the next (non-skipped) line into {@link #tokenizer} without
+   * splitting it.
+   * @return {@code false} if the end of the file has been reached.
+   * @throws IOException
+   */
+  private boolean readTokenizerLine() throws IOException {
+    while (tokenizer.readLine()) {
+      if (displayProgress && progress!=null) {
+        progress.progress(tokenizer.getLineLength()+1);
+      }
+      if (trimLinesAfterReading) {
+        tokenizer.trimLine();
+      }
+      if (tokenizer.getLineLength()>0 || !skipEmptyLines) {
+        return true;
+      }
+    }
+    close();
+    return false;
+  }
+  
   /**
    * If a file is currently open, this function closes the file.
    * @throws IOException
    */
   @Override
   public void close() throws IOException {
+    if (tokenizer!=null) {
+      tokenizer.setInput(null);
+      tokenizer = null;
+    }
     if (currentOpenFile != null) {
     	
       // Closing an input stream not fully read causes a BadPaddingException since Java7u72
@@ -2077,14 +2403,8 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
       return getSplits(input, whiteSpacePattern, skipConsecutiveMatches, skipMatchesInStrings);
     }
     
-    // Move out of here
-    ArrayList<Character> stringIndicators = new ArrayList<Character>();
-    stringIndicators.add('"');
-    // '\'' is complicated because of terms like "it's"
-    //---
-    
     return getSplits(input, separator, skipConsecutiveMatches,
-      skipMatchesInStrings, stringIndicators);
+      skipMatchesInStrings, DEFAULT_STRING_INDICATORS);
   }
   
   /**
@@ -2100,50 +2420,75 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
    */
   public static String[] getSplits(String input, char separator,
     boolean skipConsecutiveMatches, boolean skipMatchesInStrings, List<Character> stringIndicators) {
+    char[] indicators = new char[stringIndicators.size()];
+    int i=0;
+    for (Character c : stringIndicators) {
+      indicators[i++] = c;
+    }
+    return getSplits(input, separator, skipConsecutiveMatches, skipMatchesInStrings, indicators);
+  }
+  
+  /**
+   * Split the given String at the given separator.
+   * Remark: intances of separator in stringIndicators are ignored, but the
+   * indicators are NOT REMOVED!
+   * @param input - String to split
+   * @param separator - separator char
+   * @param skipConsecutiveMatches
+   * @param skipMatchesInStrings - skip matches, between instances of 'stringIndicators'
+   * @param stringIndicators - only if 'skipMatchesInStrings' an array of string indicators.
+   * @return
+   * @see CSVTokenizer
+   */
+  public static String[] getSplits(String input, char separator,
+    boolean skipConsecutiveMatches, boolean skipMatchesInStrings, char... stringIndicators) {
     // Get columns. A little bit more flexible than a simple .split()!
     List<String> splits = new ArrayList<String>();
     
-    boolean[] skip = new boolean[stringIndicators.size()];
+    boolean[] skip = new boolean[stringIndicators.length];
     int activatedSkippers=0;
     
-    StringBuilder currentColumn = new StringBuilder();
-    Character lastC='\u0000';
-    for(char c: input.toCharArray()) {
+    // Columns are always contiguous, so only their start is required.
+    int columnStart = 0;
+    char lastC='\u0000';
+    int length = input.length();
+    for (int i=0; i<length; i++) {
+      char c = input.charAt(i);
       // Look for string indicators (that disable the separator).
-      int pos = stringIndicators.indexOf(c);
-      if (pos>=0 && skipMatchesInStrings) {
-        skip[pos] = !skip[pos];
-        if (skip[pos]) {
-          activatedSkippers++;
-        } else {
-          activatedSkippers--;
+      if (skipMatchesInStrings) {
+        int pos = -1;
+        for (int j=0; j<stringIndicators.length; j++) {
+          if (stringIndicators[j]==c) {
+            pos = j;
+            break;
+          }
+        }
+        if (pos>=0) {
+          skip[pos] = !skip[pos];
+          if (skip[pos]) {
+            activatedSkippers++;
+          } else {
+            activatedSkippers--;
+          }
+          lastC=c; // The stringIndicators itself stays in the column
+          continue;
         }
-        currentColumn.append(c); // Append the stringIndicators itself
-        lastC=c;
-        continue;
       }
       
       // Divide on separator
       if (c==separator && activatedSkippers<1) {
         // Skip consecutive matches
-        if (skipConsecutiveMatches && lastC==c) {
-          continue;
+        if (!(skipConsecutiveMatches && lastC==c)) {
+          splits.add(input.substring(columnStart, i));
         }
-        
-        splits.add(currentColumn.toString());
-        currentColumn = new StringBuilder();
-      } else {
-        
-        // Add char to current column
-        currentColumn.append(c);
+        columnStart = i+1;
       }
       lastC=c;
-      
     }
     
     // Don't forger the last column
-    if (currentColumn.length()>0) {
-      splits.add(currentColumn.toString());
+    if (columnStart<length) {
+      splits.add(input.substring(columnStart, length));
     }
     
     // If it ends with a separator, we should add an empty column.
@@ -2155,7 +2500,7 @@ public class CSVReader implements Cloneable, Closeable, Serializable {
     }
     
     
-    return splits.toArray(new String[0]);
+    return splits.toArray(new String[splits.size()]);
   }
   
   
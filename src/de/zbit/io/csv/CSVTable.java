@@ -0,0 +1,465 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.io.csv;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A table, as read by {@link CSVReader#readColumnar()}, that is stored
+ * column by column. Each column is kept in chunks of
+ * {@link #CHUNK_SIZE} rows, such that the table grows without copying
+ * already read rows. Columns, that have been declared as numeric by
+ * {@link CSVReader#setColumnType(int, Class)}, are kept as primitive
+ * {@code int} or {@code double} values.
+ * 
+ * <p>Missing or unparseable numeric values are stored as
+ * {@link #MISSING_INT} or {@link Double#NaN} and returned as
+ * {@code null} by {@link #get(int, int)}. Other numeric values are
+ * returned in their canonical string representation.
+ * 
+ * @version $Rev$
+ */
+public class CSVTable implements Serializable {
+  private static final long serialVersionUID = 2861254357095313651L;
+  
+  /**
+   * Number of rows per chunk. Must be a power of two.
+   */
+  public static final int CHUNK_SIZE = 1<<13;
+  private static final int CHUNK_SHIFT = 13;
+  private static final int CHUNK_MASK = CHUNK_SIZE-1;
+  
+  /**
+   * Marks missing values in {@code int} columns.
+   */
+  public static final int MISSING_INT = Integer.MIN_VALUE;
+  
+  /**
+   * A chunked column.
+   */
+  private static abstract class Column implements Serializable {
+    private static final long serialVersionUID = -3616519640484716829L;
+    /**
+     * Makes sure the given chunk is allocated.
+     * @param chunk
+     */
+    abstract void ensureChunk(int chunk);
+    /**
+     * Stores cell {@code cell} of the current line of {@code t} in {@code row}.
+     * @param row
+     * @param t
+     * @param cell
+     */
+    abstract void set(int row, CSVTokenizer t, int cell);
+    /**
+     * Marks {@code row} as missing.
+     * @param row
+     */
+    abstract void setMissing(int row);
+    /**
+     * @param row
+     * @return the value of {@code row} as string.
+     */
+    abstract String getString(int row);
+    /**
+     * @param chunks
+     * @param newLength
+     * @return {@code chunks} with at least {@code newLength} elements.
+     */
+    static <T> T[] grow(T[] chunks, int newLength) {
+      if (newLength<=chunks.length) {
+        return chunks;
+      }
+      return Arrays.copyOf(chunks, Math.max(newLength, chunks.length*2));
+    }
+  }
+  
+  private static class StringColumn extends Column {
+    private static final long serialVersionUID = -3046536659211648453L;
+    String[][] chunks = new String[4][];
+    @Override
+    void ensureChunk(int chunk) {
+      chunks = grow(chunks, chunk+1);
+      if (chunks[chunk]==null) {
+        chunks[chunk] = new String[CHUNK_SIZE];
+      }
+    }
+    @Override
+    void set(int row, CSVTokenizer t, int cell) {
+      chunks[row>>>CHUNK_SHIFT][row & CHUNK_MASK] = t.get(cell);
+    }
+    @Override
+    void setMissing(int row) {
+      chunks[row>>>CHUNK_SHIFT][row & CHUNK_MASK] = null;
+    }
+    @Override
+    String getString(int row) {
+      return chunks[row>>>CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+  }
+  
+  private static class IntColumn extends Column {
+    private static final long serialVersionUID = 5573420004417209181L;
+    int[][] chunks = new int[4][];
+    @Override
+    void ensureChunk(int chunk) {
+      chunks = grow(chunks, chunk+1);
+      if (chunks[chunk]==null) {
+        chunks[chunk] = new int[CHUNK_SIZE];
+      }
+    }
+    @Override
+    void set(int row, CSVTokenizer t, int cell) {
+      int value;
+      try {
+        value = t.isNull(cell) ? MISSING_INT : t.getInt(cell);
+      } catch (NumberFormatException e) {
+        value = MISSING_INT;
+      }
+      chunks[row>>>CHUNK_SHIFT][row & CHUNK_MASK] = value;
+    }
+    @Override
+    void setMissing(int row) {
+      chunks[row>>>CHUNK_SHIFT][row & CHUNK_MASK] = MISSING_INT;
+    }
+    int get(int row) {
+      return chunks[row>>>CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+    @Override
+    String getString(int row) {
+      int v = get(row);
+      return v==MISSING_INT ? null : Integer.toString(v);
+    }
+  }
+  
+  private static class DoubleColumn extends Column {
+    private static final long serialVersionUID = -1725329263613896290L;
+    double[][] chunks = new double[4][];
+    @Override
+    void ensureChunk(int chunk) {
+      chunks = grow(chunks, chunk+1);
+      if (chunks[chunk]==null) {
+        chunks[chunk] = new double[CHUNK_SIZE];
+      }
+    }
+    @Override
+    void set(int row, CSVTokenizer t, int cell) {
+      double value;
+      try {
+        value = t.isNull(cell) ? Double.NaN : t.getDouble(cell);
+      } catch (NumberFormatException e) {
+        value = Double.NaN;
+      }
+      chunks[row>>>CHUNK_SHIFT][row & CHUNK_MASK] = value;
+    }
+    @Override
+    void setMissing(int row) {
+      chunks[row>>>CHUNK_SHIFT][row & CHUNK_MASK] = Double.NaN;
+    }
+    double get(int row) {
+      return chunks[row>>>CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+    @Override
+    String getString(int row) {
+      double v = get(row);
+      return Double.isNaN(v) ? null : Double.toString(v);
+    }
+  }
+  
+  /**
+   * Declared types of columns (column index to {@link Integer},
+   * {@link Double} or {@link String}).
+   */
+  private final Map<Integer, Class<?>> columnTypes;
+  
+  private Column[] columns = new Column[0];
+  
+  /**
+   * Number of cells in each row (rows may be shorter or longer than the
+   * number of columns).
+   */
+  private int[][] rowLengths = new int[4][];
+  
+  private int numRows = 0;
+  
+  /**
+   * @param columnTypes types of numeric columns. Not declared columns are
+   * kept as strings.
+   */
+  CSVTable(Map<Integer, Class<?>> columnTypes) {
+    super();
+    this.columnTypes = columnTypes;
+  }
+  
+  /**
+   * @param index
+   * @return a new, empty column of the declared type.
+   */
+  private Column createColumn(int index) {
+    Class<?> type = columnTypes!=null ? columnTypes.get(index) : null;
+    Column c;
+    if (Integer.class.equals(type)) {
+      c = new IntColumn();
+    } else if (Double.class.equals(type)) {
+      c = new DoubleColumn();
+    } else {
+      c = new StringColumn();
+    }
+    for (int i=0; i<=((numRows-1)>>>CHUNK_SHIFT) && numRows>0; i++) {
+      c.ensureChunk(i);
+    }
+    for (int row=0; row<numRows; row++) {
+      c.setMissing(row);
+    }
+    return c;
+  }
+  
+  /**
+   * Appends the current line of {@code t}.
+   * @param t
+   */
+  void addRow(CSVTokenizer t) {
+    int n = t.getNumberOfCells();
+    if (n>columns.length) {
+      int old = columns.length;
+      columns = Arrays.copyOf(columns, n);
+      for (int i=old; i<n; i++) {
+        columns[i] = createColumn(i);
+      }
+    }
+    int row = numRows;
+    int chunk = row>>>CHUNK_SHIFT;
+    if ((row & CHUNK_MASK)==0) {
+      rowLengths = Column.grow(rowLengths, chunk+1);
+      rowLengths[chunk] = new int[CHUNK_SIZE];
+      for (Column c : columns) {
+        c.ensureChunk(chunk);
+      }
+    }
+    rowLengths[chunk][row & CHUNK_MASK] = n;
+    for (int i=0; i<n; i++) {
+      columns[i].set(row, t, i);
+    }
+    for (int i=n; i<columns.length; i++) {
+      columns[i].setMissing(row);
+    }
+    numRows++;
+  }
+  
+  /**
+   * @return the number of rows (without headers).
+   */
+  public int getNumberOfRows() {
+    return numRows;
+  }
+  
+  /**
+   * @return the maximum number of cells in a row.
+   */
+  public int getNumberOfColumns() {
+    return columns.length;
+  }
+  
+  /**
+   * @return {@code true} if any column is declared as {@link Integer} or
+   * {@link Double}, i.e., the text of its cells is not preserved.
+   */
+  boolean hasNumericColumns() {
+    if (columnTypes!=null) {
+      for (Class<?> type : columnTypes.values()) {
+        if (!String.class.equals(type)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * @param row
+   * @return the number of cells in {@code row}.
+   */
+  public int getRowLength(int row) {
+    checkRow(row);
+    return rowLengths[row>>>CHUNK_SHIFT][row & CHUNK_MASK];
+  }
+  
+  /**
+   * @param row
+   */
+  private void checkRow(int row) {
+    if (row<0 || row>=numRows) {
+      throw new IndexOutOfBoundsException("Row " + row + " of " + numRows);
+    }
+  }
+  
+  /**
+   * @param column
+   * @return {@link Integer}, {@link Double} or {@link String}.
+   */
+  public Class<?> getColumnType(int column) {
+    Column c = columns[column];
+    if (c instanceof IntColumn) {
+      return Integer.class;
+    } else if (c instanceof DoubleColumn) {
+      return Double.class;
+    }
+    return String.class;
+  }
+  
+  /**
+   * @param row
+   * @param column
+   * @return the cell as string or {@code null} if it is missing.
+   */
+  public String get(int row, int column) {
+    checkRow(row);
+    if (column<0 || column>=columns.length) {
+      return null;
+    }
+    return columns[column].getString(row);
+  }
+  
+  /**
+   * @param row
+   * @param column an {@code int} column.
+   * @return the value or {@link #MISSING_INT}.
+   */
+  public int getInt(int row, int column) {
+    checkRow(row);
+    return ((IntColumn) getTyped(column, IntColumn.class)).get(row);
+  }
+  
+  /**
+   * @param row
+   * @param column a {@code double} or {@code int} column.
+   * @return the value or {@link Double#NaN}.
+   */
+  public double getDouble(int row, int column) {
+    checkRow(row);
+    if (columns[column] instanceof IntColumn) {
+      int v = ((IntColumn) columns[column]).get(row);
+      return v==MISSING_INT ? Double.NaN : v;
+    }
+    return ((DoubleColumn) getTyped(column, DoubleColumn.class)).get(row);
+  }
+  
+  /**
+   * @param column
+   * @param type
+   * @return the column, if it has the given type.
+   * @throws IllegalArgumentException otherwise.
+   */
+  private Column getTyped(int column, Class<? extends Column> type) {
+    Column c = columns[column];
+    if (!type.isInstance(c)) {
+      throw new IllegalArgumentException("Column " + column + " is of type " + getColumnType(column).getSimpleName());
+    }
+    return c;
+  }
+  
+  /**
+   * @param column an {@code int} column.
+   * @return all values of {@code column}.
+   */
+  public int[] getIntColumn(int column) {
+    IntColumn c = (IntColumn) getTyped(column, IntColumn.class);
+    int[] ret = new int[numRows];
+    for (int chunk=0, row=0; row<numRows; chunk++, row+=CHUNK_SIZE) {
+      System.arraycopy(c.chunks[chunk], 0, ret, row, Math.min(CHUNK_SIZE, numRows-row));
+    }
+    return ret;
+  }
+  
+  /**
+   * @param column a {@code double} or {@code int} column.
+   * @return all values of {@code column}.
+   */
+  public double[] getDoubleColumn(int column) {
+    double[] ret = new double[numRows];
+    if (columns[column] instanceof IntColumn) {
+      for (int row=0; row<numRows; row++) {
+        ret[row] = getDouble(row, column);
+      }
+      return ret;
+    }
+    DoubleColumn c = (DoubleColumn) getTyped(column, DoubleColumn.class);
+    for (int chunk=0, row=0; row<numRows; chunk++, row+=CHUNK_SIZE) {
+      System.arraycopy(c.chunks[chunk], 0, ret, row, Math.min(CHUNK_SIZE, numRows-row));
+    }
+    return ret;
+  }
+  
+  /**
+   * Like {@link CSVReader#getColumn(int)}, only rows that contain
+   * {@code column} are returned.
+   * @param column
+   * @param maxRows maximum number of returned rows or 0 for all.
+   * @return the cells of {@code column} as strings.
+   */
+  public String[] getColumn(int column, int maxRows) {
+    int n = 0;
+    String[] ret = new String[numRows];
+    for (int row=0; row<numRows && (maxRows<=0 || n<maxRows); row++) {
+      if (getRowLength(row)>column) {
+        ret[n++] = columns[column].getString(row);
+      }
+    }
+    return n==ret.length ? ret : Arrays.copyOf(ret, n);
+  }
+  
+  /**
+   * @param row
+   * @return all cells of {@code row}.
+   */
+  public String[] getRow(int row) {
+    String[] ret = new String[getRowLength(row)];
+    for (int i=0; i<ret.length; i++) {
+      ret[i] = columns[i].getString(row);
+    }
+    return ret;
+  }
+  
+  /**
+   * Removes the content of a column to free memory. Values of that
+   * column will be {@code null} afterwards.
+   * @param column
+   */
+  void setNull(int column) {
+    if (column>=0 && column<columns.length) {
+      Column c = new StringColumn();
+      for (int i=0; i<=((numRows-1)>>>CHUNK_SHIFT) && numRows>0; i++) {
+        c.ensureChunk(i);
+      }
+      columns[column] = c;
+    }
+  }
+  
+  /**
+   * @return all rows of this table.
+   */
+  public String[][] toArray() {
+    String[][] ret = new String[numRows][];
+    for (int row=0; row<numRows; row++) {
+      ret[row] = getRow(row);
+    }
+    return ret;
+  }
+  
+}
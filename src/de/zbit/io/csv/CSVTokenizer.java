@@ -0,0 +1,699 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.io.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Splits lines into cells without creating intermediate objects.
+ * Characters are scanned once from a reusable buffer, using primitive
+ * lookups for separators and string indicators. Only the start and end
+ * offsets of each cell are recorded. Cells are converted to
+ * {@link String}s lazily, by {@link #get(int)}, or written into a
+ * caller-supplied array by {@link #toArray(String[])}.
+ * 
+ * <p>The splitting is equivalent to {@link CSVReader#splitLine(String)}
+ * (including trimming, removal of string indicators at cell start and
+ * end and columns that should be set to {@code null}). Use
+ * {@link CSVReader#nextTokenizedLine()} to get a configured instance for
+ * a file, or {@link CSVReader#createTokenizer()} to split single lines.
+ * 
+ * <p>This class is not thread-safe. All cells are only valid until the
+ * next line is read or tokenized.
+ * 
+ * @version $Rev$
+ */
+public class CSVTokenizer {
+  
+  /**
+   * Initial size of the character buffer.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 1<<16;
+  
+  /**
+   * Characters, matched by {@link CSVReader}'s whitespace separator '\u0001'
+   * (equal to the regex "\\s").
+   */
+  private static final String WHITESPACE = " \t\n\u000B\f\r";
+  
+  /**
+   * The separator char. '\u0001' denotes any whitespace.
+   */
+  private final char separator;
+  
+  /**
+   * @see CSVReader#setTreatMultipleConsecutiveSeparatorsAsOne(boolean)
+   */
+  private final boolean skipConsecutiveSeparators;
+  
+  /**
+   * Index (plus one) of each ASCII string indicator.
+   */
+  private final byte[] indicatorIndex = new byte[128];
+  
+  /**
+   * String indicators above the ASCII range, searched linearly.
+   */
+  private final char[] otherIndicators;
+  
+  /**
+   * Number of string indicators.
+   */
+  private final int numIndicators;
+  
+  /**
+   * Removes " and ' at cell start and end.
+   */
+  boolean removeStringIndicatorsAtCellStartEnd = true;
+  
+  /**
+   * If the number of columns in a line differs from this, splitting is
+   * retried without considering string indicators (like
+   * {@link CSVReader}). Negative if unknown.
+   */
+  int expectedColumns = -1;
+  
+  /**
+   * Columns that should always be {@code null}.
+   */
+  boolean[] nullColumns = null;
+  
+  /**
+   * Input source if lines are read by {@link #readLine()}.
+   */
+  private Reader in = null;
+  
+  /**
+   * Read buffer of {@link #in}. The current line is located at
+   * {@code [lineStart, lineEnd)} in {@link #chars}.
+   */
+  private char[] buffer = null;
+  private int position = 0;
+  private int limit = 0;
+  private boolean endOfInput = false;
+  
+  /**
+   * If the last line ended with '\r', a following '\n' is skipped.
+   */
+  private boolean skipLineFeed = false;
+  
+  /**
+   * Characters of the current line.
+   */
+  private char[] chars = new char[0];
+  private int lineStart = 0;
+  private int lineEnd = 0;
+  
+  /**
+   * Used by {@link #tokenize(String)}.
+   */
+  private char[] scratch = null;
+  
+  /**
+   * Start and end offsets of all cells in {@link #chars}.
+   */
+  private int[] starts = new int[16];
+  private int[] ends = new int[16];
+  private int numCells = 0;
+  
+  /**
+   * Second set of offsets, used when a line is split again.
+   */
+  private int[] otherStarts = new int[16];
+  private int[] otherEnds = new int[16];
+  
+  /**
+   * Cells that have already been converted to strings.
+   */
+  private String[] materialized = new String[16];
+  
+  /**
+   * Creates a tokenizer with '"' as string indicator.
+   * @param separator the column separator. '\u0001' denotes any whitespace.
+   * @param treatMultipleConsecutiveSeparatorsAsOne
+   */
+  public CSVTokenizer(char separator, boolean treatMultipleConsecutiveSeparatorsAsOne) {
+    this(separator, treatMultipleConsecutiveSeparatorsAsOne, CSVReader.DEFAULT_STRING_INDICATORS);
+  }
+  
+  /**
+   * @param separator the column separator. '\u0001' denotes any whitespace.
+   * @param treatMultipleConsecutiveSeparatorsAsOne
+   * @param stringIndicators separators between two of these chars are ignored.
+   */
+  public CSVTokenizer(char separator, boolean treatMultipleConsecutiveSeparatorsAsOne, char... stringIndicators) {
+    super();
+    if (stringIndicators.length>Byte.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many string indicators.");
+    }
+    this.separator = separator;
+    this.skipConsecutiveSeparators = treatMultipleConsecutiveSeparatorsAsOne;
+    this.numIndicators = stringIndicators.length;
+    StringBuilder other = new StringBuilder();
+    for (int i=0; i<stringIndicators.length; i++) {
+      char c = stringIndicators[i];
+      if (c<indicatorIndex.length) {
+        indicatorIndex[c] = (byte) (i+1);
+      } else {
+        other.append(c);
+      }
+    }
+    otherIndicators = other.toString().toCharArray();
+  }
+  
+  /**
+   * @param b if {@code true}, " and ' are removed at cell start and end.
+   */
+  public void setRemoveStringIndiciatorsAtCellStartEnd(boolean b) {
+    removeStringIndicatorsAtCellStartEnd = b;
+  }
+  
+  /**
+   * Sets the source for {@link #readLine()}. Characters are read in
+   * large blocks, so {@code in} should not be read by anyone else.
+   * @param in
+   */
+  public void setInput(Reader in) {
+    this.in = in;
+    if (buffer==null) {
+      buffer = new char[DEFAULT_BUFFER_SIZE];
+    }
+    position = 0;
+    limit = 0;
+    endOfInput = (in==null);
+    skipLineFeed = false;
+    clearLine(buffer);
+  }
+  
+  /**
+   * Resets the current line.
+   * @param source
+   */
+  private void clearLine(char[] source) {
+    chars = source;
+    lineStart = 0;
+    lineEnd = 0;
+    for (int i=0; i<numCells; i++) {
+      materialized[i] = null;
+    }
+    numCells = 0;
+  }
+  
+  /**
+   * Reads the next line from the input, without splitting it. Lines
+   * end with '\n', '\r' or "\r\n", just like
+   * {@link java.io.BufferedReader#readLine()}.
+   * @return {@code false} if the end of the input has been reached.
+   * @throws IOException
+   */
+  public boolean readLine() throws IOException {
+    clearLine(buffer);
+    if (skipLineFeed) {
+      if (position>=limit) {
+        fillBuffer();
+      }
+      if (position<limit && buffer[position]=='\n') {
+        position++;
+      }
+      skipLineFeed = false;
+    }
+    int scanned = position;
+    while (true) {
+      for (int i=scanned; i<limit; i++) {
+        char c = buffer[i];
+        if (c=='\n' || c=='\r') {
+          chars = buffer;
+          lineStart = position;
+          lineEnd = i;
+          position = i+1;
+          skipLineFeed = (c=='\r');
+          return true;
+        }
+      }
+      // fillBuffer() moves the unread characters to the buffer start
+      scanned = limit-position;
+      if (!fillBuffer()) {
+        if (position<limit) {
+          chars = buffer;
+          lineStart = position;
+          lineEnd = limit;
+          position = limit;
+          return true;
+        }
+        return false;
+      }
+    }
+  }
+  
+  /**
+   * Moves the unread characters to the start of {@link #buffer} (growing
+   * it if required) and appends characters from {@link #in}.
+   * @return {@code false} if no more characters are available.
+   * @throws IOException
+   */
+  private boolean fillBuffer() throws IOException {
+    if (endOfInput) {
+      return false;
+    }
+    int remaining = limit-position;
+    if (position>0) {
+      System.arraycopy(buffer, position, buffer, 0, remaining);
+    } else if (remaining==buffer.length) {
+      buffer = Arrays.copyOf(buffer, buffer.length*2);
+    }
+    position = 0;
+    limit = remaining;
+    int r;
+    do {
+      r = in.read(buffer, limit, buffer.length-limit);
+    } while (r==0);
+    if (r<0) {
+      endOfInput = true;
+      return false;
+    }
+    limit += r;
+    return true;
+  }
+  
+  /**
+   * Removes leading and trailing whitespace from the current line, like
+   * {@link String#trim()}. Must be called before {@link #split()}.
+   */
+  public void trimLine() {
+    while (lineStart<lineEnd && chars[lineStart]<=' ') {
+      lineStart++;
+    }
+    while (lineEnd>lineStart && chars[lineEnd-1]<=' ') {
+      lineEnd--;
+    }
+  }
+  
+  /**
+   * @return the number of characters in the current line.
+   */
+  public int getLineLength() {
+    return lineEnd-lineStart;
+  }
+  
+  /**
+   * @return the current line as string.
+   */
+  public String getLine() {
+    return new String(chars, lineStart, lineEnd-lineStart);
+  }
+  
+  /**
+   * Copies the given line into an internal buffer and splits it.
+   * @param line
+   * @return the number of cells.
+   */
+  public int tokenize(String line) {
+    int length = line.length();
+    if (scratch==null || scratch.length<length) {
+      scratch = new char[Math.max(length, 256)];
+    }
+    clearLine(scratch);
+    line.getChars(0, length, scratch, 0);
+    lineEnd = length;
+    return split();
+  }
+  
+  /**
+   * Splits the current line into cells.
+   * @return the number of cells.
+   */
+  public int split() {
+    for (int i=0; i<numCells; i++) {
+      materialized[i] = null;
+    }
+    scan(true);
+    if (expectedColumns>=0 && numCells!=expectedColumns && numIndicators>0) {
+      // Retry with handling separator chars between string indicators
+      // (e.g. sepChar=' ' , String s = '"a b"' => split a and b).
+      int n = numCells;
+      swapOffsets();
+      scan(false);
+      if (numCells!=expectedColumns) {
+        //... but prefer to skip matches in strings.
+        swapOffsets();
+        numCells = n;
+      }
+    }
+    postProcess();
+    return numCells;
+  }
+  
+  /**
+   * Exchanges {@link #starts} and {@link #ends} with the alternative
+   * offsets.
+   */
+  private void swapOffsets() {
+    int[] t = starts;
+    starts = otherStarts;
+    otherStarts = t;
+    t = ends;
+    ends = otherEnds;
+    otherEnds = t;
+  }
+  
+  /**
+   * @param c
+   * @return {@code true} if {@code c} separates cells.
+   */
+  private boolean isSeparator(char c) {
+    if (separator=='\u0001') {
+      return c<=' ' && WHITESPACE.indexOf(c)>=0;
+    }
+    return c==separator;
+  }
+  
+  /**
+   * @param c
+   * @return the index of {@code c} as string indicator, or -1.
+   */
+  private int indicator(char c) {
+    if (c<indicatorIndex.length) {
+      return indicatorIndex[c]-1;
+    }
+    for (int i=0; i<otherIndicators.length; i++) {
+      if (otherIndicators[i]==c) {
+        return numIndicators-otherIndicators.length+i;
+      }
+    }
+    return -1;
+  }
+  
+  /**
+   * Records the cell offsets of the current line.
+   * @param skipMatchesInStrings ignore separators between string indicators.
+   */
+  private void scan(boolean skipMatchesInStrings) {
+    numCells = 0;
+    long open = 0; // Bitmask of opened string indicators
+    int cellStart = lineStart;
+    boolean lastWasSeparator = false;
+    final char[] chars = this.chars;
+    for (int i=lineStart; i<lineEnd; i++) {
+      char c = chars[i];
+      if (skipMatchesInStrings) {
+        int pos = indicator(c);
+        if (pos>=0) {
+          open ^= (1L<<(pos&63));
+          lastWasSeparator = false;
+          continue;
+        }
+      }
+      if (open==0 && isSeparator(c)) {
+        // Skip consecutive matches
+        if (!(skipConsecutiveSeparators && lastWasSeparator)) {
+          addCell(cellStart, i);
+        }
+        cellStart = i+1;
+        lastWasSeparator = true;
+      } else {
+        lastWasSeparator = (separator=='\u0001') && isSeparator(c);
+      }
+    }
+    
+    if (separator=='\u0001') {
+      // The regex based split always adds the remaining part.
+      addCell(cellStart, lineEnd);
+      return;
+    }
+    
+    // Don't forget the last column
+    if (cellStart<lineEnd) {
+      addCell(cellStart, lineEnd);
+    }
+    // If it ends with a separator, we should add an empty column.
+    if (lastWasSeparator && open==0) {
+      if (!(skipConsecutiveSeparators && numCells>0 && ends[numCells-1]==starts[numCells-1])) {
+        addCell(lineEnd, lineEnd);
+      }
+    }
+  }
+  
+  /**
+   * @param start
+   * @param end
+   */
+  private void addCell(int start, int end) {
+    if (numCells==starts.length) {
+      starts = Arrays.copyOf(starts, numCells*2);
+      ends = Arrays.copyOf(ends, numCells*2);
+    }
+    starts[numCells] = start;
+    ends[numCells] = end;
+    numCells++;
+  }
+  
+  /**
+   * Trims all cells and removes string indicators at cell start and end.
+   */
+  private void postProcess() {
+    if (materialized.length<numCells) {
+      materialized = new String[Math.max(numCells, materialized.length*2)];
+    }
+    for (int i=0; i<numCells; i++) {
+      int s = starts[i], e = ends[i];
+      while (s<e && chars[s]<=' ') {
+        s++;
+      }
+      while (e>s && chars[e-1]<=' ') {
+        e--;
+      }
+      if (removeStringIndicatorsAtCellStartEnd && e-s>=2) {
+        char first = chars[s];
+        if ((first=='"' || first=='\'') && chars[e-1]==first) {
+          s++;
+          e--;
+        }
+      }
+      starts[i] = s;
+      ends[i] = e;
+    }
+  }
+  
+  /**
+   * @return the number of cells in the current line.
+   */
+  public int getNumberOfCells() {
+    return numCells;
+  }
+  
+  /**
+   * @param i
+   * @return {@code true} if cell {@code i} should be set to {@code null}.
+   */
+  public boolean isNull(int i) {
+    return nullColumns!=null && i<nullColumns.length && nullColumns[i];
+  }
+  
+  /**
+   * @param i
+   * @return the length of cell {@code i}.
+   */
+  public int length(int i) {
+    checkIndex(i);
+    return ends[i]-starts[i];
+  }
+  
+  /**
+   * @param i
+   * @param index
+   * @return the character at {@code index} of cell {@code i}.
+   */
+  public char charAt(int i, int index) {
+    checkIndex(i);
+    if (index<0 || index>=ends[i]-starts[i]) {
+      throw new StringIndexOutOfBoundsException(index);
+    }
+    return chars[starts[i]+index];
+  }
+  
+  /**
+   * @param i
+   */
+  private void checkIndex(int i) {
+    if (i<0 || i>=numCells) {
+      throw new IndexOutOfBoundsException("Cell " + i + " of " + numCells);
+    }
+  }
+  
+  /**
+   * The string of cell {@code i}. Strings are only created once per
+   * line and cell.
+   * @param i
+   * @return cell {@code i} or {@code null}, if this column is set to
+   * {@code null}.
+   */
+  public String get(int i) {
+    checkIndex(i);
+    if (isNull(i)) {
+      return null;
+    }
+    String s = materialized[i];
+    if (s==null) {
+      s = new String(chars, starts[i], ends[i]-starts[i]);
+      materialized[i] = s;
+    }
+    return s;
+  }
+  
+  /**
+   * Returns a view of cell {@code i}, backed by the internal buffer. The
+   * view is only valid until the next line is read.
+   * @param i
+   * @return cell {@code i} without copying its characters.
+   */
+  public CharSequence getView(int i) {
+    checkIndex(i);
+    if (isNull(i)) {
+      return null;
+    }
+    return CharBuffer.wrap(chars, starts[i], ends[i]-starts[i]);
+  }
+  
+  /**
+   * @param i
+   * @param s
+   * @return {@code true} if cell {@code i} equals {@code s}.
+   */
+  public boolean equals(int i, String s) {
+    checkIndex(i);
+    if (isNull(i) || s==null) {
+      return isNull(i) && s==null;
+    }
+    int start = starts[i];
+    int length = ends[i]-start;
+    if (length!=s.length()) {
+      return false;
+    }
+    for (int j=0; j<length; j++) {
+      if (chars[start+j]!=s.charAt(j)) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Parses cell {@code i} as decimal integer, without creating a string.
+   * @param i
+   * @return the parsed value.
+   * @throws NumberFormatException
+   */
+  public int getInt(int i) throws NumberFormatException {
+    long value = getLong(i);
+    if (value<Integer.MIN_VALUE || value>Integer.MAX_VALUE) {
+      throw new NumberFormatException("Value out of range: " + value);
+    }
+    return (int) value;
+  }
+  
+  /**
+   * Parses cell {@code i} as decimal long, without creating a string.
+   * @param i
+   * @return the parsed value.
+   * @throws NumberFormatException
+   */
+  public long getLong(int i) throws NumberFormatException {
+    checkIndex(i);
+    int s = starts[i], e = ends[i];
+    if (isNull(i) || s==e) {
+      throw new NumberFormatException("Empty cell " + i);
+    }
+    boolean negative = false;
+    if (chars[s]=='-' || chars[s]=='+') {
+      negative = (chars[s]=='-');
+      s++;
+      if (s==e) {
+        throw new NumberFormatException(new String(chars, starts[i], 1));
+      }
+    }
+    if (e-s>18) {
+      // Might overflow
+      return Long.parseLong(get(i));
+    }
+    long value = 0;
+    for (int j=s; j<e; j++) {
+      int d = chars[j]-'0';
+      if (d<0 || d>9) {
+        throw new NumberFormatException("For input string: \"" + get(i) + "\"");
+      }
+      value = value*10 + d;
+    }
+    return negative ? -value : value;
+  }
+  
+  /**
+   * Parses cell {@code i} as double. The string is not cached.
+   * @param i
+   * @return the parsed value.
+   * @throws NumberFormatException
+   */
+  public double getDouble(int i) throws NumberFormatException {
+    checkIndex(i);
+    if (isNull(i)) {
+      throw new NumberFormatException("Empty cell " + i);
+    }
+    String s = materialized[i];
+    if (s==null) {
+      s = new String(chars, starts[i], ends[i]-starts[i]);
+    }
+    return Double.parseDouble(s);
+  }
+  
+  /**
+   * Writes all cells into {@code target}. If {@code target} is too short,
+   * only the first cells are written; remaining elements are set to
+   * {@code null}.
+   * @param target
+   * @return the number of cells in the current line.
+   */
+  public int toArray(String[] target) {
+    int n = Math.min(numCells, target.length);
+    for (int i=0; i<n; i++) {
+      target[i] = get(i);
+    }
+    for (int i=n; i<target.length; i++) {
+      target[i] = null;
+    }
+    return numCells;
+  }
+  
+  /**
+   * @return all cells of the current line.
+   */
+  public String[] toArray() {
+    String[] ret = new String[numCells];
+    toArray(ret);
+    return ret;
+  }
+  
+  /* (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return Arrays.toString(toArray());
+  }
+  
+}
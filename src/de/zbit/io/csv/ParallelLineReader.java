@@ -0,0 +1,278 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.io.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import de.zbit.util.ThreadManager;
+
+/**
+ * Reads lines from an opened {@link CSVReader} in chunks and splits them
+ * into columns on multiple threads. Lines are returned in the same
+ * order as by {@link CSVReader#getNextLine()}, such that callers can
+ * process them exactly as before, while the expensive splitting is done
+ * in the background.
+ *
+ * <p>Callers, that also convert the split lines, can move this work to
+ * the worker threads with {@link #readAll(ChunkHandler)}.
+ *
+ * <p>Only a few chunks are kept in memory at any time, so arbitrary
+ * large files can be streamed. Always {@link #close()} this reader to
+ * stop the worker threads.
+ *
+ * @version $Rev$
+ */
+public class ParallelLineReader implements Closeable {
+
+  /**
+   * Processes the lines of a file chunk by chunk, see
+   * {@link ParallelLineReader#readAll(ChunkHandler)}.
+   * @param <T> the result of one chunk
+   */
+  public static interface ChunkHandler<T> {
+    /**
+     * Converts one chunk of split lines. Called concurrently on the
+     * worker threads, so this method must be thread-safe.
+     * @param lines the split lines of one chunk
+     * @return the result of this chunk
+     * @throws Exception
+     */
+    public T process(String[][] lines) throws Exception;
+
+    /**
+     * Called on the thread of {@link ParallelLineReader#readAll(ChunkHandler)}
+     * with the results of all chunks, in the order of the file.
+     * @param result
+     * @throws Exception
+     */
+    public void merge(T result) throws Exception;
+  }
+
+  /**
+   * Number of lines that are split together by one thread.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+  private final CSVReader reader;
+
+  /**
+   * Splits the chunks. {@code null} if only one thread should be used.
+   */
+  private ExecutorService pool;
+
+  /**
+   * Chunks that are currently split, in the order of the file.
+   */
+  private final LinkedList<Future<String[][]>> pending = new LinkedList<Future<String[][]>>();
+
+  /**
+   * Maximum size of {@link #pending}.
+   */
+  private final int maxPending;
+
+  private final int chunkSize;
+
+  /**
+   * The chunk that is currently returned.
+   */
+  private String[][] current = null;
+  private int currentIndex = 0;
+
+  /**
+   * {@code true} if all lines have been read from {@link #reader}.
+   */
+  private boolean endOfFile = false;
+
+  /**
+   * @param reader an opened {@link CSVReader}.
+   * @param threads number of threads to split lines. If this is 1 or
+   * less, lines are simply read with {@link CSVReader#getNextLine()}.
+   */
+  public ParallelLineReader(CSVReader reader, int threads) {
+    this(reader, threads, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * @param reader an opened {@link CSVReader}.
+   * @param threads number of threads to split lines.
+   * @param chunkSize number of lines that are split together.
+   */
+  public ParallelLineReader(CSVReader reader, int threads, int chunkSize) {
+    super();
+    this.reader = reader;
+    this.chunkSize = Math.max(1, chunkSize);
+    this.maxPending = Math.max(1, threads) * 2;
+    if (threads>1) {
+      pool = ThreadManager.createDaemonPool("ParallelLineReader", threads);
+    }
+  }
+
+  /**
+   * @return the next line, split into columns, or {@code null} if the
+   * end of the file has been reached.
+   * @throws IOException
+   * @see CSVReader#getNextLine()
+   */
+  public String[] getNextLine() throws IOException {
+    if (pool==null) {
+      return reader.getNextLine();
+    }
+    while (current==null || currentIndex>=current.length) {
+      current = null;
+      fill();
+      if (pending.isEmpty()) {
+        return null;
+      }
+      current = await(pending.removeFirst());
+      currentIndex = 0;
+    }
+    String[] line = current[currentIndex];
+    current[currentIndex++] = null; // Allow garbage collection
+    return line;
+  }
+
+  /**
+   * Reads and submits chunks, until {@link #maxPending} chunks are in
+   * progress or the end of the file has been reached.
+   * @throws IOException
+   */
+  private void fill() throws IOException {
+    fill(pending, null);
+  }
+
+  /**
+   * Reads and submits chunks to {@code queue}, until {@link #maxPending}
+   * chunks are in progress or the end of the file has been reached.
+   * @param queue
+   * @param handler converts the split lines of each chunk. If
+   * {@code null}, the split lines themselves are the result.
+   * @throws IOException
+   */
+  private <T> void fill(LinkedList<Future<T>> queue, final ChunkHandler<T> handler) throws IOException {
+    while (!endOfFile && queue.size()<maxPending) {
+      final String[] lines = new String[chunkSize];
+      int n = 0;
+      String line;
+      while (n<chunkSize && (line = reader.getNextUnsplitLine())!=null) {
+        lines[n++] = line;
+      }
+      if (n<chunkSize) {
+        endOfFile = true;
+      }
+      if (n==0) {
+        break;
+      }
+      final int count = n;
+      queue.add(pool.submit(new Callable<T>() {
+        @SuppressWarnings("unchecked")
+        public T call() throws Exception {
+          String[][] ret = new String[count][];
+          for (int i=0; i<count; i++) {
+            ret[i] = reader.splitLine(lines[i]);
+          }
+          return handler==null ? (T) ret : handler.process(ret);
+        }
+      }));
+    }
+  }
+
+  /**
+   * Reads all remaining lines and converts them with
+   * {@link ChunkHandler#process(String[][])} on the worker threads. The
+   * results are passed to {@link ChunkHandler#merge(Object)} on the
+   * calling thread, in the order of the file. Must not be mixed with
+   * {@link #getNextLine()}.
+   * @param handler
+   * @throws IOException if reading the file or the handler fails.
+   */
+  public <T> void readAll(ChunkHandler<T> handler) throws IOException {
+    if (current!=null || !pending.isEmpty()) {
+      throw new IllegalStateException("Lines have already been read with getNextLine().");
+    }
+    try {
+      if (pool==null) {
+        String[][] lines = new String[chunkSize][];
+        int n = 0;
+        String[] line;
+        while ((line = reader.getNextLine())!=null) {
+          lines[n++] = line;
+          if (n==chunkSize) {
+            handler.merge(handler.process(lines));
+            lines = new String[chunkSize][];
+            n = 0;
+          }
+        }
+        if (n>0) {
+          String[][] rest = new String[n][];
+          System.arraycopy(lines, 0, rest, 0, n);
+          handler.merge(handler.process(rest));
+        }
+        return;
+      }
+      
+      LinkedList<Future<T>> queue = new LinkedList<Future<T>>();
+      fill(queue, handler);
+      while (!queue.isEmpty()) {
+        T result = await(queue.removeFirst());
+        // Keep the workers busy, while this thread merges the result
+        fill(queue, handler);
+        handler.merge(result);
+      }
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e.getLocalizedMessage(), e);
+    }
+  }
+
+  /**
+   * @param chunk
+   * @return the result of {@code chunk}.
+   * @throws IOException
+   */
+  private <T> T await(Future<T> chunk) throws IOException {
+    try {
+      return chunk.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getLocalizedMessage());
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause()!=null?e.getCause().getLocalizedMessage():e.getLocalizedMessage(), e.getCause());
+    }
+  }
+
+  /**
+   * Stops all worker threads and closes the underlying {@link CSVReader}.
+   */
+  public void close() throws IOException {
+    if (pool!=null) {
+      pool.shutdownNow();
+      pool = null;
+    }
+    pending.clear();
+    current = null;
+    reader.close();
+  }
+
+}
@@ -19,6 +19,7 @@ package de.zbit.kegg;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -119,7 +120,7 @@ public class KGMLWriter {
    */
   public static void writeKGML(de.zbit.kegg.parser.pathway.Pathway keggPW, String fileName,
     boolean writeEntryExtended) {
-    ArrayList<de.zbit.kegg.parser.pathway.Entry> entries = keggPW.getEntries();
+    List<de.zbit.kegg.parser.pathway.Entry> entries = keggPW.getEntries();
     
     if (entries.size() > 0) {
       int counter = 0;
@@ -217,7 +218,7 @@ public class KGMLWriter {
     doc.appendChild(rootElement);
     
     // kegg entries
-    ArrayList<Entry>  entries = keggPW.getEntries();
+    List<Entry>  entries = keggPW.getEntries();
     if(entries.size()>0) {
       for (Entry entry : entries) {
         Element newChild = doc.createElement("entry");
@@ -0,0 +1,307 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.kegg;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLStreamException;
+
+import de.zbit.kegg.api.cache.KeggInfoManagement;
+import de.zbit.kegg.parser.KeggStreamParser;
+import de.zbit.kegg.parser.pathway.Pathway;
+import de.zbit.util.ThreadManager;
+import de.zbit.util.progressbar.AbstractProgressBar;
+
+/**
+ * Imports a collection of Kegg pathways (e.g., all reference pathways).
+ * In contrast to calling
+ * {@link KeggTools#preFetchInformation(Pathway, KeggInfoManagement, boolean, AbstractProgressBar)}
+ * and {@link KeggTools#autocompleteReactions(Pathway, KeggInfoManagement, boolean)}
+ * for each pathway,
+ * <ol>
+ * <li>all KGML files are parsed in parallel with the {@link KeggStreamParser},</li>
+ * <li>the ids to precache are collected from all pathways, such that
+ * every id (e.g., a compound that occurs in many pathways) is fetched
+ * only once,</li>
+ * <li>ids that are not yet cached are fetched in batches of
+ * {@link KeggInfoManagement#getBatchSize()} ids, with up to
+ * {@link #getMaxConcurrentFetches()} requests at a time, and</li>
+ * <li>synonyms and missing reactions are added to all pathways
+ * concurrently.</li>
+ * </ol>
+ * The result is equal to processing all pathways one by one.
+ * 
+ * @version $Rev$
+ */
+public class KeggCollectionImporter {
+  
+  private static final transient Logger log = Logger.getLogger(KeggCollectionImporter.class.getName());
+  
+  /**
+   * Default for {@link #getMaxConcurrentFetches()}.
+   */
+  public static final int DEFAULT_CONCURRENT_FETCHES = 4;
+  
+  /**
+   * The cache for all Kegg ids.
+   */
+  private final KeggInfoManagement manager;
+  
+  /**
+   * See {@link KeggTools#autocompleteReactions(Pathway, KeggInfoManagement, boolean)}.
+   */
+  private boolean autocompleteReactions = false;
+  private boolean createOneReactionForEachID = false;
+  
+  /**
+   * Maximum number of batches that are fetched at the same time.
+   */
+  private int maxConcurrentFetches = DEFAULT_CONCURRENT_FETCHES;
+  
+  /**
+   * @param manager the cache for all Kegg ids.
+   */
+  public KeggCollectionImporter(KeggInfoManagement manager) {
+    super();
+    this.manager = manager;
+  }
+  
+  /**
+   * @param autocompleteReactions if {@code true}, reactants and enzymes of
+   * all reactions are precached and missing reactions are added to all
+   * pathways.
+   * @param createOneReactionForEachID see
+   * {@link KeggTools#autocompleteReactions(Pathway, KeggInfoManagement, boolean)}.
+   */
+  public void setAutocompleteReactions(boolean autocompleteReactions, boolean createOneReactionForEachID) {
+    this.autocompleteReactions = autocompleteReactions;
+    this.createOneReactionForEachID = createOneReactionForEachID;
+  }
+  
+  /**
+   * @return {@code true} if missing reactions are added to all pathways.
+   */
+  public boolean isAutocompleteReactions() {
+    return autocompleteReactions;
+  }
+  
+  /**
+   * @param maxConcurrentFetches maximum number of batches that are fetched
+   * at the same time. If 1 or less, all batches are fetched one after
+   * another.
+   */
+  public void setMaxConcurrentFetches(int maxConcurrentFetches) {
+    this.maxConcurrentFetches = Math.max(1, maxConcurrentFetches);
+  }
+  
+  /**
+   * @return maximum number of batches that are fetched at the same time.
+   */
+  public int getMaxConcurrentFetches() {
+    return maxConcurrentFetches;
+  }
+  
+  /**
+   * Parses all given KGML files in parallel and processes all contained
+   * pathways with {@link #process(Collection, AbstractProgressBar)}.
+   * @param filenames
+   * @param progress might be null
+   * @return all pathways of each file, in the order of {@code filenames}.
+   * @throws IOException if any file could not be read.
+   * @throws XMLStreamException if any file is not a valid xml document.
+   */
+  public Map<String, List<Pathway>> importPathways(Collection<String> filenames, AbstractProgressBar progress)
+    throws IOException, XMLStreamException {
+    Map<String, List<Pathway>> ret = KeggStreamParser.parse(filenames);
+    List<Pathway> pathways = new ArrayList<Pathway>();
+    for (List<Pathway> list : ret.values()) {
+      pathways.addAll(list);
+    }
+    try {
+      process(pathways, progress);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getLocalizedMessage());
+    }
+    return ret;
+  }
+  
+  /**
+   * Precaches all information, that is required by the given pathways,
+   * adds synonyms to the name map of each pathway and, if
+   * {@link #isAutocompleteReactions()}, adds missing reactions.
+   * @param pathways
+   * @param progress might be null
+   * @throws InterruptedException
+   */
+  public void process(Collection<Pathway> pathways, AbstractProgressBar progress) throws InterruptedException {
+    // Each pathway must only be processed once.
+    Set<Pathway> unique = Collections.newSetFromMap(new IdentityHashMap<Pathway, Boolean>());
+    List<Pathway> list = new ArrayList<Pathway>(pathways.size());
+    for (Pathway p : pathways) {
+      if (p!=null && unique.add(p)) {
+        list.add(p);
+      }
+    }
+    
+    Set<String> preFetchIDs = new HashSet<String>();
+    for (Pathway p : list) {
+      KeggTools.getPreFetchIDs(p, preFetchIDs);
+    }
+    precache(preFetchIDs, progress);
+    
+    if (autocompleteReactions) {
+      // Requires the reactions, that have been cached above
+      preFetchIDs.clear();
+      for (Pathway p : list) {
+        KeggTools.getReactionPreFetchIDs(p, manager, preFetchIDs);
+      }
+      precache(preFetchIDs, progress);
+    }
+    
+    // All information is cached. Process the pathways concurrently.
+    if (progress!=null) {
+      progress.setNumberOfTotalCalls(list.size());
+    }
+    LinkedList<Future<?>> pending = new LinkedList<Future<?>>();
+    for (final Pathway p : list) {
+      pending.add(ThreadManager.getSharedDaemonPool("KeggCollectionImporter").submit(new Runnable() {
+        public void run() {
+          KeggTools.putSynonymsInNameMap(p, manager);
+          if (autocompleteReactions) {
+            KeggTools.autocompleteReactions(p, manager, createOneReactionForEachID);
+          }
+        }
+      }));
+    }
+    awaitAll(pending, progress);
+  }
+  
+  /**
+   * Fetches all ids, that are not yet cached, in batches of
+   * {@link KeggInfoManagement#getBatchSize()} ids.
+   * @param ids
+   * @param progress might be null
+   * @throws InterruptedException
+   */
+  private void precache(Collection<String> ids, AbstractProgressBar progress) throws InterruptedException {
+    List<String> unknownIDs = new ArrayList<String>();
+    for (String id : ids) {
+      if (id!=null && !manager.isCached(id)) {
+        unknownIDs.add(id);
+      }
+    }
+    if (unknownIDs.isEmpty()) {
+      return;
+    }
+    int batchSize = Math.max(1, manager.getBatchSize());
+    int batches = (unknownIDs.size() + batchSize - 1) / batchSize;
+    log.fine(String.format("Precaching %s of %s Kegg ids in %s batches.", unknownIDs.size(), ids.size(), batches));
+    if (progress!=null) {
+      progress.setNumberOfTotalCalls(batches);
+    }
+    
+    LinkedList<Future<?>> pending = new LinkedList<Future<?>>();
+    boolean submitted = false;
+    try {
+      for (int i=0; i<unknownIDs.size(); i+=batchSize) {
+        List<String> sub = unknownIDs.subList(i, Math.min(i+batchSize, unknownIDs.size()));
+        final String[] batch = sub.toArray(new String[sub.size()]);
+        while (pending.size()>=maxConcurrentFetches) {
+          await(pending.removeFirst(), progress);
+        }
+        pending.add(ThreadManager.getSharedDaemonPool("KeggCollectionImporter").submit(new Runnable() {
+          public void run() {
+            manager.precacheIDs(batch);
+          }
+        }));
+      }
+      submitted = true;
+    } finally {
+      if (!submitted) {
+        cancel(pending);
+      }
+    }
+    awaitAll(pending, progress);
+  }
+  
+  /**
+   * Waits for all tasks. If any task fails, all other tasks are
+   * cancelled.
+   * @param pending
+   * @param progress might be null
+   * @throws InterruptedException
+   */
+  private static void awaitAll(LinkedList<Future<?>> pending, AbstractProgressBar progress) throws InterruptedException {
+    boolean done = false;
+    try {
+      while (!pending.isEmpty()) {
+        await(pending.removeFirst(), progress);
+      }
+      done = true;
+    } finally {
+      if (!done) {
+        cancel(pending);
+      }
+    }
+  }
+  
+  /**
+   * @param pending
+   */
+  private static void cancel(Collection<Future<?>> pending) {
+    for (Future<?> f : pending) {
+      f.cancel(false);
+    }
+    pending.clear();
+  }
+  
+  /**
+   * @param task
+   * @param progress might be null
+   * @throws InterruptedException
+   */
+  private static void await(Future<?> task, AbstractProgressBar progress) throws InterruptedException {
+    try {
+      task.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      } else if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+    if (progress!=null) {
+      progress.DisplayBar();
+    }
+  }
+  
+}
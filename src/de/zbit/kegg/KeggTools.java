@@ -16,13 +16,16 @@
  */
 package de.zbit.kegg;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -36,8 +39,6 @@ import de.zbit.kegg.parser.pathway.GraphicsType;
 import de.zbit.kegg.parser.pathway.Pathway;
 import de.zbit.kegg.parser.pathway.Reaction;
 import de.zbit.kegg.parser.pathway.ReactionComponent;
-import de.zbit.kegg.parser.pathway.Relation;
-import de.zbit.kegg.parser.pathway.SubType;
 import de.zbit.util.progressbar.AbstractProgressBar;
 
 /**
@@ -303,6 +304,34 @@ public class KeggTools {
     AbstractProgressBar progress) {
     // PreFetch infos. Enormous performance improvement!
     Collection<String> preFetchIDs = new HashSet<String>();
+    getPreFetchIDs(p, preFetchIDs);
+    manager.precacheIDs(preFetchIDs.toArray(new String[preFetchIDs.size()]), progress);
+    
+    
+    if (autocompleteReactions) {
+      // Also prefetch all Enzymes, and reactants of every reaction, even if
+      // it's not in the KGML document.
+      preFetchIDs.clear();
+      getReactionPreFetchIDs(p, manager, preFetchIDs);
+      manager.precacheIDs(preFetchIDs.toArray(new String[preFetchIDs.size()]), progress);
+    }
+    
+    // Add Synonyms to list. This step is MANDATORY AND VERY IMPORTANT
+    putSynonymsInNameMap(p, manager);
+    
+    // Add relations?
+    // No, because there's nothing to fetch here... (can't query relations)
+    // -------------------------
+  }
+  
+  /**
+   * Adds the ids of the organism, the pathway, all entries and all
+   * reactions of {@code p} to {@code preFetchIDs}.
+   * @param p
+   * @param preFetchIDs
+   * @see #preFetchInformation(Pathway, KeggInfoManagement, boolean, AbstractProgressBar)
+   */
+  static void getPreFetchIDs(Pathway p, Collection<String> preFetchIDs) {
     preFetchIDs.add("gn:" + p.getOrg());
     preFetchIDs.add(p.getName());
     for (Entry entry : p.getEntries()) {
@@ -317,45 +346,55 @@ public class KeggTools {
         preFetchIDs.add(ko_id);
       }
     }
-    manager.precacheIDs(preFetchIDs.toArray(new String[preFetchIDs.size()]), progress);
-    
-    
-    if (autocompleteReactions) {
-      // Also prefetch all Enzymes, and reactants of every reaction, even if
-      // it's not in the KGML document.
-      preFetchIDs.clear();
-      for (Reaction r : p.getReactions()) {
-        for (String ko_id : r.getName().split(" ")) {
-          KeggInfos infos = KeggInfos.get(ko_id, manager);
+  }
+  
+  /**
+   * Adds the ids of all reactants and enzymes of all reactions of
+   * {@code p} to {@code preFetchIDs}. The reactions themselves should
+   * be cached in {@code manager}.
+   * @param p
+   * @param manager
+   * @param preFetchIDs
+   * @see #getPreFetchIDs(Pathway, Collection)
+   */
+  static void getReactionPreFetchIDs(Pathway p, KeggInfoManagement manager, Collection<String> preFetchIDs) {
+    for (Reaction r : p.getReactions()) {
+      for (String ko_id : r.getName().split(" ")) {
+        KeggInfos infos = KeggInfos.get(ko_id, manager);
 
-          if (infos.getEquation()!=null) {
-            String[] reactants = infos.getEquation().replace("<=>", " + ").trim().split(Pattern.quote(" + "));
-            for (String reactant : reactants) {
-              reactant = removeReactantPrefixAndSuffix(reactant.trim());
-              
-              if (!reactant.contains(":")) {
-                reactant = KeggInfos.appendPrefix(reactant);
-              }
-              
-              //if (!preFetchIDs.contains(reactant)) 
-              preFetchIDs.add(reactant);
+        if (infos.getEquation()!=null) {
+          String[] reactants = infos.getEquation().replace("<=>", " + ").trim().split(Pattern.quote(" + "));
+          for (String reactant : reactants) {
+            reactant = removeReactantPrefixAndSuffix(reactant.trim());
+            
+            if (!reactant.contains(":")) {
+              reactant = KeggInfos.appendPrefix(reactant);
             }
+            
+            //if (!preFetchIDs.contains(reactant)) 
+            preFetchIDs.add(reactant);
           }
-          if (infos.getEnzymes()!=null) {
-            String[] enzymes = infos.getEnzymes().trim().replaceAll("\\s+", " ").split(" ");
-            for (String string : enzymes) {
-              String toAdd = "EC:"+string;
-              //if (!preFetchIDs.contains(toAdd))
-              preFetchIDs.add(toAdd);
-            }
+        }
+        if (infos.getEnzymes()!=null) {
+          String[] enzymes = infos.getEnzymes().trim().replaceAll("\\s+", " ").split(" ");
+          for (String string : enzymes) {
+            String toAdd = "EC:"+string;
+            //if (!preFetchIDs.contains(toAdd))
+            preFetchIDs.add(toAdd);
           }
-          
         }
+        
       }
-      manager.precacheIDs(preFetchIDs.toArray(new String[preFetchIDs.size()]), progress);
     }
-    
-    // Add Synonyms to list. This step is MANDATORY AND VERY IMPORTANT
+  }
+  
+  /**
+   * Adds the synonyms of all entries to the name map of {@code p}.
+   * All entries should be cached in {@code manager}.
+   * @param p
+   * @param manager
+   */
+  static void putSynonymsInNameMap(Pathway p, KeggInfoManagement manager) {
     for (Entry entry: p.getEntries()) {
       for (String ko_id : entry.getName().split(" ")) {
         // We should have cached information about all entries!
@@ -370,15 +409,12 @@ public class KeggTools {
         }
       }
     }
-    
-    // Add relations?
-    // No, because there's nothing to fetch here... (can't query relations)
-    // -------------------------
   }
   
   /**
    * Retrieves the Kegg Enzyme IDs for the given entry.
-   * You should precache this in the manager!
+   * You should precache this in the manager! Otherwise, all ids of the
+   * entry are fetched in one batch.
    * @param manager
    * @return List<String> (empty list if none available).
    */
@@ -390,8 +426,14 @@ public class KeggTools {
 //      modifier.add(entry.getName().contains(":")?
 //          entry.getName().substring(entry.getName().indexOf(":")+1):entry.getName());
 //    } else {
-      for (String ko_id : entry.getName().split(" ")) {
-        KeggInfos infos = KeggInfos.get(ko_id, manager);
+      String[] ko_ids = entry.getName().split(" ");
+      // Request all ids before waiting, to let the manager batch them
+      List<Future<KeggInfos>> requests = new ArrayList<Future<KeggInfos>>(ko_ids.length);
+      for (String ko_id : ko_ids) {
+        requests.add(manager.getInformationAsync(ko_id));
+      }
+      for (int i=0; i<ko_ids.length; i++) {
+        KeggInfos infos = KeggInfos.get(ko_ids[i], requests.get(i));
         if (infos.queryWasSuccessfull() ) {
           modifier.addAll(infos.getECcodes());
 //            && infos.getDefinition()!=null) {
@@ -460,8 +502,8 @@ public class KeggTools {
    * @param p
    */
   public static void removeWhiteNodes(Pathway p) {
-    for (int i=0; i<p.getEntries().size(); i++) {
-      Entry entry = p.getEntries().get(i);
+    List<Entry> toRemove = new ArrayList<Entry>();
+    for (Entry entry : p.getEntries()) {
       if ( // 1. Has a white background
           entry.hasGraphics() && entry.getGraphics().isSetBGcolor() &&          
           entry.getGraphics().getBgcolor().toLowerCase().trim().endsWith("ffffff")
@@ -470,10 +512,10 @@ public class KeggTools {
           // 3. Is not a line (line are always drawn on white background)
           && (entry.getGraphics().getType()!=GraphicsType.line && 
               !entry.getGraphics().getFgcolor().toLowerCase().trim().endsWith("ffffff"))) {
-        p.removeEntry(i);
-        i--;
+        toRemove.add(entry);
       }
     }
+    p.removeEntries(toRemove);
   }
   
   /**
@@ -489,17 +531,40 @@ public class KeggTools {
    * as well.
    */
   public static void removeOrphans(Pathway p, boolean considerRelations, boolean considerReactions) {
-    for (int i=0; i<p.getEntries().size(); i++) {
-      Entry entry = p.getEntries().get(i);
-      
-      
-      // Remove it
-      if (isOrphan(p, entry, considerRelations, considerReactions)) {
-        p.removeEntry(i);
-        i--;
+    // Removing orphans does not change the state of other entries, thus
+    // all orphans can be determined first and removed at once.
+    Map<Integer, List<Entry>> groups = getGroupNodes(p);
+    List<Entry> toRemove = new ArrayList<Entry>();
+    for (Entry entry : p.getEntries()) {
+      if (isOrphan(p, entry, considerRelations, considerReactions, groups)) {
+        toRemove.add(entry);
       }
     }
-    
+    p.removeEntries(toRemove);
+  }
+  
+  /**
+   * @param p
+   * @return a map from ids of components to the group nodes, containing
+   * them.
+   */
+  private static Map<Integer, List<Entry>> getGroupNodes(Pathway p) {
+    Map<Integer, List<Entry>> groups = new HashMap<Integer, List<Entry>>();
+    for (Entry e2:p.getEntries()) {
+      if (e2.hasComponents()) {
+        for (Integer component : e2.getComponents()) {
+          List<Entry> list = groups.get(component);
+          if (list==null) {
+            list = new ArrayList<Entry>(1);
+            groups.put(component, list);
+          }
+          if (!list.contains(e2)) {
+            list.add(e2);
+          }
+        }
+      }
+    }
+    return groups;
   }
   
   /**
@@ -511,6 +576,20 @@ public class KeggTools {
    * @return
    */
   public static boolean isOrphan(Pathway p, Entry entry, boolean considerRelations, boolean considerReactions) {
+    return isOrphan(p, entry, considerRelations, considerReactions, getGroupNodes(p));
+  }
+  
+  /**
+   * Returns true if and only if entry is an orphan in p.
+   * @param p
+   * @param entry
+   * @param considerRelations
+   * @param considerReactions
+   * @param groups see {@link #getGroupNodes(Pathway)}.
+   * @return
+   */
+  private static boolean isOrphan(Pathway p, Entry entry, boolean considerRelations,
+    boolean considerReactions, Map<Integer, List<Entry>> groups) {
     
     // Look if it is an enzyme (or other reaction modifier)
     if (considerReactions && entry.hasReaction()) {
@@ -527,53 +606,15 @@ public class KeggTools {
       }
     }
     
-    // Loop through all reactions and look for the node.
+    // Look for the node in all reactions.
     boolean found = false;
     if (considerReactions) {
-      for (Reaction r : p.getReactions()) {
-        for (ReactionComponent rc : r.getProducts()) {
-          if (rc.isSetID() && entry.isSetID() && rc.getId().intValue()==entry.getId()) {
-            found = true;
-            break;            
-          }
-          if (rc.getName().equalsIgnoreCase(entry.getName())) {
-            found = true;
-            break;
-          }
-        }
-        if (!found) {
-          for (ReactionComponent rc : r.getSubstrates()) {
-            if (rc.isSetID() && entry.isSetID() && rc.getId().intValue()==entry.getId()) {
-              found = true;
-              break;            
-            }
-            if (rc.getName().equalsIgnoreCase(entry.getName())) {
-              found = true;
-              break;
-            }
-          }
-        }
-        if (found) break;
-      }
+      found = !p.getReactionsForComponent(entry).isEmpty();
     }
     
-    // Loop through all relations and look for the node.
+    // Look for the node in all relations.
     if (considerRelations && !found) {
-      for (Relation r : p.getRelations()) {
-        if (r.getEntry1() == entry.getId() || r.getEntry2() == entry.getId()) {
-          found = true;
-          break;
-        }
-        for (SubType st : r.getSubtypes()) {
-          try {
-            if (Integer.parseInt(st.getValue()) == entry.getId()) {
-              found = true;
-              break;
-            }
-          } catch (Exception e) {}
-        }
-        if (found) break;
-      }
+      found = !p.getRelationsForEntry(entry).isEmpty();
     }
     
     // It is an orphan!
@@ -581,10 +622,11 @@ public class KeggTools {
       boolean orphan=true;
       
       // Look if it is an component (i.e. a member of a group which is not an orphan)!
-      for (Entry e2:p.getEntries()) {
-        if (e2.hasComponents() && e2.getComponents().contains(entry.getId())) {
+      List<Entry> parents = groups.get(entry.getId());
+      if (parents!=null) {
+        for (Entry e2:parents) {
           // Look if the parent group node itself is an orphan.
-          if (!isOrphan(p, e2, considerRelations, considerReactions)) {
+          if (!isOrphan(p, e2, considerRelations, considerReactions, groups)) {
             orphan=false;
             break;
           }
@@ -615,13 +657,13 @@ public class KeggTools {
    * @param p
    */
   public static void removePathwayEntries(Pathway p) {
-    for (int i=0; i<p.getEntries().size(); i++) {
-      Entry e = p.getEntries().get(i);
+    List<Entry> toRemove = new ArrayList<Entry>();
+    for (Entry e : p.getEntries()) {
       if (e.getType().equals(EntryType.map)) {
-        p.removeEntry(i);
-        i--;
+        toRemove.add(e);
       }
     }
+    p.removeEntries(toRemove);
   }
 
   /**
@@ -22,6 +22,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -439,6 +441,32 @@ public class KeggInfos implements Serializable {
     }
   }
   
+  /**
+   * Waits for an information, requested with
+   * {@link KeggInfoManagement#getInformationAsync(Comparable)}. Requesting
+   * all ids, before waiting for the first one, allows the manager to fetch
+   * them in a single batch.
+   * @param ko_id the requested id
+   * @param request the pending request for {@code ko_id}
+   * @return see {@link #get(String, KeggInfoManagement)}
+   */
+  public static KeggInfos get(String ko_id, Future<KeggInfos> request) {
+    KeggInfos ret = null;
+    try {
+      ret = request.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      log.log(Level.FINE, "Could not query KEGG API.", e.getCause());
+    }
+    if (ret == null) {
+      log.fine(String.format("Could not query KEGG API for id \"%s\".", ko_id == null ? "NULL" : ko_id));
+      return new KeggInfos(ko_id, (String) null);
+    } else {
+      return ret;
+    }
+  }
+  
   /**
    * 
    * @return
@@ -142,13 +142,21 @@ public class KeggFunctionManagement extends InfoManagement<KeggQuery, CustomObje
     return new CustomObject<Object>(answer); // Successfull and "with data" ;-)
   }
   
+  /*
+   * (non-Javadoc)
+   * @see de.zbit.cache.InfoManagement#getPreferredBatchSize()
+   */
+  @Override
+  protected int getPreferredBatchSize() {
+    return 1; // Fetching multiple infos is not supported.
+  }
+  
   /*
    * (non-Javadoc)
    * @see de.zbit.util.InfoManagement#fetchMultipleInformations(IDtype[])
    */
-  @SuppressWarnings("unchecked")
   @Override
-  protected CustomObject[] fetchMultipleInformations(KeggQuery[] ids) throws TimeoutException, UnsuccessfulRetrieveException {
+  protected CustomObject<Object>[] fetchMultipleInformations(KeggQuery[] ids) throws TimeoutException, UnsuccessfulRetrieveException {
     System.err.println("Fetching multiple infos not supported. Please use KeggInfoManagement, if possible.");
     return null;
   }
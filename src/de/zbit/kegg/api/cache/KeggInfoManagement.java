@@ -144,6 +144,16 @@ public class KeggInfoManagement extends InfoManagement<String, KeggInfos> implem
     return ret.trim();
   }
   
+  /*
+   * (non-Javadoc)
+   * @see de.zbit.cache.InfoManagement#getPreferredBatchSize()
+   */
+  @Override
+  protected int getPreferredBatchSize() {
+    // Since 2013-01-01, KEGG limited the amount of ids that can be retrieved simultaneously to 10!
+    return 10;
+  }
+  
   /*
    * (non-Javadoc)
    * @see de.zbit.util.InfoManagement#fetchMultipleInformations(IDtype[])
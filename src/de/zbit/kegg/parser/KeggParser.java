@@ -50,6 +50,7 @@ import de.zbit.util.DatabaseIdentifiers.IdentifierDatabases;
 
 /**
  * Parses a Kegg Pathway (in KGML (*.xml) format).
+ * @see KeggStreamParser
  * @author Clemens Wrzodek
  * @version $Rev$
  * @since 1.0
@@ -60,13 +61,19 @@ public class KeggParser extends DefaultHandler {
    */
   public static boolean silent = true;
   /**
-   * If true, the doctype reference will be removed from your document.
+   * If true, the doctype reference of your document will be ignored.
    * E.g. "<!DOCTYPE pathway SYSTEM "http://www.genome.jp/kegg/xml/KGML_v0.7.0_.dtd">"
-   * will be changed to "<!DOCTYPE pathway>". This will prevent the java xml parser from
+   * will be treated like "<!DOCTYPE pathway>". This will prevent the java xml parser from
    * going online and downloading the given namespace file.
    */
   public static boolean offlineVersion=false;
   
+  /**
+   * Parser feature, that controls whether external DTDs are loaded by
+   * non-validating parsers.
+   */
+  static final String LOAD_EXTERNAL_DTD = "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+  
   /**
    * Parse kgml files.
    * @param filename
@@ -108,38 +115,25 @@ public class KeggParser extends DefaultHandler {
     }
     
     double kgmlVersion = getKGMLVersion(inS.getCharacterStream());
-    if (offlineVersion || kgmlVersion<=0.5) {
-      // Remove System + Url in "<!DOCTYPE pathway SYSTEM "http://www.genome.jp/kegg/xml/KGML_v0.7.0_.dtd">"
+    if (kgmlVersion<=0.5) {
+      // Remove invalid XML code in older KGML versions
       Reader s = inS.getCharacterStream();
-      char c; String line="";
-      StringBuffer sb = new StringBuffer();
+      StringBuilder sb = new StringBuilder();
       try {
-        while (s.ready()) {
-          c = (char)s.read();
-          line += c;
-          if (c=='\n') {
-            if (offlineVersion && line.contains("SYSTEM") && line.contains("http://") && line.contains("pathway")) {
-              kgmlVersion = getKGMLVersion(line); // Get KGML version
-              // Remove the URL
-              line = line.substring(0, line.indexOf("pathway")+"pathway".length()) + line.substring(line.lastIndexOf(">"));
-            }
-            
-            // Remove invalid XML code in older KGML versions
-            if (kgmlVersion<=0.5 && line.contains("&keywords=")) {
-              line = line.replace("&keywords=", "");
-            }
-            
-            sb.append(line);
-            line = "";
-          }
+        char[] buffer = new char[8192];
+        int n;
+        while ((n=s.read(buffer))>=0) {
+          sb.append(buffer, 0, n);
         }
-        if (line.length()==0) {sb.append(line);}
-        
-        inS = new InputSource((new StringReader(sb.toString()))); // sb.toString() only klappt nicht ?!?!?
+        inS = new InputSource(new StringReader(sb.toString().replace("&keywords=", "")));
       } catch (IOException e) {e.printStackTrace();}
     }
     
     DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance(); 
+    if (offlineVersion) {
+      // Do not download the DTD, given in "<!DOCTYPE pathway SYSTEM "http://www.genome.jp/kegg/xml/KGML_v0.7.0_.dtd">"
+      factory.setFeature(LOAD_EXTERNAL_DTD, false);
+    }
     DocumentBuilder builder;
 //    try {
       builder = factory.newDocumentBuilder();
@@ -190,7 +184,7 @@ public class KeggParser extends DefaultHandler {
    * @param SYSTEMline
    * @return KGML version number
    */
-  private static double getKGMLVersion(String SYSTEMline) {
+  static double getKGMLVersion(String SYSTEMline) {
     double ret = 0;
     try {
       // e.g. http://www.genome.jp/kegg/xml/KGML_v0.6.1_.dtd
@@ -350,7 +344,7 @@ public class KeggParser extends DefaultHandler {
    * group node.
    * @param p
    */
-  private static void createGroupNodeBackReferences(Pathway p) {
+  static void createGroupNodeBackReferences(Pathway p) {
     for (Entry e:p.getEntries()) {
       if (e.hasComponents()) {
         for (Integer c: e.getComponents()) {
@@ -468,36 +462,47 @@ public class KeggParser extends DefaultHandler {
    * @return 0 if any error occurs, or the int value, represented by {@code attribute}.
    */
   public static int getNodeValueInt(NamedNodeMap n, String attribute) {
+    if (n.getNamedItem(attribute)!=null) {
+      return parseInt(attribute, getNodeValue(n, attribute));
+    }
+    return 0;
+  }
+  
+  /**
+   * 
+   * @param attribute name of the attribute (for error messages).
+   * @param value
+   * @return 0 if any error occurs, or the int value, represented by {@code value}.
+   */
+  static int parseInt(String attribute, String value) {
     int number = 0;
     boolean error = false;
     Exception ex = null;
-    if (n.getNamedItem(attribute)!=null) {
-      try {
-        number = Integer.parseInt(getNodeValue(n, attribute));
-        error = false; // Parsing was succesfull.
-      } catch (Exception e) {
-        error = true;
-        ex=e;
-        System.err.println("Error while parsing int '" + attribute + "' => " + getNodeValue(n, attribute));
-      }
-      if (error) {
-        // In old kegg definitions, number is often e.g. "04010hsa" instead of "04010".
-        // Removing the "hsa" fixes the problem in a compatibility-mode-way.
-        // I think it's still better than throwing errors.
-        String s = getNodeValue(n, attribute);
-        for (int i=0; i<s.length(); i++) {
-          if (!Character.isDigit(s.charAt(i))) {
-            s = s.replace(Character.toString(s.charAt(i)), "");
-            i--;
-          }
+    try {
+      number = Integer.parseInt(value);
+      error = false; // Parsing was succesfull.
+    } catch (Exception e) {
+      error = true;
+      ex=e;
+      System.err.println("Error while parsing int '" + attribute + "' => " + value);
+    }
+    if (error) {
+      // In old kegg definitions, number is often e.g. "04010hsa" instead of "04010".
+      // Removing the "hsa" fixes the problem in a compatibility-mode-way.
+      // I think it's still better than throwing errors.
+      String s = value;
+      for (int i=0; i<s.length(); i++) {
+        if (!Character.isDigit(s.charAt(i))) {
+          s = s.replace(Character.toString(s.charAt(i)), "");
+          i--;
         }
-        if (s.length()>0) {
-          number = Integer.parseInt(s);
-          System.err.println("Going into compatibility mode and returning '" + number + "'.");
-        } else {
-          if (ex!=null) {
-            ex.printStackTrace();
-          }
+      }
+      if (s.length()>0) {
+        number = Integer.parseInt(s);
+        System.err.println("Going into compatibility mode and returning '" + number + "'.");
+      } else {
+        if (ex!=null) {
+          ex.printStackTrace();
         }
       }
     }
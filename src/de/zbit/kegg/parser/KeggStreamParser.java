@@ -0,0 +1,573 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.kegg.parser;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import de.zbit.io.OpenFile;
+import de.zbit.kegg.parser.pathway.Entry;
+import de.zbit.kegg.parser.pathway.EntryType;
+import de.zbit.kegg.parser.pathway.Graphics;
+import de.zbit.kegg.parser.pathway.GraphicsType;
+import de.zbit.kegg.parser.pathway.Pathway;
+import de.zbit.kegg.parser.pathway.Reaction;
+import de.zbit.kegg.parser.pathway.ReactionComponent;
+import de.zbit.kegg.parser.pathway.ReactionType;
+import de.zbit.kegg.parser.pathway.Relation;
+import de.zbit.kegg.parser.pathway.RelationType;
+import de.zbit.kegg.parser.pathway.SubType;
+import de.zbit.kegg.parser.pathway.ext.EntryExtended;
+import de.zbit.kegg.parser.pathway.ext.EntryTypeExtended;
+import de.zbit.util.DatabaseIdentifiers.IdentifierDatabases;
+import de.zbit.util.ThreadManager;
+
+/**
+ * Parses Kegg Pathways (in KGML (*.xml) format) with a streaming (StAX)
+ * parser. In contrast to {@link KeggParser}, no DOM is created, but
+ * {@link Pathway}s, {@link Entry}s, {@link Reaction}s and {@link Relation}s
+ * are directly built from the parse events. The DTD, referenced in the
+ * doctype of the document, is never downloaded.
+ * 
+ * <p>Results are equal to {@link KeggParser#parse(String)}. Documents of
+ * KGML version 0.5 or older contain invalid XML and are delegated to the
+ * {@link KeggParser}.
+ * 
+ * <p>Many files can be parsed concurrently with {@link #parse(Collection)}
+ * or {@link #submit(String)}, using a pool, that is shared by all callers.
+ * 
+ * @version $Rev$
+ */
+public class KeggStreamParser {
+  
+  private static final transient Logger log = Logger.getLogger(KeggStreamParser.class.getName());
+  
+  /**
+   * Factories are not guaranteed to be thread-safe.
+   */
+  private static final ThreadLocal<XMLInputFactory> FACTORY = new ThreadLocal<XMLInputFactory>() {
+    @Override
+    protected XMLInputFactory initialValue() {
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      // Do not download the DTD, given in "<!DOCTYPE pathway SYSTEM "http://www.genome.jp/kegg/xml/KGML_v0.7.0_.dtd">"
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+      return factory;
+    }
+  };
+  
+  /**
+   * Number of characters, that are inspected to determine the KGML version.
+   */
+  private static final int HEAD_SIZE = 1024;
+  
+  /**
+   * The reader of the current document.
+   */
+  private final XMLStreamReader reader;
+  
+  /**
+   * Version of the current document.
+   */
+  private final double version;
+  
+  /**
+   * Comment of the current document.
+   */
+  private String comment = null;
+  
+  /**
+   * @param reader
+   * @param version
+   */
+  private KeggStreamParser(XMLStreamReader reader, double version) {
+    super();
+    this.reader = reader;
+    this.version = version;
+  }
+  
+  /**
+   * Parse a kgml file.
+   * @param filename
+   * @return all pathways in the given kgml file.
+   * Usually, there is only one pathway per file, so the size of the
+   * collection should always be 1.
+   * @throws IOException if the file could not be read.
+   * @throws XMLStreamException if the file is not a valid xml document.
+   */
+  public static List<Pathway> parse(String filename) throws IOException, XMLStreamException {
+    Reader in = OpenFile.openFile(filename, KeggStreamParser.class);
+    if (in==null) {
+      throw new FileNotFoundException(filename);
+    }
+    try {
+      return parse(in);
+    } finally {
+      in.close();
+    }
+  }
+  
+  /**
+   * Parse a kgml document. The stream is not closed.
+   * @param in
+   * @return all pathways in the given kgml document.
+   * @throws IOException
+   * @throws XMLStreamException
+   */
+  public static List<Pathway> parse(InputStream in) throws IOException, XMLStreamException {
+    return parse(new InputStreamReader(in, "UTF-8"));
+  }
+  
+  /**
+   * Parse a kgml document. The reader is not closed.
+   * @param in
+   * @return all pathways in the given kgml document.
+   * @throws IOException
+   * @throws XMLStreamException
+   */
+  public static List<Pathway> parse(Reader in) throws IOException, XMLStreamException {
+    if (!in.markSupported()) {
+      in = new BufferedReader(in);
+    }
+    double version = getKGMLVersion(in);
+    if (version>0 && version<=0.5) {
+      // Requires removal of invalid XML code
+      try {
+        return KeggParser.parse(new InputSource(in));
+      } catch (SAXException e) {
+        throw new XMLStreamException(e);
+      } catch (Exception e) {
+        IOException exc = new IOException(e.getLocalizedMessage());
+        exc.initCause(e);
+        throw exc;
+      }
+    }
+    
+    XMLStreamReader reader = FACTORY.get().createXMLStreamReader(in);
+    try {
+      return new KeggStreamParser(reader, version).parseDocument();
+    } finally {
+      reader.close();
+    }
+  }
+  
+  /**
+   * Parses all given files in parallel, with
+   * {@link ThreadManager#NUMBER_OF_PROCESSORS} threads.
+   * @param filenames
+   * @return all pathways of each file, in the order of {@code filenames}.
+   * @throws IOException if any file could not be read.
+   * @throws XMLStreamException if any file is not a valid xml document.
+   */
+  public static Map<String, List<Pathway>> parse(Collection<String> filenames) throws IOException, XMLStreamException {
+    Map<String, Future<List<Pathway>>> pending = new LinkedHashMap<String, Future<List<Pathway>>>();
+    for (String filename : filenames) {
+      if (!pending.containsKey(filename)) {
+        pending.put(filename, submit(filename));
+      }
+    }
+    Map<String, List<Pathway>> ret = new LinkedHashMap<String, List<Pathway>>();
+    try {
+      for (Map.Entry<String, Future<List<Pathway>>> e : pending.entrySet()) {
+        ret.put(e.getKey(), await(e.getValue()));
+      }
+    } finally {
+      if (ret.size()<pending.size()) {
+        for (Future<List<Pathway>> f : pending.values()) {
+          f.cancel(false);
+        }
+      }
+    }
+    return ret;
+  }
+  
+  /**
+   * Parses the given file in the shared pool.
+   * @param filename
+   * @return the pathways of the given file (see {@link #parse(String)}).
+   */
+  public static Future<List<Pathway>> submit(final String filename) {
+    return ThreadManager.getSharedDaemonPool("KeggStreamParser").submit(new Callable<List<Pathway>>() {
+      public List<Pathway> call() throws Exception {
+        return parse(filename);
+      }
+    });
+  }
+  
+  /**
+   * @param result
+   * @return the parsed pathways.
+   * @throws IOException
+   * @throws XMLStreamException
+   */
+  private static List<Pathway> await(Future<List<Pathway>> result) throws IOException, XMLStreamException {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getLocalizedMessage());
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else if (e.getCause() instanceof XMLStreamException) {
+        throw (XMLStreamException) e.getCause();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      IOException exc = new IOException(e.getLocalizedMessage());
+      exc.initCause(e.getCause());
+      throw exc;
+    }
+  }
+  
+  /**
+   * Fetches the head of the reader (and resets the stream afterwards)
+   * and returns the KGML version.
+   * @param in a reader that supports marks.
+   * @return KGML version number or 0, if it is unknown.
+   * @throws IOException
+   */
+  private static double getKGMLVersion(Reader in) throws IOException {
+    in.mark(HEAD_SIZE);
+    char[] head = new char[HEAD_SIZE];
+    int n = 0;
+    while (n<head.length) {
+      int r = in.read(head, n, head.length-n);
+      if (r<0) {
+        break;
+      }
+      n += r;
+    }
+    in.reset();
+    
+    // e.g. <!DOCTYPE pathway SYSTEM "http://www.genome.jp/kegg/xml/KGML_v0.6.1_.dtd">
+    // Not all StAX implementations report the system id, thus it is parsed from the head.
+    String s = new String(head, 0, n);
+    int pos = s.indexOf("<!DOCTYPE");
+    int end = pos<0 ? -1 : s.indexOf('>', pos);
+    if (end<0 || s.indexOf("SYSTEM", pos)<0) {
+      return 0;
+    }
+    return KeggParser.getKGMLVersion(s.substring(pos, end));
+  }
+  
+  /**
+   * Parses the whole document.
+   * @return all pathways of the document.
+   * @throws XMLStreamException
+   */
+  private List<Pathway> parseDocument() throws XMLStreamException {
+    List<Pathway> pathways = new ArrayList<Pathway>();
+    boolean afterDoctype = false;
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event==XMLStreamConstants.DTD) {
+        afterDoctype = true;
+        
+      } else if (event==XMLStreamConstants.COMMENT) {
+        // e.g. "Creation date: Mar 16 2007 16:05:56 +0900 (JST)".
+        if (afterDoctype) {
+          comment = reader.getText()==null ? null : reader.getText().trim();
+          if (comment!=null && comment.length()<1) comment = null;
+        }
+        afterDoctype = false;
+        
+      } else if (event==XMLStreamConstants.START_ELEMENT) {
+        afterDoctype = false;
+        if (reader.getLocalName().trim().equalsIgnoreCase("pathway")) {
+          Pathway p = parsePathway();
+          if (p!=null) {
+            pathways.add(p);
+          }
+        } else {
+          skipElement();
+        }
+      }
+    }
+    
+    // Give a warning if version does not match.
+    if (version>0 && version<0.7) {
+      log.warning("Your kgml document is rather old. It is written in kgml version " + version +
+        ". This parser is for version 0.7 / 0.71. Trying to read your document in compatibility mode.");
+    } else if (version>0 && version>=0.8) {
+      log.warning("Your kgml document is rather new. It is written in kgml version " + version +
+        ". This parser is for version 0.7 / 0.71. Trying to read your document anyways.");
+    }
+    
+    return pathways;
+  }
+  
+  /**
+   * Skips the current element, including all children.
+   * @throws XMLStreamException
+   */
+  private void skipElement() throws XMLStreamException {
+    int depth = 1;
+    while (depth>0) {
+      int event = reader.next();
+      if (event==XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event==XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+  
+  /**
+   * Advances to the next start or end element. In contrast to
+   * {@link XMLStreamReader#nextTag()}, any text is skipped.
+   * @return {@link XMLStreamConstants#START_ELEMENT} or
+   * {@link XMLStreamConstants#END_ELEMENT}.
+   * @throws XMLStreamException
+   */
+  private int nextTag() throws XMLStreamException {
+    int event;
+    do {
+      event = reader.next();
+    } while (event!=XMLStreamConstants.START_ELEMENT && event!=XMLStreamConstants.END_ELEMENT);
+    return event;
+  }
+  
+  /**
+   * @param attribute
+   * @return the value of the given attribute of the current element or
+   * an empty string.
+   */
+  private String getValue(String attribute) {
+    String value = reader.getAttributeValue(null, attribute);
+    return value==null ? "" : value;
+  }
+  
+  /**
+   * @param attribute
+   * @return the value of the given attribute of the current element or
+   * {@code null} if it is not set or empty.
+   */
+  private String getValueOrNull(String attribute) {
+    String value = reader.getAttributeValue(null, attribute);
+    if (value==null || value.trim().length()<1) {
+      return null;
+    }
+    return value;
+  }
+  
+  /**
+   * @param attribute
+   * @return 0 if any error occurs, or the int value, represented by {@code attribute}.
+   * @see KeggParser#getNodeValueInt(org.w3c.dom.NamedNodeMap, String)
+   */
+  private int getValueInt(String attribute) {
+    String value = reader.getAttributeValue(null, attribute);
+    return value==null ? 0 : KeggParser.parseInt(attribute, value);
+  }
+  
+  /**
+   * Parses the current "pathway" element.
+   * @return the pathway or {@code null} if it has no children.
+   * @throws XMLStreamException
+   */
+  private Pathway parsePathway() throws XMLStreamException {
+    Pathway p = new Pathway(getValue("name"), getValue("org"), getValueInt("number"),
+      getValue("title"), getValue("image"), getValue("link"), getValue("additionalText"));
+    boolean hasChildNodes = false;
+    int event;
+    while ((event=reader.next())!=XMLStreamConstants.END_ELEMENT) {
+      hasChildNodes = true;
+      if (event!=XMLStreamConstants.START_ELEMENT) {
+        continue;
+      }
+      String name = reader.getLocalName().trim();
+      if (name.equalsIgnoreCase("entry") || name.equalsIgnoreCase("entryExtended")) {
+        p.addEntry(parseEntry(p));
+      } else if (name.equalsIgnoreCase("reaction")) {
+        p.addReaction(parseReaction(p));
+      } else if (name.equalsIgnoreCase("relation")) {
+        p.addRelation(parseRelation());
+      } else {
+        skipElement();
+      }
+    }
+    if (!hasChildNodes) {
+      return null;
+    }
+    p.setVersion(version);
+    p.setComment(comment);
+    
+    // Creates back references of group nodes
+    KeggParser.createGroupNodeBackReferences(p);
+    return p;
+  }
+  
+  /**
+   * Parses the current "entry" element.
+   * @param p
+   * @return the entry.
+   * @throws XMLStreamException
+   */
+  private Entry parseEntry(Pathway p) throws XMLStreamException {
+    // Determine extended attributes
+    String extGeneType = getValueOrNull("geneType");
+    String extCompartment = getValueOrNull("compartment");
+    String extDBIdentifier = null; // Just any
+    for (IdentifierDatabases dbName : IdentifierDatabases.values()) {
+      extDBIdentifier = getValueOrNull(dbName.toString());
+      if (extDBIdentifier!=null) {
+        break;
+      }
+    }
+    
+    // Do we need an EntryExtended?
+    Entry e;
+    EntryType type = EntryType.valueOf(getValue("type"));
+    if (extGeneType!=null || extCompartment!=null || extDBIdentifier!=null) {
+      e = new EntryExtended(p, getValueInt("id"), getValue("name"), type, getValue("link"), getValue("reaction"));
+      
+      ((EntryExtended) e).setCompartment(extCompartment);
+      if (extGeneType!=null) {
+        try {
+          ((EntryExtended) e).setGeneType(EntryTypeExtended.valueOf(extGeneType));
+        } catch (Exception ex) {
+          log.warning("Invalid EntryExtendedType: " + extGeneType);
+        }
+      }
+      if (extDBIdentifier!=null) {
+        for (IdentifierDatabases dbName : IdentifierDatabases.values()) {
+          extDBIdentifier = getValueOrNull(dbName.toString());
+          if (extDBIdentifier!=null) {
+            ((EntryExtended) e).addDatabaseIdentifier(dbName, extDBIdentifier);
+          }
+        }
+      }
+      
+    } else {
+      // Nope, just a simple plain KGML entry.
+      e = new Entry(p, getValueInt("id"), getValue("name"), type, getValue("link"), getValue("reaction"));
+    }
+    
+    List<Integer> components = null;
+    while (nextTag()!=XMLStreamConstants.END_ELEMENT) {
+      String name = reader.getLocalName().trim();
+      if (name.equalsIgnoreCase("component")) { // 0 .. *
+        if (components==null) {
+          components = new ArrayList<Integer>();
+        }
+        components.add(getValueInt("id"));
+      } else if (name.equals("graphics")) { // 0 .. 1 unfortunately, kegg itself does not stick to 0..1
+        Graphics g = new Graphics(getValue("name"), getValueInt("x"), getValueInt("y"),
+          GraphicsType.valueOf(getValue("type")), getValueInt("width"), getValueInt("height"),
+          getValue("fgcolor"), getValue("bgcolor"), (type==EntryType.gene) || (type==EntryType.genes));
+        String coords = getValue("coords");
+        if (coords.contains(",")) {
+          // e.g. coords="1677,525,1677,616" = x1,y2,x2,y2,...
+          g.setCoordsString(coords);
+        }
+        e.addGraphics(g);
+      }
+      skipElement();
+    }
+    if (components!=null) {
+      e.addComponents(components);
+    }
+    return e;
+  }
+  
+  /**
+   * Parses the current "reaction" element.
+   * @param p
+   * @return the reaction.
+   * @throws XMLStreamException
+   */
+  private Reaction parseReaction(Pathway p) throws XMLStreamException {
+    Reaction r = new Reaction(p, getValueInt("id"), getValue("name"), ReactionType.valueOf(getValue("type")));
+    while (nextTag()!=XMLStreamConstants.END_ELEMENT) {
+      String name = reader.getLocalName().trim();
+      if (name.equalsIgnoreCase("substrate")) {
+        r.addSubstrate(parseReactionComponent(true));
+      } else if (name.equals("product")) {
+        r.addProduct(parseReactionComponent(true));
+      } else {
+        skipElement();
+      }
+    }
+    return r;
+  }
+  
+  /**
+   * Parses the current "substrate", "product" or "alt" element.
+   * @param setId if {@code true}, an id of 0 is also set.
+   * @return the reaction component.
+   * @throws XMLStreamException
+   */
+  private ReactionComponent parseReactionComponent(boolean setId) throws XMLStreamException {
+    ReactionComponent rc = new ReactionComponent(getValueInt("id"), getValue("name"));
+    if (setId) {
+      // Attribute id is since 7.1
+      try {
+        rc.setId(Integer.parseInt(getValue("id")));
+      } catch (NumberFormatException e) {
+        // Attribute might not be set (old KGML document)
+      }
+    }
+    while (nextTag()!=XMLStreamConstants.END_ELEMENT) {
+      if (reader.getLocalName().trim().equalsIgnoreCase("alt")) {
+        rc.setAlt(parseReactionComponent(false));
+      } else {
+        skipElement();
+      }
+    }
+    return rc;
+  }
+  
+  /**
+   * Parses the current "relation" element.
+   * @return the relation.
+   * @throws XMLStreamException
+   */
+  private Relation parseRelation() throws XMLStreamException {
+    Relation r = new Relation(getValueInt("entry1"), getValueInt("entry2"), RelationType.valueOf(getValue("type")));
+    while (nextTag()!=XMLStreamConstants.END_ELEMENT) {
+      if (reader.getLocalName().trim().equalsIgnoreCase("subtype")) {
+        r.addSubtype(new SubType(getValue("name"), getValue("value")));
+      }
+      skipElement();
+    }
+    return r;
+  }
+  
+}
@@ -18,8 +18,13 @@ package de.zbit.kegg.parser.pathway;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -67,9 +72,20 @@ public class Pathway {
 	 */
 	private String link = "";
 	/**
-	 * All entries of the pathway
+	 * All entries of the pathway. Removed entries are set to {@code null}
+	 * and dropped from the list by {@link #compactEntries()}.
 	 */
 	private ArrayList<Entry> entries = new ArrayList<Entry>();
+	/**
+	 * Number of removed entries ({@code null}s) in {@link #entries}.
+	 */
+	private int removedEntries = 0;
+	/**
+	 * Unmodifiable snapshot of all contained entries, returned by
+	 * {@link #getEntries()}. Reset to {@code null} by every addition or
+	 * removal of an entry.
+	 */
+	private List<Entry> entriesView = null;
 	/**
 	 * All reactions of the pathway
 	 */
@@ -137,9 +153,37 @@ public class Pathway {
   private Map<String, Collection<Reaction>> reactionComponents = new HashMap<String, Collection<Reaction>>();
 	
   /**
-   * The maximum id number of an contained entry.
+   * Position of each contained entry in {@link #entries}.
+   */
+  private Map<Entry, Integer> entryPositions = new IdentityHashMap<Entry, Integer>();
+  
+  /**
+   * Number of contained entries with a certain id. The last key is
+   * the maximum id number of an contained entry.
+   */
+  private TreeMap<Integer, Integer> entryIds = new TreeMap<Integer, Integer>();
+  
+  /**
+   * Contains all entry ids, referenced by a relation (as entry1, entry2 or
+   * subtype value), and the relations.
+   */
+  private Map<Integer, List<Relation>> relationIndex = new HashMap<Integer, List<Relation>>();
+  
+  /**
+   * All contained reactions.
+   */
+  private Set<Reaction> reactionSet = Collections.newSetFromMap(new IdentityHashMap<Reaction, Boolean>());
+  
+  /**
+   * Contains ids of reaction components of contained reactions and the reactions.
    */
-  private int maxId=0;
+  private Map<Integer, List<Reaction>> reactionComponentIds = new HashMap<Integer, List<Reaction>>();
+  
+  /**
+   * Contains lower case names of reaction components of contained reactions
+   * and the reactions.
+   */
+  private Map<String, List<Reaction>> reactionComponentNames = new HashMap<String, List<Reaction>>();
   
 	/**
 	 * 
@@ -211,15 +255,126 @@ public class Pathway {
 	 * @param e
 	 */
 	public void addEntry(Entry e) {
-	  if (entries.contains(e)) return;
+	  if (indexOfEntry(e)>=0) return;
 	  
 	  idMap.put(e.getId(), e);
 	  putEntryInNameMap(e);
 	  addReactionModifier(e);
+	  addEntryId(e.getId());
 	  
-	  maxId=Math.max(maxId, e.getId());
-	  
+	  entryPositions.put(e, entries.size());
 		entries.add(e);
+		entriesView = null;
+	}
+	
+	/**
+	 * @param e
+	 * @return the position of {@code e} (or an entry that equals
+	 * {@code e}) in {@link #entries} or -1.
+	 */
+	private int indexOfEntry(Entry e) {
+	  Integer position = entryPositions.get(e);
+	  if (position!=null) {
+	    return position;
+	  }
+	  if (e.isSetID()) {
+	    // Equal entries have the same id
+	    Integer count = entryIds.get(e.getId());
+	    if (count==null) {
+	      return -1;
+	    }
+	    Entry other = idMap.get(e.getId());
+	    if (count==1 && other!=null && other.getId()==e.getId() && entryPositions.containsKey(other)) {
+	      return e.equals(other) ? entryPositions.get(other) : -1;
+	    }
+	  }
+	  for (int i=0; i<entries.size(); i++) {
+	    if (entries.get(i)!=null && e.equals(entries.get(i))) {
+	      return i;
+	    }
+	  }
+	  return -1;
+	}
+	
+	/**
+	 * Drops all removed entries from {@link #entries}, keeping the order
+	 * of all other entries.
+	 */
+	private void compactEntries() {
+	  if (removedEntries<1) {
+	    return;
+	  }
+	  int n = 0;
+	  for (int i=0; i<entries.size(); i++) {
+	    Entry e = entries.get(i);
+	    if (e!=null) {
+	      entries.set(n, e);
+	      entryPositions.put(e, n);
+	      n++;
+	    }
+	  }
+	  entries.subList(n, entries.size()).clear();
+	  removedEntries = 0;
+	}
+	
+	/**
+	 * @param id id of a contained entry.
+	 */
+	private void addEntryId(int id) {
+	  Integer count = entryIds.get(id);
+	  entryIds.put(id, count==null ? 1 : count+1);
+	}
+	
+	/**
+	 * @param id id of a contained entry.
+	 */
+	private void removeEntryId(int id) {
+	  Integer count = entryIds.get(id);
+	  if (count==null || count<=1) {
+	    entryIds.remove(id);
+	  } else {
+	    entryIds.put(id, count-1);
+	  }
+	}
+	
+	/**
+	 * Adds {@code value} to the list of {@code key}.
+	 * @param <K>
+	 * @param <V>
+	 * @param index
+	 * @param key
+	 * @param value
+	 */
+	private static <K, V> void addToIndex(Map<K, List<V>> index, K key, V value) {
+	  List<V> list = index.get(key);
+	  if (list==null) {
+	    list = new ArrayList<V>(2);
+	    index.put(key, list);
+	  }
+	  list.add(value);
+	}
+	
+	/**
+	 * Removes {@code value} (compared by identity) from the list of {@code key}.
+	 * @param <K>
+	 * @param <V>
+	 * @param index
+	 * @param key
+	 * @param value
+	 */
+	private static <K, V> void removeFromIndex(Map<K, List<V>> index, K key, V value) {
+	  List<V> list = index.get(key);
+	  if (list!=null) {
+	    for (int i=0; i<list.size(); i++) {
+	      if (list.get(i)==value) {
+	        list.remove(i);
+	        break;
+	      }
+	    }
+	    if (list.isEmpty()) {
+	      index.remove(key);
+	    }
+	  }
 	}
 	
 	/**
@@ -331,6 +486,10 @@ public class Pathway {
 	public void addReaction(Reaction r) {
 	  if (reactions.contains(r)) return;
 		reactions.add(r);
+		reactionSet.add(r);
+		for (ReactionComponent rc : r.getReactants()) {
+		  indexReactionComponent(rc, r);
+		}
 	}
 
 	/**
@@ -338,29 +497,73 @@ public class Pathway {
 	 * @param r
 	 */
 	public void addRelation(Relation r) {
-	  if (relations.contains(r)) return;
+	  // Equal relations have the same entry1
+	  Collection<Relation> candidates = relationIndex.get(r.getEntry1());
+	  if (candidates!=null && candidates.contains(r)) return;
 		relations.add(r);
+		for (Integer id : getReferencedEntryIds(r)) {
+		  addToIndex(relationIndex, id, r);
+		}
+	}
+	
+	/**
+	 * @param r
+	 * @return entry1, entry2 and all subtype values, that are numbers
+	 * (e.g., compounds).
+	 */
+	private static Set<Integer> getReferencedEntryIds(Relation r) {
+	  Set<Integer> ids = new LinkedHashSet<Integer>();
+	  ids.add(r.getEntry1());
+	  ids.add(r.getEntry2());
+	  if (r.getSubtypes()!=null) {
+	    for (SubType st : r.getSubtypes()) {
+	      try {
+	        ids.add(Integer.parseInt(st.getValue()));
+	      } catch (Exception e) {
+	        // Not a reference to an entry.
+	      }
+	    }
+	  }
+	  return ids;
+	}
+	
+	/**
+	 * Returns all relations, that reference the given entry as entry1,
+	 * entry2 or as subtype value (e.g., compound).
+	 * <p>Note: Relations are indexed when they are added to this pathway.
+	 * Later changes of their entries or subtypes are not reflected.</p>
+	 * @param entry
+	 * @return relations of {@code entry}. May be empty, but never {@code null}.
+	 */
+	public Collection<Relation> getRelationsForEntry(Entry entry) {
+	  List<Relation> ret = relationIndex.get(entry.getId());
+	  return ret==null ? Collections.<Relation>emptyList() : Collections.unmodifiableList(ret);
 	}
 
 	/**
-	 * Returns the complete entry list.
+	 * Returns an unmodifiable snapshot of the complete entry list.
 	 * 
-	 * You should NOT modify this list, but use the provided methods
-	 * (e.g. {@link #addEntry(Entry)}), else the id and name references
-	 * are getting corrupt. 
+	 * The list is not affected by later additions or removals, so it is
+	 * safe to remove entries while iterating over it. Please use the
+	 * provided methods (e.g. {@link #addEntry(Entry)} or
+	 * {@link #removeEntry(Entry)}) to modify the pathway. The snapshot is
+	 * shared by all calls until the next modification.
 	 * @return
 	 */
-	public ArrayList<Entry> getEntries() {
-		return entries;
+	public List<Entry> getEntries() {
+	  if (entriesView==null) {
+	    compactEntries();
+	    entriesView = Collections.unmodifiableList(new ArrayList<Entry>(entries));
+	  }
+		return entriesView;
 	}
 	
 	/**
-	 * Iteratively parsing through all entries and
-	 * returning the maximum entry id.
+	 * Returns the maximum entry id.
 	 * @return
 	 */
 	public int getMaxEntryId() {
-	  return maxId;
+	  return entryIds.isEmpty() ? 0 : Math.max(0, entryIds.lastKey());
 	}
 
 	/**
@@ -452,7 +655,7 @@ public class Pathway {
 	public String getNameForMIRIAM() {
     // We need to trim the "PATH"-Prefix
     String pwID = getName();
-    if (pwID!=null && pwID.toLowerCase().startsWith("path:")) {
+    if (pwID!=null && pwID.toLowerCase(Locale.ENGLISH).startsWith("path:")) {
       pwID = pwID.substring(5);
     }
     return pwID;
@@ -594,27 +797,16 @@ public class Pathway {
    */
   protected void idChange(Entry entry, int id) {
     // Change the maxId
-    resetMaxId(entry);
-    maxId=Math.max(maxId, id);
+    if (entryPositions.containsKey(entry)) {
+      removeEntryId(entry.getId());
+      addEntryId(id);
+    }
     
     // Change the idMap
-    idMap.remove(entry.getId());
-    idMap.put(id, entry);
-  }
-  
-  /**
-   * Reset the maxId by iterating through all elements
-   * @param entry - entry to IGNORE if it occurs. Set to
-   * null to disable this feature.
-   */
-  private void resetMaxId(Entry entry) {
-    if (entry.getId() == maxId) {
-      maxId=0;
-      for (Entry e:getEntries()) {
-        if (entry!=null && e.equals(entry)) continue;
-        maxId = Math.max(maxId, e.getId());
-      }
+    if (idMap.get(entry.getId())==entry) {
+      idMap.remove(entry.getId());
     }
+    idMap.put(id, entry);
   }
   
   /**
@@ -634,31 +826,60 @@ public class Pathway {
    * @param e
    */
   public void removeEntry(Entry e) {
-    removeEntry(entries.indexOf(e));
+    int index = indexOfEntry(e);
+    if (index>=0) {
+      removeEntryAt(index);
+    }
   }
+  
   /**
-   * Remove the entry at the given index in the {@link #entries} list.
+   * Remove the entry at the given index in the {@link #getEntries()} list.
    * @param index index of the entry to remove.
    */
   public void removeEntry(int index) {
+    if (index<0) return;
+    compactEntries();
+    removeEntryAt(index);
+  }
+  
+  /**
+   * Remove all given entries from this pathway. This is much faster
+   * than removing each entry with {@link #getEntries()} and
+   * {@link #removeEntry(int)}.
+   * @param entries
+   */
+  public void removeEntries(Collection<? extends Entry> entries) {
+    for (Entry e : entries) {
+      removeEntry(e);
+    }
+    compactEntries();
+  }
+  
+  /**
+   * Remove the entry at the given position in the {@link #entries} list.
+   * @param position
+   */
+  private void removeEntryAt(int position) {
     // Comment [wrzodek 2010-07-01]: Entry may still be in other entries compound (group node) list.
     // Also in other relations, reactions, subtype-values,etc.
-    if (index<0) return;
-    Entry e = entries.get(index);
+    Entry e = entries.get(position);
     
     // Update internal reference-maps and lists
-    idMap.remove(e.getId());
-    nameMap.remove(e.getName());
-    removeReactionModifier(e);
-    if (maxId==e.getId()) {
-      resetMaxId(e);
+    if (idMap.get(e.getId())==e) {
+      idMap.remove(e.getId());
     }
+    removeEntryFromNameMap(e);
+    removeReactionModifier(e);
+    removeEntryId(e.getId());
     
     // Really remove this entry from our list
-    entries.remove(index);
+    entries.set(position, null);
+    entryPositions.remove(e);
+    removedEntries++;
+    entriesView = null;
     
     e.setName(Entry.removedNodeName);
-    e=null;
+    removeEntryFromNameMap(e);
   }
 
   /**
@@ -699,6 +920,10 @@ public class Pathway {
    * @param reaction
    */
   void registerReactionComponent(ReactionComponent rc, Reaction reaction) {
+    if (reactionSet.contains(reaction)) {
+      indexReactionComponent(rc, reaction);
+    }
+    
     // Put whole name
     Utils.addToMapOfSets(reactionComponents, rc.getName(), reaction);
     
@@ -735,6 +960,61 @@ public class Pathway {
     }
     
     Utils.removeFromMapOfSets(reactionComponents, reaction, toRemove.toArray(new String[0]));
+    
+    if (reactionSet.contains(reaction)) {
+      unindexReactionComponent(rc, reaction);
+    }
+  }
+  
+  /**
+   * Adds the {@link ReactionComponent} of a contained {@link Reaction}
+   * to {@link #reactionComponentIds} and {@link #reactionComponentNames}.
+   * @param rc
+   * @param reaction
+   */
+  private void indexReactionComponent(ReactionComponent rc, Reaction reaction) {
+    if (rc.isSetID()) {
+      addToIndex(reactionComponentIds, rc.getId(), reaction);
+    }
+    if (rc.getName()!=null) {
+      addToIndex(reactionComponentNames, rc.getName().toLowerCase(Locale.ENGLISH), reaction);
+    }
+  }
+  
+  /**
+   * The reverse of {@link #indexReactionComponent(ReactionComponent, Reaction)}.
+   * @param rc
+   * @param reaction
+   */
+  private void unindexReactionComponent(ReactionComponent rc, Reaction reaction) {
+    if (rc.isSetID()) {
+      removeFromIndex(reactionComponentIds, rc.getId(), reaction);
+    }
+    if (rc.getName()!=null) {
+      removeFromIndex(reactionComponentNames, rc.getName().toLowerCase(Locale.ENGLISH), reaction);
+    }
+  }
+  
+  /**
+   * Returns all reactions of this pathway, that have a substrate or
+   * product with the id of the given entry or with the same name
+   * (ignoring case).
+   * <p>Note: Reaction components are indexed when their reaction is added
+   * to this pathway. Later changes of their ids are not reflected.</p>
+   * @param entry
+   * @return reactions in which {@code entry} is a substrate or product.
+   * May be empty, but never {@code null}.
+   * @see #getReactionsForEntry(Entry)
+   */
+  public Collection<Reaction> getReactionsForComponent(Entry entry) {
+    Set<Reaction> ret = Collections.newSetFromMap(new IdentityHashMap<Reaction, Boolean>());
+    if (entry.isSetID() && reactionComponentIds.containsKey(entry.getId())) {
+      ret.addAll(reactionComponentIds.get(entry.getId()));
+    }
+    if (entry.getName()!=null && reactionComponentNames.containsKey(entry.getName().toLowerCase(Locale.ENGLISH))) {
+      ret.addAll(reactionComponentNames.get(entry.getName().toLowerCase(Locale.ENGLISH)));
+    }
+    return ret;
   }
 
   /**
@@ -789,7 +1069,8 @@ public class Pathway {
       
       // Many glycand, compounds, ligands have synonyms! So query them...
       if (size<1 && manag!=null) {
-        KeggInfos reaInfo = KeggInfos.get(rc.getName(), manag);
+        // Shares a batch with concurrent requests of other threads
+        KeggInfos reaInfo = KeggInfos.get(rc.getName(), manag.getInformationAsync(rc.getName()));
         if (reaInfo.getSameAs()!=null) {
           String[] synonyms = reaInfo.getSameAs().split("\\s");
           int synIndex=-1; c=null;
@@ -945,7 +1226,7 @@ public class Pathway {
   }
   
   public boolean isSetEntries() {
-    return entries!=null && entries.size()>0;
+    return entries!=null && entries.size()-removedEntries>0;
   }
   
   public boolean isSetReactions() {
@@ -971,8 +1252,10 @@ public class Pathway {
       hash *= image.hashCode();
     if(isSetLink())
       hash *= link.hashCode();
-    if(isSetEntries())
+    if(isSetEntries()) {
+      compactEntries();
       hash *= entries.hashCode();
+    }
     if(isSetReactions())
       hash *= reactions.hashCode();
     if(isSetRelations())
@@ -1012,8 +1295,11 @@ public class Pathway {
         equals &= (o.getLink().equals(this.getLink()));      
       
       equals &= o.isSetEntries()==this.isSetEntries();
-      if(equals && isSetEntries()) 
-        equals &= (o.getEntries().equals(this.getEntries()));
+      if(equals && isSetEntries()) {
+        o.compactEntries();
+        compactEntries();
+        equals &= (o.entries.equals(this.entries));
+      }
       
       equals &= o.isSetReactions()==this.isSetReactions();
       if(equals && isSetReactions()) 
@@ -1157,7 +1443,14 @@ public class Pathway {
       
       // Rename in reactions
       for (Reaction r : o) {
-        r.getReactant(oldName).setName(newName);
+        ReactionComponent rc = r.getReactant(oldName);
+        if (reactionSet.contains(r)) {
+          unindexReactionComponent(rc, r);
+          rc.setName(newName);
+          indexReactionComponent(rc, r);
+        } else {
+          rc.setName(newName);
+        }
       }
     }
     
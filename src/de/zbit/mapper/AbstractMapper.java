@@ -16,21 +16,36 @@
  */
 package de.zbit.mapper;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import de.zbit.collection.Int2ObjectHashMap;
+import de.zbit.collection.Object2IntHashMap;
 import de.zbit.io.FileDownload;
 import de.zbit.io.FileTools;
 import de.zbit.io.csv.CSVReader;
+import de.zbit.io.csv.ParallelLineReader;
 import de.zbit.util.ArrayUtils;
+import de.zbit.util.Species;
+import de.zbit.util.ThreadManager;
 import de.zbit.util.Timer;
-import de.zbit.util.prefs.Option;
 import de.zbit.util.progressbar.AbstractProgressBar;
 
 /**
@@ -73,10 +88,27 @@ public abstract class AbstractMapper<SourceType, TargetType> implements Serializ
   private String tempLocalFile = null;
   
   /**
-   * Contains a mapping from RefSeq to GeneID.
-   * XXX: Hier eventuell eine initial Capacity oder load factor angeben, falls BottleNeck.
+   * Contains a mapping from RefSeq to GeneID. Replaced by the mapping of
+   * a snapshot in {@link #readSnapshot(String[])}.
+   * @see #createMapping()
    */
-  private Map<SourceType, TargetType> mapping = new HashMap<SourceType, TargetType>();
+  private Map<SourceType, TargetType> mapping;
+  
+  /**
+   * Converts source cells to the {@link #sourceType}.
+   */
+  private transient CellParser<SourceType> sourceParser = null;
+  
+  /**
+   * Converts target cells to the {@link #targetType}.
+   */
+  private transient CellParser<TargetType> targetParser = null;
+  
+  /**
+   * If {@code true}, binary snapshots of parsed mapping files are written
+   * and read. See {@link #setUseSnapshots(boolean)}.
+   */
+  private static volatile boolean useSnapshots = true;
   
 
   /**
@@ -98,6 +130,60 @@ public abstract class AbstractMapper<SourceType, TargetType> implements Serializ
     this.progress = progress;
     this.sourceType=sourceType;
     this.targetType=targetType;
+    this.mapping = createMapping();
+  }
+  
+  /**
+   * Creates the map that holds all mappings. Maps to {@link Integer}s
+   * (e.g., NCBI Gene IDs) use an {@link Object2IntHashMap}, maps from
+   * {@link Integer}s an {@link Int2ObjectHashMap} and all other a
+   * {@link HashMap}. Primitive maps require much less memory for large
+   * mapping files.
+   * @return an empty map.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  protected Map<SourceType, TargetType> createMapping() {
+    if (Integer.class.equals(sourceType)) {
+      return (Map<SourceType, TargetType>) new Int2ObjectHashMap();
+    } else if (Integer.class.equals(targetType) && sourceType!=null) {
+      return (Map<SourceType, TargetType>) new Object2IntHashMap();
+    }
+    return new HashMap<SourceType, TargetType>();
+  }
+  
+  /**
+   * @return the {@link CellParser} for source cells.
+   */
+  protected CellParser<SourceType> getSourceParser() {
+    if (sourceParser==null) {
+      sourceParser = CellParser.forType(sourceType);
+    }
+    return sourceParser;
+  }
+  
+  /**
+   * @return the {@link CellParser} for target cells.
+   */
+  protected CellParser<TargetType> getTargetParser() {
+    if (targetParser==null) {
+      targetParser = CellParser.forType(targetType);
+    }
+    return targetParser;
+  }
+  
+  /**
+   * Number of threads, used to read mapping files. The lines are split
+   * and their cells converted in parallel, i.e.,
+   * {@link #preProcessSourceID(String)}, {@link #preProcessTargetID(String)}
+   * and {@link #postProcessSourceID(Object)} are called concurrently, even
+   * for lines that are skipped later on. {@link #skipLine(String[])},
+   * {@link #postProcessTargetID(Object)} and the insertion into the
+   * mapping are invoked in the order of the file from a single thread.
+   * Return 1, if the conversion methods of a subclass are not thread-safe.
+   * @return number of threads to use for reading mapping files.
+   */
+  protected int getNumberOfReaderThreads() {
+    return ThreadManager.NUMBER_OF_PROCESSORS;
   }
   
   
@@ -236,7 +322,6 @@ public abstract class AbstractMapper<SourceType, TargetType> implements Serializ
    * @return true if and only if everything was without critical errors.
    * @throws IOException
    */
-  @SuppressWarnings({ "unchecked", "rawtypes" })
   public boolean readMappingData() throws IOException {
     isInizialized=true;
     
@@ -251,6 +336,9 @@ public abstract class AbstractMapper<SourceType, TargetType> implements Serializ
     // Parse all files.
     Timer t = new Timer();
     String[] localFiles = ArrayUtils.merge(getLocalFiles(), storedLocalFile, tempLocalFile);
+    if (readSnapshot(localFiles)) {
+      return true;
+    }
     for (String localFile: localFiles) {
       if (!FileTools.checkInputResource(localFile, this.getClass())) {
         log.config("Skipping " + getMappingName() + " mapping file " + (localFile==null?"null":localFile));
@@ -280,9 +368,301 @@ public abstract class AbstractMapper<SourceType, TargetType> implements Serializ
       }
       
       // Read Source <=> Target mapping.
-      String[] line;
       r.open();
-      while ((line = r.getNextLine())!=null) {
+      ParallelLineReader lines = new ParallelLineReader(r, getNumberOfReaderThreads());
+      try {
+        lines.readAll(new MappingChunkHandler(localFile, multiSourceColumn, targetColumn, maxColumn));
+      } finally {
+        lines.close();
+      }
+    }
+    
+    log.config("Parsed " + getMappingName() + " mapping file in " + t.getNiceAndReset()+". Read " + ((getMapping()!=null)?getMapping().size():"0") + " mappings.");
+    boolean success = (getMapping()!=null && getMapping().size()>0);
+    if (success) {
+      writeSnapshot(localFiles);
+    }
+    return success;
+  }
+  
+  /**
+   * Enables or disables binary snapshots for all mappers. If enabled
+   * (default), the parsed mapping is written to a snapshot file next to
+   * the mapping file and read from there, as long as the mapping file
+   * does not change. Encrypted mapping files are never written to
+   * snapshots.
+   * @param useSnapshots
+   */
+  public static void setUseSnapshots(boolean useSnapshots) {
+    AbstractMapper.useSnapshots = useSnapshots;
+  }
+  
+  /**
+   * @return {@code true} if binary snapshots are used.
+   * @see #setUseSnapshots(boolean)
+   */
+  public static boolean isUseSnapshots() {
+    return useSnapshots;
+  }
+  
+  /**
+   * Identifies the configuration of this mapper in a snapshot. A snapshot
+   * is only used, if this key is equal to the key of the mapper that
+   * wrote it.
+   * <p>The default implementation contains the class, types and all
+   * simple (e.g., numbers, strings, enums) fields of non-abstract classes,
+   * that could influence how mapping files are parsed. Transient fields
+   * are ignored. If any of those fields has a more complex type,
+   * {@code null} is returned. Override this method in this case.
+   * @return a key for snapshots or {@code null}, if this mapper does not
+   * support snapshots.
+   */
+  protected String getSnapshotKey() {
+    StringBuilder key = new StringBuilder(getClass().getName());
+    key.append('|').append(getMappingName());
+    key.append('|').append(sourceType.getName()).append('|').append(targetType.getName());
+    for (Class<?> c = getClass(); c!=null && !Modifier.isAbstract(c.getModifiers()); c = c.getSuperclass()) {
+      if (c.isAnonymousClass() || c.isLocalClass()) {
+        return null;
+      }
+      for (Field f : c.getDeclaredFields()) {
+        int m = f.getModifiers();
+        if (Modifier.isStatic(m) || Modifier.isTransient(m) || f.isSynthetic()) {
+          continue;
+        }
+        Object value;
+        try {
+          f.setAccessible(true);
+          value = f.get(this);
+        } catch (Exception e) {
+          return null;
+        }
+        if (value instanceof Class<?>) {
+          value = ((Class<?>) value).getName();
+        } else if (!(value==null || value instanceof CharSequence || value instanceof Number ||
+            value instanceof Boolean || value instanceof Character || value instanceof Enum<?> ||
+            value instanceof Species)) {
+          return null;
+        }
+        key.append('|').append(f.getName()).append('=').append(value);
+      }
+    }
+    return key.toString();
+  }
+  
+  /**
+   * May be overwritten to store additional data of this mapper in
+   * snapshots.
+   * @param out
+   * @throws IOException
+   * @see #readSnapshotExtra(DataInput)
+   */
+  protected void writeSnapshotExtra(DataOutput out) throws IOException {
+    // Intentionally left blank.
+  }
+  
+  /**
+   * Reads the data, written by {@link #writeSnapshotExtra(DataOutput)}.
+   * @param in
+   * @throws IOException
+   */
+  protected void readSnapshotExtra(DataInput in) throws IOException {
+    // Intentionally left blank.
+  }
+  
+  /**
+   * @param localFiles
+   * @return all existing files of {@code localFiles} or {@code null} if
+   * snapshots can not be used for those files.
+   */
+  private File[] getSnapshotSources(String[] localFiles) {
+    if (!useSnapshots || getEncryptedLocalFile()!=null || getMapping()==null || localFiles==null) {
+      return null;
+    }
+    List<File> sources = new ArrayList<File>();
+    for (String localFile: localFiles) {
+      if (localFile==null || !FileTools.checkInputResource(localFile, this.getClass())) {
+        continue;
+      }
+      File f = new File(localFile).getAbsoluteFile();
+      if (!f.isFile()) {
+        // E.g., a resource in a jar
+        return null;
+      }
+      if (!sources.contains(f)) {
+        sources.add(f);
+      }
+    }
+    return sources.isEmpty() ? null : sources.toArray(new File[0]);
+  }
+  
+  /**
+   * Replaces the empty {@link #mapping} with a snapshot of the given files.
+   * Values of the snapshot are decoded on access.
+   * @param localFiles
+   * @return {@code true} if a valid snapshot has been read.
+   */
+  @SuppressWarnings("unchecked")
+  protected boolean readSnapshot(String[] localFiles) {
+    File[] sources = getSnapshotSources(localFiles);
+    String key = (sources==null || getMapping().size()>0) ? null : getSnapshotKey();
+    if (key==null) {
+      return false;
+    }
+    File snapshot = null;
+    try {
+      Timer t = new Timer();
+      snapshot = MappingSnapshot.getSnapshotFile(sources[0], getMappingName(), key);
+      MappingSnapshot.SnapshotMap snapshotMapping = MappingSnapshot.read(snapshot, key, sources);
+      if (snapshotMapping==null || snapshotMapping.size()<1) {
+        return false;
+      }
+      readSnapshotExtra(new DataInputStream(new ByteArrayInputStream(snapshotMapping.getExtra())));
+      mapping = (Map<SourceType, TargetType>) snapshotMapping;
+      log.config("Read " + getMappingName() + " snapshot in " + t.getNiceAndReset()+". Read " + getMapping().size() + " mappings.");
+      return true;
+    } catch (Throwable e) {
+      log.log(Level.FINE, "Could not read snapshot " + snapshot, e);
+      return false;
+    }
+  }
+  
+  /**
+   * Writes the {@link #mapping} to a snapshot of the given files. Errors
+   * (e.g., a write protected directory) are ignored.
+   * @param localFiles
+   */
+  protected void writeSnapshot(String[] localFiles) {
+    File[] sources = getSnapshotSources(localFiles);
+    String key = (sources==null) ? null : getSnapshotKey();
+    if (key==null) {
+      return;
+    }
+    File snapshot = null;
+    try {
+      snapshot = MappingSnapshot.getSnapshotFile(sources[0], getMappingName(), key);
+      ByteArrayOutputStream extra = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(extra);
+      writeSnapshotExtra(out);
+      out.close();
+      if (MappingSnapshot.write(snapshot, key, sources, getMapping(), extra.toByteArray())) {
+        MappingSnapshot.deleteStale(snapshot, getMappingName());
+      } else {
+        log.fine("Types of " + getMappingName() + " are not supported by snapshots.");
+      }
+    } catch (Throwable e) {
+      log.log(Level.FINE, "Could not write snapshot " + snapshot, e);
+    }
+  }
+
+  /**
+   * Marks source cells, that could not be converted by
+   * {@link #parseSource(String)}.
+   */
+  private static final Object INVALID_CELL = new Object();
+  
+  /**
+   * A line of a mapping file, whose cells have been converted on a worker
+   * thread of the {@link ParallelLineReader}.
+   */
+  private class ParsedLine {
+    /**
+     * The split line.
+     */
+    final String[] line;
+    /**
+     * The converted target cell or {@code null}, if it is invalid.
+     */
+    TargetType target = null;
+    /**
+     * Columns of all source cells.
+     */
+    int[] sourceColumns = null;
+    /**
+     * Result of {@link AbstractMapper#parseSource(String)} for each
+     * column in {@link #sourceColumns}.
+     */
+    Object[] sources = null;
+    
+    public ParsedLine(String[] line) {
+      super();
+      this.line = line;
+    }
+  }
+  
+  /**
+   * Converts the cells of a mapping file on the worker threads of a
+   * {@link ParallelLineReader} and adds them to the mapping in the order
+   * of the file.
+   */
+  private class MappingChunkHandler implements ParallelLineReader.ChunkHandler<List<ParsedLine>> {
+    private final String localFile;
+    private final int[] multiSourceColumn;
+    private final int targetColumn;
+    private final int maxColumn;
+    
+    public MappingChunkHandler(String localFile, int[] multiSourceColumn, int targetColumn, int maxColumn) {
+      super();
+      this.localFile = localFile;
+      this.multiSourceColumn = multiSourceColumn;
+      this.targetColumn = targetColumn;
+      this.maxColumn = maxColumn;
+      // Initialize the parsers before they are used concurrently
+      getSourceParser();
+      getTargetParser();
+    }
+    
+    /* (non-Javadoc)
+     * @see de.zbit.io.csv.ParallelLineReader.ChunkHandler#process(java.lang.String[][])
+     */
+    public List<ParsedLine> process(String[][] lines) {
+      List<ParsedLine> ret = new ArrayList<ParsedLine>(lines.length);
+      for (String[] line : lines) {
+        ParsedLine parsed = new ParsedLine(line);
+        ret.add(parsed);
+        if (line.length<=maxColumn || line[targetColumn].length()==0) {
+          continue;
+        }
+        parsed.target = parseTarget(line[targetColumn]);
+        if (parsed.target==null) {
+          continue;
+        }
+        
+        // Collect all source columns
+        List<Integer> columns = new ArrayList<Integer>(multiSourceColumn.length);
+        int lastSourceColumn=0;
+        for (int sourceColumn: multiSourceColumn) {
+          if (sourceColumn<line.length) {
+            columns.add(sourceColumn);
+          } else if (sourceColumn==Integer.MAX_VALUE) {
+            // This is interpreted as "Add all cells from the last one to
+            // the end of the file as source columns".
+            // Don't forget to configureReader() when using this method.
+            // CSVReader fails to autodetect properties of tables with
+            // variable number of columns!
+            for (int col=lastSourceColumn+1;col<line.length; col++) {
+              columns.add(col);
+            }
+          }
+          lastSourceColumn = sourceColumn;
+        }
+        parsed.sourceColumns = new int[columns.size()];
+        parsed.sources = new Object[columns.size()];
+        for (int i=0; i<parsed.sourceColumns.length; i++) {
+          parsed.sourceColumns[i] = columns.get(i);
+          parsed.sources[i] = parseSource(line[parsed.sourceColumns[i]]);
+        }
+      }
+      return ret;
+    }
+    
+    /* (non-Javadoc)
+     * @see de.zbit.io.csv.ParallelLineReader.ChunkHandler#merge(java.lang.Object)
+     */
+    @SuppressWarnings("unchecked")
+    public void merge(List<ParsedLine> chunk) {
+      for (ParsedLine parsed : chunk) {
+        String[] line = parsed.line;
         if (line.length<=maxColumn) {
           log.severe("Incomplete entry in mapping file '" + localFile + "'. Please try to delete this file and execute this application again.");
           continue;
@@ -296,17 +676,7 @@ public abstract class AbstractMapper<SourceType, TargetType> implements Serializ
           continue;
         }
         
-        TargetType target;
-        if (Collection.class.isAssignableFrom(targetType)) {
-          // Mapping from x to a collection.
-           target = (TargetType) new HashSet(); // Do not store the same target multiple times
-           // Remark: This works also for non-Strings, since the type of the collection is
-           // erased on runtime. Thus, postProcessTargetID() should re-convert to desired
-           // real target type.
-          ((Collection)target).add(preProcessTargetID(line[targetColumn]));
-        } else {
-          target = Option.parseOrCast(targetType, preProcessTargetID(line[targetColumn]));
-        }
+        TargetType target = parsed.target;
         if (target==null) {
           log.warning("Invalid target content in " + getMappingName() + " mapping file: " + ((line.length>targetColumn)?line[targetColumn]:"line too short."));
           continue;
@@ -316,53 +686,84 @@ public abstract class AbstractMapper<SourceType, TargetType> implements Serializ
         target = postProcessTargetID(target);
         
         // Add mapping for all source columns
-        int lastSourceColumn=0;
-        for (int sourceColumn: multiSourceColumn) {
-          if (sourceColumn<line.length) {
-            addToMapping(line[sourceColumn], target);
-          } else if (sourceColumn==Integer.MAX_VALUE) {
-            // This is interpreted as "Add all cells from the last one to
-            // the end of the file as source columns".
-            // Don't forget to configureReader() when using this method.
-            // CSVReader fails to autodetect properties of tables with
-            // variable number of columns!
-            for (int col=lastSourceColumn+1;col<line.length; col++) {
-              addToMapping(line[col], target);
-            }
+        for (int i=0; i<parsed.sources.length; i++) {
+          Object source = parsed.sources[i];
+          if (source==INVALID_CELL) {
+            String sourceCell = line[parsed.sourceColumns[i]];
+            log.warning("Invalid source content in " + getMappingName() + " mapping file: " + (sourceCell!=null?sourceCell:"null.") );
+          } else if (source!=null) {
+            putMapping((SourceType) source, target);
           }
-          lastSourceColumn = sourceColumn;
         }
-        
-        
       }
     }
-    
-    log.config("Parsed " + getMappingName() + " mapping file in " + t.getNiceAndReset()+". Read " + ((getMapping()!=null)?getMapping().size():"0") + " mappings.");
-    return (getMapping()!=null && getMapping().size()>0);
   }
-
+  
   /**
    * Add content of a cell from the CSV file and a target to
    * the current mapping
    * @param sourceCell
    * @param target
    */
-  @SuppressWarnings({ "unchecked", "rawtypes" })
+  @SuppressWarnings("unchecked")
   public void addToMapping(String sourceCell, TargetType target) {
-    // Get source ID
+    Object source = parseSource(sourceCell);
+    if (source==INVALID_CELL) {
+      log.warning("Invalid source content in " + getMappingName() + " mapping file: " + (sourceCell!=null?sourceCell:"null.") );
+    } else if (source!=null) {
+      putMapping((SourceType) source, target);
+    }
+  }
+  
+  /**
+   * Converts a source cell with {@link #preProcessSourceID(String)}, the
+   * {@link #getSourceParser()} and {@link #postProcessSourceID(Object)}.
+   * @param sourceCell
+   * @return the source, {@code null} if it has been dropped by
+   * {@link #postProcessSourceID(Object)} or {@link #INVALID_CELL}, if the
+   * cell could not be converted.
+   */
+  private Object parseSource(String sourceCell) {
     SourceType source = null;
     try {
-      source = Option.parseOrCast(sourceType, preProcessSourceID(sourceCell));
+      source = getSourceParser().parse(preProcessSourceID(sourceCell));
     } catch (Throwable e) {}
     if (source==null) {
-      log.warning("Invalid source content in " + getMappingName() + " mapping file: " + (sourceCell!=null?sourceCell:"null.") );
-      return;
+      return INVALID_CELL;
     }
-    source = postProcessSourceID(source);
-    if (source==null) return;
-    
-    // Allow multiple target elements in collections
+    return postProcessSourceID(source);
+  }
+  
+  /**
+   * Converts a target cell with {@link #preProcessTargetID(String)} and the
+   * {@link #getTargetParser()}. Collection targets are wrapped in a
+   * {@link HashSet}.
+   * @param targetCell
+   * @return the target or {@code null} if it could not be converted.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private TargetType parseTarget(String targetCell) {
     if (Collection.class.isAssignableFrom(targetType)) {
+      // Mapping from x to a collection.
+      TargetType target = (TargetType) new HashSet(); // Do not store the same target multiple times
+      // Remark: This works also for non-Strings, since the type of the collection is
+      // erased on runtime. Thus, postProcessTargetID() should re-convert to desired
+      // real target type.
+      ((Collection)target).add(preProcessTargetID(targetCell));
+      return target;
+    }
+    return getTargetParser().parse(preProcessTargetID(targetCell));
+  }
+  
+  /**
+   * Adds a converted source and target to the current mapping.
+   * @param source
+   * @param target
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private void putMapping(SourceType source, TargetType target) {
+    // Allow multiple target elements in collections
+    if (target instanceof Collection) {
       Collection c = (Collection) getMapping().get(source);
       if (c!=null) {
         c.addAll((Collection)target);
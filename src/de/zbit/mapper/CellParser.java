@@ -0,0 +1,103 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.mapper;
+
+import de.zbit.util.prefs.Option;
+
+/**
+ * Converts cells of a mapping file into the source or target type of a
+ * mapper. The conversion is resolved once per type by
+ * {@link #forType(Class)}, such that the reflection based
+ * {@link Option#parseOrCast(Class, Object)} is only required for
+ * uncommon types.
+ *
+ * @version $Rev$
+ * @param <T> the resulting type
+ */
+public abstract class CellParser<T> {
+
+  /**
+   * @param cell
+   * @return the parsed cell or {@code null} if it could not be
+   * converted.
+   */
+  public abstract T parse(String cell);
+
+  /**
+   * @param type
+   * @return a {@link CellParser} that converts strings to {@code type}.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> CellParser<T> forType(final Class<T> type) {
+    if (type.equals(String.class) || type.equals(Object.class) || type.equals(CharSequence.class)) {
+      return (CellParser<T>) new CellParser<String>() {
+        @Override
+        public String parse(String cell) {
+          return cell;
+        }
+      };
+    } else if (type.equals(Integer.class)) {
+      return (CellParser<T>) new CellParser<Integer>() {
+        @Override
+        public Integer parse(String cell) {
+          try {
+            return Integer.valueOf(cell);
+          } catch (NumberFormatException e) {
+            return null;
+          }
+        }
+      };
+    } else if (type.equals(Long.class)) {
+      return (CellParser<T>) new CellParser<Long>() {
+        @Override
+        public Long parse(String cell) {
+          try {
+            return Long.valueOf(cell);
+          } catch (NumberFormatException e) {
+            return null;
+          }
+        }
+      };
+    } else if (type.equals(Double.class)) {
+      return (CellParser<T>) new CellParser<Double>() {
+        @Override
+        public Double parse(String cell) {
+          try {
+            return Double.valueOf(cell);
+          } catch (NumberFormatException e) {
+            return null;
+          }
+        }
+      };
+    }
+
+    // Fallback for all other types
+    return new CellParser<T>() {
+      @Override
+      public T parse(String cell) {
+        try {
+          T ret = Option.parseOrCast(type, cell);
+          // parseOrCast returns the string itself, if it can not be parsed.
+          return type.isInstance(ret) ? ret : null;
+        } catch (Throwable e) {
+          return null;
+        }
+      }
+    };
+  }
+
+}
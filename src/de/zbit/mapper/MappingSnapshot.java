@@ -0,0 +1,742 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.mapper;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.zbit.collection.Object2IntHashMap;
+import de.zbit.io.BinaryCacheFile;
+
+/**
+ * A versioned binary snapshot of the mapping of an {@link AbstractMapper}.
+ * All strings are stored once in a dictionary (string pool) and keys and
+ * values are stored as {@code int} arrays, either as index in the pool or,
+ * for {@link Integer}s, directly. Snapshots are memory-mapped for reading.
+ *
+ * <p>Snapshots are stored as {@link BinaryCacheFile}, with the key of the
+ * mapper and the source files, they have been created from. If any of
+ * those changed, the snapshot is ignored.
+ *
+ * <p>File layout (big endian, after the header of the
+ * {@link BinaryCacheFile}):
+ * <pre>
+ * int poolSize, int poolBytes, int[poolSize+1] offsets, byte[poolBytes] UTF-8
+ * byte keyKind [string class], byte valueLayout, byte valueKind [string class]
+ * int n, int[n] keys, values: int[n] | int[n+1] offsets, int[] elements
+ * int extraLength, byte[extraLength] extra
+ * </pre>
+ * where strings are written as int length followed by UTF-8 bytes.
+ *
+ * <p>A read snapshot is a {@link SnapshotMap}, that decodes values only
+ * on access. When a snapshot is written, outdated snapshots of the same
+ * mapper are deleted.
+ *
+ * @version $Rev$
+ */
+final class MappingSnapshot {
+
+  /**
+   * "ZMPS"
+   */
+  static final int MAGIC = 0x5A4D5053;
+
+  /**
+   * Increment on any change of the layout.
+   */
+  static final int FORMAT_VERSION = 1;
+
+  /**
+   * File extension of snapshots.
+   */
+  static final String SUFFIX = ".snapshot";
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /*
+   * Kinds of stored objects.
+   */
+  private static final byte KIND_STRING = 1;
+  private static final byte KIND_INT = 2;
+  /**
+   * Stored as string in the pool and parsed again with a {@link CellParser}.
+   */
+  private static final byte KIND_PARSED = 3;
+
+  /*
+   * Layouts of values.
+   */
+  private static final byte LAYOUT_SCALAR = 0;
+  private static final byte LAYOUT_SET = 1;
+  private static final byte LAYOUT_LIST = 2;
+
+  private MappingSnapshot() {
+    // Utility class
+  }
+
+  /**
+   * @param firstSource
+   * @param mappingName
+   * @param key
+   * @return the snapshot file for the given source and mapper.
+   * @throws IOException if the cache directory could not be created.
+   */
+  static File getSnapshotFile(File firstSource, String mappingName, String key) throws IOException {
+    // The cache file is named after the last segment of the location
+    String location = firstSource.getAbsolutePath() + '/' + getSnapshotPrefix(mappingName)
+        + Integer.toHexString(key.hashCode());
+    return BinaryCacheFile.getCacheFile(location, SUFFIX);
+  }
+
+  /**
+   * @param mappingName
+   * @return the start of the names of all snapshot files of the given
+   * mapper.
+   */
+  private static String getSnapshotPrefix(String mappingName) {
+    return mappingName.replaceAll("[^A-Za-z0-9_\\-]", "_") + '_';
+  }
+
+  /**
+   * Writes a snapshot of {@code mapping}.
+   *
+   * @param snapshot
+   * @param key identifies the configuration of the mapper.
+   * @param sources
+   * @param mapping
+   * @param extra additional data of the mapper (may be {@code null}).
+   * @return {@code false} if the types in {@code mapping} are not supported.
+   * @throws IOException
+   */
+  static boolean write(File snapshot, String key, File[] sources, Map<?, ?> mapping, final byte[] extra) throws IOException {
+    // Determine types
+    final Column keys = Column.of(mapping.keySet());
+    if (keys==null) {
+      return false;
+    }
+    byte layout = LAYOUT_SCALAR;
+    boolean allSets = true, allLists = true, anyCollection = false;
+    for (Object v : mapping.values()) {
+      boolean isCollection = v instanceof Collection<?>;
+      anyCollection |= isCollection;
+      allSets &= (v instanceof Set<?>);
+      allLists &= (v instanceof List<?>);
+      if (anyCollection && !isCollection) {
+        return false;
+      }
+    }
+    List<Object> elements;
+    int[] offsets = null;
+    if (anyCollection) {
+      if (allSets) {
+        layout = LAYOUT_SET;
+      } else if (allLists) {
+        layout = LAYOUT_LIST;
+      } else {
+        return false;
+      }
+      elements = new ArrayList<Object>();
+      offsets = new int[mapping.size()+1];
+      int i = 0;
+      for (Object v : mapping.values()) {
+        elements.addAll((Collection<?>) v);
+        offsets[++i] = elements.size();
+      }
+    } else {
+      elements = new ArrayList<Object>(mapping.values());
+    }
+    final Column values = Column.of(elements);
+    if (values==null) {
+      return false;
+    }
+
+    // Build the string pool
+    Map<String, Integer> pool = new HashMap<String, Integer>();
+    final List<byte[]> poolBytes = new ArrayList<byte[]>();
+    final int[] keyData = keys.encode(mapping.keySet(), pool, poolBytes);
+    final int[] valueData = values.encode(elements, pool, poolBytes);
+
+    final byte valueLayout = layout;
+    final int[] valueOffsets = offsets;
+    BinaryCacheFile.Source[] validation = BinaryCacheFile.Source.allOf(sources);
+    BinaryCacheFile.write(snapshot, MAGIC, FORMAT_VERSION, key, validation, new BinaryCacheFile.Writer() {
+      public void write(DataOutputStream out) throws IOException {
+        out.writeInt(poolBytes.size());
+        int total = 0;
+        for (byte[] b : poolBytes) {
+          total += b.length;
+        }
+        out.writeInt(total);
+        int offset = 0;
+        out.writeInt(0);
+        for (byte[] b : poolBytes) {
+          offset += b.length;
+          out.writeInt(offset);
+        }
+        for (byte[] b : poolBytes) {
+          out.write(b);
+        }
+
+        keys.writeKind(out);
+        out.writeByte(valueLayout);
+        values.writeKind(out);
+        out.writeInt(keyData.length);
+        BinaryCacheFile.writeInts(out, keyData);
+        if (valueOffsets!=null) {
+          BinaryCacheFile.writeInts(out, valueOffsets);
+        }
+        BinaryCacheFile.writeInts(out, valueData);
+
+        out.writeInt(extra==null ? 0 : extra.length);
+        if (extra!=null) {
+          out.write(extra);
+        }
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Reads a snapshot. Only the keys are decoded immediately, values are
+   * decoded from the memory-mapped file on access.
+   *
+   * @param snapshot
+   * @param key must be the same as the one used for writing.
+   * @param sources must have the same size, date and hash as the ones
+   * used for writing.
+   * @return the mapping or {@code null} if the snapshot is missing,
+   * outdated, corrupt or has been created for another configuration.
+   * @throws IOException if the sources could not be read.
+   */
+  static SnapshotMap read(File snapshot, String key, File[] sources) throws IOException {
+    BinaryCacheFile.Source[] validation = BinaryCacheFile.Source.allOf(sources);
+    return BinaryCacheFile.read(snapshot, MAGIC, FORMAT_VERSION, key, validation, new BinaryCacheFile.Reader<SnapshotMap>() {
+      public SnapshotMap read(ByteBuffer buffer) throws IOException {
+        return new SnapshotMap(buffer);
+      }
+    });
+  }
+
+  /**
+   * Deletes all snapshots of the given mapper, except for {@code current},
+   * that would never be read again, because their source files have been
+   * changed or deleted (e.g., an older download).
+   * @param current
+   * @param mappingName
+   */
+  static void deleteStale(File current, String mappingName) {
+    BinaryCacheFile.deleteOutdated(current, getSnapshotPrefix(mappingName), SUFFIX, MAGIC, FORMAT_VERSION);
+  }
+
+  /**
+   * @param buffer
+   * @param ints
+   * @return a view on the next {@code ints} integers of {@code buffer}.
+   * The position of {@code buffer} is moved behind those integers.
+   * @throws IOException if {@code buffer} does not contain enough bytes.
+   */
+  private static IntBuffer slice(ByteBuffer buffer, int ints) throws IOException {
+    BinaryCacheFile.checkRemaining(buffer, ints, 4);
+    ByteBuffer b = buffer.slice();
+    b.limit(ints*4);
+    buffer.position(buffer.position() + ints*4);
+    return b.asIntBuffer();
+  }
+
+  /**
+   * Describes how objects of one column (keys or values) are encoded.
+   */
+  private static class Column {
+    final byte kind;
+    final Class<?> type;
+    CellParser<?> parser;
+
+    Column(byte kind, Class<?> type) {
+      this.kind = kind;
+      this.type = type;
+      if (kind==KIND_PARSED) {
+        parser = CellParser.forType(type);
+      }
+    }
+
+    /**
+     * @param objects
+     * @return a column for {@code objects} or {@code null} if the runtime
+     * types are mixed or not supported.
+     */
+    static Column of(Collection<?> objects) {
+      Class<?> type = null;
+      for (Object o : objects) {
+        if (o==null) {
+          return null;
+        } else if (type==null) {
+          type = o.getClass();
+        } else if (!type.equals(o.getClass())) {
+          return null;
+        }
+      }
+      if (type==null || type.equals(String.class)) {
+        return new Column(KIND_STRING, String.class);
+      } else if (type.equals(Integer.class)) {
+        return new Column(KIND_INT, Integer.class);
+      } else if (type.equals(Long.class) || type.equals(Double.class)) {
+        return new Column(KIND_PARSED, type);
+      }
+      return null;
+    }
+
+    /**
+     * @param objects
+     * @param pool
+     * @param poolBytes
+     * @return encoded {@code objects}.
+     */
+    int[] encode(Collection<?> objects, Map<String, Integer> pool, List<byte[]> poolBytes) {
+      int[] ret = new int[objects.size()];
+      int i = 0;
+      for (Object o : objects) {
+        if (kind==KIND_INT) {
+          ret[i++] = ((Integer) o).intValue();
+        } else {
+          String s = o.toString();
+          Integer index = pool.get(s);
+          if (index==null) {
+            index = Integer.valueOf(poolBytes.size());
+            pool.put(s, index);
+            poolBytes.add(s.getBytes(UTF8));
+          }
+          ret[i++] = index.intValue();
+        }
+      }
+      return ret;
+    }
+
+    /**
+     * @param value
+     * @param map provides the string pool.
+     * @return the decoded object.
+     */
+    Object decode(int value, SnapshotMap map) {
+      if (kind==KIND_INT) {
+        return Integer.valueOf(value);
+      } else if (kind==KIND_STRING) {
+        return map.getString(value);
+      }
+      return parser.parse(map.getString(value));
+    }
+
+    void writeKind(DataOutputStream out) throws IOException {
+      out.writeByte(kind);
+      if (kind==KIND_PARSED) {
+        BinaryCacheFile.writeString(out, type.getName());
+      }
+    }
+
+    static Column readKind(ByteBuffer buffer) throws IOException {
+      byte kind = buffer.get();
+      if (kind==KIND_STRING) {
+        return new Column(kind, String.class);
+      } else if (kind==KIND_INT) {
+        return new Column(kind, Integer.class);
+      } else if (kind==KIND_PARSED) {
+        String name = BinaryCacheFile.readString(buffer);
+        if (Long.class.getName().equals(name)) {
+          return new Column(kind, Long.class);
+        } else if (Double.class.getName().equals(name)) {
+          return new Column(kind, Double.class);
+        }
+      }
+      throw new IOException("Unknown column type in mapping snapshot.");
+    }
+  }
+
+  /**
+   * The mapping of a snapshot. All keys are decoded, when the snapshot is
+   * read, values are decoded from the memory-mapped file on access.
+   * Decoded collections are kept, such that changes to them are not lost.
+   * Modifications of the map are stored separately and never written to
+   * the file. Concurrent reads are safe, as for a {@link HashMap}.
+   */
+  static final class SnapshotMap extends AbstractMap<Object, Object> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Marks removed keys in {@link #changes}.
+     */
+    private static final Object REMOVED = new Object();
+
+    /**
+     * Represents {@code null} values in {@link #changes}.
+     */
+    private static final Object NULL = new Object();
+
+    private final IntBuffer poolOffsets;
+    private final ByteBuffer poolData;
+    /**
+     * Decoded strings of the pool.
+     */
+    private final String[] strings;
+
+    private final Column values;
+    private final byte layout;
+    private final IntBuffer valueOffsets;
+    private final IntBuffer valueData;
+
+    /**
+     * Row of each key in the file.
+     */
+    private Object2IntHashMap<Object> rows;
+
+    /**
+     * Decoded collections, changed, added and {@link #REMOVED} entries.
+     */
+    private final ConcurrentHashMap<Object, Object> changes = new ConcurrentHashMap<Object, Object>();
+
+    private int size;
+
+    private final byte[] extra;
+
+    /**
+     * Reads the content of a snapshot.
+     * @param buffer positioned behind the header of the
+     * {@link BinaryCacheFile}.
+     * @throws IOException if the content is invalid.
+     */
+    SnapshotMap(ByteBuffer buffer) throws IOException {
+      super();
+      // String pool
+      int poolSize = BinaryCacheFile.readCount(buffer, 4);
+      int poolLength = buffer.getInt();
+      poolOffsets = slice(buffer, poolSize+1);
+      checkAscending(poolOffsets, poolLength);
+      BinaryCacheFile.checkRemaining(buffer, poolLength, 1);
+      poolData = buffer.slice();
+      poolData.limit(poolLength);
+      buffer.position(buffer.position() + poolLength);
+      strings = new String[poolSize];
+
+      Column keys = Column.readKind(buffer);
+      layout = buffer.get();
+      values = Column.readKind(buffer);
+      int n = buffer.getInt();
+      IntBuffer keyData = slice(buffer, n);
+      valueOffsets = (layout==LAYOUT_SCALAR) ? null : slice(buffer, n+1);
+      int elements = valueOffsets==null ? n : valueOffsets.get(n);
+      valueData = slice(buffer, elements);
+      if (valueOffsets!=null) {
+        checkAscending(valueOffsets, elements);
+      }
+      checkPoolIndices(keys, keyData, poolSize);
+      checkPoolIndices(values, valueData, poolSize);
+      extra = new byte[BinaryCacheFile.readCount(buffer, 1)];
+      buffer.get(extra);
+
+      rows = new Object2IntHashMap<Object>(n, -1);
+      for (int i=0; i<n; i++) {
+        rows.put(keys.decode(keyData.get(i), this), i);
+      }
+      size = rows.size();
+    }
+
+    /**
+     * @param offsets
+     * @param max
+     * @throws IOException if {@code offsets} do not start at 0, are not
+     * ascending or end behind {@code max}.
+     */
+    private static void checkAscending(IntBuffer offsets, int max) throws IOException {
+      int last = 0;
+      for (int i=0; i<offsets.limit(); i++) {
+        int offset = offsets.get(i);
+        if ((i==0 && offset!=0) || offset<last || offset>max) {
+          throw new IOException("Invalid offsets in mapping snapshot.");
+        }
+        last = offset;
+      }
+    }
+
+    /**
+     * @param column
+     * @param data
+     * @param poolSize
+     * @throws IOException if {@code column} refers to strings, that are
+     * not in the pool.
+     */
+    private static void checkPoolIndices(Column column, IntBuffer data, int poolSize) throws IOException {
+      if (column.kind==KIND_INT) {
+        return;
+      }
+      for (int i=0; i<data.limit(); i++) {
+        int index = data.get(i);
+        if (index<0 || index>=poolSize) {
+          throw new IOException("Invalid string in mapping snapshot.");
+        }
+      }
+    }
+
+    /**
+     * @return the extra data of the mapper.
+     */
+    byte[] getExtra() {
+      return extra;
+    }
+
+    /**
+     * @param index
+     * @return the string at {@code index} of the pool.
+     */
+    String getString(int index) {
+      String s = strings[index];
+      if (s==null) {
+        int start = poolOffsets.get(index);
+        byte[] b = new byte[poolOffsets.get(index+1)-start];
+        ByteBuffer data = poolData.duplicate();
+        data.position(start);
+        data.get(b);
+        // Racing threads decode equal strings, which is harmless
+        s = new String(b, UTF8);
+        strings[index] = s;
+      }
+      return s;
+    }
+
+    /**
+     * @param row
+     * @return the decoded value of {@code row}.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Object decodeValue(int row) {
+      if (valueOffsets==null) {
+        return values.decode(valueData.get(row), this);
+      }
+      int start = valueOffsets.get(row), end = valueOffsets.get(row+1);
+      Collection c = (layout==LAYOUT_LIST) ? new ArrayList(end-start) : new HashSet(Math.max(4, (int) ((end-start)/.75f)+1));
+      for (int j=start; j<end; j++) {
+        c.add(values.decode(valueData.get(j), this));
+      }
+      return c;
+    }
+
+    /**
+     * @param key
+     * @return the value of {@code key} in {@link #changes} (maybe
+     * {@link #REMOVED}), or {@code null} if it has not been changed.
+     */
+    private Object getChanged(Object key) {
+      return key==null ? null : changes.get(key);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractMap#get(java.lang.Object)
+     */
+    @Override
+    public Object get(Object key) {
+      Object v = getChanged(key);
+      if (v!=null) {
+        return (v==REMOVED || v==NULL) ? null : v;
+      }
+      int row = key==null ? -1 : rows.getInt(key);
+      if (row<0) {
+        return null;
+      }
+      v = decodeValue(row);
+      if (valueOffsets!=null) {
+        // Keep collections, callers might add elements
+        Object other = changes.putIfAbsent(key, v);
+        if (other!=null) {
+          return (other==REMOVED || other==NULL) ? null : other;
+        }
+      }
+      return v;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractMap#containsKey(java.lang.Object)
+     */
+    @Override
+    public boolean containsKey(Object key) {
+      Object v = getChanged(key);
+      if (v!=null) {
+        return v!=REMOVED;
+      }
+      return key!=null && rows.containsKey(key);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractMap#put(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public Object put(Object key, Object value) {
+      if (key==null) {
+        throw new NullPointerException();
+      }
+      boolean existed = containsKey(key);
+      Object old = existed ? get(key) : null;
+      changes.put(key, value==null ? NULL : value);
+      if (!existed) {
+        size++;
+      }
+      return old;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractMap#remove(java.lang.Object)
+     */
+    @Override
+    public Object remove(Object key) {
+      if (!containsKey(key)) {
+        return null;
+      }
+      Object old = get(key);
+      if (rows.containsKey(key)) {
+        changes.put(key, REMOVED);
+      } else {
+        changes.remove(key);
+      }
+      size--;
+      return old;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractMap#size()
+     */
+    @Override
+    public int size() {
+      return size;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractMap#clear()
+     */
+    @Override
+    public void clear() {
+      rows = new Object2IntHashMap<Object>(0, -1);
+      changes.clear();
+      size = 0;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractMap#entrySet()
+     */
+    @Override
+    public Set<Map.Entry<Object, Object>> entrySet() {
+      return new AbstractSet<Map.Entry<Object, Object>>() {
+        @Override
+        public Iterator<Map.Entry<Object, Object>> iterator() {
+          return new EntryIterator();
+        }
+        @Override
+        public int size() {
+          return size;
+        }
+        @Override
+        public void clear() {
+          SnapshotMap.this.clear();
+        }
+      };
+    }
+
+    /**
+     * Iterates over all keys of the file, that have not been removed,
+     * followed by all added keys. Values are decoded by
+     * {@link SnapshotMap#get(Object)}.
+     */
+    private class EntryIterator implements Iterator<Map.Entry<Object, Object>> {
+      private final Iterator<Object> fileKeys = rows.keySet().iterator();
+      private final Iterator<Map.Entry<Object, Object>> addedKeys = changes.entrySet().iterator();
+      private Object next = null;
+      private Object current = null;
+
+      EntryIterator() {
+        advance();
+      }
+
+      private void advance() {
+        next = null;
+        while (next==null && fileKeys.hasNext()) {
+          Object key = fileKeys.next();
+          if (getChanged(key)!=REMOVED) {
+            next = key;
+          }
+        }
+        while (next==null && addedKeys.hasNext()) {
+          Map.Entry<Object, Object> e = addedKeys.next();
+          if (e.getValue()!=REMOVED && !rows.containsKey(e.getKey())) {
+            next = e.getKey();
+          }
+        }
+      }
+
+      public boolean hasNext() {
+        return next!=null;
+      }
+
+      public Map.Entry<Object, Object> next() {
+        if (next==null) {
+          throw new NoSuchElementException();
+        }
+        current = next;
+        advance();
+        final Object key = current;
+        return new AbstractMap.SimpleEntry<Object, Object>(key, get(key)) {
+          private static final long serialVersionUID = 1L;
+          @Override
+          public Object setValue(Object value) {
+            put(key, value);
+            return super.setValue(value);
+          }
+        };
+      }
+
+      public void remove() {
+        if (current==null) {
+          throw new IllegalStateException();
+        }
+        SnapshotMap.this.remove(current);
+        current = null;
+      }
+    }
+
+    /**
+     * The memory-mapped file can not be serialized.
+     * @return a {@link HashMap} with all entries.
+     * @throws ObjectStreamException
+     */
+    private Object writeReplace() throws ObjectStreamException {
+      return new HashMap<Object, Object>(this);
+    }
+  }
+
+}
@@ -24,10 +24,11 @@ import java.util.logging.Logger;
 
 import de.zbit.io.FileTools;
 import de.zbit.io.csv.CSVReader;
+import de.zbit.io.csv.ParallelLineReader;
 import de.zbit.mapper.AbstractMapper;
+import de.zbit.mapper.CellParser;
 import de.zbit.util.ArrayUtils;
 import de.zbit.util.Timer;
-import de.zbit.util.prefs.Option;
 import de.zbit.util.progressbar.AbstractProgressBar;
 
 /**
@@ -59,6 +60,11 @@ public abstract class AbstractMultiEntryMapper<SourceType,TargetType> extends Ab
    */
   private final Class<TargetType> innerTargetType;
   
+  /**
+   * Converts target cells to the {@link #innerTargetType}.
+   */
+  private transient CellParser<TargetType> innerTargetParser = null;
+  
   /**
    * Initializes the mapper. Downloads and reads the mapping
    * file automatically as required.
@@ -94,6 +100,16 @@ public abstract class AbstractMultiEntryMapper<SourceType,TargetType> extends Ab
   	return this.innerTargetType;
   }
   
+  /**
+   * @return the {@link CellParser} for single target entries.
+   */
+  protected CellParser<TargetType> getInnerTargetParser() {
+    if (innerTargetParser==null) {
+      innerTargetParser = CellParser.forType(innerTargetType);
+    }
+    return innerTargetParser;
+  }
+  
   /**
    * Reads the mapping from {@link #localFile} into the {@link #mapping} set.
    * Downloads data automatically from {@link #downloadURL} as required.
@@ -113,6 +129,9 @@ public abstract class AbstractMultiEntryMapper<SourceType,TargetType> extends Ab
     // Parse all files.
     Timer t = new Timer();
     String[] localFiles = ArrayUtils.merge(getLocalFiles(), getLocalFile(), getTempLocalFile());
+    if (readSnapshot(localFiles)) {
+      return true;
+    }
     for (String localFile: localFiles) {
       if (!FileTools.checkInputResource(localFile, this.getClass())) {
         log.config("Skipping " + getMappingName() + " mapping file " + (localFile==null?"null":localFile));
@@ -141,9 +160,11 @@ public abstract class AbstractMultiEntryMapper<SourceType,TargetType> extends Ab
       }
       
       // Read Source <=> Target mapping.
+      boolean innerTargetIsCollection = Collection.class.isAssignableFrom(innerTargetType);
       String[] line;
       r.open();
-      while ((line = r.getNextLine())!=null) {
+      ParallelLineReader lines = new ParallelLineReader(r, getNumberOfReaderThreads());
+      while ((line = lines.getNextLine())!=null) {
         if (line.length<=maxColumn) {
           log.severe("Incomplete entry in mapping file '" + localFile + "'. Please try to delete this file and execute this application again.");
           continue;
@@ -172,7 +193,7 @@ public abstract class AbstractMultiEntryMapper<SourceType,TargetType> extends Ab
         	}
         	
         	TargetType target;
-          if (Collection.class.isAssignableFrom(innerTargetType)) {
+          if (innerTargetIsCollection) {
             // Mapping from x to a collection.
              target = (TargetType) new HashSet(); // Do not store the same target multiple times
              // Remark: This works also for non-Strings, since the type of the collection is
@@ -180,7 +201,7 @@ public abstract class AbstractMultiEntryMapper<SourceType,TargetType> extends Ab
              // real target type.
             ((Collection)target).add(preProcessTargetID(targetString));
           } else {
-            target = Option.parseOrCast(innerTargetType, preProcessTargetID(targetString));
+            target = getInnerTargetParser().parse(preProcessTargetID(targetString));
           }
           if (target==null) {
             log.warning("Invalid target content in " + getMappingName() + " mapping file: " + ((line.length>targetColumn)?line[targetColumn]:"line too short."));
@@ -217,10 +238,15 @@ public abstract class AbstractMultiEntryMapper<SourceType,TargetType> extends Ab
         }
 
       }
+      lines.close();
     }
     
     log.config("Parsed " + getMappingName() + " mapping file in " + t.getNiceAndReset()+". Read " + ((getMapping()!=null)?getMapping().size():"0") + " mappings.");
-    return (getMapping()!=null && getMapping().size()>0);
+    boolean success = (getMapping()!=null && getMapping().size()>0);
+    if (success) {
+      writeSnapshot(localFiles);
+    }
+    return success;
   }
 
   /**
@@ -241,7 +267,7 @@ public abstract class AbstractMultiEntryMapper<SourceType,TargetType> extends Ab
 	  	// Get source ID
 	    SourceType source = null;
 	    try {
-	      source = Option.parseOrCast(getSourceType(), preProcessSourceID(sourceEntry));
+	      source = getSourceParser().parse(preProcessSourceID(sourceEntry));
 	    } catch (Throwable e) {}
 	    if (source==null) {
 	      log.warning("Invalid source content in " + getMappingName() + " mapping file: " + (sourceEntry!=null?sourceEntry:"null.") );
@@ -251,7 +277,7 @@ public abstract class AbstractMultiEntryMapper<SourceType,TargetType> extends Ab
 	    if (source==null) return;
 	    
 	    // Allow multiple target elements in collections
-	    if (Collection.class.isAssignableFrom(getTargetType())) {
+	    if (target instanceof Collection) {
 	      Collection c = (Collection) getMapping().get(source);
 	      if (c!=null) {
 	        c.addAll((Collection)target);
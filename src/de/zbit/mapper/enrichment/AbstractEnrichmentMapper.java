@@ -16,6 +16,8 @@
  */
 package de.zbit.mapper.enrichment;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -104,6 +106,36 @@ public abstract class AbstractEnrichmentMapper<SourceType, TargetType> extends A
   
 
   
+  /* (non-Javadoc)
+   * @see de.zbit.mapper.AbstractMapper#writeSnapshotExtra(java.io.DataOutput)
+   */
+  @Override
+  protected void writeSnapshotExtra(DataOutput out) throws IOException {
+    super.writeSnapshotExtra(out);
+    out.writeInt(sumOfCollectionSizes);
+    out.writeInt(entitiesInPathway.size());
+    for (Entry<String, Integer> entry : entitiesInPathway.entrySet()) {
+      out.writeUTF(entry.getKey());
+      out.writeInt(entry.getValue());
+    }
+  }
+  
+  /* (non-Javadoc)
+   * @see de.zbit.mapper.AbstractMapper#readSnapshotExtra(java.io.DataInput)
+   */
+  @Override
+  protected void readSnapshotExtra(DataInput in) throws IOException {
+    super.readSnapshotExtra(in);
+    int sum = in.readInt();
+    int size = in.readInt();
+    Map<String, Integer> entities = new HashMap<String, Integer>(Math.max(16, (int) (size/.75f)+1));
+    for (int i=0; i<size; i++) {
+      entities.put(in.readUTF(), in.readInt());
+    }
+    sumOfCollectionSizes = sum;
+    entitiesInPathway = entities;
+  }
+  
   /* (non-Javadoc)
    * @see de.zbit.mapper.EnrichmentMapper#getGenomeSize()
    */
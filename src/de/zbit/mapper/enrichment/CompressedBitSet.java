@@ -0,0 +1,138 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.mapper.enrichment;
+
+/**
+ * An immutable set of non-negative {@code int}s, that stores only those
+ * 64 bit words of a bitset, which contain at least one element. Entities
+ * of one enrichment class are usually sparse in the set of all entities,
+ * but clustered (see {@link EnrichmentAnalysis}), such that few words are
+ * required.
+ * 
+ * @version $Rev$
+ */
+final class CompressedBitSet {
+  
+  /**
+   * Indices of the stored words, ascending.
+   */
+  private final int[] index;
+  
+  /**
+   * {@code words[i]} contains the bits {@code 64*index[i]} to
+   * {@code 64*index[i]+63}.
+   */
+  private final long[] words;
+  
+  /**
+   * Number of elements.
+   */
+  private final int cardinality;
+  
+  /**
+   * @param elements sorted, distinct elements.
+   * @param size number of elements to use from {@code elements}.
+   */
+  CompressedBitSet(int[] elements, int size) {
+    super();
+    int numWords = 0;
+    int last = -1;
+    for (int i=0; i<size; i++) {
+      int w = elements[i]>>>6;
+      if (w!=last) {
+        numWords++;
+        last = w;
+      }
+    }
+    index = new int[numWords];
+    words = new long[numWords];
+    int n = -1;
+    last = -1;
+    for (int i=0; i<size; i++) {
+      int w = elements[i]>>>6;
+      if (w!=last) {
+        index[++n] = w;
+        last = w;
+      }
+      words[n] |= 1L<<elements[i];
+    }
+    cardinality = size;
+  }
+  
+  /**
+   * @return the number of elements.
+   */
+  int cardinality() {
+    return cardinality;
+  }
+  
+  /**
+   * @param element
+   * @return {@code true} if {@code element} is contained.
+   */
+  boolean get(int element) {
+    int low = 0;
+    int high = index.length-1;
+    int w = element>>>6;
+    while (low<=high) {
+      int mid = (low+high)>>>1;
+      if (index[mid]<w) {
+        low = mid+1;
+      } else if (index[mid]>w) {
+        high = mid-1;
+      } else {
+        return (words[mid] & (1L<<element))!=0;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * @param bits an uncompressed bitset (see {@link #toWords(int[], int, int)}).
+   * @return the number of elements, that are contained in this set and
+   * in {@code bits}.
+   */
+  int intersectionCount(long[] bits) {
+    int count = 0;
+    for (int i=0; i<index.length && index[i]<bits.length; i++) {
+      count += Long.bitCount(words[i] & bits[index[i]]);
+    }
+    return count;
+  }
+  
+  /**
+   * @return the number of stored words.
+   */
+  int getNumberOfWords() {
+    return words.length;
+  }
+  
+  /**
+   * @param elements
+   * @param size number of elements to use from {@code elements}.
+   * @param universe all elements must be smaller than this value.
+   * @return an uncompressed bitset of the given elements.
+   */
+  static long[] toWords(int[] elements, int size, int universe) {
+    long[] bits = new long[(universe+63)>>>6];
+    for (int i=0; i<size; i++) {
+      bits[elements[i]>>>6] |= 1L<<elements[i];
+    }
+    return bits;
+  }
+  
+}
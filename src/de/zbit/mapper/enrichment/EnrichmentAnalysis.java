@@ -0,0 +1,527 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.mapper.enrichment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import de.zbit.collection.Object2IntHashMap;
+import de.zbit.math.Hypergeometric;
+import de.zbit.util.ThreadManager;
+
+/**
+ * Tests many lists of entities (e.g., genes) for enriched classes (e.g.,
+ * pathways) of an {@link EnrichmentMapper}. All entities are interned to
+ * dense {@code int}s and each enrichment class is stored as a
+ * {@link CompressedBitSet}. Overlaps of an input list with all classes
+ * are counted with {@link Long#bitCount(long)} and scored with
+ * {@link Hypergeometric#enrichmentSignificance(int, int, int, int)} on
+ * multiple threads.
+ * 
+ * <p>The genome size is the number of distinct entities in all classes
+ * and the size of an input list is the number of its distinct entities,
+ * that are contained in any class. Only classes with at least one entity
+ * of the input list are tested and reported.
+ * 
+ * <p>Instances are immutable, except for {@link #setCorrection(Correction)},
+ * and may be used by multiple threads.
+ * 
+ * @version $Rev$
+ * @param <SourceType> entity identifier
+ * @param <TargetType> enrichment class identifier
+ */
+public class EnrichmentAnalysis<SourceType, TargetType> {
+  
+  /**
+   * Corrections of p-values for multiple testing.
+   */
+  public static enum Correction {
+    /**
+     * q-values are equal to p-values.
+     */
+    NONE,
+    /**
+     * p-values are multiplied by the number of tests.
+     */
+    BONFERRONI,
+    /**
+     * Benjamini-Hochberg false discovery rate.
+     */
+    BENJAMINI_HOCHBERG;
+  }
+  
+  /**
+   * The result for one enrichment class and one input list.
+   * @param <TargetType>
+   */
+  public static class Result<TargetType> implements Comparable<Result<?>> {
+    private final TargetType enrichmentClass;
+    private final int overlap;
+    private final int classSize;
+    private final int listSize;
+    private final int genomeSize;
+    private final double pValue;
+    private double qValue;
+    private final int permutations;
+    
+    Result(TargetType enrichmentClass, int overlap, int classSize, int listSize,
+      int genomeSize, double pValue) {
+      this(enrichmentClass, overlap, classSize, listSize, genomeSize, pValue, 0);
+    }
+    
+    Result(TargetType enrichmentClass, int overlap, int classSize, int listSize,
+      int genomeSize, double pValue, int permutations) {
+      super();
+      this.enrichmentClass = enrichmentClass;
+      this.overlap = overlap;
+      this.classSize = classSize;
+      this.listSize = listSize;
+      this.genomeSize = genomeSize;
+      this.pValue = pValue;
+      this.qValue = pValue;
+      this.permutations = permutations;
+    }
+    
+    /**
+     * @return the enrichment class (e.g., pathway)
+     */
+    public TargetType getEnrichmentClass() {
+      return enrichmentClass;
+    }
+    
+    /**
+     * @return number of entities of the input list in the enrichment class.
+     */
+    public int getOverlap() {
+      return overlap;
+    }
+    
+    /**
+     * @return number of entities in the enrichment class.
+     */
+    public int getClassSize() {
+      return classSize;
+    }
+    
+    /**
+     * @return number of distinct, known entities in the input list.
+     */
+    public int getListSize() {
+      return listSize;
+    }
+    
+    /**
+     * @return number of distinct entities in all enrichment classes.
+     */
+    public int getGenomeSize() {
+      return genomeSize;
+    }
+    
+    /**
+     * @return the p-value of the hypergeometric test or the empirical
+     * p-value of the {@link EnrichmentPermutationTest}.
+     */
+    public double getPValue() {
+      return pValue;
+    }
+    
+    /**
+     * @return the p-value, corrected for multiple testing.
+     */
+    public double getQValue() {
+      return qValue;
+    }
+    
+    /**
+     * @return number of permutations, the empirical p-value is based on,
+     * or 0 for the hypergeometric test.
+     */
+    public int getPermutations() {
+      return permutations;
+    }
+    
+    /**
+     * @param qValue
+     */
+    void setQValue(double qValue) {
+      this.qValue = qValue;
+    }
+    
+    /* (non-Javadoc)
+     * @see java.lang.Comparable#compareTo(java.lang.Object)
+     */
+    public int compareTo(Result<?> o) {
+      int r = Double.compare(pValue, o.pValue);
+      if (r==0) {
+        r = o.overlap - overlap;
+      }
+      return r;
+    }
+    
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+      return String.format("%s: %s/%s of %s/%s, p=%s, q=%s", enrichmentClass, overlap,
+        listSize, classSize, genomeSize, pValue, qValue);
+    }
+  }
+  
+  /**
+   * Minimum number of classes, that are scored by one task.
+   */
+  private static final int MIN_CLASSES_PER_TASK = 256;
+  
+  /**
+   * Entity to dense id.
+   */
+  private final Object2IntHashMap<SourceType> ids;
+  
+  /**
+   * All enrichment classes.
+   */
+  private final List<TargetType> classes;
+  
+  /**
+   * Enrichment class to its index in {@link #classes}.
+   */
+  private final Object2IntHashMap<TargetType> classIndex;
+  
+  /**
+   * {@code members[c]} contains the ids of all entities in {@code classes.get(c)}.
+   */
+  private final CompressedBitSet[] members;
+  
+  private Correction correction = Correction.BENJAMINI_HOCHBERG;
+  
+  /**
+   * @param mapper an initialized mapper.
+   */
+  public EnrichmentAnalysis(AbstractEnrichmentMapper<SourceType, TargetType> mapper) {
+    this(mapper.getMapping());
+  }
+  
+  /**
+   * @param mapping entities to their enrichment classes, e.g., the
+   * {@link de.zbit.mapper.AbstractMapper#getMapping()} of an {@link EnrichmentMapper}.
+   */
+  public EnrichmentAnalysis(Map<SourceType, ? extends Collection<TargetType>> mapping) {
+    super();
+    // Group by class
+    Map<TargetType, List<SourceType>> byClass = new HashMap<TargetType, List<SourceType>>();
+    classes = new ArrayList<TargetType>();
+    for (Map.Entry<SourceType, ? extends Collection<TargetType>> e : mapping.entrySet()) {
+      if (e.getValue()==null) {
+        continue;
+      }
+      for (TargetType c : e.getValue()) {
+        List<SourceType> list = byClass.get(c);
+        if (list==null) {
+          list = new ArrayList<SourceType>();
+          byClass.put(c, list);
+          classes.add(c);
+        }
+        list.add(e.getKey());
+      }
+    }
+    
+    classIndex = new Object2IntHashMap<TargetType>(classes.size(), -1);
+    for (int c=0; c<classes.size(); c++) {
+      classIndex.put(classes.get(c), c);
+    }
+    
+    // Entities of one class get consecutive ids, if possible
+    ids = new Object2IntHashMap<SourceType>(mapping.size(), -1);
+    members = new CompressedBitSet[classes.size()];
+    int[] buffer = new int[16];
+    for (int c=0; c<members.length; c++) {
+      List<SourceType> list = byClass.get(classes.get(c));
+      if (buffer.length<list.size()) {
+        buffer = new int[list.size()];
+      }
+      for (int i=0; i<list.size(); i++) {
+        SourceType s = list.get(i);
+        int id = ids.getInt(s);
+        if (id<0) {
+          id = ids.size();
+          ids.put(s, id);
+        }
+        buffer[i] = id;
+      }
+      members[c] = new CompressedBitSet(buffer, unique(buffer, list.size()));
+    }
+  }
+  
+  /**
+   * Sorts the array and removes duplicates.
+   * @param values
+   * @param size number of values to use.
+   * @return the new number of values.
+   */
+  private static int unique(int[] values, int size) {
+    Arrays.sort(values, 0, size);
+    int n = 0;
+    for (int i=0; i<size; i++) {
+      if (n==0 || values[n-1]!=values[i]) {
+        values[n++] = values[i];
+      }
+    }
+    return n;
+  }
+  
+  /**
+   * @return the pool used for scoring.
+   */
+  static ExecutorService getPool() {
+    return ThreadManager.getSharedDaemonPool("EnrichmentAnalysis");
+  }
+  
+  /**
+   * @param correction the correction for multiple testing. Default is
+   * {@link Correction#BENJAMINI_HOCHBERG}.
+   */
+  public void setCorrection(Correction correction) {
+    this.correction = correction;
+  }
+  
+  /**
+   * @return the correction for multiple testing.
+   */
+  public Correction getCorrection() {
+    return correction;
+  }
+  
+  /**
+   * @return number of distinct entities in all enrichment classes.
+   */
+  public int getGenomeSize() {
+    return ids.size();
+  }
+  
+  /**
+   * @return all enrichment classes.
+   */
+  public List<TargetType> getEnrichmentClasses() {
+    return Collections.unmodifiableList(classes);
+  }
+  
+  /**
+   * @param className
+   * @return number of distinct entities in the given enrichment class.
+   */
+  public int getEnrichmentClassSize(TargetType className) {
+    int c = classIndex.getInt(className);
+    return c<0 ? 0 : members[c].cardinality();
+  }
+  
+  /**
+   * @param c
+   * @return the entities of the {@code c}th class of {@link #getEnrichmentClasses()}.
+   */
+  CompressedBitSet getMembers(int c) {
+    return members[c];
+  }
+  
+  /**
+   * @param list input entities, e.g., differentially expressed genes.
+   * @return the enriched classes, sorted by p-value.
+   * @throws InterruptedException
+   */
+  public List<Result<TargetType>> analyze(Collection<? extends SourceType> list) throws InterruptedException {
+    return analyze(Collections.singletonList(list)).get(0);
+  }
+  
+  /**
+   * Tests all lists in parallel.
+   * @param lists input lists, e.g., differentially expressed genes of
+   * multiple experiments.
+   * @return for each list, the enriched classes, sorted by p-value.
+   * @throws InterruptedException
+   */
+  public List<List<Result<TargetType>>> analyze(List<? extends Collection<? extends SourceType>> lists) throws InterruptedException {
+    final int genomeSize = getGenomeSize();
+    final int numClasses = members.length;
+    final long[][] bits = new long[lists.size()][];
+    final int[] listSizes = new int[lists.size()];
+    final int[][] overlaps = new int[lists.size()][numClasses];
+    final double[][] pValues = new double[lists.size()][numClasses];
+    for (int l=0; l<bits.length; l++) {
+      bits[l] = toBits(lists.get(l));
+      for (long w : bits[l]) {
+        listSizes[l] += Long.bitCount(w);
+      }
+    }
+    
+    // Score chunks of classes for each list
+    int perTask = Math.max(MIN_CLASSES_PER_TASK,
+      (numClasses + ThreadManager.NUMBER_OF_PROCESSORS-1) / ThreadManager.NUMBER_OF_PROCESSORS);
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int l=0; l<bits.length; l++) {
+      for (int start=0; start<numClasses; start+=perTask) {
+        final int list = l;
+        final int from = start;
+        final int to = Math.min(numClasses, start+perTask);
+        tasks.add(new Callable<Void>() {
+          public Void call() {
+            score(bits[list], listSizes[list], genomeSize, from, to, overlaps[list], pValues[list]);
+            return null;
+          }
+        });
+      }
+    }
+    if (tasks.size()==1) {
+      try {
+        tasks.get(0).call();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    } else if (tasks.size()>1) {
+      List<Future<Void>> futures = getPool().invokeAll(tasks);
+      for (Future<Void> f : futures) {
+        await(f);
+      }
+    }
+    
+    List<List<Result<TargetType>>> ret = new ArrayList<List<Result<TargetType>>>(bits.length);
+    for (int l=0; l<bits.length; l++) {
+      List<Result<TargetType>> results = new ArrayList<Result<TargetType>>();
+      for (int c=0; c<numClasses; c++) {
+        if (overlaps[l][c]>0) {
+          results.add(new Result<TargetType>(classes.get(c), overlaps[l][c],
+            members[c].cardinality(), listSizes[l], genomeSize, pValues[l][c]));
+        }
+      }
+      Collections.sort(results);
+      correct(results, correction);
+      ret.add(results);
+    }
+    return ret;
+  }
+  
+  /**
+   * @param list
+   * @return the ids of all known entities in {@code list} as bitset.
+   */
+  long[] toBits(Collection<? extends SourceType> list) {
+    int[] elements = new int[list.size()];
+    int n = 0;
+    for (SourceType s : list) {
+      int id = ids.getInt(s);
+      if (id>=0) {
+        elements[n++] = id;
+      }
+    }
+    return CompressedBitSet.toWords(elements, n, ids.size());
+  }
+  
+  /**
+   * Counts the overlaps and calculates the p-values of the classes
+   * {@code from} (inclusive) to {@code to} (exclusive).
+   */
+  private void score(long[] bits, int listSize, int genomeSize, int from, int to,
+    int[] overlaps, double[] pValues) {
+    for (int c=from; c<to; c++) {
+      int overlap = members[c].intersectionCount(bits);
+      overlaps[c] = overlap;
+      pValues[c] = overlap>0 ? Hypergeometric.enrichmentSignificance(genomeSize, listSize,
+        members[c].cardinality(), overlap) : 1;
+    }
+  }
+  
+  /**
+   * @param f
+   * @throws InterruptedException
+   */
+  static void await(Future<?> f) throws InterruptedException {
+    try {
+      f.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      } else if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+  
+  /**
+   * Sets the q-values of the given results.
+   * @param results sorted by p-value.
+   * @param correction
+   */
+  static void correct(List<? extends Result<?>> results, Correction correction) {
+    double[] pValues = new double[results.size()];
+    for (int i=0; i<pValues.length; i++) {
+      pValues[i] = results.get(i).getPValue();
+    }
+    double[] qValues = correct(pValues, correction);
+    for (int i=0; i<qValues.length; i++) {
+      results.get(i).setQValue(qValues[i]);
+    }
+  }
+  
+  /**
+   * Corrects p-values for multiple testing, assuming that each p-value
+   * is one test.
+   * @param pValues in any order.
+   * @param correction
+   * @return the corrected p-values in the same order.
+   */
+  public static double[] correct(double[] pValues, Correction correction) {
+    int n = pValues.length;
+    double[] ret = new double[n];
+    if (correction==null || correction==Correction.NONE) {
+      System.arraycopy(pValues, 0, ret, 0, n);
+    } else if (correction==Correction.BONFERRONI) {
+      for (int i=0; i<n; i++) {
+        ret[i] = Math.min(1, pValues[i]*n);
+      }
+    } else {
+      // Indices sorted by p-value
+      Integer[] order = new Integer[n];
+      for (int i=0; i<n; i++) {
+        order[i] = i;
+      }
+      final double[] p = pValues;
+      Arrays.sort(order, new Comparator<Integer>() {
+        public int compare(Integer a, Integer b) {
+          return Double.compare(p[a], p[b]);
+        }
+      });
+      double min = 1;
+      for (int rank=n; rank>0; rank--) {
+        int i = order[rank-1];
+        min = Math.min(min, p[i]*n/rank);
+        ret[i] = min;
+      }
+    }
+    return ret;
+  }
+  
+}
@@ -0,0 +1,368 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.mapper.enrichment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.zbit.util.ThreadManager;
+
+/**
+ * Empirical p-values for an {@link EnrichmentAnalysis}, if the assumptions
+ * of the hypergeometric test do not hold. Each permutation draws a random
+ * list with the same number of known entities as the input list, and
+ * counts, how often a class overlaps at least as much with the random
+ * list as with the input list. The empirical p-value is
+ * {@code (exceedances+1)/(permutations+1)} and q-values are computed with
+ * the {@link EnrichmentAnalysis#getCorrection()} of the analysis.
+ * 
+ * <p>A class is not permuted any further, as soon as it reached
+ * {@link #getMaxExceedances()} exceedances, because it is clearly not
+ * significant (sequential Monte Carlo p-values, Besag and Clifford 1991).
+ * 
+ * <p>Permutations are executed in chunks on all processors. Each chunk
+ * has its own random number generator, split from one generator
+ * initialized with {@link #setSeed(long)}, such that results only depend
+ * on the seed and not on the number of threads. Random lists are drawn
+ * into bitsets, that are allocated once per thread and call.
+ * 
+ * @version $Rev$
+ * @param <SourceType> entity identifier
+ * @param <TargetType> enrichment class identifier
+ */
+public class EnrichmentPermutationTest<SourceType, TargetType> {
+  
+  /**
+   * Default number of permutations.
+   */
+  public static final int DEFAULT_PERMUTATIONS = 10000;
+  
+  /**
+   * Default number of exceedances, after which a class is not permuted
+   * any further.
+   */
+  public static final int DEFAULT_MAX_EXCEEDANCES = 10;
+  
+  /**
+   * Number of permutations that share one random number generator.
+   */
+  static final int CHUNK_SIZE = 64;
+  
+  /**
+   * Number of chunks, after which classes are checked for early stopping.
+   */
+  static final int CHUNKS_PER_ROUND = 32;
+  
+  /**
+   * SplitMix64 random number generator (as {@code java.util.SplittableRandom}
+   * in Java 8).
+   */
+  static final class SplitMix64 {
+    private long state;
+    
+    SplitMix64(long seed) {
+      super();
+      this.state = seed;
+    }
+    
+    long nextLong() {
+      long z = (state += 0x9E3779B97F4A7C15L);
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      return z ^ (z >>> 31);
+    }
+    
+    /**
+     * @param bound
+     * @return a uniformly distributed value in {@code [0, bound)}.
+     */
+    int nextInt(int bound) {
+      int r = (int) (nextLong() >>> 33);
+      int m = bound - 1;
+      if ((bound & m) == 0) {
+        return (int) ((bound * (long) r) >>> 31);
+      }
+      // Reject values of the last, incomplete range (as java.util.Random)
+      for (int u = r; u - (r = u % bound) + m < 0; u = (int) (nextLong() >>> 33));
+      return r;
+    }
+    
+    /**
+     * @return a new, independent generator.
+     */
+    SplitMix64 split() {
+      return new SplitMix64(nextLong());
+    }
+  }
+  
+  private final EnrichmentAnalysis<SourceType, TargetType> analysis;
+  
+  private int permutations = DEFAULT_PERMUTATIONS;
+  
+  private int maxExceedances = DEFAULT_MAX_EXCEEDANCES;
+  
+  private long seed = System.nanoTime();
+  
+  /**
+   * @param analysis the classes to test.
+   */
+  public EnrichmentPermutationTest(EnrichmentAnalysis<SourceType, TargetType> analysis) {
+    super();
+    this.analysis = analysis;
+  }
+  
+  /**
+   * @param permutations maximum number of permutations per class.
+   */
+  public void setPermutations(int permutations) {
+    this.permutations = Math.max(1, permutations);
+  }
+  
+  /**
+   * @return maximum number of permutations per class.
+   */
+  public int getPermutations() {
+    return permutations;
+  }
+  
+  /**
+   * @param maxExceedances number of exceedances, after which a class is
+   * not permuted any further. Use {@link Integer#MAX_VALUE} to always
+   * execute all permutations.
+   */
+  public void setMaxExceedances(int maxExceedances) {
+    this.maxExceedances = Math.max(1, maxExceedances);
+  }
+  
+  /**
+   * @return number of exceedances, after which a class is not permuted
+   * any further.
+   */
+  public int getMaxExceedances() {
+    return maxExceedances;
+  }
+  
+  /**
+   * @param seed seed for all random numbers. Default is {@link System#nanoTime()}.
+   */
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+  
+  /**
+   * Random lists and the exceedances of one thread.
+   */
+  private static class Worker implements Callable<Void> {
+    private final EnrichmentAnalysis<?, ?> analysis;
+    private final int genomeSize;
+    private final int listSize;
+    /** Remove random entities from all, instead of adding to none. */
+    private final boolean complement;
+    /** All entities. */
+    private final long[] all;
+    /** The current random list. */
+    private final long[] bits;
+    /** Entities of the current random list, if not {@link #complement}. */
+    private final int[] sample;
+    private final int[] observed;
+    /** Exceedances of each class in the current round. */
+    final int[] exceedances;
+    
+    /** Generators and sizes of the chunks of the current round. */
+    SplitMix64[] chunks;
+    int[] chunkSizes;
+    AtomicInteger nextChunk;
+    /** Classes, that are still permuted. */
+    int[] active;
+    int numActive;
+    
+    Worker(EnrichmentAnalysis<?, ?> analysis, int listSize, int[] observed) {
+      super();
+      this.analysis = analysis;
+      this.genomeSize = analysis.getGenomeSize();
+      this.listSize = listSize;
+      this.observed = observed;
+      this.complement = 2*listSize>genomeSize;
+      int words = (genomeSize+63)>>>6;
+      bits = new long[words];
+      if (complement) {
+        all = new long[words];
+        Arrays.fill(all, -1L);
+        if ((genomeSize & 63)!=0) {
+          all[words-1] = (1L<<genomeSize)-1;
+        }
+        sample = null;
+      } else {
+        all = null;
+        sample = new int[listSize];
+      }
+      exceedances = new int[observed.length];
+    }
+    
+    /**
+     * Draws a new random list into {@link #bits}.
+     * @param rng
+     */
+    private void permute(SplitMix64 rng) {
+      if (complement) {
+        System.arraycopy(all, 0, bits, 0, bits.length);
+        for (int i=genomeSize-listSize; i>0;) {
+          int id = rng.nextInt(genomeSize);
+          long mask = 1L<<id;
+          if ((bits[id>>>6] & mask)!=0) {
+            bits[id>>>6] &= ~mask;
+            i--;
+          }
+        }
+      } else {
+        for (int i=0; i<listSize; i++) {
+          bits[sample[i]>>>6] = 0;
+        }
+        for (int i=0; i<listSize;) {
+          int id = rng.nextInt(genomeSize);
+          long mask = 1L<<id;
+          if ((bits[id>>>6] & mask)==0) {
+            bits[id>>>6] |= mask;
+            sample[i++] = id;
+          }
+        }
+      }
+    }
+    
+    /* (non-Javadoc)
+     * @see java.util.concurrent.Callable#call()
+     */
+    public Void call() {
+      for (int chunk=nextChunk.getAndIncrement(); chunk<chunks.length; chunk=nextChunk.getAndIncrement()) {
+        if (Thread.currentThread().isInterrupted()) {
+          break;
+        }
+        SplitMix64 rng = chunks[chunk];
+        for (int p=chunkSizes[chunk]; p>0; p--) {
+          permute(rng);
+          for (int i=0; i<numActive; i++) {
+            int c = active[i];
+            if (analysis.getMembers(c).intersectionCount(bits)>=observed[c]) {
+              exceedances[c]++;
+            }
+          }
+        }
+      }
+      return null;
+    }
+  }
+  
+  /**
+   * @param list input entities, e.g., differentially expressed genes.
+   * @return the enriched classes, sorted by empirical p-value.
+   * @throws InterruptedException
+   */
+  public List<EnrichmentAnalysis.Result<TargetType>> analyze(Collection<? extends SourceType> list) throws InterruptedException {
+    List<TargetType> classes = analysis.getEnrichmentClasses();
+    int genomeSize = analysis.getGenomeSize();
+    long[] bits = analysis.toBits(list);
+    int listSize = 0;
+    for (long w : bits) {
+      listSize += Long.bitCount(w);
+    }
+    int[] observed = new int[classes.size()];
+    int[] active = new int[classes.size()];
+    int numActive = 0;
+    for (int c=0; c<observed.length; c++) {
+      observed[c] = analysis.getMembers(c).intersectionCount(bits);
+      if (observed[c]>0) {
+        active[numActive++] = c;
+      }
+    }
+    
+    int[] exceedances = new int[observed.length];
+    int[] done = new int[observed.length];
+    SplitMix64 rng = new SplitMix64(seed);
+    List<Worker> workers = new ArrayList<Worker>();
+    int threads = Math.min(ThreadManager.NUMBER_OF_PROCESSORS,
+      Math.min(CHUNKS_PER_ROUND, (permutations+CHUNK_SIZE-1)/CHUNK_SIZE));
+    for (int i=0; i<threads && numActive>0; i++) {
+      workers.add(new Worker(analysis, listSize, observed));
+    }
+    
+    int permuted = 0;
+    while (permuted<permutations && numActive>0) {
+      // Prepare the next round
+      int roundSize = Math.min(CHUNK_SIZE*CHUNKS_PER_ROUND, permutations-permuted);
+      int numChunks = (roundSize+CHUNK_SIZE-1)/CHUNK_SIZE;
+      SplitMix64[] chunks = new SplitMix64[numChunks];
+      int[] chunkSizes = new int[numChunks];
+      for (int i=0; i<numChunks; i++) {
+        chunks[i] = rng.split();
+        chunkSizes[i] = Math.min(CHUNK_SIZE, roundSize-i*CHUNK_SIZE);
+      }
+      AtomicInteger nextChunk = new AtomicInteger();
+      for (Worker w : workers) {
+        w.chunks = chunks;
+        w.chunkSizes = chunkSizes;
+        w.nextChunk = nextChunk;
+        w.active = active;
+        w.numActive = numActive;
+      }
+      if (workers.size()==1) {
+        workers.get(0).call();
+      } else {
+        for (Future<Void> f : EnrichmentAnalysis.getPool().invokeAll(workers)) {
+          EnrichmentAnalysis.await(f);
+        }
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      permuted += roundSize;
+      
+      // Merge and stop classes with enough exceedances
+      int n = 0;
+      for (int i=0; i<numActive; i++) {
+        int c = active[i];
+        for (Worker w : workers) {
+          exceedances[c] += w.exceedances[c];
+          w.exceedances[c] = 0;
+        }
+        done[c] = permuted;
+        if (exceedances[c]<maxExceedances) {
+          active[n++] = c;
+        }
+      }
+      numActive = n;
+    }
+    
+    List<EnrichmentAnalysis.Result<TargetType>> results = new ArrayList<EnrichmentAnalysis.Result<TargetType>>();
+    for (int c=0; c<observed.length; c++) {
+      if (observed[c]>0) {
+        double pValue = (exceedances[c]+1d) / (done[c]+1d);
+        results.add(new EnrichmentAnalysis.Result<TargetType>(classes.get(c), observed[c],
+          analysis.getMembers(c).cardinality(), listSize, genomeSize, pValue, done[c]));
+      }
+    }
+    Collections.sort(results);
+    EnrichmentAnalysis.correct(results, analysis.getCorrection());
+    return results;
+  }
+  
+}
@@ -0,0 +1,319 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.math;
+
+/**
+ * The hypergeometric distribution in double precision. In contrast to
+ * {@link MathUtils#hypergeometric_distribution(int, int, int, int)},
+ * binomial coefficients are not computed as {@link java.math.BigInteger}s,
+ * but as sums of logarithms of factorials, which are stored in a table
+ * that is shared by all threads and grown on demand.
+ * 
+ * <p>Tails are summed starting with their largest term, using the ratio
+ * of consecutive probabilities, until further terms do not change the sum.
+ * Hence, also very small p-values are computed with full relative
+ * precision, while {@link MathUtils#enrichment_significance(int, int, int, int)}
+ * computes {@code 1 - P(X < r)} and is limited to an absolute precision of
+ * about {@code 1E-15}. Both agree within an absolute difference of
+ * {@code 1E-12} (see {@link #TOLERANCE}).
+ * 
+ * @version $Rev$
+ */
+public final class Hypergeometric {
+  
+  /**
+   * Maximum absolute difference between {@link #enrichmentSignificance(int, int, int, int)}
+   * and {@link MathUtils#enrichment_significance(int, int, int, int)}.
+   */
+  public static final double TOLERANCE = 1E-12;
+  
+  /**
+   * Factorials up to this value are stored in the table. Larger ones are
+   * approximated with Stirling's series in double precision, i.e., the
+   * probabilities of urns with more objects are less accurate.
+   */
+  static final int MAX_TABLE_SIZE = 1<<20;
+  
+  /**
+   * Initial size of {@link #logFactorials}.
+   */
+  private static final int INITIAL_TABLE_SIZE = 1<<10;
+  
+  /**
+   * 0.5*ln(2*pi)
+   */
+  private static final double HALF_LOG_2_PI = 0.5*Math.log(2*Math.PI);
+  
+  /**
+   * {@code ln(i!)} as unevaluated sum of {@code logFactorials[2*i]} and
+   * the much smaller {@code logFactorials[2*i+1]}. Logarithms of large
+   * factorials are too large to keep their fraction in a single double,
+   * which would limit the precision of binomial coefficients to about
+   * {@code 1E-11}. Replaced by a larger table, if required.
+   */
+  private static volatile double[] logFactorials = new double[] {0, 0, 0, 0};
+  
+  private Hypergeometric() {
+    // Utility class
+  }
+  
+  /**
+   * @param n
+   * @return a table that contains {@code n}.
+   */
+  private static double[] table(int n) {
+    double[] table = logFactorials;
+    return 2*n<table.length ? table : grow(n);
+  }
+  
+  /**
+   * Grows the table to contain at least {@code n}.
+   * @param n
+   * @return the new table.
+   */
+  private static synchronized double[] grow(int n) {
+    double[] table = logFactorials;
+    int oldSize = table.length/2;
+    if (n<oldSize) {
+      return table;
+    }
+    int size = Math.max(INITIAL_TABLE_SIZE, oldSize);
+    while (size<=n) {
+      size *= 2;
+    }
+    size = Math.min(size, MAX_TABLE_SIZE);
+    double[] newTable = new double[2*size];
+    System.arraycopy(table, 0, newTable, 0, table.length);
+    double sum = table[2*oldSize-2];
+    double c = -table[2*oldSize-1];
+    for (int i=oldSize; i<size; i++) {
+      // Kahan summation, c is the rounding error of sum.
+      double y = Math.log(i) - c;
+      double t = sum + y;
+      c = (t - sum) - y;
+      sum = t;
+      newTable[2*i] = sum;
+      newTable[2*i+1] = -c;
+    }
+    logFactorials = newTable;
+    return newTable;
+  }
+  
+  /**
+   * @param n
+   * @return {@code ln(n!)}
+   */
+  public static double logFactorial(int n) {
+    if (n<0) {
+      throw new IllegalArgumentException("Negative factorial: " + n);
+    } else if (n>=MAX_TABLE_SIZE) {
+      // Stirling's series
+      double x = n;
+      double x2 = x*x;
+      return x*Math.log(x) - x + 0.5*Math.log(x) + HALF_LOG_2_PI +
+          (1d/12 - (1d/360 - 1d/(1260*x2))/x2)/x;
+    }
+    double[] table = table(n);
+    return table[2*n] + table[2*n+1];
+  }
+  
+  /**
+   * @param plus
+   * @param minus
+   * @return the sum of {@code ln(x!)} for all {@code x} in {@code plus},
+   * minus the sum for all {@code x} in {@code minus}. All values must be
+   * non-negative.
+   */
+  private static double logFactorialSum(int[] plus, int[] minus) {
+    int max = 0;
+    for (int x : plus) {
+      max = Math.max(max, x);
+    }
+    for (int x : minus) {
+      max = Math.max(max, x);
+    }
+    if (max>=MAX_TABLE_SIZE) {
+      double ret = 0;
+      for (int x : plus) {
+        ret += logFactorial(x);
+      }
+      for (int x : minus) {
+        ret -= logFactorial(x);
+      }
+      return ret;
+    }
+    double[] table = table(max);
+    // Error-free summation (TwoSum) of the high parts
+    double sum = 0;
+    double error = 0;
+    for (int i=0; i<plus.length+minus.length; i++) {
+      boolean add = i<plus.length;
+      int x = add ? plus[i] : minus[i-plus.length];
+      double high = add ? table[2*x] : -table[2*x];
+      double low = add ? table[2*x+1] : -table[2*x+1];
+      double s = sum + high;
+      double b = s - sum;
+      error += (sum - (s - b)) + (high - b) + low;
+      sum = s;
+    }
+    return sum + error;
+  }
+  
+  /**
+   * @param n
+   * @param k
+   * @return the natural logarithm of the binomial coefficient "n over k"
+   * or {@link Double#NEGATIVE_INFINITY}, if {@code k<0} or {@code k>n}.
+   * @see MathUtils#binomialCoefficient(int, int)
+   */
+  public static double logBinomialCoefficient(int n, int k) {
+    if (k<0 || k>n) {
+      return Double.NEGATIVE_INFINITY;
+    }
+    return logFactorialSum(new int[] {n}, new int[] {k, n-k});
+  }
+  
+  /**
+   * @param N total number of objects in urn
+   * @param m number of white objects in urn
+   * @param n number objects to draw without replacement
+   * @param k number of white objects
+   * @return the natural logarithm of the probability to draw exactly
+   * {@code k} white objects.
+   * @see #probability(int, int, int, int)
+   */
+  public static double logProbability(int N, int m, int n, int k) {
+    check(N, m, n);
+    if (k<Math.max(0, n+m-N) || k>Math.min(n, m)) {
+      return Double.NEGATIVE_INFINITY;
+    }
+    // (m over k) * (N-m over n-k) / (N over n)
+    return logFactorialSum(new int[] {m, N-m, n, N-n}, new int[] {k, m-k, n-k, N-m-n+k, N});
+  }
+  
+  /**
+   * The hypergeometric distribution.
+   * @param N total number of objects in urn
+   * @param m number of white objects in urn
+   * @param n number objects to draw without replacement
+   * @param k number of white objects
+   * @return the probability to draw exactly {@code k} white objects.
+   * @see MathUtils#hypergeometric_distribution(int, int, int, int)
+   */
+  public static double probability(int N, int m, int n, int k) {
+    return Math.exp(logProbability(N, m, n, k));
+  }
+  
+  /**
+   * @param N total number of objects in urn
+   * @param m number of white objects in urn
+   * @param n number objects to draw without replacement
+   * @param k number of white objects
+   * @return the probability to draw at least {@code k} white objects,
+   * i.e., the upper tail {@code P(X >= k)}.
+   */
+  public static double upperTail(int N, int m, int n, int k) {
+    check(N, m, n);
+    int min = Math.max(0, n+m-N);
+    int max = Math.min(n, m);
+    if (k<=min) {
+      return 1;
+    } else if (k>max) {
+      return 0;
+    }
+    // The mode of the distribution
+    int mode = (int) Math.floor((n+1d)*(m+1d)/(N+2d));
+    if (k>mode) {
+      // Terms decrease from k to max
+      return Math.min(1, sum(N, m, n, k, max, true));
+    } else {
+      // Terms decrease from k-1 to min
+      return Math.max(0, 1 - sum(N, m, n, k-1, min, false));
+    }
+  }
+  
+  /**
+   * Sums probabilities, starting with the largest term.
+   * @param N
+   * @param m
+   * @param n
+   * @param from first (and largest) term
+   * @param to last term
+   * @param up if {@code true}, {@code from<=to}, else {@code from>=to}.
+   * @return the probability that {@code X} is in {@code [from, to]}.
+   */
+  private static double sum(int N, int m, int n, int from, int to, boolean up) {
+    double first = logProbability(N, m, n, from);
+    // Relative to the first term
+    double sum = 1;
+    double term = 1;
+    int rest = N-m-n;
+    if (up) {
+      for (int x=from; x<to; x++) {
+        // P(x+1)/P(x)
+        term *= ((double) (m-x)*(n-x)) / ((double) (x+1)*(rest+x+1));
+        double s = sum + term;
+        if (s==sum) {
+          break;
+        }
+        sum = s;
+      }
+    } else {
+      for (int x=from; x>to; x--) {
+        // P(x-1)/P(x)
+        term *= ((double) x*(rest+x)) / ((double) (m-x+1)*(n-x+1));
+        double s = sum + term;
+        if (s==sum) {
+          break;
+        }
+        sum = s;
+      }
+    }
+    return Math.exp(first + Math.log(sum));
+  }
+  
+  /**
+   * Calculates a pValue for an enrichment significance (e.g., gene set
+   * enrichments in pathways) with a hypergeometric test. Arguments and
+   * result are the same as for
+   * {@link MathUtils#enrichment_significance(int, int, int, int)}.
+   * @param m Total number of genes in the genome.
+   * @param n Total number of genes in the input set (e.g., in the input gene list)
+   * @param t Total number of marked genes (e.g., genes in the current pathway)
+   * @param r Number of genes from t that are in n. (e.g., genes from the input set that are in the current pathway).
+   * @return the probability to observe at least {@code r} marked genes
+   * in the input set.
+   */
+  public static double enrichmentSignificance(int m, int n, int t, int r) {
+    return upperTail(m, t, n, r);
+  }
+  
+  /**
+   * @param N
+   * @param m
+   * @param n
+   * @throws IllegalArgumentException if the parameters do not describe
+   * a valid urn.
+   */
+  private static void check(int N, int m, int n) {
+    if (N<0 || m<0 || n<0 || m>N || n>N) {
+      throw new IllegalArgumentException(String.format(
+        "Invalid hypergeometric distribution N=%s, m=%s, n=%s.", N, m, n));
+    }
+  }
+  
+}
@@ -658,6 +658,7 @@ public class MathUtils {
    * @param n number objects to draw without replacement
    * @param k number of objects to calculate the probability that they are white
    * @return
+   * @see Hypergeometric#probability(int, int, int, int)
    */
   public static double hypergeometric_distribution(int N, int m, int n, int k) {
     // Values are getting really really big in here!
@@ -676,6 +677,7 @@ public class MathUtils {
    * @param t Total number of marked genes (e.g., genes in the current pathway)
    * @param r Number of genes from t that are in n. (e.g., genes from the input set that are in the current pathway).
    * @return
+   * @see Hypergeometric#enrichmentSignificance(int, int, int, int)
    */
   public static double enrichment_significance(int m, int n, int t, int r) {
     double p = 0;
@@ -0,0 +1,279 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.parser;
+
+import java.io.IOException;
+
+import de.zbit.collection.Object2IntHashMap;
+import de.zbit.io.csv.CSVReader;
+import de.zbit.io.csv.CSVTable;
+
+/**
+ * The content of a UniDomInt file (see {@link UniDomIntParser}), read in
+ * a single pass and stored column by column. Domain names are interned to
+ * dense ids, each row references a distinct, ordered domain pair, and all
+ * other columns are stored as one {@code double[]} each. Pairs are found
+ * with a hash probe on their domain ids.
+ * 
+ * @version $Rev$
+ */
+public class UniDomIntNetwork {
+  
+  /**
+   * Number of columns of a UniDomInt file.
+   */
+  public static final int NUMBER_OF_COLUMNS = 24;
+  
+  /**
+   * Domain name to id.
+   */
+  private final Object2IntHashMap<String> domainIds;
+  
+  /**
+   * Id to domain name.
+   */
+  private String[] domains;
+  
+  /**
+   * Pair index of each row.
+   */
+  private final int[] rowPairs;
+  
+  /**
+   * Domain ids of each distinct pair. There are at most as many pairs as
+   * rows.
+   */
+  private final int[] pairDomain1;
+  private final int[] pairDomain2;
+  private int numPairs = 0;
+  
+  /**
+   * Open addressing hash table of pair index+1 (0 = empty).
+   */
+  private final int[] pairTable;
+  
+  /**
+   * {@code columns[c][row]} is the value of column {@code c}. Columns of
+   * domain names are {@code null}.
+   */
+  private final double[][] columns;
+  
+  /**
+   * @param table the content of a UniDomInt file.
+   */
+  UniDomIntNetwork(CSVTable table) {
+    super();
+    int rows = table.getNumberOfRows();
+    domainIds = new Object2IntHashMap<String>(Math.max(16, rows/4), -1);
+    domains = new String[16];
+    rowPairs = new int[rows];
+    pairDomain1 = new int[Math.max(16, rows)];
+    pairDomain2 = new int[pairDomain1.length];
+    pairTable = new int[tableSize(pairDomain1.length)];
+    for (int row=0; row<rows; row++) {
+      rowPairs[row] = addPair(intern(table.get(row, 0)), intern(table.get(row, 1)));
+    }
+    columns = new double[Math.max(NUMBER_OF_COLUMNS, table.getNumberOfColumns())][];
+    for (int c=2; c<columns.length; c++) {
+      columns[c] = c<table.getNumberOfColumns() ? table.getDoubleColumn(c) : new double[rows];
+    }
+  }
+  
+  /**
+   * Reads a UniDomInt file.
+   * @param fileName
+   * @return the network.
+   * @throws IOException
+   */
+  public static UniDomIntNetwork read(String fileName) throws IOException {
+    CSVReader reader = new CSVReader(fileName);
+    for (int c=2; c<NUMBER_OF_COLUMNS; c++) {
+      reader.setColumnType(c, Double.class);
+    }
+    return new UniDomIntNetwork(reader.readColumnar());
+  }
+  
+  /**
+   * @param capacity
+   * @return the size of {@link #pairTable} for the given number of pairs.
+   */
+  private static int tableSize(int capacity) {
+    int size = 16;
+    while (size<capacity*2) {
+      size <<= 1;
+    }
+    return size;
+  }
+  
+  /**
+   * @param domain1
+   * @param domain2
+   * @return the first slot of the pair in {@link #pairTable}.
+   */
+  private int slot(int domain1, int domain2) {
+    long h = (((long) domain1)<<32 | (domain2 & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L;
+    return (int) (h>>>32) & (pairTable.length-1);
+  }
+  
+  /**
+   * @param domain
+   * @return the id of the domain (a new one, if it is unknown).
+   */
+  private int intern(String domain) {
+    int id = domainIds.getInt(domain);
+    if (id<0) {
+      id = domainIds.size();
+      if (id==domains.length) {
+        String[] d = new String[domains.length*2];
+        System.arraycopy(domains, 0, d, 0, id);
+        domains = d;
+      }
+      domains[id] = domain;
+      domainIds.put(domain, id);
+    }
+    return id;
+  }
+  
+  /**
+   * @param domain1
+   * @param domain2
+   * @return the index of the pair (a new one, if it is unknown).
+   */
+  private int addPair(int domain1, int domain2) {
+    int pair = findPair(domain1, domain2);
+    if (pair>=0) {
+      return pair;
+    }
+    pair = numPairs++;
+    pairDomain1[pair] = domain1;
+    pairDomain2[pair] = domain2;
+    insert(pair);
+    return pair;
+  }
+  
+  /**
+   * Adds the pair to {@link #pairTable}.
+   * @param pair
+   */
+  private void insert(int pair) {
+    int mask = pairTable.length-1;
+    int i = slot(pairDomain1[pair], pairDomain2[pair]);
+    while (pairTable[i]!=0) {
+      i = (i+1) & mask;
+    }
+    pairTable[i] = pair+1;
+  }
+  
+  /**
+   * @param domain1 id of the first domain
+   * @param domain2 id of the second domain
+   * @return the index of the ordered pair or -1.
+   */
+  public int findPair(int domain1, int domain2) {
+    int mask = pairTable.length-1;
+    for (int i=slot(domain1, domain2); pairTable[i]!=0; i=(i+1) & mask) {
+      int p = pairTable[i]-1;
+      if (pairDomain1[p]==domain1 && pairDomain2[p]==domain2) {
+        return p;
+      }
+    }
+    return -1;
+  }
+  
+  /**
+   * @param domain1
+   * @param domain2
+   * @return the index of the ordered pair or -1.
+   */
+  public int findPair(String domain1, String domain2) {
+    int d1 = domainIds.getInt(domain1);
+    int d2 = domainIds.getInt(domain2);
+    return d1<0 || d2<0 ? -1 : findPair(d1, d2);
+  }
+  
+  /**
+   * @param domain
+   * @return the id of the domain or -1.
+   */
+  public int getDomainId(String domain) {
+    return domainIds.getInt(domain);
+  }
+  
+  /**
+   * @param id
+   * @return the name of the domain.
+   */
+  public String getDomain(int id) {
+    return domains[id];
+  }
+  
+  /**
+   * @return number of distinct domains.
+   */
+  public int getNumberOfDomains() {
+    return domainIds.size();
+  }
+  
+  /**
+   * @return number of distinct, ordered domain pairs.
+   */
+  public int getNumberOfPairs() {
+    return numPairs;
+  }
+  
+  /**
+   * @param pair
+   * @return the id of the first domain of the pair.
+   */
+  public int getDomain1(int pair) {
+    return pairDomain1[pair];
+  }
+  
+  /**
+   * @param pair
+   * @return the id of the second domain of the pair.
+   */
+  public int getDomain2(int pair) {
+    return pairDomain2[pair];
+  }
+  
+  /**
+   * @return number of rows. Might be more than {@link #getNumberOfPairs()},
+   * if pairs occur multiple times.
+   */
+  public int getNumberOfRows() {
+    return rowPairs.length;
+  }
+  
+  /**
+   * @param row
+   * @return the pair index of the row.
+   */
+  public int getPair(int row) {
+    return rowPairs[row];
+  }
+  
+  /**
+   * @param column column index, at least 2.
+   * @return the values of the column in all rows ({@link Double#NaN} for
+   * missing values). Must not be modified.
+   */
+  public double[] getColumn(int column) {
+    return columns[column];
+  }
+  
+}
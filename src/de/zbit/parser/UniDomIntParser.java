@@ -18,11 +18,11 @@ package de.zbit.parser;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.Arrays;
 
 import de.zbit.io.csv.CSVReader;
-import de.zbit.util.SortedArrayList;
-import de.zbit.util.objectwrapper.ValuePair;
 
 /**
  * 
@@ -61,17 +61,35 @@ import de.zbit.util.objectwrapper.ValuePair;
  */
 public class UniDomIntParser {
 
-  private static SortedArrayList<String> D_ref;
-  private static SortedArrayList<ValuePair<String, String>> I_ref;
-  private static SortedArrayList<ValuePair<String, String>> I_me;
-  private static SortedArrayList<ValuePair<String, String>> I_himap;
-  private static SortedArrayList<ValuePair<String, String>> I_rcdp;
-  private static SortedArrayList<ValuePair<String, String>> I_dima;
-  private static SortedArrayList<ValuePair<String, String>> I_pValue;
-  private static SortedArrayList<ValuePair<String, String>> I_dpea;
-  private static SortedArrayList<ValuePair<String, String>> I_rdff;
-  private static SortedArrayList<ValuePair<String, String>> I_inter;
-  private static SortedArrayList<ValuePair<String, String>> I_lp;
+  /**
+   * Names of the networks, their interaction column and their domain
+   * space column.
+   */
+  private static final String[] NETWORKS = {"ME", "HIMAP", "RCDP", "DIMA", "P-value", "DPEA", "RDFF", "Interdom", "LP"};
+  private static final int[] INTERACTION_COLUMNS = {2, 3, 4, 5, 6, 7, 8, 9, 10};
+  private static final int[] DOMAIN_SPACE_COLUMNS = {12, 13, 14, 15, 16, 17, 18, 19, 20};
+
+  /**
+   * The UniDomInt file.
+   */
+  private String interactionFile;
+  private UniDomIntNetwork network;
+
+  /**
+   * Domains of the reference network, by domain id of {@link #network}.
+   */
+  private boolean[] D_ref;
+  /**
+   * Interactions of the reference network between domains of
+   * {@link #network}, as {@code domain1<<32 | domain2}, sorted.
+   */
+  private long[] I_ref;
+
+  /**
+   * {@code interactions[n][pair]} is {@code true}, if the pair is an
+   * interaction in network {@code n}.
+   */
+  private boolean[][] interactions;
 
   double w_me;
   double w_himap;
@@ -96,170 +114,190 @@ public class UniDomIntParser {
    * @param interactionFile = uniDomIntFile
    */
   private void init(String referenceFile, String interactionFile) {
+    this.interactionFile = interactionFile;
+    network = readNetwork(interactionFile);
     readAndSetReferenceNetwork(referenceFile);
+    reportDoubleOccurrences();
 
-    SortedArrayList[] me = readNetworkFile    (interactionFile, "me",     2, 12);
-    I_me = me[1];
-    SortedArrayList[] himap = readNetworkFile (interactionFile, "himap",  3, 13);
-    I_himap = himap[1];
-    SortedArrayList[] rcdp = readNetworkFile  (interactionFile, "rcdp",   4, 14);
-    I_rcdp = rcdp[1];
-    SortedArrayList[] dima = readNetworkFile  (interactionFile, "dima",   5, 15);
-    I_dima = dima[1];
-    SortedArrayList[] pValue = readNetworkFile(interactionFile, "pValue", 6, 16);
-    I_pValue = pValue[1];
-    SortedArrayList[] dpea = readNetworkFile  (interactionFile, "dpea",   7, 17);
-    I_dpea = dpea[1];
-    SortedArrayList[] rdff = readNetworkFile  (interactionFile, "rdff",   8, 18);
-    I_rdff = rdff[1];
-    SortedArrayList[] inter = readNetworkFile (interactionFile, "inter",  9, 19);
-    I_inter = inter[1];
-    SortedArrayList[] lp = readNetworkFile    (interactionFile, "lp",    10, 20);
-    I_lp = lp[1];
-
-    w_me     = calculateW(me, "ME");
-    w_himap  = calculateW(himap, "HIMAP");
-    w_rcdp   = calculateW(rcdp, "RCDP");
-    w_dima   = calculateW(dima, "DIMA");
-    w_pValue = calculateW(pValue, "P-value");
-    w_dpea   = calculateW(dpea, "DPEA");
-    w_rdff   = calculateW(rdff, "RDFF");
-    w_inter  = calculateW(inter, "Interdom");
-    w_lp     = calculateW(lp, "LP");
+    double[] w = new double[NETWORKS.length];
+    interactions = new boolean[NETWORKS.length][];
+    for (int n=0; n<NETWORKS.length; n++) {
+      interactions[n] = readInteractions(INTERACTION_COLUMNS[n], DOMAIN_SPACE_COLUMNS[n]);
+    }
+    for (int n=0; n<NETWORKS.length; n++) {
+      w[n] = calculateW(n);
+    }
+    w_me     = w[0];
+    w_himap  = w[1];
+    w_rcdp   = w[2];
+    w_dima   = w[3];
+    w_pValue = w[4];
+    w_dpea   = w[5];
+    w_rdff   = w[6];
+    w_inter  = w[7];
+    w_lp     = w[8];
 
     sum_ofAllw = w_me + w_himap  + w_rcdp + w_dima + w_pValue + w_dpea + w_rdff + w_inter + w_lp;
   }
 
   /**
-   * The class reads the file and saves the domains and interactions in an SortedArray
-   * @param fileName of the reference file containing domain interactions of iPfam and 3did
+   * @param fileName of the unidomint file
+   * @return the content of the file.
    */
+  private static UniDomIntNetwork readNetwork(String fileName) {
+    try {
+      return UniDomIntNetwork.read(fileName);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not read " + fileName, e);
+    }
+  }
 
+  /**
+   * The class reads the file and saves the domains and interactions of
+   * {@link #network}.
+   * @param fileName of the reference file containing domain interactions of iPfam and 3did
+   */
   private void readAndSetReferenceNetwork(String fileName) {
     CSVReader reader = new CSVReader(fileName);
     String[][] data = reader.getData();
-    D_ref = new SortedArrayList<String>();
-    I_ref = new SortedArrayList<ValuePair<String, String>>();
+    D_ref = new boolean[network.getNumberOfDomains()];
+    long[] pairs = new long[data.length];
+    int n = 0;
 
-    //    BufferedWriter bw = new BufferedWriter(new FileWriter(filename));
     for(int i=1;i<data.length; i++) {
-      if(!D_ref.contains(data[i][0]))
-        D_ref.add(data[i][0]);
-      if(!D_ref.contains(data[i][1]))
-        D_ref.add(data[i][1]);
-      ValuePair<String, String> sb = new ValuePair<String, String>(data[i][0], data[i][1]);
-      if(!I_ref.contains(sb)) {
-        I_ref.add(sb);
+      int d1 = network.getDomainId(data[i][0]);
+      int d2 = network.getDomainId(data[i][1]);
+      if (d1>=0) {
+        D_ref[d1] = true;
+      }
+      if (d2>=0) {
+        D_ref[d2] = true;
+      }
+      // Other interactions can not be shared with any network
+      if (d1>=0 && d2>=0) {
+        pairs[n++] = ((long) d1)<<32 | d2;
       }
     }
 
-    //    System.out.println("D_ref:\t" + D_ref.size() + "\tI_ref:\t" + I_ref.size());
+    // Remove duplicates
+    Arrays.sort(pairs, 0, n);
+    int size = 0;
+    for (int i=0; i<n; i++) {
+      if (size==0 || pairs[size-1]!=pairs[i]) {
+        pairs[size++] = pairs[i];
+      }
+    }
+    I_ref = Arrays.copyOf(pairs, size);
+  }
+
+  /**
+   * Reports domain pairs, that occur in multiple rows.
+   */
+  private void reportDoubleOccurrences() {
+    boolean[] seen = new boolean[network.getNumberOfPairs()];
+    for (int row=0; row<network.getNumberOfRows(); row++) {
+      int pair = network.getPair(row);
+      if (seen[pair]) {
+        System.out.println("Double occurrence of domain pair " + network.getDomain(network.getDomain1(pair)) + " " + network.getDomain(network.getDomain2(pair)));
+      }
+      seen[pair] = true;
+    }
   }
 
   /**
-   * 
-   * @param fileName of the unidomint file
-   * @param networkname
    * @param pos1, position where to find the interaction
    * @param pos2, position where to find if both domains occur in the network
-   * @return new SortedArrayList[]{D_ref, I_ref};
+   * @return for each pair of {@link #network}, whether it is an interaction.
    */
-  private SortedArrayList[] readNetworkFile(String fileName, String networkname, int pos1, int pos2) {
-    CSVReader reader = new CSVReader(fileName);
-    String[][] data = reader.getData();
-    SortedArrayList<String> D = new SortedArrayList<String>();
-    SortedArrayList<ValuePair<String, String>> I = new SortedArrayList<ValuePair<String, String>>();
-
-    SortedArrayList<ValuePair<String, String>> temp = new SortedArrayList<ValuePair<String, String>>();
-
-    for(int i=0;i<data.length; i++) {
-      ValuePair<String, String> sb = new ValuePair<String, String>(data[i][0], data[i][1]);
-      if(!temp.contains(sb))
-        temp.add(sb);
-      else
-        System.out.println("Double occurrence of domain pair " + data[i][0] + " " + data[i][1]);
-
-
-      if(data[i][pos2].equals("1")) {
-        if(!D.contains(data[i][0]))
-          D.add(data[i][0]);
-
-        if(!D.contains(data[i][1]))
-          D.add(data[i][1]);
-
-
-        if(data[i][pos1].equals("1")) {
-          if(!I.contains(sb)) {
-            I.add(sb);
-          }
-          else{
-            System.out.println("Double occurrence of interaction " + data[i][0] + " " + data[i][1]);
-          }
+  private boolean[] readInteractions(int pos1, int pos2) {
+    double[] interaction = network.getColumn(pos1);
+    double[] domainSpace = network.getColumn(pos2);
+    boolean[] I = new boolean[network.getNumberOfPairs()];
+    for (int row=0; row<network.getNumberOfRows(); row++) {
+      if (domainSpace[row]==1 && interaction[row]==1) {
+        int pair = network.getPair(row);
+        if (!I[pair]) {
+          I[pair] = true;
+        } else {
+          System.out.println("Double occurrence of interaction " + network.getDomain(network.getDomain1(pair)) + " " + network.getDomain(network.getDomain2(pair)));
         }
       }
     }
-
-    return new SortedArrayList[]{D, I};
+    return I;
   }
 
-  /** @param ref SortedArrayList[]{D, I}
-   * @param me SortedArrayList[]{D, I}
-   * @return
+  /**
+   * @param n index of the network
+   * @return the weighted overlap of the network with the reference.
    */
-  private double calculateW(SortedArrayList[] me, String networkName) {
-    SortedArrayList<String> D_me  = me[0];
-    SortedArrayList<ValuePair<String, String>> I_me  = me[1];
-
-    SortedArrayList<String>   D_ref_D_me = new SortedArrayList<String>();
-    SortedArrayList<ValuePair<String, String>> I_ref_me = new SortedArrayList<ValuePair<String, String>>();
-    SortedArrayList<ValuePair<String, String>> I_me_ref = new SortedArrayList<ValuePair<String, String>>();
-    SortedArrayList<ValuePair<String, String>> intersection_ref_me = new SortedArrayList<ValuePair<String, String>>();
-
-    // create intersection of domain spaces
-    for (String domain : D_me) {
-      if(D_ref.contains(domain) && !D_ref_D_me.contains(domain))
-        D_ref_D_me.add(domain);
+  private double calculateW(int n) {
+    String networkName = NETWORKS[n];
+    boolean[] I_me = interactions[n];
+
+    // Domain space of the network
+    double[] domainSpace = network.getColumn(DOMAIN_SPACE_COLUMNS[n]);
+    boolean[] D_me = new boolean[network.getNumberOfDomains()];
+    for (int row=0; row<network.getNumberOfRows(); row++) {
+      if (domainSpace[row]==1) {
+        int pair = network.getPair(row);
+        D_me[network.getDomain1(pair)] = true;
+        D_me[network.getDomain2(pair)] = true;
+      }
     }
 
-    // create potentially shared interactions
-    for (int i = 0; i < D_ref_D_me.size(); i++) {
-      for (int j = 0; j < D_ref_D_me.size(); j++) {
-        ValuePair<String, String> sb = new ValuePair<String, String>(D_ref_D_me.get(i), D_ref_D_me.get(j));
-
-        if(I_ref.contains(sb)) {
-          if (!I_ref_me.contains(sb))
-            I_ref_me.add(sb);
-        }
-        if(I_me.contains(sb)) {
-          if (!I_me_ref.contains(sb))
-            I_me_ref.add(sb);
+    // create intersection of domain spaces
+    int D_me_size = 0;
+    int D_ref_D_me = 0;
+    for (int d=0; d<D_me.length; d++) {
+      if (D_me[d]) {
+        D_me_size++;
+        if (D_ref[d]) {
+          D_ref_D_me++;
         }
       }
     }
 
-    // create intersection of interaction spaces
-    for (ValuePair<String, String> sb : I_ref) {
-      if(I_me.contains(sb) && !intersection_ref_me.contains(sb))
-        intersection_ref_me.add(sb);
+    // create potentially shared interactions and intersection of interaction spaces
+    int I_ref_me = 0;
+    int intersection_ref_me = 0;
+    for (long sb : I_ref) {
+      int d1 = (int) (sb>>>32);
+      int d2 = (int) sb;
+      if (D_me[d1] && D_me[d2]) {
+        I_ref_me++;
+      }
+      int pair = network.findPair(d1, d2);
+      if (pair>=0 && I_me[pair]) {
+        intersection_ref_me++;
+      }
+    }
+    int I_me_size = 0;
+    int I_me_ref = 0;
+    for (int pair=0; pair<I_me.length; pair++) {
+      if (I_me[pair]) {
+        I_me_size++;
+        if (D_ref[network.getDomain1(pair)] && D_ref[network.getDomain2(pair)]) {
+          I_me_ref++;
+        }
+      }
     }
 
     // calculation of the weighted overlap wo
-    double numerator   = (double)(2*(intersection_ref_me.size())); 
-    double denominator = (double)(I_ref_me.size() + I_me_ref.size());
+    double numerator   = (double)(2*(intersection_ref_me)); 
+    double denominator = (double)(I_ref_me + I_me_ref);
     double wo = numerator/denominator;
 
-    double precision = (double)((double)intersection_ref_me.size()/(double)I_me.size());
+    double precision = (double)((double)intersection_ref_me/(double)I_me_size);
 
     DecimalFormat df = new DecimalFormat("0.00");
-    //    System.out.println(df.format(1.1257444d));
 
     System.out.println( networkName + "\n" +
-              "I_"+networkName+":"                + "\t" + I_me.size() + "\n" +  
-              "D_"+networkName+":"                + "\t" + D_me.size() + "\n" + 
-              "D_ref_"+networkName+":"            + "\t" + D_ref_D_me.size() + "\n" +
-              "I_intersection:"                   + "\t" + intersection_ref_me.size() + "\n" + 
-              "I_ref_"+networkName+":"            + "\t" + I_ref_me.size() + "\n" + 
-              "I_"+networkName+"_ref:"            + "\t" + I_me_ref.size() + "\n" + 
+              "I_"+networkName+":"                + "\t" + I_me_size + "\n" +  
+              "D_"+networkName+":"                + "\t" + D_me_size + "\n" + 
+              "D_ref_"+networkName+":"            + "\t" + D_ref_D_me + "\n" +
+              "I_intersection:"                   + "\t" + intersection_ref_me + "\n" + 
+              "I_ref_"+networkName+":"            + "\t" + I_ref_me + "\n" + 
+              "I_"+networkName+"_ref:"            + "\t" + I_me_ref + "\n" + 
               "w_"+networkName+":"                + "\t" + df.format(wo*100) + "\n" +
               "precision:"                        + "\t" + df.format(precision*100) + "\n");
 
@@ -267,43 +305,35 @@ public class UniDomIntParser {
   }
 
   /**
-   * @param domain1
-   * @param domain2
+   * @param pair index of a pair of {@link #network} or -1.
    */
-  private double getreliabilityScore(String domain1, String domain2) {
-    ValuePair<String, String> sb = new ValuePair<String, String>(domain1, domain2);
+  private double getreliabilityScore(int pair) {
     double sum = 0.0;
-    if(I_me.contains(sb)) {
-      sum+= w_me;
-    }
-    if(I_himap.contains(sb)) {
-      sum+= w_himap;
-    }
-    if(I_rcdp.contains(sb)) {
-      sum+= w_rcdp;
-    }
-    if(I_dima.contains(sb)) {
-      sum+= w_dima;
-    }
-    if(I_pValue.contains(sb)) {
-      sum+= w_pValue;
-    }
-    if(I_dpea.contains(sb)) {
-      sum+= w_dpea;
-    }
-    if(I_rdff.contains(sb)) {
-      sum+= w_rdff;
-    }
-    if(I_inter.contains(sb)) {
-      sum+= w_inter;
-    }
-    if(I_lp.contains(sb)) {
-      sum+= w_lp;
+    if (pair>=0) {
+      double[] w = {w_me, w_himap, w_rcdp, w_dima, w_pValue, w_dpea, w_rdff, w_inter, w_lp};
+      for (int n=0; n<w.length; n++) {
+        if (interactions[n][pair]) {
+          sum+= w[n];
+        }
+      }
     }
     
     return sum/sum_ofAllw;
   }
 
+  /**
+   * @param value
+   * @return the value as written in a UniDomInt file.
+   */
+  private static String format(double value) {
+    if (Double.isNaN(value)) {
+      return "";
+    } else if (value==(long) value) {
+      return Long.toString((long) value);
+    }
+    return Double.toString(value);
+  }
+
 
   /**
    * @param interactionFile
@@ -311,26 +341,20 @@ public class UniDomIntParser {
    * domain1 \t domain2 \t iPfam3did \t ME \t HIMAP \t RCDP \t DIMA \t pValue \t DPEA \t RDFF \t Inter \t LP \t predictionScore
    */
   public void writeUniDomIntFileWithNewPredictionScores(String domainFileName, String outputFileName) {
-    CSVReader reader = new CSVReader(domainFileName);
-    String[][] data = reader.getData();
     try{
+      UniDomIntNetwork data = domainFileName.equals(interactionFile) ? network : readNetwork(domainFileName);
+      int[] columns = {22, 2, 3, 4, 5, 6, 7, 8, 9, 10};
       BufferedWriter bw = new BufferedWriter(new FileWriter(outputFileName));
-      for(int i=0;i<data.length; i++) {
-        String domain1 = data[i][0];
-        String domain2 = data[i][1];
+      for(int i=0;i<data.getNumberOfRows(); i++) {
+        int pair = data.getPair(i);
+        String domain1 = data.getDomain(data.getDomain1(pair));
+        String domain2 = data.getDomain(data.getDomain2(pair));
 
         bw.append(domain1 + "\t" + domain2 + "\t");
-        bw.append(data[i][22] + "\t");
-        bw.append(data[i][2] + "\t");
-        bw.append(data[i][3] + "\t");
-        bw.append(data[i][4] + "\t");
-        bw.append(data[i][5] + "\t");
-        bw.append(data[i][6] + "\t");
-        bw.append(data[i][7] + "\t");
-        bw.append(data[i][8] + "\t");
-        bw.append(data[i][9] + "\t");
-        bw.append(data[i][10] + "\t");
-        bw.append(String.valueOf(getreliabilityScore(domain1, domain2)));
+        for (int c : columns) {
+          bw.append(format(data.getColumn(c)[i]) + "\t");
+        }
+        bw.append(String.valueOf(getreliabilityScore(data==network ? pair : network.findPair(domain1, domain2))));
         
         bw.append("\n");
       }
@@ -0,0 +1,187 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.sbml.util;
+
+import de.zbit.util.StringUtil;
+
+/**
+ * This object stores the information about one compound in KEGG.
+ * 
+ * @author Andreas Dr&auml;ger <a
+ *         href="mailto:andreas.draeger@uni-tuebingen.de">
+ *         andreas.draeger@uni-tuebingen.de</a>
+ * 
+ */
+class KEGGcompound {
+  /**
+   * The unique KEGG id of this compound
+   */
+  private String keggId;
+  
+  /**
+   * All names of this compound.
+   */
+  private String names[];
+  
+  /**
+   * All reactions this compound is involved in, no matter if it takes part as
+   * a reactant, product or some modifier.
+   */
+  private String reactions[];
+  
+  /**
+   * All pathways this compound is involved in, no matter which role it
+   * fulfills.
+   */
+  private String pathways[];
+  
+  /**
+   * The empirical formula
+   */
+  private String formula;
+  
+  /**
+   * 
+   * @return
+   */
+  public String getFormula() {
+    return formula;
+  }
+  
+  /**
+   * 
+   * @param formula
+   */
+  public void setFormula(String formula) {
+    this.formula = formula;
+  }
+  
+  /**
+   * Creates a new KEGG compound with the given id. If this id does not start
+   * with the prefix "cpd:" this will be corrected.
+   * 
+   * @param id
+   *            The id should start with the prefix "cpd:" followed by an
+   *            upper case "C" and some specific number.
+   */
+  public KEGGcompound(String id) {
+    keggId = id;
+    if (!keggId.startsWith("cpd:")) {
+      keggId = "cpd:".concat(keggId);
+    }
+  }
+  
+  /**
+   * Adds or sets the names of this compound. This can be trivial or
+   * systematic names of this compound.
+   * 
+   * @param names
+   */
+  public void addNames(String... names) {
+    this.names = (this.names == null) ? names : StringUtil.merge(
+      this.names, names);
+  }
+  
+  /**
+   * Adds the array of pathways to the already stored array of pathways in
+   * this object. If now pathways are stored in this object so far, the given
+   * pathways are adopted.
+   * 
+   * @param pathways
+   *            An array of additional pathways this compound is involved in.
+   */
+  public void addPathways(String... pathways) {
+    this.pathways = (this.pathways == null) ? pathways : StringUtil
+        .merge(this.pathways, pathways);
+  }
+  
+  /**
+   * Adds or sets the given array of KEGG reaction ids for this compound.
+   * Every KEGG id should start with the prefix "rn:". If this is not the case
+   * the respective element will be changed accordingly.
+   * 
+   * @param reactions
+   *            An array of KEGG reaction ids to be stored in this element.
+   */
+  public void addReactions(String... reactions) {
+    this.reactions = (this.reactions == null) ? reactions
+        : StringUtil.merge(this.reactions, reactions);
+    for (int i = 0; i < this.reactions.length; i++) {
+      if (!this.reactions[i].startsWith("rn:")) {
+        this.reactions[i] = "rn:".concat(this.reactions[i]);
+      }
+    }
+  }
+  
+  /**
+   * Returns the unique KEGG id of this compound.
+   * 
+   * @return A string with the prefix "cpd:" usually followed by an upper case
+   *         "C" and a certain number.
+   */
+  public String getKEGGid() {
+    return keggId;
+  }
+  
+  /**
+   * Returns the KEGG id of this compound in a MIRIAM compliant way.
+   * 
+   * @return
+   */
+  public String getMIRIAM_URI() {
+    return AnnotationUtils.convertURN2URI("urn:miriam:kegg.compound" + getKEGGid().substring(3));
+  }
+  
+  /**
+   * Returns all names of this compound, i.e., trivial or systematic names or
+   * synonyms.
+   * 
+   * @return An array of strings with the names of this compound.
+   */
+  public String[] getNames() {
+    if (names == null) {
+      names = new String[] {};
+    }
+    return names;
+  }
+  
+  /**
+   * Returns the KEGG ids of all pathways this compound is involved in.
+   * 
+   * @return An array of KEGG pathway ids.
+   */
+  public String[] getPathways() {
+    if (pathways == null) {
+      pathways = new String[] {};
+    }
+    return pathways;
+  }
+  
+  /**
+   * Returns an array of the KEGG ids of all reactions this compound takes
+   * part in, either as reactant, product or modifier.
+   * 
+   * @return An array of KEGG reaction ids, in which every id has the prefix
+   *         "rn:".
+   */
+  public String[] getReactions() {
+    if (reactions == null) {
+      reactions = new String[] {};
+    }
+    return reactions;
+  }
+}
@@ -0,0 +1,474 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.sbml.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.zbit.io.BinaryCacheFile;
+
+/**
+ * Index of the KEGG compound and reaction flat files, used by the
+ * {@link KEGGparser}. It contains the byte offset of the record of every
+ * compound and reaction, and the mappings from compound names to compound
+ * ids, from reaction ids to participating compounds and from EC numbers
+ * to reactions, which would otherwise require to scan the complete files.
+ * 
+ * <p>The index is created in one pass over both files and stored as
+ * {@link BinaryCacheFile} (with the extension {@link #SUFFIX}). It is
+ * created again, whenever one of the files changes.
+ * 
+ * <p>File layout (after the header of the {@link BinaryCacheFile}, with
+ * the compound and reaction file as sources):
+ * <pre>
+ * int n, n x {string id, int k, k x long offset} for compounds
+ * int n, n x {string id, long offset} for reactions
+ * int n, n x {string key, int k, k x string value} for names to compounds,
+ *   reactions to compounds and enzymes to reactions
+ * </pre>
+ * 
+ * @version $Rev$
+ */
+final class KEGGindex {
+  
+  private static final transient Logger log = Logger.getLogger(KEGGindex.class.getName());
+  
+  /**
+   * "KEGI"
+   */
+  static final int MAGIC = 0x4B454749;
+  
+  /**
+   * Increment on any change of the layout or of the parsers.
+   */
+  static final int FORMAT_VERSION = 3;
+  
+  /**
+   * File extension of indices.
+   */
+  static final String SUFFIX = ".index";
+  
+  /**
+   * Receives each record of a flat file.
+   */
+  private interface RecordHandler {
+    /**
+     * @param offset byte offset of the record in the file.
+     * @param record reader for the record (up to and including "///").
+     * @throws IOException
+     */
+    void record(long offset, BufferedReader record) throws IOException;
+  }
+  
+  /**
+   * Lower case compound id (e.g., "cpd:c00001") to the byte offsets of
+   * all records of that compound, in the order of the file.
+   */
+  private final Map<String, long[]> compoundOffsets = new HashMap<String, long[]>();
+  
+  /**
+   * Lower case reaction id (e.g., "rn:r00001") to byte offset.
+   */
+  private final Map<String, Long> reactionOffsets = new HashMap<String, Long>();
+  
+  /**
+   * Lower case compound name to compound ids.
+   */
+  private final Map<String, String[]> namesToCompounds = new HashMap<String, String[]>();
+  
+  /**
+   * Reaction id to participating compounds.
+   */
+  private final Map<String, String[]> reactionsToCompounds = new HashMap<String, String[]>();
+  
+  /**
+   * EC number to catalyzed reactions.
+   */
+  private final Map<String, String[]> enzymesToReactions = new HashMap<String, String[]>();
+  
+  private KEGGindex() {
+    super();
+  }
+  
+  /**
+   * @param compoundFile
+   * @return the index file for the given compound file.
+   * @throws IOException if the cache directory could not be created.
+   */
+  static File getIndexFile(File compoundFile) throws IOException {
+    return BinaryCacheFile.getCacheFile(compoundFile.getAbsolutePath(), SUFFIX);
+  }
+  
+  /**
+   * Reads the index of the given files or creates it, if it is missing or
+   * outdated.
+   * @param compoundFile
+   * @param reactionFile
+   * @return the index of both files.
+   * @throws IOException if the files could not be read.
+   */
+  static KEGGindex load(File compoundFile, File reactionFile) throws IOException {
+    File file = null;
+    try {
+      file = getIndexFile(compoundFile);
+    } catch (IOException e) {
+      log.log(Level.FINE, "Could not create the index directory", e);
+    }
+    BinaryCacheFile.Source[] sources = BinaryCacheFile.Source.allOf(compoundFile, reactionFile);
+    KEGGindex index = (file==null) ? null : read(file, sources);
+    if (index==null) {
+      log.fine("Indexing " + compoundFile + " and " + reactionFile);
+      index = build(compoundFile, reactionFile);
+      if (file!=null) {
+        try {
+          index.write(file, sources);
+        } catch (IOException e) {
+          log.log(Level.FINE, "Could not write " + file, e);
+        }
+      }
+    }
+    return index;
+  }
+  
+  /**
+   * Creates the index with one pass over each file.
+   * @param compoundFile
+   * @param reactionFile
+   * @return the index of both files.
+   * @throws IOException
+   */
+  static KEGGindex build(File compoundFile, File reactionFile) throws IOException {
+    final KEGGindex index = new KEGGindex();
+    final Map<String, Set<String>> reactionsToCompounds = new HashMap<String, Set<String>>();
+    final Map<String, Set<String>> enzymesToReactions = new HashMap<String, Set<String>>();
+    
+    readRecords(compoundFile, new RecordHandler() {
+      public void record(long offset, BufferedReader record) throws IOException {
+        List<String> entries = new ArrayList<String>(1);
+        KEGGcompound compound = KEGGparser.parseCompound(record, entries);
+        if (compound==null) {
+          return;
+        }
+        String id = compound.getKEGGid().toLowerCase();
+        long[] offsets = index.compoundOffsets.get(id);
+        if (offsets==null) {
+          offsets = new long[] {offset};
+        } else {
+          // Duplicate records are merged by the parser
+          offsets = Arrays.copyOf(offsets, offsets.length+1);
+          offsets[offsets.length-1] = offset;
+        }
+        index.compoundOffsets.put(id, offsets);
+        String[] ids = entries.toArray(new String[entries.size()]);
+        for (String name : compound.getNames()) {
+          index.namesToCompounds.put(name.toLowerCase(), ids);
+        }
+        for (String rid : compound.getReactions()) {
+          add(reactionsToCompounds, rid, compound.getKEGGid());
+        }
+      }
+    });
+    
+    readRecords(reactionFile, new RecordHandler() {
+      public void record(long offset, BufferedReader record) throws IOException {
+        KEGGreaction reaction = KEGGparser.parseReaction(record);
+        if (reaction==null) {
+          return;
+        }
+        String id = reaction.getKEGGid().toLowerCase();
+        if (!index.reactionOffsets.containsKey(id)) {
+          index.reactionOffsets.put(id, Long.valueOf(offset));
+        }
+        for (String ec : reaction.getEnzymes()) {
+          add(enzymesToReactions, ec, reaction.getKEGGid());
+        }
+      }
+    });
+    
+    toArrays(reactionsToCompounds, index.reactionsToCompounds);
+    toArrays(enzymesToReactions, index.enzymesToReactions);
+    return index;
+  }
+  
+  /**
+   * Splits the given flat file into records, that end with a "///" line.
+   * Incomplete records at the end of the file are ignored.
+   * @param file
+   * @param handler
+   * @throws IOException
+   */
+  private static void readRecords(File file, RecordHandler handler) throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[1<<16];
+      ByteArrayOutputStream record = new ByteArrayOutputStream(1<<12);
+      long position = 0;
+      long recordStart = 0;
+      // Number of leading slashes of the current line (up to 3) or -1
+      int slashes = 0;
+      int n;
+      while ((n = in.read(buffer))>=0) {
+        int from = 0;
+        for (int i=0; i<n; i++) {
+          byte b = buffer[i];
+          if (b=='\n') {
+            if (slashes==3) {
+              record.write(buffer, from, i+1-from);
+              from = i+1;
+              handler.record(recordStart, toReader(record));
+              record.reset();
+              recordStart = position+i+1;
+            }
+            slashes = 0;
+          } else if (slashes>=0 && slashes<3) {
+            slashes = (b=='/') ? slashes+1 : -1;
+          }
+        }
+        record.write(buffer, from, n-from);
+        position += n;
+      }
+      // The last line might not be terminated
+      if (slashes==3) {
+        handler.record(recordStart, toReader(record));
+      }
+    } finally {
+      in.close();
+    }
+  }
+  
+  /**
+   * @param record
+   * @return a reader for the given record.
+   */
+  private static BufferedReader toReader(ByteArrayOutputStream record) {
+    return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(record.toByteArray())));
+  }
+  
+  /**
+   * @param map
+   * @param key
+   * @param value
+   */
+  private static void add(Map<String, Set<String>> map, String key, String value) {
+    Set<String> values = map.get(key);
+    if (values==null) {
+      values = new TreeSet<String>();
+      map.put(key, values);
+    }
+    values.add(value);
+  }
+  
+  /**
+   * @param from
+   * @param to receives sorted arrays of all values of {@code from}.
+   */
+  private static void toArrays(Map<String, Set<String>> from, Map<String, String[]> to) {
+    for (Map.Entry<String, Set<String>> e : from.entrySet()) {
+      to.put(e.getKey(), e.getValue().toArray(new String[e.getValue().size()]));
+    }
+  }
+  
+  /**
+   * Reads the index of the given files.
+   * @param file
+   * @param sources the compound and reaction file. Must be equal to the
+   * ones used for writing.
+   * @return the index or {@code null} if the index is missing, outdated
+   * or corrupt.
+   */
+  static KEGGindex read(File file, BinaryCacheFile.Source[] sources) {
+    return BinaryCacheFile.read(file, MAGIC, FORMAT_VERSION, null, sources, new BinaryCacheFile.Reader<KEGGindex>() {
+      public KEGGindex read(ByteBuffer buffer) throws IOException {
+        KEGGindex index = new KEGGindex();
+        readMultipleOffsets(buffer, index.compoundOffsets);
+        readOffsets(buffer, index.reactionOffsets);
+        readArrays(buffer, index.namesToCompounds);
+        readArrays(buffer, index.reactionsToCompounds);
+        readArrays(buffer, index.enzymesToReactions);
+        return index;
+      }
+    });
+  }
+  
+  /**
+   * Writes this index.
+   * @param file
+   * @param sources the compound and reaction file.
+   * @throws IOException
+   */
+  void write(File file, BinaryCacheFile.Source[] sources) throws IOException {
+    BinaryCacheFile.write(file, MAGIC, FORMAT_VERSION, null, sources, new BinaryCacheFile.Writer() {
+      public void write(DataOutputStream out) throws IOException {
+        writeMultipleOffsets(out, compoundOffsets);
+        writeOffsets(out, reactionOffsets);
+        writeArrays(out, namesToCompounds);
+        writeArrays(out, reactionsToCompounds);
+        writeArrays(out, enzymesToReactions);
+      }
+    });
+  }
+  
+  /**
+   * @param out
+   * @param offsets
+   * @throws IOException
+   */
+  private static void writeOffsets(DataOutputStream out, Map<String, Long> offsets) throws IOException {
+    out.writeInt(offsets.size());
+    for (Map.Entry<String, Long> e : offsets.entrySet()) {
+      BinaryCacheFile.writeString(out, e.getKey());
+      out.writeLong(e.getValue().longValue());
+    }
+  }
+  
+  /**
+   * @param buffer
+   * @param offsets
+   * @throws IOException
+   */
+  private static void readOffsets(ByteBuffer buffer, Map<String, Long> offsets) throws IOException {
+    int size = BinaryCacheFile.readCount(buffer, 4+8);
+    for (int i=0; i<size; i++) {
+      String key = BinaryCacheFile.readString(buffer);
+      offsets.put(key, Long.valueOf(buffer.getLong()));
+    }
+  }
+  
+  /**
+   * @param out
+   * @param offsets
+   * @throws IOException
+   */
+  private static void writeMultipleOffsets(DataOutputStream out, Map<String, long[]> offsets) throws IOException {
+    out.writeInt(offsets.size());
+    for (Map.Entry<String, long[]> e : offsets.entrySet()) {
+      BinaryCacheFile.writeString(out, e.getKey());
+      out.writeInt(e.getValue().length);
+      for (long offset : e.getValue()) {
+        out.writeLong(offset);
+      }
+    }
+  }
+  
+  /**
+   * @param buffer
+   * @param offsets
+   * @throws IOException
+   */
+  private static void readMultipleOffsets(ByteBuffer buffer, Map<String, long[]> offsets) throws IOException {
+    int size = BinaryCacheFile.readCount(buffer, 4+4);
+    for (int i=0; i<size; i++) {
+      String key = BinaryCacheFile.readString(buffer);
+      long[] values = new long[BinaryCacheFile.readCount(buffer, 8)];
+      for (int j=0; j<values.length; j++) {
+        values[j] = buffer.getLong();
+      }
+      offsets.put(key, values);
+    }
+  }
+  
+  /**
+   * @param out
+   * @param map
+   * @throws IOException
+   */
+  private static void writeArrays(DataOutputStream out, Map<String, String[]> map) throws IOException {
+    out.writeInt(map.size());
+    for (Map.Entry<String, String[]> e : map.entrySet()) {
+      BinaryCacheFile.writeString(out, e.getKey());
+      out.writeInt(e.getValue().length);
+      for (String value : e.getValue()) {
+        BinaryCacheFile.writeString(out, value);
+      }
+    }
+  }
+  
+  /**
+   * @param buffer
+   * @param map
+   * @throws IOException
+   */
+  private static void readArrays(ByteBuffer buffer, Map<String, String[]> map) throws IOException {
+    int size = BinaryCacheFile.readCount(buffer, 4+4);
+    for (int i=0; i<size; i++) {
+      String key = BinaryCacheFile.readString(buffer);
+      String[] values = new String[BinaryCacheFile.readCount(buffer, 4)];
+      for (int j=0; j<values.length; j++) {
+        values[j] = BinaryCacheFile.readString(buffer);
+      }
+      map.put(key, values);
+    }
+  }
+  
+  /**
+   * @param id lower case compound id, e.g., "cpd:c00001".
+   * @return the byte offsets of all records of the compound or
+   * {@code null}, if there is no such compound.
+   */
+  long[] getCompoundOffsets(String id) {
+    return compoundOffsets.get(id);
+  }
+  
+  /**
+   * @param id lower case reaction id, e.g., "rn:r00001".
+   * @return the byte offset of the record of the reaction or -1, if
+   * there is no such reaction.
+   */
+  long getReactionOffset(String id) {
+    Long offset = reactionOffsets.get(id);
+    return offset!=null ? offset.longValue() : -1;
+  }
+  
+  /**
+   * @return lower case compound names to compound ids.
+   */
+  Map<String, String[]> getNamesToCompounds() {
+    return namesToCompounds;
+  }
+  
+  /**
+   * @return reaction ids to the ids of all participating compounds.
+   */
+  Map<String, String[]> getReactionsToCompounds() {
+    return reactionsToCompounds;
+  }
+  
+  /**
+   * @return EC numbers to the ids of all catalyzed reactions.
+   */
+  Map<String, String[]> getEnzymesToReactions() {
+    return enzymesToReactions;
+  }
+  
+}
@@ -19,49 +19,30 @@ package de.zbit.sbml.util;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
 import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.Vector;
 
-import de.zbit.util.StringUtil;
 
 /**
  * This class provides a parser for KEGG files.
  * 
+ * <p>The compound and reaction files are indexed once (see
+ * {@link KEGGindex}). Afterwards, every compound or reaction is read by
+ * seeking to its record, instead of scanning the files.
+ * 
  * @author Andreas Dr&auml;ger
  * 
  */
 public class KEGGparser {
   
-  /**
-   * These comparators are used to tell the parse method when to break up
-   * parsing.
-   * 
-   * @author Andreas Dr&auml;ger
-   * 
-   */
-  private enum Comparators {
-    /**
-     * Reaction id
-     */
-    RN_ID,
-    /**
-     * Compound name
-     */
-    CPD_NAME,
-    /**
-     * Compound id
-     */
-    CPD_ID,
-    /**
-     * EC number
-     */
-    EC
-  }
-  
   /**
    * Keywords in the compound file.
    * 
@@ -183,34 +164,34 @@ public class KEGGparser {
    * A mapping between the names (all names and synonyms) of the compounds to
    * their ids.
    */
-  private Hashtable<String, String[]> cpdNamesToIds;
+  private Map<String, String[]> cpdNamesToIds;
   /**
-   * A reader that actually reads the KEGG compound file line by line.
+   * Byte offsets of all records and the mappings below.
    */
-  private BufferedReader brCompoundFile;
-  
+  private KEGGindex index;
   /**
-   * A reader for the KEGG reaction file, line by line.
+   * The KEGG compound file, positioned at records of the {@link #index}.
    */
-  private BufferedReader brReactionFile;
+  private RandomAccessFile compoundFile;
   
   /**
-   * A reader for the KEGG enzyme file, line by line.
+   * The KEGG reaction file, positioned at records of the {@link #index}.
    */
-  private BufferedReader brEnzymeFile;
+  private RandomAccessFile reactionFile;
   /**
    * A mapping from reaction ids to participating compounds.
    */
-  private Hashtable<String, String[]> reactionsToCompounds;
+  private Map<String, String[]> reactionsToCompounds;
   /**
    * A mapping from EC numbers to reactions catalyzed by the respective
    * enzyme.
    */
-  private Hashtable<String, String[]> enzymesToReactions;
+  private Map<String, String[]> enzymesToReactions;
   
   /**
    * Instantiates this parser with the path to the KEGG compound file to be
-   * parsed.
+   * parsed. If required, the files are indexed (see
+   * {@link KEGGindex#load(File, File)}).
    * 
    * @param pathCompoundFile
    *            The path to a KEGG compound file, either relative or absolute.
@@ -226,22 +207,21 @@ public class KEGGparser {
     pathToCompoundFile = checkFile(pathCompoundFile);
     pathToReactionFile = checkFile(pathReactionFile);
     this.pathEnzymeFile = checkFile(pathEnzymeFile);
-    brCompoundFile = new BufferedReader(new FileReader(pathCompoundFile));
-    brReactionFile = new BufferedReader(new FileReader(pathReactionFile));
-    brEnzymeFile = new BufferedReader(new FileReader(pathEnzymeFile));
+    index = KEGGindex.load(new File(pathToCompoundFile), new File(pathToReactionFile));
+    compoundFile = new RandomAccessFile(pathToCompoundFile, "r");
+    reactionFile = new RandomAccessFile(pathToReactionFile, "r");
     idsToCompounds = new Hashtable<String, KEGGcompound>();
     idsToReactions = new Hashtable<String, KEGGreaction>();
-    cpdNamesToIds = new Hashtable<String, String[]>();
-    reactionsToCompounds = new Hashtable<String, String[]>();
-    enzymesToReactions = new Hashtable<String, String[]>();
+    cpdNamesToIds = index.getNamesToCompounds();
+    reactionsToCompounds = index.getReactionsToCompounds();
+    enzymesToReactions = index.getEnzymesToReactions();
   }
   
   @Override
   public void finalize() {
     try {
-      brCompoundFile.close();
-      brReactionFile.close();
-      brEnzymeFile.close();
+      compoundFile.close();
+      reactionFile.close();
       super.finalize();
     } catch (Throwable e) {
       e.printStackTrace();
@@ -257,10 +237,7 @@ public class KEGGparser {
   public KEGGcompound getCompoundForURI(String uri) throws IOException {
     String id = "cpd".concat(uri.substring(uri.lastIndexOf(':'))
       .toLowerCase());
-    if (!idsToCompounds.containsKey(id)) {
-      searchCompoundsByID(id);
-    }
-    return idsToCompounds.get(id);
+    return loadCompound(id);
   }
   
   /**
@@ -275,9 +252,6 @@ public class KEGGparser {
    * @throws IOException
    */
   public String[] getCompoundsByReaction(String rid) throws IOException {
-    if (!reactionsToCompounds.containsKey(rid)) {
-      parseCompoundFile(rid, Comparators.RN_ID);
-    }
     return reactionsToCompounds.get(rid);
   }
   
@@ -288,12 +262,8 @@ public class KEGGparser {
    * @throws IOException
    */
   public String[] getNamesOfReaction(String id) throws IOException {
-    id = id.toLowerCase();
-    if (!idsToReactions.containsKey(id)) {
-      parseReactionFile(id, Comparators.RN_ID);
-    }
-    return idsToReactions.containsKey(id) ? idsToReactions.get(id)
-        .getNames() : new String[] {};
+    KEGGreaction reaction = loadReaction(id.toLowerCase());
+    return reaction != null ? reaction.getNames() : new String[] {};
   }
   
   /**
@@ -332,10 +302,7 @@ public class KEGGparser {
   public KEGGreaction getReactionForURI(String uri) throws IOException {
     String id = "rn".concat(uri.substring(uri.lastIndexOf(':'))
       .toLowerCase());
-    if (!idsToReactions.containsKey(id)) {
-      parseReactionFile(id, Comparators.RN_ID);
-    }
-    return idsToReactions.get(id);
+    return loadReaction(id);
   }
   
   /**
@@ -348,12 +315,8 @@ public class KEGGparser {
    * @throws IOException
    */
   public String[] getReactionsByCompound(String id) throws IOException {
-    id = id.toLowerCase();
-    if (!idsToCompounds.containsKey(id)) {
-      parseCompoundFile(id, Comparators.CPD_ID);
-    }
-    return idsToCompounds.containsKey(id) ? idsToCompounds.get(id)
-        .getReactions() : new String[] {};
+    KEGGcompound compound = loadCompound(id.toLowerCase());
+    return compound != null ? compound.getReactions() : new String[] {};
   }
   
   /**
@@ -367,9 +330,6 @@ public class KEGGparser {
    * @throws IOException
    */
   public String[] getReactionsByEnzyme(String ec) throws IOException {
-    if (!enzymesToReactions.containsKey(ec)) {
-      parseReactionFile(ec, Comparators.EC);
-    }
     return enzymesToReactions.containsKey(ec) ? enzymesToReactions.get(ec)
         : new String[] {};
   }
@@ -389,11 +349,8 @@ public class KEGGparser {
     if (!id.startsWith("cpd:")) {
       id = "cpd:" + id;
     }
-    if (!idsToCompounds.containsKey(id)) {
-      parseCompoundFile(id, Comparators.CPD_ID);
-    }
-    return idsToCompounds.containsKey(id) ? idsToCompounds.get(id)
-        .getNames() : new String[] {};
+    KEGGcompound compound = loadCompound(id);
+    return compound != null ? compound.getNames() : new String[] {};
   }
   
   /**
@@ -408,9 +365,6 @@ public class KEGGparser {
   public String[] searchCompoundsByName(String name) throws IOException {
     if (name != null) {
       String n = new String(name.toLowerCase());
-      if (!cpdNamesToIds.containsKey(n)) {
-        parseCompoundFile(n, Comparators.CPD_NAME);
-      }
       if (cpdNamesToIds.containsKey(n)) {
         return cpdNamesToIds.get(n);
       }
@@ -539,49 +493,109 @@ public class KEGGparser {
     return f.getAbsolutePath();
   }
   
-  private boolean contains(Vector<String> entries, String comparator) {
-    boolean contains = false;
-    for (String c : entries) {
-      if (c.equalsIgnoreCase(comparator)) {
-        contains = true;
-        break;
+  /**
+   * Returns the compound with the given id from the cache or reads its
+   * records from the compound file. If the file contains multiple records
+   * for the same compound, names and reactions of all records are merged.
+   * 
+   * @param id
+   *            A lower case KEGG compound id, e.g., "cpd:c00001".
+   * @return The compound or {@code null} if there is no such compound.
+   * @throws IOException
+   */
+  private KEGGcompound loadCompound(String id) throws IOException {
+    KEGGcompound compound = idsToCompounds.get(id);
+    if (compound == null) {
+      long offsets[] = index.getCompoundOffsets(id);
+      if (offsets != null) {
+        for (long offset : offsets) {
+          KEGGcompound next = parseCompound(openRecord(compoundFile, offset), null);
+          if (next != null) {
+            if (compound != null) {
+              next.addNames(compound.getNames());
+              next.addReactions(compound.getReactions());
+            }
+            compound = next;
+          }
+        }
+        if (compound != null) {
+          idsToCompounds.put(compound.getKEGGid().toLowerCase(), compound);
+        }
       }
     }
-    return contains;
+    return compound;
   }
   
   /**
-   * This method actually parses the KEGG compound file.
+   * Returns the reaction with the given id from the cache or reads its
+   * record from the reaction file.
    * 
-   * @param comparator
-   *            A string that can be compared with several entries within the
-   *            file.
-   * @param flag
-   *            This flag determines to what the comparator should be
-   *            compared.
+   * @param id
+   *            A lower case KEGG reaction id, e.g., "rn:r00001".
+   * @return The reaction or {@code null} if there is no such reaction.
    * @throws IOException
    */
-  private void parseCompoundFile(String comparator, Comparators flag)
+  private KEGGreaction loadReaction(String id) throws IOException {
+    KEGGreaction reaction = idsToReactions.get(id);
+    if (reaction == null) {
+      long offset = index.getReactionOffset(id);
+      if (offset >= 0) {
+        reaction = parseReaction(openRecord(reactionFile, offset));
+        if (reaction != null) {
+          idsToReactions.put(reaction.getKEGGid().toLowerCase(), reaction);
+        }
+      }
+    }
+    return reaction;
+  }
+  
+  /**
+   * @param file
+   * @param offset
+   *            The byte offset of a record.
+   * @return A reader, that starts at the given record. It must not be
+   *         closed, because this would also close {@code file}.
+   * @throws IOException
+   */
+  private static BufferedReader openRecord(RandomAccessFile file, long offset)
+      throws IOException {
+    file.seek(offset);
+    return new BufferedReader(new InputStreamReader(Channels
+        .newInputStream(file.getChannel())));
+  }
+  
+  /**
+   * This method parses the next record of a KEGG compound file.
+   * 
+   * @param br
+   *            A reader, positioned at the beginning of a record.
+   * @param entries
+   *            If not {@code null}, the ids of all ENTRY lines of the record
+   *            are added to this list.
+   * @return The compound, that ends with the next "///" line or
+   *         {@code null} if there is no complete record.
+   * @throws IOException
+   */
+  static KEGGcompound parseCompound(BufferedReader br, List<String> entries)
       throws IOException {
     String line = null, formula = null;
-    Vector<String> entries = new Vector<String>();
+    if (entries == null) {
+      entries = new Vector<String>();
+    }
     String names = "";
     Vector<String> reactions = new Vector<String>();
-    Vector<String> patways = new Vector<String>();
-    Vector<String> enzymes = new Vector<String>();
-    Vector<String> dblinks = new Vector<String>();
-    if (comparator.startsWith("rn:")) {
-      comparator = comparator.substring(3);
-    }
     boolean readingNames = false;
     boolean readingReactions = false;
-    while ((line = brCompoundFile.readLine()) != null) {
+    while ((line = br.readLine()) != null) {
       if (!line.startsWith(" ")) {
         readingNames = false;
         readingReactions = false;
       }
       if (line.startsWith("///")) {
-        KEGGcompound compound = new KEGGcompound(entries.lastElement());
+        if (entries.isEmpty()) {
+          return null;
+        }
+        KEGGcompound compound = new KEGGcompound(entries.get(entries.size() - 1));
         StringTokenizer st = new StringTokenizer(names, ";");
         String namesTmp[] = new String[st.countTokens()];
         int i = 0;
@@ -590,50 +604,10 @@ public class KEGGparser {
         }
         compound.addNames(namesTmp);
         compound.addReactions(reactions.toArray(new String[] {}));
-        if (idsToCompounds.containsKey(compound.getKEGGid()
-          .toLowerCase())) {
-          KEGGcompound old = idsToCompounds.get(compound.getKEGGid()
-            .toLowerCase());
-          compound.addNames(old.getNames());
-          compound.addReactions(old.getReactions());
-        }
-        idsToCompounds
-        .put(compound.getKEGGid().toLowerCase(), compound);
-        for (String rid : compound.getReactions()) {
-          String cpds[] = reactionsToCompounds.get(rid);
-          if (cpds != null) {
-            cpds = StringUtil.merge(cpds, compound
-              .getKEGGid());
-          } else {
-            cpds = new String[] { compound.getKEGGid() };
-          }
-          reactionsToCompounds.put(rid, cpds);
-        }
         if (formula != null) {
           compound.setFormula(formula);
         }
-        String ids[] = entries.toArray(new String[] {});
-        for (String id : ids) {
-          if (!id.startsWith("cpd:")) {
-            id = "cpd:".concat(id);
-          }
-        }
-        for (String name : namesTmp) {
-          cpdNamesToIds.put(name.toLowerCase(), ids);
-        }
-        if ((flag.equals(Comparators.CPD_NAME) && names.toLowerCase()
-            .contains(comparator.toLowerCase()))
-            || (flag.equals(Comparators.CPD_ID) && contains(
-              entries, comparator))) {
-          break;
-        }
-        entries.removeAllElements();
-        names = "";
-        formula = null;
-        reactions.removeAllElements();
-        patways.removeAllElements();
-        enzymes.removeAllElements();
-        dblinks.removeAllElements();
+        return compound;
       } else if (line.startsWith(KeysCompound.ENTRY.toString())) {
         String entry = line.substring(
           KeysCompound.ENTRY.toString().length()).trim();
@@ -680,26 +654,31 @@ public class KEGGparser {
         }
       }
     }
+    return null;
   }
   
   /**
-   * This method parses only KEGG reaction files.
+   * This method parses the next record of a KEGG reaction file.
    * 
-   * @param comparator
-   * @param flag
+   * @param br
+   *            A reader, positioned at the beginning of a record.
+   * @return The reaction, that ends with the next "///" line or
+   *         {@code null} if there is no complete record.
    * @throws IOException
    */
-  private void parseReactionFile(String comparator, Comparators flag)
-      throws IOException {
+  static KEGGreaction parseReaction(BufferedReader br) throws IOException {
     String line = null;
     boolean readingNames = false;
     KEGGreaction reaction = null;
     String names = "";
-    while ((line = brReactionFile.readLine()) != null) {
+    while ((line = br.readLine()) != null) {
       if (!line.startsWith(" ")) {
         readingNames = false;
       }
       if (line.startsWith("///")) {
+        if (reaction == null) {
+          return null;
+        }
         StringTokenizer st = new StringTokenizer(names, ";");
         String n[] = new String[st.countTokens()];
         int i = 0;
@@ -707,29 +686,7 @@ public class KEGGparser {
           n[i++] = st.nextElement().toString().trim();
         }
         reaction.addNames(n);
-        names = "";
-        for (String ec : reaction.getEnzymes()) {
-          if (enzymesToReactions.containsKey(ec)) {
-            enzymesToReactions.put(ec, StringUtil.merge(
-              enzymesToReactions.get(ec), reaction
-              .getKEGGid()));
-          } else {
-            enzymesToReactions.put(ec, new String[] { reaction
-                .getKEGGid() });
-          }
-        }
-        idsToReactions
-        .put(reaction.getKEGGid().toLowerCase(), reaction);
-        if (comparator.equalsIgnoreCase(reaction.getKEGGid())
-            && flag.equals(Comparators.RN_ID)) {
-          break;
-        } else if (flag == Comparators.EC) {
-          int comp = Arrays.binarySearch(reaction.getEnzymes(),
-            comparator);
-          if ((0 < comp) && (comp < reaction.getEnzymes().length)) {
-            break;
-          }
-        }
+        return reaction;
       } else if (line.startsWith(KeysReaction.ENTRY.toString())) {
         String entry = line.substring(
           KeysReaction.ENTRY.toString().length()).trim();
@@ -762,281 +719,6 @@ public class KEGGparser {
         }
       }
     }
-  }
-}
-
-/**
- * This object stores the information about one compound in KEGG.
- * 
- * @author Andreas Dr&auml;ger <a
- *         href="mailto:andreas.draeger@uni-tuebingen.de">
- *         andreas.draeger@uni-tuebingen.de</a>
- * 
- */
-class KEGGcompound {
-  /**
-   * The unique KEGG id of this compound
-   */
-  private String keggId;
-  
-  /**
-   * All names of this compound.
-   */
-  private String names[];
-  
-  /**
-   * All reactions this compound is involved in, no matter if it takes part as
-   * a reactant, product or some modifier.
-   */
-  private String reactions[];
-  
-  /**
-   * All pathways this compound is involved in, no matter which role it
-   * fulfills.
-   */
-  private String pathways[];
-  
-  /**
-   * The empirical formula
-   */
-  private String formula;
-  
-  /**
-   * 
-   * @return
-   */
-  public String getFormula() {
-    return formula;
-  }
-  
-  /**
-   * 
-   * @param formula
-   */
-  public void setFormula(String formula) {
-    this.formula = formula;
-  }
-  
-  /**
-   * Creates a new KEGG compound with the given id. If this id does not start
-   * with the prefix "cpd:" this will be corrected.
-   * 
-   * @param id
-   *            The id should start with the prefix "cpd:" followed by an
-   *            upper case "C" and some specific number.
-   */
-  public KEGGcompound(String id) {
-    keggId = id;
-    if (!keggId.startsWith("cpd:")) {
-      keggId = "cpd:".concat(keggId);
-    }
-  }
-  
-  /**
-   * Adds or sets the names of this compound. This can be trivial or
-   * systematic names of this compound.
-   * 
-   * @param names
-   */
-  public void addNames(String... names) {
-    this.names = (this.names == null) ? names : StringUtil.merge(
-      this.names, names);
-  }
-  
-  /**
-   * Adds the array of pathways to the already stored array of pathways in
-   * this object. If now pathways are stored in this object so far, the given
-   * pathways are adopted.
-   * 
-   * @param pathways
-   *            An array of additional pathways this compound is involved in.
-   */
-  public void addPathways(String... pathways) {
-    this.pathways = (this.pathways == null) ? pathways : StringUtil
-        .merge(this.pathways, pathways);
-  }
-  
-  /**
-   * Adds or sets the given array of KEGG reaction ids for this compound.
-   * Every KEGG id should start with the prefix "rn:". If this is not the case
-   * the respective element will be changed accordingly.
-   * 
-   * @param reactions
-   *            An array of KEGG reaction ids to be stored in this element.
-   */
-  public void addReactions(String... reactions) {
-    this.reactions = (this.reactions == null) ? reactions
-        : StringUtil.merge(this.reactions, reactions);
-    for (int i = 0; i < this.reactions.length; i++) {
-      if (!this.reactions[i].startsWith("rn:")) {
-        this.reactions[i] = "rn:".concat(this.reactions[i]);
-      }
-    }
-  }
-  
-  /**
-   * Returns the unique KEGG id of this compound.
-   * 
-   * @return A string with the prefix "cpd:" usually followed by an upper case
-   *         "C" and a certain number.
-   */
-  public String getKEGGid() {
-    return keggId;
-  }
-  
-  /**
-   * Returns the KEGG id of this compound in a MIRIAM compliant way.
-   * 
-   * @return
-   */
-  public String getMIRIAM_URI() {
-    return AnnotationUtils.convertURN2URI("urn:miriam:kegg.compound" + getKEGGid().substring(3));
-  }
-  
-  /**
-   * Returns all names of this compound, i.e., trivial or systematic names or
-   * synonyms.
-   * 
-   * @return An array of strings with the names of this compound.
-   */
-  public String[] getNames() {
-    if (names == null) {
-      names = new String[] {};
-    }
-    return names;
-  }
-  
-  /**
-   * Returns the KEGG ids of all pathways this compound is involved in.
-   * 
-   * @return An array of KEGG pathway ids.
-   */
-  public String[] getPathways() {
-    if (pathways == null) {
-      pathways = new String[] {};
-    }
-    return pathways;
-  }
-  
-  /**
-   * Returns an array of the KEGG ids of all reactions this compound takes
-   * part in, either as reactant, product or modifier.
-   * 
-   * @return An array of KEGG reaction ids, in which every id has the prefix
-   *         "rn:".
-   */
-  public String[] getReactions() {
-    if (reactions == null) {
-      reactions = new String[] {};
-    }
-    return reactions;
-  }
-}
-
-/**
- * 
- * @author Andreas Dr&auml;ger <a
- *         href="mailto:andreas.draeger@uni-tuebingen.de">
- *         andreas.draeger@uni-tuebingen.de</a>
- * 
- */
-class KEGGreaction {
-  /**
-   * 
-   */
-  private String id;
-  /**
-   * 
-   */
-  private String compounds[];
-  /**
-   * 
-   */
-  private String enzymes[];
-  /**
-   * 
-   */
-  private String names[];
-  
-  /**
-   * 
-   * @param id
-   */
-  public KEGGreaction(String id) {
-    this.id = id.startsWith("rn:") ? id : "rn:".concat(id);
-  }
-  
-  /**
-   * 
-   * @param compounds
-   */
-  public void addCompounds(String... compounds) {
-    for (String cpd : compounds) {
-      if (!cpd.startsWith("cpd:")) {
-        cpd = "cpd:".concat(cpd);
-      }
-    }
-    this.compounds = (this.compounds == null) ? compounds
-        : StringUtil.merge(this.compounds, compounds);
-  }
-  
-  public void addEnzymes(String... enzymes) {
-    this.enzymes = (this.enzymes == null) ? enzymes : StringUtil
-        .merge(this.enzymes, enzymes);
-  }
-  
-  /**
-   * 
-   * @param string
-   */
-  public void addNames(String... names) {
-    this.names = (this.names == null) ? names : StringUtil.merge(
-      this.names, names);
-  }
-  
-  /**
-   * 
-   * @return
-   */
-  public String[] getCompounds() {
-    if (compounds == null) {
-      compounds = new String[] {};
-    }
-    return compounds;
-  }
-  
-  public String[] getEnzymes() {
-    if (enzymes == null) {
-      enzymes = new String[] {};
-    }
-    return enzymes;
-  }
-  
-  /**
-   * 
-   * @return
-   */
-  public String getKEGGid() {
-    return id;
-  }
-  
-  /**
-   * Returns the KEGG id of this reaction in a MIRIAM compliant way.
-   * 
-   * @return
-   */
-  public String getMIRIAM_URI() {
-    return AnnotationUtils.convertURN2URI("urn:miriam:kegg.reaction" + getKEGGid().substring(2));
-  }
-  
-  /**
-   * 
-   * @return
-   */
-  public String[] getNames() {
-    if (names == null) {
-      names = new String[] {};
-    }
-    return names;
+    return null;
   }
 }
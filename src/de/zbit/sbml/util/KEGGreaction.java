@@ -0,0 +1,127 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.sbml.util;
+
+import de.zbit.util.StringUtil;
+
+/**
+ * 
+ * @author Andreas Dr&auml;ger <a
+ *         href="mailto:andreas.draeger@uni-tuebingen.de">
+ *         andreas.draeger@uni-tuebingen.de</a>
+ * 
+ */
+class KEGGreaction {
+  /**
+   * 
+   */
+  private String id;
+  /**
+   * 
+   */
+  private String compounds[];
+  /**
+   * 
+   */
+  private String enzymes[];
+  /**
+   * 
+   */
+  private String names[];
+  
+  /**
+   * 
+   * @param id
+   */
+  public KEGGreaction(String id) {
+    this.id = id.startsWith("rn:") ? id : "rn:".concat(id);
+  }
+  
+  /**
+   * 
+   * @param compounds
+   */
+  public void addCompounds(String... compounds) {
+    for (String cpd : compounds) {
+      if (!cpd.startsWith("cpd:")) {
+        cpd = "cpd:".concat(cpd);
+      }
+    }
+    this.compounds = (this.compounds == null) ? compounds
+        : StringUtil.merge(this.compounds, compounds);
+  }
+  
+  public void addEnzymes(String... enzymes) {
+    this.enzymes = (this.enzymes == null) ? enzymes : StringUtil
+        .merge(this.enzymes, enzymes);
+  }
+  
+  /**
+   * 
+   * @param string
+   */
+  public void addNames(String... names) {
+    this.names = (this.names == null) ? names : StringUtil.merge(
+      this.names, names);
+  }
+  
+  /**
+   * 
+   * @return
+   */
+  public String[] getCompounds() {
+    if (compounds == null) {
+      compounds = new String[] {};
+    }
+    return compounds;
+  }
+  
+  public String[] getEnzymes() {
+    if (enzymes == null) {
+      enzymes = new String[] {};
+    }
+    return enzymes;
+  }
+  
+  /**
+   * 
+   * @return
+   */
+  public String getKEGGid() {
+    return id;
+  }
+  
+  /**
+   * Returns the KEGG id of this reaction in a MIRIAM compliant way.
+   * 
+   * @return
+   */
+  public String getMIRIAM_URI() {
+    return AnnotationUtils.convertURN2URI("urn:miriam:kegg.reaction" + getKEGGid().substring(2));
+  }
+  
+  /**
+   * 
+   * @return
+   */
+  public String[] getNames() {
+    if (names == null) {
+      names = new String[] {};
+    }
+    return names;
+  }
+}
@@ -17,6 +17,8 @@
 package de.zbit.sequence;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Arrays;
 
 import javax.xml.stream.events.Characters;
@@ -29,28 +31,58 @@ import javax.xml.stream.events.Characters;
  * The drawback is, that you can't use 'N' or other {@link Characters} in the sequence.
  * Only a,c,g or t is permitted.
  * 
+ * <p>Nucleotides are packed into {@code long}s, 32 per word, such that
+ * comparisons, {@link #reverseComplement()} and k-mer counting (see
+ * {@link #countKmers(int)}) process whole words at once.
+ * 
  * @author Clemens Wrzodek
  * @version $Rev$
  */
 public class DNAsequence implements java.io.Serializable, Comparable<DNAsequence>, CharSequence, Appendable {
   private static final long serialVersionUID = 592181105415882342L;
-
+  
+  /**
+   * Number of nucleotides per word.
+   */
+  private static final int BASES_PER_WORD = 32;
+  
+  /**
+   * Characters for the codes 0-3.
+   */
+  private static final char[] BASES = {'A', 'C', 'G', 'T'};
+  
+  /**
+   * Code of each ASCII character or -1 for characters other than a,c,g or t.
+   */
+  private static final byte[] CODES = new byte[128];
+  static {
+    Arrays.fill(CODES, (byte) -1);
+    for (int i=0; i<BASES.length; i++) {
+      CODES[BASES[i]] = (byte) i;
+      CODES[Character.toLowerCase(BASES[i])] = (byte) i;
+    }
+  }
+  
+  /**
+   * Maximum k for {@link #countKmers(int)}.
+   */
+  public static final int MAX_COUNTED_KMER_LENGTH = 15;
+  
   /**
    * Binary coded A,C,G, or T values.
    * <ul><li>00=A</li>
    * <li>01=C</li>
    * <li>10=G</li>
    * <li>11=T</li></ul>
-   * <p>Reason for this:
-   * Java memory usage: char 16bits, byte 8bits, boolean 1bit.
-   * Thus, we only need 2 bits for a char, instead of 16 when using a {@link String}.
-   * That saves us 87.5% RAM (8x longer sequences possible).
+   * <p>Nucleotide {@code i} is stored in word {@code i/32}, starting with
+   * the most significant bits. Thus, comparing words as unsigned numbers
+   * compares the nucleotides lexicographically. Bits behind {@link #size}
+   * are always zero.
    */
-  boolean[] sequence;
+  transient long[] sequence;
   
   /**
-   * Number of characters in {@link #sequence}. Thus, {@link #sequence} must
-   * be at least twice as long as {@link #size}.
+   * Number of characters in {@link #sequence}.
    */
   int size;
   
@@ -62,28 +94,55 @@ public class DNAsequence implements java.io.Serializable, Comparable<DNAsequence
     super();
     
     size = 0;
-    sequence = new boolean[Math.max(2*initialCapacity, 0)];
+    sequence = new long[words(Math.max(initialCapacity, 0))];
   }
   
   /**
-   * @param binarySequence WITHOUT blanks! Trimmed to actual size only.
+   * @param packedSequence
+   * @param size number of nucleotides in {@code packedSequence}.
    */
-  private DNAsequence(boolean[] binarySequence) {
+  private DNAsequence(long[] packedSequence, int size) {
     super();
-    size = binarySequence.length/2;
-    sequence = binarySequence;
+    this.size = size;
+    sequence = packedSequence;
   }
 
   public DNAsequence(DNAsequence other) {
     super();
     size = other.size;
-    sequence = Arrays.copyOf(other.sequence, size);
+    sequence = Arrays.copyOf(other.sequence, words(size));
   }
   
   public DNAsequence(String sequence) throws IOException {
     this (sequence.length());
     append(sequence);
   }
+  
+  /**
+   * @param bases
+   * @return the number of words, required to store {@code bases}
+   * nucleotides.
+   */
+  private static int words(int bases) {
+    return (int) ((bases + (long) BASES_PER_WORD - 1) / BASES_PER_WORD);
+  }
+  
+  /**
+   * @param c
+   * @return 0-3 for A,C,G or T (case insensitive) or -1 for all other
+   * characters.
+   */
+  static int code(char c) {
+    return c<128 ? CODES[c] : -1;
+  }
+  
+  /**
+   * @param index
+   * @return the code of the nucleotide at {@code index}.
+   */
+  private int codeAt(int index) {
+    return (int) (sequence[index>>>5] >>> (62 - ((index & 31)<<1))) & 3;
+  }
 
   /**
    * Trims the capacity of this <tt>DNAsequence</tt> instance to be the
@@ -91,8 +150,8 @@ public class DNAsequence implements java.io.Serializable, Comparable<DNAsequence
    * the storage of an <tt>DNAsequence</tt> instance.
    */
   public void trimToSize() {
-    if (size*2 < sequence.length) {
-      sequence = Arrays.copyOf(sequence, size*2);
+    if (words(size) < sequence.length) {
+      sequence = Arrays.copyOf(sequence, words(size));
     }
   }
   
@@ -104,8 +163,7 @@ public class DNAsequence implements java.io.Serializable, Comparable<DNAsequence
    * @param   minCapacity   the desired minimum capacity
    */
   public void ensureCapacity(int minCapacity) {
-    int oldCapacity = sequence.length;
-    if (minCapacity*2 > oldCapacity) {
+    if (words(minCapacity) > sequence.length) {
       expandCapacity(minCapacity);
     }
   }
@@ -115,12 +173,12 @@ public class DNAsequence implements java.io.Serializable, Comparable<DNAsequence
    * size check or synchronization.
    */
   void expandCapacity(int minimumCapacity) {
-    minimumCapacity*=2;
+    int minimumWords = words(minimumCapacity);
     int newCapacity = (sequence.length * 3)/2 + 2;
     if (newCapacity < 0) {
       newCapacity = Integer.MAX_VALUE;
-    } else if (minimumCapacity > newCapacity) {
-      newCapacity = minimumCapacity;
+    } else if (minimumWords > newCapacity) {
+      newCapacity = minimumWords;
     }
     sequence = Arrays.copyOf(sequence, newCapacity);
   }
@@ -145,55 +203,111 @@ public class DNAsequence implements java.io.Serializable, Comparable<DNAsequence
    * @see java.lang.CharSequence#charAt(int)
    */
   public char charAt(int index) {
-    index*=2;
-    return getDNAcharacter(sequence[index], sequence[index+1]);
-  }
-
-  /** Reverts binary coded A,C,G, or T values.
-   * <ul><li>00=A</li>
-   * <li>01=C</li>
-   * <li>10=G</li>
-   * <li>11=T</li></ul>
-   * 
-   * @param b first boolean
-   * @param c second boolean
-   * @return A,C,G or T as depicted in the table above.
-   */
-  private char getDNAcharacter(boolean first, boolean second) {
-    if (first) {
-      if (second) return 'T';
-      return 'G';
-    } else {
-      if (second) return 'C';
-      return 'A';
+    if (index<0 || index>=size) {
+      throw new IndexOutOfBoundsException(Integer.toString(index));
     }
+    return BASES[codeAt(index)];
   }
   
   /**
-   * Reverse method for {@link #getDNAcharacter(boolean, boolean)}.
    * @param dna
-   * @return binary pair, coding for given {@code dna} character.
+   * @return the code of the given {@code dna} character.
    * @throws IOException if a character other than a,c,g or t occurs.
    */
-  private boolean[] getBinaryPair(char dna) throws IOException {
-    if (dna=='a' || dna=='A') {
-      return new boolean[]{false, false};
-    } else if (dna=='c' || dna=='C') {
-      return new boolean[]{false, true};
-    } else if (dna=='g' || dna=='G') {
-      return new boolean[]{true, false};
-    } else if (dna=='t' || dna=='T') {
-      return new boolean[]{true, true};
-    } else {
+  private static int getCode(char dna) throws IOException {
+    int code = code(dna);
+    if (code<0) {
       throw new IOException(String.format("Unknown DNA character '%s'.", dna));
     }
+    return code;
+  }
+  
+  /**
+   * Copies {@code length} nucleotides, starting at {@code start}, into a
+   * new, aligned array.
+   * @param words
+   * @param start
+   * @param length
+   * @return the packed nucleotides.
+   */
+  private static long[] copyBases(long[] words, int start, int length) {
+    long[] ret = new long[words(length)];
+    int first = start>>>5;
+    int shift = (start & 31)<<1;
+    for (int i=0; i<ret.length; i++) {
+      long w = words[first+i] << shift;
+      if (shift>0 && first+i+1<words.length) {
+        w |= words[first+i+1] >>> (64-shift);
+      }
+      ret[i] = w;
+    }
+    clearTail(ret, length);
+    return ret;
+  }
+  
+  /**
+   * Sets all bits behind {@code size} nucleotides to zero.
+   * @param words
+   * @param size
+   */
+  private static void clearTail(long[] words, int size) {
+    int used = (size & 31)<<1;
+    int last = size>>>5;
+    if (used>0) {
+      words[last] &= -1L << (64-used);
+      last++;
+    }
+    for (int i=last; i<words.length; i++) {
+      words[i] = 0;
+    }
   }
 
   /* (non-Javadoc)
    * @see java.lang.CharSequence#subSequence(int, int)
    */
   public CharSequence subSequence(int start, int end) {
-    return new DNAsequence(Arrays.copyOfRange(sequence, start*2, end*2));
+    if (start<0 || end>size || start>end) {
+      throw new IndexOutOfBoundsException(String.format("[%s, %s)", start, end));
+    }
+    return new DNAsequence(copyBases(sequence, start, end-start), end-start);
+  }
+  
+  /**
+   * Reverses the order of the 32 nucleotides of a word.
+   * @param w
+   * @return the reversed word.
+   */
+  private static long reverseBases(long w) {
+    w = ((w >>> 2) & 0x3333333333333333L) | ((w & 0x3333333333333333L) << 2);
+    w = ((w >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((w & 0x0F0F0F0F0F0F0F0FL) << 4);
+    return Long.reverseBytes(w);
+  }
+  
+  /**
+   * The complement of A,C,G,T is T,G,C,A, i.e., the inverted code.
+   * @return a new sequence, with the complement of each nucleotide.
+   */
+  public DNAsequence complement() {
+    long[] ret = new long[words(size)];
+    for (int i=0; i<ret.length; i++) {
+      ret[i] = ~sequence[i];
+    }
+    clearTail(ret, size);
+    return new DNAsequence(ret, size);
+  }
+  
+  /**
+   * @return a new sequence with the reverse complement of this sequence.
+   */
+  public DNAsequence reverseComplement() {
+    int n = words(size);
+    long[] reversed = new long[n];
+    for (int i=0; i<n; i++) {
+      reversed[n-1-i] = ~reverseBases(sequence[i]);
+    }
+    // The unused bases of the last word are now at the start
+    int padding = n*BASES_PER_WORD - size;
+    return new DNAsequence(padding==0 ? reversed : copyBases(reversed, padding, size), size);
   }
 
   /* (non-Javadoc)
@@ -202,8 +316,15 @@ public class DNAsequence implements java.io.Serializable, Comparable<DNAsequence
   public int compareTo(DNAsequence o) {
     int r = size - o.size;
     if (r!=0) return r;
-    for (int i=0; i<sequence.length; i++)
-      if (sequence[i]!=o.sequence[i]) return sequence[i]?1:-1;
+    int n = words(size);
+    for (int i=0; i<n; i++) {
+      long a = sequence[i];
+      long b = o.sequence[i];
+      if (a!=b) {
+        // Unsigned comparison
+        return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE) ? -1 : 1;
+      }
+    }
     return 0;
   }
   
@@ -216,10 +337,9 @@ public class DNAsequence implements java.io.Serializable, Comparable<DNAsequence
     int r = size - o.length();
     if (r!=0) return r;
     
-    int doubleSize = size*2;
-    for (int i=0; i<doubleSize; i+=2) {
-       char c = (getDNAcharacter(sequence[i], sequence[i+1]));
-       if (c!=Character.toUpperCase(o.charAt(i/2))) return sequence[i]?1:-1;
+    for (int i=0; i<size; i++) {
+      int code = codeAt(i);
+      if (BASES[code]!=Character.toUpperCase(o.charAt(i))) return (code & 2)!=0?1:-1;
     }
     
     return 0;
@@ -239,20 +359,31 @@ public class DNAsequence implements java.io.Serializable, Comparable<DNAsequence
     int length = end-start;
     
     int newSize = size+length;
-    if (newSize*2 > sequence.length)
+    if (words(newSize) > sequence.length)
         expandCapacity(newSize);
     
-    int doubleSize = size*2;
-    int position;
-    boolean[] pair;
-    for (int i=0; i<length; i++) {
-      pair = getBinaryPair(csq.charAt(start+i));
-      position = doubleSize+(i*2);
-      sequence[position] = pair[0];
-      sequence[position+1] = pair[1];
+    // Fill whole words at once
+    int word = size>>>5;
+    int shift = 62 - ((size & 31)<<1);
+    long w = word<sequence.length ? sequence[word] : 0;
+    try {
+      for (int i=start; i<end; i++) {
+        w |= ((long) getCode(csq.charAt(i))) << shift;
+        shift -= 2;
+        if (shift<0) {
+          sequence[word++] = w;
+          w = 0;
+          shift = 62;
+        }
+      }
+      if (shift<62) {
+        sequence[word] = w;
+      }
+    } catch (IOException e) {
+      // This class still represents the old sequence.
+      clearTail(sequence, size);
+      throw e;
     }
-    // Set size after parsing all chars, so if an exception occurs, this
-    // class still represents the old sequence.
     size+=length;
     return this;
   }
@@ -262,28 +393,131 @@ public class DNAsequence implements java.io.Serializable, Comparable<DNAsequence
    */
   public Appendable append(char c) throws IOException {
     int newSize = size + 1;
-    if (newSize*2 > sequence.length)
+    if (words(newSize) > sequence.length)
         expandCapacity(newSize);
     
-    boolean[] pair = getBinaryPair(c);
-    int position = size*2;
-    sequence[position] = pair[0];
-    sequence[position+1] = pair[1];
+    sequence[size>>>5] |= ((long) getCode(c)) << (62 - ((size & 31)<<1));
     size++;
     return this;
   }
   
+  /**
+   * Iterates over the codes of all k-mers of a {@link DNAsequence}, using
+   * a rolling window, i.e., without creating objects.
+   * The code of a k-mer is the same as given by
+   * {@link DNAsequenceUtils#DNA2Num(String)}.
+   * 
+   * @version $Rev$
+   */
+  public class KmerIterator {
+    private final int k;
+    private final long mask;
+    private int position;
+    private long kmer = 0;
+    
+    /**
+     * @param k length of the k-mers (1-32).
+     */
+    private KmerIterator(int k) {
+      super();
+      if (k<1 || k>BASES_PER_WORD) {
+        throw new IllegalArgumentException(String.format("Invalid k-mer length %s.", k));
+      }
+      this.k = k;
+      this.mask = k==BASES_PER_WORD ? -1L : (1L<<(2*k))-1;
+      for (position=0; position<k-1 && position<size; position++) {
+        kmer = (kmer<<2) | codeAt(position);
+      }
+    }
+    
+    /**
+     * @return {@code true} if there are more k-mers.
+     */
+    public boolean hasNext() {
+      return position<size;
+    }
+    
+    /**
+     * @return the code of the next k-mer.
+     */
+    public long next() {
+      kmer = ((kmer<<2) | codeAt(position++)) & mask;
+      return kmer;
+    }
+    
+    /**
+     * @return the start of the last k-mer, returned by {@link #next()}.
+     */
+    public int getStart() {
+      return position-k;
+    }
+  }
+  
+  /**
+   * @param k length of the k-mers (1-32).
+   * @return an iterator over all k-mers of this sequence.
+   */
+  public KmerIterator kmers(int k) {
+    return new KmerIterator(k);
+  }
+  
+  /**
+   * Counts all k-mers of this sequence. E.g., for dimeres (k=2), returns an
+   * array of 16 elements, containing the number of AA, AC, AG,...
+   * dinucleotides (see {@link DNAsequenceUtils#DNA2Num(String)}).
+   * @param k length of the k-mers (1-{@link #MAX_COUNTED_KMER_LENGTH}).
+   * @return the number of occurrences of each k-mer.
+   */
+  public int[] countKmers(int k) {
+    if (k<1 || k>MAX_COUNTED_KMER_LENGTH) {
+      throw new IllegalArgumentException(String.format("Invalid k-mer length %s.", k));
+    }
+    return countKmers(k, new int[1<<(2*k)]);
+  }
+  
+  /**
+   * Adds the counts of all k-mers of this sequence to {@code counts}.
+   * @param k length of the k-mers.
+   * @param counts array of size 4^k.
+   * @return {@code counts}
+   * @see #countKmers(int)
+   */
+  public int[] countKmers(int k, int[] counts) {
+    if (counts.length != 1L<<(2*k)) {
+      throw new IllegalArgumentException(String.format("Expected %s counts for %s-mers.", 1L<<(2*k), k));
+    }
+    int mask = counts.length-1;
+    int kmer = 0;
+    int position = 0;
+    for (int i=0; i<words(size); i++) {
+      long w = sequence[i];
+      int bases = Math.min(BASES_PER_WORD, size-(i<<5));
+      for (int j=0; j<bases; j++) {
+        kmer = ((kmer<<2) | (int) (w>>>62)) & mask;
+        w <<= 2;
+        if (++position>=k) {
+          counts[kmer]++;
+        }
+      }
+    }
+    return counts;
+  }
+  
   /* (non-Javadoc)
    * @see java.lang.Object#toString()
    */
   @Override
   public String toString() {
-    StringBuilder builder = new StringBuilder(size);
-    int doubleSize = size*2;
-    for (int i=0; i<doubleSize; i+=2) {
-      builder.append(getDNAcharacter(sequence[i], sequence[i+1]));
+    char[] ret = new char[size];
+    for (int i=0; i<size; ) {
+      long w = sequence[i>>>5];
+      int end = Math.min(size, i+BASES_PER_WORD);
+      for (; i<end; i++) {
+        ret[i] = BASES[(int) (w>>>62)];
+        w <<= 2;
+      }
     }
-    return builder.toString();
+    return new String(ret);
   }
   
   /* (non-Javadoc)
@@ -291,9 +525,9 @@ public class DNAsequence implements java.io.Serializable, Comparable<DNAsequence
    */
   @Override
   public boolean equals(Object obj) {
-    if (DNAsequence.class.isAssignableFrom(obj.getClass())) {
+    if (obj instanceof DNAsequence) {
       return compareTo(((DNAsequence)obj))==0;
-    } else if (String.class.isAssignableFrom(obj.getClass())) {
+    } else if (obj instanceof String) {
       return compareTo(((String)obj))==0; 
     } else {
       return false;
@@ -305,12 +539,50 @@ public class DNAsequence implements java.io.Serializable, Comparable<DNAsequence
    */
   @Override
   public int hashCode() {
-    int result = 1;
-    int doubleSize = size*2;
-    for (int i=0; i<doubleSize; i++) {
-      result = 31 * result + (sequence[i] ? 1231 : 1237);
+    int result = size;
+    int n = words(size);
+    for (int i=0; i<n; i++) {
+      long w = sequence[i];
+      result = 31 * result + (int) (w ^ (w >>> 32));
     }
     return result;
   }
   
+  /**
+   * Writes the packed words.
+   * @param out
+   * @throws IOException
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    int n = words(size);
+    for (int i=0; i<n; i++) {
+      out.writeLong(sequence[i]);
+    }
+  }
+  
+  /**
+   * Reads the packed words, or the {@code boolean[]} of older versions
+   * of this class.
+   * @param in
+   * @throws IOException
+   * @throws ClassNotFoundException
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = in.readFields();
+    size = fields.get("size", 0);
+    sequence = new long[words(size)];
+    if (fields.getObjectStreamClass().getField("sequence")!=null) {
+      boolean[] bits = (boolean[]) fields.get("sequence", null);
+      for (int i=0; i<size; i++) {
+        int code = (bits[2*i] ? 2 : 0) | (bits[2*i+1] ? 1 : 0);
+        sequence[i>>>5] |= ((long) code) << (62 - ((i & 31)<<1));
+      }
+    } else {
+      for (int i=0; i<sequence.length; i++) {
+        sequence[i] = in.readLong();
+      }
+    }
+  }
+  
 }
@@ -52,18 +52,45 @@ public class DNAsequenceUtils {
    * E.g., for dimeres (xMeres=2), returns an array of 16 objects, containing
    * the number of AA, AC, AG,... dinucleotides. See {@link DNAsequenceUtils#DNA2Num(char)}
    * for array position and sequence link.
+   * <p>The code of each xMere is updated with every character (rolling
+   * window), such that no substrings are created. xMeres containing
+   * characters other than a,c,g or t are not counted.
    * @see DNAsequenceUtils#DNA2Num(String)
    * @param sequence
    * @param xMeres
    * @return
    */
   public static int[] countNucleotides(String sequence, int xMeres) {
-    int counts[] = new int[(int) Math.pow(4, xMeres)];
-    for (int i=0; i<sequence.length()-xMeres+1; i++)
-      counts[DNAsequenceUtils.DNA2Num(sequence.substring(i, i+xMeres))]++;
+    int counts[] = new int[1<<(2*xMeres)];
+    int mask = counts.length-1;
+    int code = 0;
+    int valid = 0; // Number of preceding a,c,g or t characters
+    for (int i=0; i<sequence.length(); i++) {
+      int c = DNAsequence.code(sequence.charAt(i));
+      if (c<0) {
+        valid = 0;
+        continue;
+      }
+      code = ((code<<2) | c) & mask;
+      if (++valid>=xMeres) {
+        counts[code]++;
+      }
+    }
     return counts;
   }
 
+  /**
+   * Counts for a DNA sequence the number of xMeres in this sequence.
+   * @see DNAsequence#countKmers(int)
+   * @param sequence
+   * @param xMeres
+   * @return the number of occurrences of each xMere, see
+   * {@link #countNucleotides(String, int)}.
+   */
+  public static int[] countNucleotides(DNAsequence sequence, int xMeres) {
+    return sequence.countKmers(xMeres);
+  }
+
   /**
    * Return a unique number for a DNA char.
    * @see Utils#Num2DNA(int) for the reverse function.
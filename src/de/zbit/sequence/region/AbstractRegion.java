@@ -242,7 +242,9 @@ public abstract class AbstractRegion extends ChromosomalPoint implements Region,
    * and secondary by {@link #getStart()} prior to making this call (see {@link AbstractRegion#getComparator()}.
    * If it is not sorted, the results are undefined.</p>
    * 
-   * <p>NOTE: If you know the {@code maximumRegionSize}, this is the fastest method!</p>
+   * <p>NOTE: If you know the {@code maximumRegionSize}, this is the fastest method
+   * for lists! For many queries on large sets of regions, consider using a
+   * {@link RegionSet}, which requires neither sorting nor the maximum region size.</p>
    * @param <T> Actual implementing class
    * @param <K> May be T, may also be any {@link AbstractRegion}
    * @param allRegionsSorted sorted list of all regions
@@ -0,0 +1,529 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.sequence.region;
+
+import java.util.Arrays;
+
+import de.zbit.util.liftOver.util.IntervalIndex;
+
+/**
+ * A set of genomic regions, stored in columns of primitive arrays
+ * (chromosome, start and end), instead of one {@link Region} object per
+ * region. Each region is identified by its row, i.e., the order in which
+ * it has been added.
+ * 
+ * <p>For queries, an {@link IntervalIndex} is built per chromosome, on
+ * the first query after regions have been added. This allows to find
+ * overlapping regions in O(log n + k) with a reusable {@link Cursor},
+ * and the nearest region in O(log n), without creating objects per
+ * query. In contrast to
+ * {@link AbstractRegion#getAllIntersections(java.util.List, Region, boolean, int)},
+ * neither a sorted list nor the maximum region size is required. Two
+ * sets are joined with a sorted sweep (see {@link #join(RegionSet, OverlapHandler)}).
+ * 
+ * <p>As for {@link Region#intersects(Region)}, start and end are
+ * inclusive. Adding regions is not thread-safe, but queries may be
+ * issued by multiple threads, each using its own {@link Cursor}.
+ * 
+ * @version $Rev$
+ */
+public class RegionSet {
+  
+  /**
+   * Receives overlapping pairs of regions from {@link RegionSet#join(RegionSet, OverlapHandler)}.
+   */
+  public static interface OverlapHandler {
+    /**
+     * @param row region of the joined set.
+     * @param otherRow overlapping region of the other set.
+     */
+    public void overlap(int row, int otherRow);
+  }
+  
+  /**
+   * The index of all regions on one chromosome.
+   */
+  private static class ChromosomeRegions {
+    /** Regions by start. Ids are positions in {@link #rows}. */
+    final IntervalIndex<Object> index;
+    /** Row of each region in the order of addition. */
+    final int[] rows;
+    /**
+     * Position (in {@link #index}) of the region with the maximum end of
+     * all regions up to that position.
+     */
+    final int[] maxEndUpTo;
+    
+    ChromosomeRegions(IntervalIndex<Object> index, int[] rows) {
+      this.index = index;
+      this.rows = rows;
+      maxEndUpTo = new int[index.size()];
+      for (int i=0; i<maxEndUpTo.length; i++) {
+        maxEndUpTo[i] = (i>0 && index.getEnd(maxEndUpTo[i-1])>=index.getEnd(i)) ? maxEndUpTo[i-1] : i;
+      }
+    }
+    
+    /**
+     * @param i position in {@link #index}.
+     * @return the row of the region at position {@code i}.
+     */
+    int row(int i) {
+      return rows[index.getId(i)];
+    }
+    
+    /**
+     * @param position
+     * @return the first position in {@link #index}, at which regions
+     * start after {@code position}.
+     */
+    int firstStartingAfter(int position) {
+      int low = 0;
+      int high = index.size();
+      while (low<high) {
+        int mid = (low+high)>>>1;
+        if (index.getStart(mid)<=position) {
+          low = mid+1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+  
+  /**
+   * Iterates over all regions of this set, that overlap a query region.
+   * Instances can be reused for any number of queries and are not
+   * thread-safe.
+   */
+  public class Cursor {
+    private final IntervalIndex.Cursor<Object> cursor = new IntervalIndex.Cursor<Object>();
+    private ChromosomeRegions regions = null;
+    
+    private Cursor() {
+      super();
+    }
+    
+    /**
+     * Starts a new query. Any previous query is discarded.
+     * @param chromosome as given by {@link ChromosomeTools#getChromosomeByteRepresentation(String)}
+     * @param start
+     * @param end inclusive
+     * @return this cursor.
+     */
+    public Cursor query(byte chromosome, int start, int end) {
+      regions = getRegions(chromosome);
+      cursor.query(regions==null ? null : regions.index, start, end);
+      return this;
+    }
+    
+    /**
+     * Starts a new query for all regions, overlapping {@code region}.
+     * @param region
+     * @return this cursor.
+     */
+    public Cursor query(Region region) {
+      return query(region.getChromosomeAsByteRepresentation(), region.getStart(), getEnd(region));
+    }
+    
+    /**
+     * @return the row of the next overlapping region, or {@code -1} if
+     * there are no more overlapping regions. Regions are returned in the
+     * order of their start.
+     */
+    public int next() {
+      int i = cursor.next();
+      return i<0 ? -1 : regions.row(i);
+    }
+  }
+  
+  /**
+   * Number of regions.
+   */
+  private int size = 0;
+  
+  /**
+   * Columns with one entry per row.
+   */
+  private byte[] chromosomes;
+  private int[] starts;
+  private int[] ends;
+  
+  /**
+   * Index per chromosome (at position chromosome+128). {@code null} if
+   * it has to be built again.
+   */
+  private volatile ChromosomeRegions[] regions = null;
+  
+  public RegionSet() {
+    this(16);
+  }
+  
+  /**
+   * @param expectedSize number of regions to store without resizing.
+   */
+  public RegionSet(int expectedSize) {
+    super();
+    int capacity = Math.max(1, expectedSize);
+    chromosomes = new byte[capacity];
+    starts = new int[capacity];
+    ends = new int[capacity];
+  }
+  
+  /**
+   * Creates a set with all given regions, in the order of iteration.
+   * @param regions
+   */
+  public RegionSet(Iterable<? extends Region> regions) {
+    this();
+    for (Region r : regions) {
+      add(r);
+    }
+  }
+  
+  /**
+   * @param region
+   * @return the end of {@code region} or its start, if no end is set.
+   */
+  private static int getEnd(Region region) {
+    int end = region.getEnd();
+    return (end<0 || end==Region.DEFAULT_START) ? region.getStart() : end;
+  }
+  
+  /**
+   * @param region
+   * @return the row of the added region.
+   */
+  public int add(Region region) {
+    return add(region.getChromosomeAsByteRepresentation(), region.getStart(), getEnd(region));
+  }
+  
+  /**
+   * @param chromosome e.g., "chr5"
+   * @param start
+   * @param end inclusive
+   * @return the row of the added region.
+   */
+  public int add(String chromosome, int start, int end) {
+    return add(ChromosomeTools.getChromosomeByteRepresentation(chromosome), start, end);
+  }
+  
+  /**
+   * @param chromosome as given by {@link ChromosomeTools#getChromosomeByteRepresentation(String)}
+   * @param start
+   * @param end inclusive. Start and end are swapped, if end is smaller
+   * than start.
+   * @return the row of the added region.
+   */
+  public synchronized int add(byte chromosome, int start, int end) {
+    if (size==starts.length) {
+      int capacity = starts.length*2;
+      chromosomes = Arrays.copyOf(chromosomes, capacity);
+      starts = Arrays.copyOf(starts, capacity);
+      ends = Arrays.copyOf(ends, capacity);
+    }
+    chromosomes[size] = chromosome;
+    starts[size] = Math.min(start, end);
+    ends[size] = Math.max(start, end);
+    regions = null;
+    return size++;
+  }
+  
+  /**
+   * @return the number of regions.
+   */
+  public int size() {
+    return size;
+  }
+  
+  /**
+   * @param row
+   * @return the chromosome of the region in {@code row}.
+   */
+  public byte getChromosome(int row) {
+    return chromosomes[row];
+  }
+  
+  /**
+   * @param row
+   * @return the start of the region in {@code row}.
+   */
+  public int getStart(int row) {
+    return starts[row];
+  }
+  
+  /**
+   * @param row
+   * @return the (inclusive) end of the region in {@code row}.
+   */
+  public int getEnd(int row) {
+    return ends[row];
+  }
+  
+  /**
+   * @param row
+   * @return a new {@link Region} object for the region in {@code row}.
+   * @see AbstractRegion#createRegion(byte, int, int)
+   */
+  public Region getRegion(int row) {
+    return AbstractRegion.createRegion(chromosomes[row], starts[row], ends[row]);
+  }
+  
+  /**
+   * @return a new {@link Cursor} for overlap queries.
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+  
+  /**
+   * @return all chromosomes with at least one region, in ascending order.
+   */
+  public byte[] getChromosomes() {
+    ChromosomeRegions[] all = getRegions();
+    int n = 0;
+    byte[] ret = new byte[all.length];
+    for (int i=0; i<all.length; i++) {
+      if (all[i]!=null) {
+        ret[n++] = (byte) (i-128);
+      }
+    }
+    return Arrays.copyOf(ret, n);
+  }
+  
+  /**
+   * @param chromosome
+   * @return the index of all regions on {@code chromosome} or {@code null}.
+   */
+  private ChromosomeRegions getRegions(byte chromosome) {
+    return getRegions()[chromosome+128];
+  }
+  
+  /**
+   * @return the indices of all chromosomes. Built again, if regions have
+   * been added.
+   */
+  private ChromosomeRegions[] getRegions() {
+    ChromosomeRegions[] ret = regions;
+    if (ret==null) {
+      ret = buildRegions();
+    }
+    return ret;
+  }
+  
+  /**
+   * @return the indices of all chromosomes.
+   */
+  private synchronized ChromosomeRegions[] buildRegions() {
+    if (regions!=null) {
+      return regions;
+    }
+    // Group rows by chromosome
+    int[] counts = new int[256];
+    for (int row=0; row<size; row++) {
+      counts[chromosomes[row]+128]++;
+    }
+    int[][] rows = new int[256][];
+    for (int c=0; c<256; c++) {
+      if (counts[c]>0) {
+        rows[c] = new int[counts[c]];
+        counts[c] = 0;
+      }
+    }
+    for (int row=0; row<size; row++) {
+      int c = chromosomes[row]+128;
+      rows[c][counts[c]++] = row;
+    }
+    // Build the indices
+    ChromosomeRegions[] ret = new ChromosomeRegions[256];
+    for (int c=0; c<256; c++) {
+      if (rows[c]!=null) {
+        IntervalIndex.Builder<Object> builder = new IntervalIndex.Builder<Object>(rows[c].length);
+        for (int row : rows[c]) {
+          builder.add(starts[row], ends[row], null);
+        }
+        ret[c] = new ChromosomeRegions(builder.build(), rows[c]);
+      }
+    }
+    regions = ret;
+    return ret;
+  }
+  
+  /**
+   * Finds the region, that is closest to the given query region. If
+   * regions overlap the query, the one with the smallest start is
+   * returned. Otherwise, the region with the smallest gap to the query is
+   * returned (preferring the one before the query for equal gaps).
+   * @param chromosome
+   * @param start
+   * @param end inclusive
+   * @return the row of the nearest region or {@code -1} if there is no
+   * region on {@code chromosome}.
+   */
+  public int getNearest(byte chromosome, int start, int end) {
+    ChromosomeRegions regions = getRegions(chromosome);
+    if (regions==null) {
+      return -1;
+    }
+    // All regions before this position start not after end.
+    int after = regions.firstStartingAfter(end);
+    if (after>0) {
+      int before = regions.maxEndUpTo[after-1];
+      if (regions.index.getEnd(before)>=start) {
+        // Overlapping regions exist. Find the first one.
+        return firstOverlapping(regions, start, end, after);
+      }
+      if (after>=regions.index.size() ||
+          start-regions.index.getEnd(before) <= regions.index.getStart(after)-end) {
+        return regions.row(before);
+      }
+    }
+    return regions.row(after);
+  }
+  
+  /**
+   * @param regions
+   * @param start
+   * @param end
+   * @param after first position after all overlapping regions.
+   * @return the row of the overlapping region with the smallest start.
+   */
+  private static int firstOverlapping(ChromosomeRegions regions, int start, int end, int after) {
+    // maxEndUpTo is monotonic, so the first position with an end>=start
+    // is found by binary search.
+    int low = 0;
+    int high = after-1;
+    while (low<high) {
+      int mid = (low+high)>>>1;
+      if (regions.index.getEnd(regions.maxEndUpTo[mid])>=start) {
+        high = mid;
+      } else {
+        low = mid+1;
+      }
+    }
+    return regions.row(low);
+  }
+  
+  /**
+   * Convenient method for {@link #getNearest(byte, int, int)}.
+   * @param region
+   * @return the row of the region nearest to {@code region} or {@code -1}.
+   */
+  public int getNearest(Region region) {
+    return getNearest(region.getChromosomeAsByteRepresentation(), region.getStart(), getEnd(region));
+  }
+  
+  /**
+   * Reports all pairs of overlapping regions of this and another set.
+   * Both sets are swept in the order of start per chromosome, while
+   * keeping the regions that might overlap in active lists. This takes
+   * O(n + m + k) time, where k is the number of overlapping pairs.
+   * @param other
+   * @param handler called once for each overlapping pair.
+   */
+  public void join(RegionSet other, OverlapHandler handler) {
+    ChromosomeRegions[] mine = getRegions();
+    ChromosomeRegions[] others = other.getRegions();
+    int[] activeA = new int[16];
+    int[] activeB = new int[16];
+    for (int c=0; c<256; c++) {
+      if (mine[c]==null || others[c]==null) {
+        continue;
+      }
+      IntervalIndex<Object> a = mine[c].index;
+      IntervalIndex<Object> b = others[c].index;
+      int numA = 0, numB = 0;
+      int i = 0, j = 0;
+      while (i<a.size() && j<b.size()) {
+        if (a.getStart(i)<=b.getStart(j)) {
+          int start = a.getStart(i);
+          numB = retainEndingAfter(b, activeB, numB, start);
+          int row = mine[c].row(i);
+          for (int k=0; k<numB; k++) {
+            handler.overlap(row, others[c].row(activeB[k]));
+          }
+          activeA = append(activeA, numA++, i);
+          i++;
+        } else {
+          int start = b.getStart(j);
+          numA = retainEndingAfter(a, activeA, numA, start);
+          int row = others[c].row(j);
+          for (int k=0; k<numA; k++) {
+            handler.overlap(mine[c].row(activeA[k]), row);
+          }
+          activeB = append(activeB, numB++, j);
+          j++;
+        }
+      }
+      // Remaining regions of one set can only overlap active ones of the other
+      for (; i<a.size(); i++) {
+        numB = retainEndingAfter(b, activeB, numB, a.getStart(i));
+        if (numB==0) {
+          break;
+        }
+        int row = mine[c].row(i);
+        for (int k=0; k<numB; k++) {
+          handler.overlap(row, others[c].row(activeB[k]));
+        }
+      }
+      for (; j<b.size(); j++) {
+        numA = retainEndingAfter(a, activeA, numA, b.getStart(j));
+        if (numA==0) {
+          break;
+        }
+        int row = others[c].row(j);
+        for (int k=0; k<numA; k++) {
+          handler.overlap(mine[c].row(activeA[k]), row);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Removes all regions from {@code active}, that end before {@code start}.
+   * @param index
+   * @param active positions in {@code index}
+   * @param numActive
+   * @param start
+   * @return the new number of active regions.
+   */
+  private static int retainEndingAfter(IntervalIndex<?> index, int[] active, int numActive, int start) {
+    int n = 0;
+    for (int k=0; k<numActive; k++) {
+      if (index.getEnd(active[k])>=start) {
+        active[n++] = active[k];
+      }
+    }
+    return n;
+  }
+  
+  /**
+   * @param array
+   * @param length
+   * @param value
+   * @return {@code array} or a larger copy, with {@code value} at
+   * position {@code length}.
+   */
+  private static int[] append(int[] array, int length, int value) {
+    if (length==array.length) {
+      array = Arrays.copyOf(array, length*2);
+    }
+    array[length] = value;
+    return array;
+  }
+  
+}
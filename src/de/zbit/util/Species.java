@@ -21,6 +21,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Serializable;
+import java.net.URL;
+import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -40,6 +42,7 @@ import de.zbit.io.csv.CSVwriteableIO;
 import de.zbit.kegg.api.cache.KeggFunctionManagement;
 import de.zbit.kegg.api.cache.KeggQuery;
 import de.zbit.resources.Resource;
+import de.zbit.util.objectwrapper.CustomObject;
 import de.zbit.util.progressbar.ProgressBar;
 
 /**
@@ -61,6 +64,11 @@ public class Species implements Serializable, Comparable<Object>, CSVwriteable,
   
   public static final Logger log = Logger.getLogger(Species.class.getName());
   
+  /**
+   * All no-word-chars (see {@link #matchesIdentifier(String, int)}).
+   */
+  static final Pattern NON_WORD = Pattern.compile("\\W");
+  
   public final static int SCIENTIFIC_NAME = 0;
   public final static int COMMON_NAME = 1;
   public final static int KEGG_ABBR = 2;
@@ -401,9 +409,45 @@ public class Species implements Serializable, Comparable<Object>, CSVwriteable,
    * 
    */
   public static List<Species> generateSpeciesDataStructure() throws IOException {
-    BufferedReader in = new BufferedReader(new InputStreamReader(Resource.class.getResourceAsStream("speclist.txt")));
-    List<Species> a = generateSpeciesDataStructure(in, true);
-    return a;
+    return completeWithKEGG(readSpeclist(), true);
+  }
+  
+  /**
+   * Reads the UniProt speclist, that is included as resource. The parsed
+   * list is cached in a binary file (see {@link SpeclistCache}), which is
+   * used as long as the resource does not change.
+   * @return all species of the speclist.
+   * @throws IOException
+   */
+  static List<Species> readSpeclist() throws IOException {
+    URL url = Resource.class.getResource("speclist.txt");
+    if (url==null) {
+      throw new IOException("Could not find speclist.txt");
+    }
+    URLConnection c = url.openConnection();
+    String source = url.toString();
+    long length = c.getContentLength();
+    long lastModified = c.getLastModified();
+    File cache = null;
+    try {
+      cache = SpeclistCache.getCacheFile(source);
+    } catch (IOException e) {
+      log.log(Level.FINE, "Could not create the cache directory", e);
+    }
+    List<Species> cached = (cache==null) ? null : SpeclistCache.read(cache, source, length, lastModified);
+    if (cached!=null) {
+      c.getInputStream().close();
+      return new SortedArrayList<Species>(cached);
+    }
+    List<Species> list = parseSpeclist(new BufferedReader(new InputStreamReader(c.getInputStream())));
+    if (cache!=null) {
+      try {
+        SpeclistCache.write(cache, source, length, lastModified, list);
+      } catch (IOException e) {
+        log.log(Level.FINE, "Could not write " + cache, e);
+      }
+    }
+    return list;
   }
   
   /**
@@ -431,9 +475,19 @@ public class Species implements Serializable, Comparable<Object>, CSVwriteable,
    */
   public static List<Species> generateSpeciesDataStructure(BufferedReader in,
     boolean keggNecessary) throws IOException {
+    return completeWithKEGG(parseSpeclist(in), keggNecessary);
+  }
+  
+  /**
+   * Parses the UniProt speclist, without querying KEGG.
+   * @param in from the UniProt homepage under <a href="http://www.uniprot.org/docs/speclist">http://www.uniprot.org/docs/speclist</a>.
+   * The reader is closed afterwards.
+   * @return all species of the speclist.
+   * @throws IOException
+   */
+  public static List<Species> parseSpeclist(BufferedReader in) throws IOException {
     List<Species> allSpec = new SortedArrayList<Species>();
     
-    
     if (in!=null) { // Read uniprot species taxon file.
       boolean startReading=false;
       String line;
@@ -506,7 +560,20 @@ public class Species implements Serializable, Comparable<Object>, CSVwriteable,
       in.close();
     }
     
-    
+    return allSpec;
+  }
+  
+  /**
+   * Adds KEGG abbreviations and all KEGG organisms, that are not yet
+   * contained, to the given list.
+   * @param allSpec species of the UniProt speclist (see {@link #parseSpeclist(BufferedReader)}).
+   * @param keggNecessary if {@code true}, only species with KEGG
+   * abbreviation are returned.
+   * @return
+   * @throws IOException
+   */
+  private static List<Species> completeWithKEGG(List<Species> allSpec,
+    boolean keggNecessary) throws IOException {
     //KeggQuery.getOrganisms
     KeggFunctionManagement manag = null;
     Definition[] keggOrgs = null;
@@ -524,7 +591,12 @@ public class Species implements Serializable, Comparable<Object>, CSVwriteable,
     }
     
     KeggQuery q = new KeggQuery(KeggQuery.getOrganisms, null);
-    keggOrgs = (Definition[]) manag.getInformation(q).getObject();
+    CustomObject<Object> info = manag.getInformation(q);
+    if (info!=null) {
+      keggOrgs = (Definition[]) info.getObject();
+    } else {
+      log.warning("Could not retrieve the list of KEGG organisms.");
+    }
     
     if (keggOrgs!=null) {
       for (Definition definition : keggOrgs) {
@@ -589,15 +661,11 @@ public class Species implements Serializable, Comparable<Object>, CSVwriteable,
     List<Species> speciesWithKeggAbbr = new SortedArrayList<Species>();
     if (keggNecessary) {
       for (Species species : allSpec) {
-        System.out.println(species.getNCBITaxonID());
         if(species.getKeggAbbr()!=null) {
           counter++;
           speciesWithKeggAbbr.add(species);
         }
         else{
-          if (species.getNCBITaxonID().equals(6706)) {
-            System.out.println("FUCK");
-          }
           speciesWithoutKeggAbbr.add(species);
         }
       }
@@ -643,14 +711,14 @@ public class Species implements Serializable, Comparable<Object>, CSVwriteable,
   }
   
   /**
-   * Searches for a specific species and retrieves a complete list
-   * of species from KEGG.
+   * Searches for a specific species in the complete list of species
+   * (see {@link SpeciesRegistry}).
    * @param species
    * @return
    * @throws IOException
    */
   public static Species search(String species) throws IOException {
-    return search(Species.generateSpeciesDataStructure(), species, -1);
+    return SpeciesRegistry.getInstance().search(species, -1);
   }
   
   /**
@@ -663,7 +731,7 @@ public class Species implements Serializable, Comparable<Object>, CSVwriteable,
    * @throws IOException
    */
   public static Species get(String identifier, int nameTypeToSearch) throws IOException {
-    return search(Species.generateSpeciesDataStructure(), identifier, nameTypeToSearch);
+    return SpeciesRegistry.getInstance().search(identifier, nameTypeToSearch);
   }
   
   /**
@@ -698,7 +766,7 @@ public class Species implements Serializable, Comparable<Object>, CSVwriteable,
         /* First try with exact string. Second try with replacing
          * spaces and dots. (e.g. "C. elegans" => "Celegans"
          * => Ensembl name matches). */
-        species = species.replaceAll("\\W", ""); // All no-word-chars
+        species = NON_WORD.matcher(species).replaceAll(""); // All no-word-chars
       }
       
       if (nameTypeToSearch==UNIPROT_EXTENSION || nameTypeToSearch==-1) {
@@ -0,0 +1,235 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.util;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import de.zbit.collection.Int2ObjectHashMap;
+import de.zbit.collection.Object2IntHashMap;
+
+/**
+ * All species of {@link Species#generateSpeciesDataStructure()}, indexed
+ * by NCBI taxonomy id, KEGG abbreviation, UniProt extension, scientific,
+ * common and Ensembl name and synonyms. {@link #search(String, int)}
+ * returns the same species as a linear
+ * {@link Species#search(List, String, int)}, but in constant time.
+ * 
+ * <p>The process-wide instance is created on first use (see
+ * {@link #getInstance()}). All returned {@link Species} are shared and
+ * must not be modified. Instances are immutable and may be used by
+ * multiple threads.
+ * 
+ * @version $Rev$
+ */
+public final class SpeciesRegistry {
+  
+  /**
+   * The process-wide instance.
+   */
+  private static SpeciesRegistry instance = null;
+  
+  /**
+   * All species, in the order of the list, the index was created from.
+   */
+  private final List<Species> species;
+  
+  /**
+   * Case-folded names (see {@link #fold(String)}) to the smallest index
+   * in {@link #species}. {@link #uniprot} contains UniProt extensions
+   * only, because they are not searched for all name types.
+   */
+  private final Object2IntHashMap<String> names;
+  private final Object2IntHashMap<String> uniprot;
+  
+  /**
+   * As {@link #names} and {@link #uniprot}, but only for species without
+   * NCBI taxonomy id. Those are the only species, whose names are
+   * compared with numeric identifiers.
+   */
+  private final Object2IntHashMap<String> namesWithoutTax;
+  private final Object2IntHashMap<String> uniprotWithoutTax;
+  
+  /**
+   * NCBI taxonomy id to the smallest index in {@link #species}.
+   */
+  private final Int2ObjectHashMap<Integer> byTax;
+  
+  /**
+   * @param species
+   */
+  SpeciesRegistry(List<Species> species) {
+    super();
+    this.species = Collections.unmodifiableList(species);
+    int size = species.size();
+    names = new Object2IntHashMap<String>(size*4, -1);
+    uniprot = new Object2IntHashMap<String>(size, -1);
+    namesWithoutTax = new Object2IntHashMap<String>(16, -1);
+    uniprotWithoutTax = new Object2IntHashMap<String>(16, -1);
+    byTax = new Int2ObjectHashMap<Integer>(size);
+    for (int i=0; i<size; i++) {
+      Species s = species.get(i);
+      boolean withoutTax = s.getNCBITaxonID()==null;
+      if (!withoutTax && !byTax.containsKey(s.getNCBITaxonID().intValue())) {
+        byTax.put(s.getNCBITaxonID().intValue(), Integer.valueOf(i));
+      }
+      add(uniprot, withoutTax ? uniprotWithoutTax : null, s.getUniprotExtension(), i);
+      add(names, withoutTax ? namesWithoutTax : null, s.getScientificName(), i);
+      add(names, withoutTax ? namesWithoutTax : null, s.getCommonName(), i);
+      if (s.getScientificName()!=null) {
+        add(names, withoutTax ? namesWithoutTax : null, s.getEnsemblName(), i);
+      }
+      add(names, withoutTax ? namesWithoutTax : null, s.getKeggAbbr(), i);
+      if (s.getSynonyms()!=null) {
+        for (String synonym : s.getSynonyms()) {
+          add(names, withoutTax ? namesWithoutTax : null, synonym, i);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Creates the registry on first use. Registries without any species,
+   * i.e., if the list of KEGG organisms was not available, are not kept,
+   * such that the next call tries again.
+   * @return the process-wide registry.
+   * @throws IOException if the list of species could not be created.
+   */
+  public static synchronized SpeciesRegistry getInstance() throws IOException {
+    if (instance==null) {
+      SpeciesRegistry registry = new SpeciesRegistry(Species.generateSpeciesDataStructure());
+      if (registry.species.isEmpty()) {
+        return registry;
+      }
+      instance = registry;
+    }
+    return instance;
+  }
+  
+  /**
+   * Adds {@code name} to both indices, keeping the smallest index.
+   * @param index
+   * @param indexWithoutTax may be {@code null}.
+   * @param name may be {@code null}.
+   * @param i
+   */
+  private static void add(Object2IntHashMap<String> index,
+    Object2IntHashMap<String> indexWithoutTax, String name, int i) {
+    if (name==null) {
+      return;
+    }
+    String key = fold(name);
+    if (!index.containsKey(key)) {
+      index.put(key, i);
+    }
+    if (indexWithoutTax!=null && !indexWithoutTax.containsKey(key)) {
+      indexWithoutTax.put(key, i);
+    }
+  }
+  
+  /**
+   * Case-folds every char in the same way as
+   * {@link String#equalsIgnoreCase(String)}, i.e., two strings are equal
+   * ignoring case, if and only if their folded forms are equal.
+   * @param s
+   * @return
+   */
+  static String fold(String s) {
+    char[] c = s.toCharArray();
+    for (int i=0; i<c.length; i++) {
+      c[i] = Character.toLowerCase(Character.toUpperCase(c[i]));
+    }
+    return new String(c);
+  }
+  
+  /**
+   * @param index
+   * @param key
+   * @param best smallest index so far or -1.
+   * @return the smaller of {@code best} and the index of {@code key}.
+   */
+  private static int min(Object2IntHashMap<String> index, String key, int best) {
+    int i = index.getInt(key);
+    return i>=0 && (best<0 || i<best) ? i : best;
+  }
+  
+  /**
+   * Searches for a specific species.
+   * @param identifier a name, KEGG abbreviation, UniProt extension or
+   * NCBI taxonomy id.
+   * @param nameTypeToSearch -1 to search all types, else, one of the
+   * final static integers of {@link Species}.
+   * @return the same species as {@link Species#search(List, String, int)}
+   * on {@link #getSpecies()} or {@code null} if not found.
+   */
+  public Species search(String identifier, int nameTypeToSearch) {
+    if (identifier==null) {
+      return null;
+    }
+    Object2IntHashMap<String> names = this.names;
+    Object2IntHashMap<String> uniprot = this.uniprot;
+    int best = -1;
+    if (Utils.isNumber(identifier, true)) {
+      // Species with taxonomy id only match by taxonomy id
+      Integer i = byTax.get(Integer.parseInt(identifier));
+      if (i!=null) {
+        best = i.intValue();
+      }
+      names = namesWithoutTax;
+      uniprot = uniprotWithoutTax;
+    }
+    boolean searchUniprot = nameTypeToSearch==Species.UNIPROT_EXTENSION || nameTypeToSearch==-1;
+    String key = fold(identifier);
+    String normalized = fold(Species.NON_WORD.matcher(identifier).replaceAll(""));
+    best = min(names, key, best);
+    best = min(names, normalized, best);
+    if (searchUniprot) {
+      best = min(uniprot, key, best);
+      best = min(uniprot, normalized, best);
+    }
+    return best<0 ? null : species.get(best);
+  }
+  
+  /**
+   * @param identifier
+   * @return the species with the given identifier of any type or
+   * {@code null}.
+   * @see #search(String, int)
+   */
+  public Species search(String identifier) {
+    return search(identifier, -1);
+  }
+  
+  /**
+   * @param ncbiTaxonId
+   * @return the first species with the given NCBI taxonomy id or
+   * {@code null}.
+   */
+  public Species getByTaxonomyId(int ncbiTaxonId) {
+    Integer i = byTax.get(ncbiTaxonId);
+    return i==null ? null : species.get(i.intValue());
+  }
+  
+  /**
+   * @return all species, in their original order.
+   */
+  public List<Species> getSpecies() {
+    return species;
+  }
+  
+}
@@ -0,0 +1,152 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.util;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.zbit.io.BinaryCacheFile;
+
+/**
+ * A compact, binary version of the species of the UniProt speclist, as
+ * parsed by {@link Species#parseSpeclist(java.io.BufferedReader)}. The
+ * speclist is a resource, hence, caches are written to the cache
+ * directory of the current user (see
+ * {@link BinaryCacheFile#getCacheDirectory()}).
+ * 
+ * <p>Each cache remembers the location, size and modification time of
+ * the speclist, it has been created from. If any of those changed, the
+ * cache is ignored.
+ * 
+ * <p>File layout (big endian, after the header of the
+ * {@link BinaryCacheFile}):
+ * <pre>
+ * int species, {string scientificName, string uniprotExtension,
+ *   string commonName, string keggAbbr, int ncbiTaxId, int synonyms,
+ *   string[synonyms]}
+ * </pre>
+ * where a tax id of {@link Integer#MIN_VALUE} denotes {@code null}.
+ * 
+ * @version $Rev$
+ */
+final class SpeclistCache {
+  
+  /**
+   * "ZSPL"
+   */
+  static final int MAGIC = 0x5A53504C;
+  
+  /**
+   * Increment on any change of the layout.
+   */
+  static final int FORMAT_VERSION = 2;
+  
+  /**
+   * File extension of caches.
+   */
+  static final String SUFFIX = ".cache";
+  
+  /**
+   * Marks a missing tax id.
+   */
+  private static final int NO_TAX_ID = Integer.MIN_VALUE;
+  
+  private SpeclistCache() {
+    // Utility class
+  }
+  
+  /**
+   * @param source location of the speclist (e.g., an URL).
+   * @return the cache file for the given speclist.
+   * @throws IOException if the cache directory could not be created.
+   */
+  static File getCacheFile(String source) throws IOException {
+    return BinaryCacheFile.getCacheFile(source, SUFFIX);
+  }
+  
+  /**
+   * Reads a cache.
+   * @param cache
+   * @param source location of the speclist
+   * @param length size of the speclist
+   * @param lastModified
+   * @return the species, in the order, they have been written, or
+   * {@code null}, if the cache does not exist, is outdated or corrupt.
+   */
+  static List<Species> read(File cache, String source, long length, long lastModified) {
+    BinaryCacheFile.Source[] sources = {new BinaryCacheFile.Source(source, length, lastModified, 0)};
+    return BinaryCacheFile.read(cache, MAGIC, FORMAT_VERSION, null, sources, new BinaryCacheFile.Reader<List<Species>>() {
+      public List<Species> read(ByteBuffer buffer) throws IOException {
+        int size = BinaryCacheFile.readCount(buffer, 4*4+4+4);
+        List<Species> ret = new ArrayList<Species>(size);
+        for (int i=0; i<size; i++) {
+          String scientificName = BinaryCacheFile.readString(buffer);
+          String uniprotExtension = BinaryCacheFile.readString(buffer);
+          String commonName = BinaryCacheFile.readString(buffer);
+          String keggAbbr = BinaryCacheFile.readString(buffer);
+          int tax = buffer.getInt();
+          Species s = new Species(scientificName, uniprotExtension, commonName, null,
+            tax==NO_TAX_ID ? null : Integer.valueOf(tax));
+          s.setShortName(keggAbbr);
+          int synonyms = BinaryCacheFile.readCount(buffer, 4);
+          for (int j=0; j<synonyms; j++) {
+            s.addSynonym(BinaryCacheFile.readString(buffer));
+          }
+          ret.add(s);
+        }
+        return ret;
+      }
+    });
+  }
+  
+  /**
+   * Writes a cache.
+   * @param cache
+   * @param source location of the speclist
+   * @param length size of the speclist
+   * @param lastModified
+   * @param species all species of the speclist.
+   * @throws IOException
+   */
+  static void write(File cache, String source, long length, long lastModified, final List<Species> species) throws IOException {
+    BinaryCacheFile.Source[] sources = {new BinaryCacheFile.Source(source, length, lastModified, 0)};
+    BinaryCacheFile.write(cache, MAGIC, FORMAT_VERSION, null, sources, new BinaryCacheFile.Writer() {
+      public void write(DataOutputStream out) throws IOException {
+        out.writeInt(species.size());
+        for (Species s : species) {
+          BinaryCacheFile.writeString(out, s.getScientificName());
+          BinaryCacheFile.writeString(out, s.getUniprotExtension());
+          BinaryCacheFile.writeString(out, s.getCommonName());
+          BinaryCacheFile.writeString(out, s.getKeggAbbr());
+          out.writeInt(s.getNCBITaxonID()==null ? NO_TAX_ID : s.getNCBITaxonID().intValue());
+          List<String> synonyms = s.getSynonyms();
+          out.writeInt(synonyms==null ? 0 : synonyms.size());
+          if (synonyms!=null) {
+            for (String synonym : synonyms) {
+              BinaryCacheFile.writeString(out, synonym);
+            }
+          }
+        }
+      }
+    });
+  }
+  
+}
@@ -17,9 +17,13 @@
 package de.zbit.util;
 
 import java.text.MessageFormat;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
@@ -79,6 +83,16 @@ public class ThreadManager {
    */
   public final static int NUMBER_OF_PROCESSORS = Runtime.getRuntime().availableProcessors();
   
+  /**
+   * Seconds after which idle threads of daemon pools terminate.
+   */
+  private final static long DAEMON_KEEP_ALIVE = 10;
+  
+  /**
+   * Pools, created by {@link #getSharedDaemonPool(String, int)}.
+   */
+  private final static Map<String, ThreadPoolExecutor> sharedDaemonPools = new HashMap<String, ThreadPoolExecutor>();
+  
   /**
    * Initializes a new ThreadManager with ideal settings(
    * NUMBER_OF_PROCESSORS - 1, but minimal 1). So always at least one processor
@@ -313,6 +327,77 @@ public class ThreadManager {
     // might happen here!
   }
   
+  /**
+   * Creates daemon threads, that do not prevent the JVM from exiting.
+   * @param name prefix of the thread names.
+   * @return a new {@link ThreadFactory}.
+   */
+  public static ThreadFactory createDaemonThreadFactory(final String name) {
+    return new ThreadFactory() {
+      private int number = 0;
+      public synchronized Thread newThread(Runnable r) {
+        Thread t = new Thread(r, name + "-" + (++number));
+        t.setDaemon(true);
+        return t;
+      }
+    };
+  }
+  
+  /**
+   * Creates a pool of daemon threads. Threads terminate when idle.
+   * Tasks, exceeding the number of threads, are queued.
+   * @param name prefix of the thread names.
+   * @param threads maximum number of threads.
+   * @return a new pool.
+   */
+  public static ThreadPoolExecutor createDaemonPool(String name, int threads) {
+    threads = Math.max(1, threads);
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, DAEMON_KEEP_ALIVE,
+      TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), createDaemonThreadFactory(name));
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+  
+  /**
+   * Returns a pool of daemon threads with at least
+   * {@link #NUMBER_OF_PROCESSORS} threads, that is shared by all callers
+   * with the same name and is never shut down.
+   * @param name name of the pool and prefix of the thread names.
+   * @return the shared pool.
+   * @see #getSharedDaemonPool(String, int)
+   */
+  public static ExecutorService getSharedDaemonPool(String name) {
+    return getSharedDaemonPool(name, NUMBER_OF_PROCESSORS);
+  }
+  
+  /**
+   * Returns a pool of daemon threads (see {@link #createDaemonPool(String, int)}),
+   * that is shared by all callers with the same name.
+   * 
+   * <p>The pool is created on first use and is never shut down, neither
+   * by this class nor by the callers, which must not call
+   * {@link ExecutorService#shutdown()} on it. Idle threads terminate after
+   * {@value #DAEMON_KEEP_ALIVE} seconds. The pool never shrinks: if more
+   * threads are requested than the pool provides, it grows by
+   * {@link ThreadPoolExecutor#setMaximumPoolSize(int)} and keeps this size
+   * for all callers.</p>
+   * @param name name of the pool and prefix of the thread names.
+   * @param threads number of threads, the pool should provide.
+   * @return the shared pool.
+   */
+  public static synchronized ExecutorService getSharedDaemonPool(String name, int threads) {
+    threads = Math.max(1, threads);
+    ThreadPoolExecutor pool = sharedDaemonPools.get(name);
+    if (pool==null) {
+      pool = createDaemonPool(name, threads);
+      sharedDaemonPools.put(name, pool);
+    } else if (pool.getMaximumPoolSize()<threads) {
+      pool.setMaximumPoolSize(threads);
+      pool.setCorePoolSize(threads);
+    }
+    return pool;
+  }
+  
   /**
    * Just for samples and demos.
    * @throws InterruptedException
@@ -0,0 +1,231 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.util.liftOver;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.zbit.io.BinaryCacheFile;
+import de.zbit.util.liftOver.util.IntervalIndex;
+
+/**
+ * A compiled, binary version of a chain file. It contains the
+ * {@link ChainIndex}, i.e., all chains and blocks as packed {@code int}
+ * arrays, and the prebuilt {@link IntervalIndex} of each sequence.
+ * Cache files are memory-mapped and copied to the arrays in bulk, such
+ * that neither parsing nor objects per chain are required.
+ *
+ * <p>Caches are stored as {@link BinaryCacheFile} in a directory, that is
+ * given by the user of {@link LiftOver}, with the chain file as source.
+ * If the chain file changed, the cache is ignored. All counts and indices are validated
+ * while reading, such that corrupt caches are ignored, too.
+ *
+ * <p>File layout (big endian, after the header of the
+ * {@link BinaryCacheFile}):
+ * <pre>
+ * int poolSize, string[poolSize] "to" sequence names
+ * int sequences, {
+ *   string name, int size, int blocks,
+ *   int[size] fromStart, fromEnd, toSequenceName (index in pool), toSequenceSize,
+ *   byte[size] toNegativeStrand,
+ *   int[size+1] blockOffset, int[blocks] blockFromStart, blockToStart, blockLength,
+ *   IntervalIndex (see {@link IntervalIndex#write(java.io.DataOutput)})
+ * }
+ * </pre>
+ *
+ * @version $Rev$
+ */
+final class ChainCache {
+  
+  /**
+   * "ZLOC"
+   */
+  static final int MAGIC = 0x5A4C4F43;
+  
+  /**
+   * Increment on any change of the layout.
+   */
+  static final int FORMAT_VERSION = 2;
+  
+  /**
+   * File extension of caches.
+   */
+  static final String SUFFIX = ".cache";
+  
+  private ChainCache() {
+    // Utility class
+  }
+  
+  /**
+   * @param directory
+   * @param chainFile
+   * @return the cache file for the given chain file in {@code directory}.
+   */
+  static File getCacheFile(File directory, File chainFile) {
+    return BinaryCacheFile.getCacheFile(directory, chainFile.getAbsolutePath(), SUFFIX);
+  }
+  
+  /**
+   * Deletes all caches next to {@code cache}, which have been created for
+   * chain files with the same name, whose file has been changed, moved or
+   * deleted since.
+   * 
+   * @param cache the current cache of {@code chainFile}.
+   * @param chainFile
+   */
+  static void deleteOutdated(File cache, File chainFile) {
+    String prefix = BinaryCacheFile.getCacheFilePrefix(chainFile.getAbsolutePath());
+    BinaryCacheFile.deleteOutdated(cache, prefix, SUFFIX, MAGIC, FORMAT_VERSION);
+  }
+  
+  /**
+   * Writes the cache of {@code chainFile}.
+   * 
+   * @param cache
+   * @param chainFile
+   * @param index all chains of {@code chainFile}.
+   * @throws IOException
+   */
+  static void write(File cache, File chainFile, final ChainIndex index) throws IOException {
+    // Pool of "to" sequence names
+    final Map<String, Integer> pool = new HashMap<String, Integer>();
+    final List<String> poolStrings = new ArrayList<String>();
+    for (String seq : index.getSequences()) {
+      for (String name : index.get(seq).toSequenceName) {
+        if (!pool.containsKey(name)) {
+          pool.put(name, Integer.valueOf(poolStrings.size()));
+          poolStrings.add(name);
+        }
+      }
+    }
+    
+    BinaryCacheFile.Source[] sources = {BinaryCacheFile.Source.of(chainFile)};
+    BinaryCacheFile.write(cache, MAGIC, FORMAT_VERSION, null, sources, new BinaryCacheFile.Writer() {
+      public void write(DataOutputStream out) throws IOException {
+        out.writeInt(poolStrings.size());
+        for (String s : poolStrings) {
+          BinaryCacheFile.writeString(out, s);
+        }
+        out.writeInt(index.getSequences().size());
+        for (String seq : index.getSequences()) {
+          ChainIndex.SequenceChains chains = index.get(seq);
+          BinaryCacheFile.writeString(out, seq);
+          out.writeInt(chains.size);
+          out.writeInt(chains.blockOffset[chains.size]);
+          BinaryCacheFile.writeInts(out, chains.fromStart);
+          BinaryCacheFile.writeInts(out, chains.fromEnd);
+          for (String name : chains.toSequenceName) {
+            out.writeInt(pool.get(name).intValue());
+          }
+          BinaryCacheFile.writeInts(out, chains.toSequenceSize);
+          for (boolean negative : chains.toNegativeStrand) {
+            out.writeByte(negative ? 1 : 0);
+          }
+          BinaryCacheFile.writeInts(out, chains.blockOffset);
+          BinaryCacheFile.writeInts(out, chains.blockFromStart);
+          BinaryCacheFile.writeInts(out, chains.blockToStart);
+          BinaryCacheFile.writeInts(out, chains.blockLength);
+          chains.index.write(out);
+        }
+      }
+    });
+  }
+  
+  /**
+   * Reads the cache of {@code chainFile}.
+   * 
+   * @param cache
+   * @param chainFile must be equal to the one used for writing.
+   * @return all chains or {@code null} if the cache is missing, outdated
+   * or corrupt.
+   * @throws IOException if {@code chainFile} could not be read.
+   */
+  static ChainIndex read(File cache, File chainFile) throws IOException {
+    BinaryCacheFile.Source[] sources = {BinaryCacheFile.Source.of(chainFile)};
+    return BinaryCacheFile.read(cache, MAGIC, FORMAT_VERSION, null, sources, new BinaryCacheFile.Reader<ChainIndex>() {
+      public ChainIndex read(ByteBuffer buffer) throws IOException {
+        String[] pool = new String[BinaryCacheFile.readCount(buffer, 4)];
+        for (int i=0; i<pool.length; i++) {
+          pool[i] = BinaryCacheFile.readString(buffer);
+        }
+        int sequences = BinaryCacheFile.readCount(buffer, 4+4+4);
+        Map<String, ChainIndex.SequenceChains> chains = new HashMap<String, ChainIndex.SequenceChains>();
+        for (int s=0; s<sequences; s++) {
+          String name = BinaryCacheFile.readString(buffer);
+          int size = buffer.getInt();
+          int blocks = buffer.getInt();
+          BinaryCacheFile.checkRemaining(buffer, size, 4*4+1+4);
+          int[] fromStart = BinaryCacheFile.readInts(buffer, size);
+          int[] fromEnd = BinaryCacheFile.readInts(buffer, size);
+          int[] toSequence = BinaryCacheFile.readInts(buffer, size);
+          String[] toSequenceName = new String[size];
+          for (int i=0; i<size; i++) {
+            toSequenceName[i] = pool[checkIndex(toSequence[i], pool.length)];
+          }
+          int[] toSequenceSize = BinaryCacheFile.readInts(buffer, size);
+          boolean[] toNegativeStrand = new boolean[size];
+          for (int i=0; i<size; i++) {
+            toNegativeStrand[i] = buffer.get()!=0;
+          }
+          int[] blockOffset = BinaryCacheFile.readInts(buffer, size+1);
+          BinaryCacheFile.checkRemaining(buffer, blocks, 3*4);
+          int[] blockFromStart = BinaryCacheFile.readInts(buffer, blocks);
+          int[] blockToStart = BinaryCacheFile.readInts(buffer, blocks);
+          int[] blockLength = BinaryCacheFile.readInts(buffer, blocks);
+          if (blockOffset[0]!=0 || blockOffset[size]!=blocks) {
+            throw new IOException("Invalid block offsets of " + name);
+          }
+          for (int i=0; i<size; i++) {
+            if (blockOffset[i]>blockOffset[i+1]) {
+              throw new IOException("Invalid block offsets of " + name);
+            }
+          }
+          IntervalIndex<Object> index = IntervalIndex.read(buffer);
+          if (index.size()!=size) {
+            throw new IOException("Invalid interval index of " + name);
+          }
+          for (int i=0; i<size; i++) {
+            checkIndex(index.getId(i), size);
+          }
+          chains.put(name, new ChainIndex.SequenceChains(fromStart, fromEnd, toSequenceName, toSequenceSize,
+            toNegativeStrand, blockOffset, blockFromStart, blockToStart, blockLength, index));
+        }
+        return new ChainIndex(chains);
+      }
+    });
+  }
+  
+  /**
+   * @param index
+   * @param size
+   * @return {@code index}
+   * @throws IOException if {@code index} is not in {@code [0, size)}.
+   */
+  private static int checkIndex(int index, int size) throws IOException {
+    if (index<0 || index>=size) {
+      throw new IOException("Invalid index " + index);
+    }
+    return index;
+  }
+  
+}
@@ -0,0 +1,229 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.util.liftOver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.zbit.util.liftOver.util.IntervalIndex;
+
+/**
+ * All {@link Chain}s of a chain file, flattened into primitive arrays
+ * per "from" sequence. Chains are sorted by their start, and the
+ * {@link Chain.ContinuousBlock}s of all chains are stored consecutively.
+ * This allows to lift many coordinates without creating objects (see
+ * {@link LiftOverSweep}).
+ * 
+ * <p>All coordinates are 0-based, half-open. Instances are immutable
+ * and may be used by multiple threads.
+ * 
+ * @version $Rev$
+ */
+class ChainIndex {
+  
+  /**
+   * The chains on one "from" sequence.
+   */
+  static class SequenceChains {
+    /** Number of chains. */
+    final int size;
+    /** Start and end of each chain in "from", sorted by start. */
+    final int[] fromStart;
+    final int[] fromEnd;
+    /** "to" sequence name of each chain. */
+    final String[] toSequenceName;
+    /** "to" sequence size of each chain. */
+    final int[] toSequenceSize;
+    /** "to" strand of each chain. */
+    final boolean[] toNegativeStrand;
+    /** Blocks of chain {@code c} are at {@code [blockOffset[c], blockOffset[c+1])}. */
+    final int[] blockOffset;
+    /** Start of each block in "from". */
+    final int[] blockFromStart;
+    /** Start of each block in "to". */
+    final int[] blockToStart;
+    /** Length of each block. */
+    final int[] blockLength;
+    /** Chains by their range in "from" (1-based, inclusive). Ids are chain numbers. */
+    final IntervalIndex<Object> index;
+    
+    /**
+     * @param chains all chains on one sequence, sorted by start.
+     */
+    SequenceChains(List<Chain> chains) {
+      size = chains.size();
+      fromStart = new int[size];
+      fromEnd = new int[size];
+      toSequenceName = new String[size];
+      toSequenceSize = new int[size];
+      toNegativeStrand = new boolean[size];
+      blockOffset = new int[size+1];
+      int blocks = 0;
+      for (Chain c : chains) {
+        blocks += c.getBlocks().size();
+      }
+      blockFromStart = new int[blocks];
+      blockToStart = new int[blocks];
+      blockLength = new int[blocks];
+      
+      IntervalIndex.Builder<Object> builder = new IntervalIndex.Builder<Object>(size);
+      int b = 0;
+      for (int i=0; i<size; i++) {
+        Chain c = chains.get(i);
+        fromStart[i] = c.fromChainStart;
+        fromEnd[i] = c.fromChainEnd;
+        toSequenceName[i] = c.toSequenceName;
+        toSequenceSize[i] = c.toSequenceSize;
+        toNegativeStrand[i] = c.toNegativeStrand;
+        builder.add(c.fromChainStart+1, Math.max(c.fromChainStart+1, c.fromChainEnd), null);
+        blockOffset[i] = b;
+        for (Chain.ContinuousBlock block : c.getBlocks()) {
+          blockFromStart[b] = block.fromStart;
+          blockToStart[b] = block.toStart;
+          blockLength[b] = block.blockLength;
+          b++;
+        }
+      }
+      blockOffset[size] = b;
+      index = builder.build();
+    }
+    
+    /**
+     * Creates the chains of one sequence from prebuilt arrays (see
+     * {@link ChainCache}).
+     */
+    SequenceChains(int[] fromStart, int[] fromEnd, String[] toSequenceName, int[] toSequenceSize,
+      boolean[] toNegativeStrand, int[] blockOffset, int[] blockFromStart, int[] blockToStart,
+      int[] blockLength, IntervalIndex<Object> index) {
+      size = fromStart.length;
+      this.fromStart = fromStart;
+      this.fromEnd = fromEnd;
+      this.toSequenceName = toSequenceName;
+      this.toSequenceSize = toSequenceSize;
+      this.toNegativeStrand = toNegativeStrand;
+      this.blockOffset = blockOffset;
+      this.blockFromStart = blockFromStart;
+      this.blockToStart = blockToStart;
+      this.blockLength = blockLength;
+      this.index = index;
+    }
+    
+    /**
+     * @param position 0-based position
+     * @return the first chain that starts after {@code position}, or
+     * {@link #size}.
+     */
+    int firstChainStartingAfter(int position) {
+      int low = 0;
+      int high = size;
+      while (low<high) {
+        int mid = (low+high)>>>1;
+        if (fromStart[mid] <= position) {
+          low = mid+1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+    
+    /**
+     * @param chain
+     * @param start 0-based start
+     * @return the first block of {@code chain} that ends after
+     * {@code start}, or the end of the blocks of that chain.
+     */
+    int firstBlockEndingAfter(int chain, int start) {
+      int low = blockOffset[chain];
+      int high = blockOffset[chain+1];
+      while (low<high) {
+        int mid = (low+high)>>>1;
+        if (blockFromStart[mid]+blockLength[mid] <= start) {
+          low = mid+1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+  
+  /**
+   * "from" sequence name to chains.
+   */
+  private final Map<String, SequenceChains> sequences = new HashMap<String, SequenceChains>();
+  
+  /**
+   * @param chains all chains of a chain file.
+   */
+  ChainIndex(Collection<Chain> chains) {
+    super();
+    Map<String, List<Chain>> bySequence = new HashMap<String, List<Chain>>();
+    for (Chain c : chains) {
+      String seq = c.interval.getSequence();
+      List<Chain> list = bySequence.get(seq);
+      if (list==null) {
+        list = new ArrayList<Chain>();
+        bySequence.put(seq, list);
+      }
+      list.add(c);
+    }
+    Comparator<Chain> byStart = new Comparator<Chain>() {
+      public int compare(Chain a, Chain b) {
+        if (a.fromChainStart!=b.fromChainStart) {
+          return a.fromChainStart<b.fromChainStart ? -1 : 1;
+        }
+        return a.fromChainEnd<b.fromChainEnd ? -1 : (a.fromChainEnd==b.fromChainEnd ? 0 : 1);
+      }
+    };
+    for (Map.Entry<String, List<Chain>> e : bySequence.entrySet()) {
+      Collections.sort(e.getValue(), byStart);
+      sequences.put(e.getKey(), new SequenceChains(e.getValue()));
+    }
+  }
+  
+  /**
+   * @param sequences "from" sequence name to chains.
+   */
+  ChainIndex(Map<String, SequenceChains> sequences) {
+    super();
+    this.sequences.putAll(sequences);
+  }
+  
+  /**
+   * @return all "from" sequence names.
+   */
+  Set<String> getSequences() {
+    return Collections.unmodifiableSet(sequences.keySet());
+  }
+  
+  /**
+   * @param sequence a sequence name, as returned by
+   * {@link de.zbit.util.liftOver.util.Interval#getSequence()}.
+   * @return the chains on {@code sequence} or {@code null}.
+   */
+  SequenceChains get(String sequence) {
+    return sequences.get(sequence);
+  }
+  
+}
@@ -33,8 +33,18 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import de.zbit.util.ThreadManager;
 import de.zbit.util.liftOver.io.AsciiLineReader;
 import de.zbit.util.liftOver.io.IoUtil;
 import de.zbit.util.liftOver.util.Interval;
@@ -61,8 +71,63 @@ public class LiftOver {
   
   public static final double DEFAULT_LIFTOVER_MINMATCH = 0.95;
   
+  /**
+   * Status of a coordinate that has been lifted over successfully.
+   * @see #liftOver(String[], int[], int[], String[], int[], int[], byte[])
+   */
+  public static final byte LIFTED = 0;
+  /**
+   * Status of a coordinate that is not (or not sufficiently) covered by
+   * a chain.
+   */
+  public static final byte UNMAPPED = 1;
+  /**
+   * Status of a coordinate that is sufficiently covered by multiple
+   * chains, which is not allowed in basic liftOver.
+   */
+  public static final byte MULTIPLE_HITS = 2;
+  /**
+   * Status of an invalid coordinate (missing chromosome or end before start).
+   */
+  public static final byte INVALID = 3;
+  
+  /**
+   * Minimum number of coordinates, that are lifted together by one
+   * thread in {@link #liftOver(String[], int[], int[], String[], int[], int[], byte[], int)}.
+   */
+  private static final int MIN_BULK_CHUNK_SIZE = 1<<14;
+  
+  private static final transient Logger log = Logger.getLogger(LiftOver.class.getName());
+  
   private double liftOverMinMatch = DEFAULT_LIFTOVER_MINMATCH;
-  private final OverlapDetector<Chain> chains;
+  
+  /**
+   * The chain file or {@code null}, if chains have been read from a stream.
+   */
+  private final File chainFile;
+  
+  /**
+   * All chains. Only required for {@link #diagnosticLiftover(Interval)}
+   * and read from {@link #chainFile} on demand, if a {@link ChainCache}
+   * has been used.
+   */
+  private OverlapDetector<Chain> chains = null;
+  
+  /**
+   * Flattened {@link #chains} for all lift overs, created on demand.
+   */
+  private ChainIndex chainIndex = null;
+  
+  /**
+   * Used by {@link #liftOver(Interval, double)}. Not static, such that
+   * sweeps do not keep the chains of unused instances in memory.
+   */
+  private final ThreadLocal<LiftOverSweep> sweep = new ThreadLocal<LiftOverSweep>() {
+    @Override
+    protected LiftOverSweep initialValue() {
+      return newSweep();
+    }
+  };
   
   public static void main (String[] args) throws IOException {
     String chainFile = "S:/mapCoords/hg17ToHg18.over.chain";
@@ -135,11 +200,52 @@ public class LiftOver {
   
   /**
    * Load UCSC chain file in order to lift over Intervals.
+   * No files are written, see {@link #LiftOver(File, File)} to cache
+   * the parsed chain file.
    * @throws IOException 
    */
   public LiftOver(File chainFile) throws IOException {
+    this(chainFile, null);
+  }
+  
+  /**
+   * Load UCSC chain file in order to lift over Intervals.
+   * The chain file is compiled into a binary cache file (see
+   * {@link ChainCache}) in {@code cacheDirectory}, which is loaded much
+   * faster by subsequent instances. The cache is created again
+   * automatically, whenever the chain file changes. Caches of chain files
+   * with the same name, which have been changed, moved or deleted since,
+   * are deleted from {@code cacheDirectory}.
+   * @param chainFile
+   * @param cacheDirectory the directory to write the cache to, e.g.,
+   * {@link de.zbit.io.BinaryCacheFile#getCacheDirectory()} for the cache
+   * directory of the current user. If {@code null}, no cache is used.
+   * @throws IOException 
+   */
+  public LiftOver(File chainFile, File cacheDirectory) throws IOException {
     IoUtil.assertFileIsReadable(chainFile);
-    chains = Chain.loadChains(chainFile);
+    this.chainFile = chainFile;
+    File cache = null;
+    if (cacheDirectory!=null) {
+      cache = ChainCache.getCacheFile(cacheDirectory, chainFile);
+      try {
+        chainIndex = ChainCache.read(cache, chainFile);
+      } catch (IOException e) {
+        log.log(Level.FINE, "Could not read " + cache, e);
+      }
+    }
+    if (chainIndex==null) {
+      chains = Chain.loadChains(chainFile);
+      chainIndex = new ChainIndex(chains.getAll());
+      if (cache!=null) {
+        try {
+          ChainCache.write(cache, chainFile, chainIndex);
+          ChainCache.deleteOutdated(cache, chainFile);
+        } catch (IOException e) {
+          log.log(Level.FINE, "Could not write " + cache, e);
+        }
+      }
+    }
   }
   
   /**
@@ -160,6 +266,7 @@ public class LiftOver {
    * @throws IOException 
    */
   public LiftOver(Reader in) throws IOException {
+    chainFile = null;
     chains = Chain.loadChains(in, "unknown file");
   }
 
@@ -170,6 +277,7 @@ public class LiftOver {
    * @throws IOException 
    */
   public LiftOver(InputStream in) throws IOException {
+    chainFile = null;
     InputStreamReader insr = new InputStreamReader(in);
     BufferedReader buff = new BufferedReader(insr);
     
@@ -214,34 +322,15 @@ public class LiftOver {
       throw new IllegalArgumentException("Zero-length interval cannot be lifted over.  Interval: " +
           interval.getName());
     }
-    Chain chainHit = null;
-    TargetIntersection targetIntersection = null;
-    // Number of bases in interval that can be lifted over must be >= this.
-    double minMatchSize = liftOverMinMatch * interval.length();
-    
     // Find the appropriate Chain, and the part of the chain corresponding to the interval to be lifted over.
-    for (final Chain chain : chains.getOverlaps(interval)) {
-      final TargetIntersection candidateIntersection = targetIntersection(chain, interval);
-      if (candidateIntersection != null && candidateIntersection.intersectionLength >= minMatchSize) {
-        if (chainHit != null) {
-          // In basic liftOver, multiple hits are not allowed.
-          return null;
-        }
-        chainHit = chain;
-        targetIntersection = candidateIntersection;
-      } else if (candidateIntersection != null) {
-        /*LOG.info("Interval " + interval.getName() + " failed to match chain " + chain.id +
-                " because intersection length " + candidateIntersection.intersectionLength + " < minMatchSize "
-                + minMatchSize +
-                " (" + (candidateIntersection.intersectionLength/(float)interval.length()) + " < " + liftOverMinMatch + ")");*/
-      }
-    }
-    if (chainHit == null) {
+    LiftOverSweep lifter = sweep.get();
+    if (lifter.liftOver(interval.getSequence(), interval.getStart(), interval.getEnd(), liftOverMinMatch, true) != LIFTED) {
       // Can't be lifted over.
       return null;
     }
     
-    return createToInterval(interval.getName(), targetIntersection);
+    return new Interval(lifter.getChromosome(), lifter.getStart(), lifter.getEnd(), lifter.isNegativeStrand(),
+      interval.getName());
   }
   
   public List<PartialLiftover> diagnosticLiftover(final Interval interval) {
@@ -250,7 +339,7 @@ public class LiftOver {
       throw new IllegalArgumentException("Zero-length interval cannot be lifted over.  Interval: " +
           interval.getName());
     }
-    for (final Chain chain : chains.getOverlaps(interval)) {
+    for (final Chain chain : getChains().getOverlaps(interval)) {
       Interval intersectingChain = interval.intersect(chain.interval);
       final TargetIntersection targetIntersection = targetIntersection(chain, intersectingChain);
       if (targetIntersection == null) {
@@ -264,6 +353,192 @@ public class LiftOver {
     return ret;
   }
   
+  /**
+   * @return all chains.
+   * @throws IllegalStateException if the chain file can not be read
+   * anymore.
+   */
+  private synchronized OverlapDetector<Chain> getChains() {
+    if (chains==null) {
+      try {
+        chains = Chain.loadChains(chainFile);
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not read " + chainFile, e);
+      }
+    }
+    return chains;
+  }
+  
+  /**
+   * @return the flattened chains.
+   */
+  synchronized ChainIndex getChainIndex() {
+    if (chainIndex==null) {
+      chainIndex = new ChainIndex(chains.getAll());
+    }
+    return chainIndex;
+  }
+  
+  /**
+   * Creates a {@link LiftOverSweep} to lift a stream of coordinates,
+   * preferably sorted by chromosome and start, with the
+   * liftOverMinMatch set for this LiftOver object.
+   * @return a new sweep, that must only be used by one thread.
+   */
+  public LiftOverSweep newSweep() {
+    return new LiftOverSweep(getChainIndex(), liftOverMinMatch);
+  }
+  
+  /**
+   * Lifts over many coordinates at once, using
+   * {@link ThreadManager#NUMBER_OF_PROCESSORS} threads.
+   * @see #liftOver(String[], int[], int[], String[], int[], int[], byte[], int)
+   */
+  public void liftOver(String[] chromosomes, int[] starts, int[] ends,
+    String[] toChromosomes, int[] toStarts, int[] toEnds, byte[] status) {
+    liftOver(chromosomes, starts, ends, toChromosomes, toStarts, toEnds, status, ThreadManager.NUMBER_OF_PROCESSORS);
+  }
+  
+  /**
+   * Lifts over many coordinates at once, using the liftOverMinMatch set
+   * for this LiftOver object. Results are the same as for
+   * {@link #liftOver(Interval)}, but no objects are created per
+   * coordinate. Coordinates are grouped by chromosome, sorted by start
+   * and lifted in a sorted-merge sweep over the chains (see
+   * {@link LiftOverSweep}). Chunks of coordinates are processed in
+   * parallel.
+   * 
+   * <p>All arrays must have the same length. Output arrays may be the
+   * same as input arrays. Results of coordinates, whose status is not
+   * {@link #LIFTED}, are left unchanged.
+   * 
+   * @param chromosomes e.g., "chr1" or "1".
+   * @param starts 1-based, inclusive starts.
+   * @param ends 1-based, inclusive ends.
+   * @param toChromosomes receives the lifted chromosomes.
+   * @param toStarts receives the lifted starts.
+   * @param toEnds receives the lifted ends.
+   * @param status receives {@link #LIFTED}, {@link #UNMAPPED},
+   * {@link #MULTIPLE_HITS} or {@link #INVALID} for each coordinate.
+   * @param threads number of threads to use.
+   */
+  public void liftOver(final String[] chromosomes, final int[] starts, final int[] ends,
+    final String[] toChromosomes, final int[] toStarts, final int[] toEnds, final byte[] status, int threads) {
+    final int n = chromosomes.length;
+    if (starts.length!=n || ends.length!=n || toChromosomes.length!=n || toStarts.length!=n
+        || toEnds.length!=n || status.length!=n) {
+      throw new IllegalArgumentException("All arrays must have the same length.");
+    }
+    final ChainIndex index = getChainIndex();
+    
+    // Group by chromosome and sort by start. Keys contain start and index.
+    Map<String, long[]> byChromosome = new HashMap<String, long[]>();
+    Map<String, int[]> counts = new HashMap<String, int[]>();
+    for (int i=0; i<n; i++) {
+      if (chromosomes[i]==null) {
+        continue;
+      }
+      int[] count = counts.get(chromosomes[i]);
+      if (count==null) {
+        count = new int[1];
+        counts.put(chromosomes[i], count);
+      }
+      count[0]++;
+    }
+    for (Map.Entry<String, int[]> e : counts.entrySet()) {
+      byChromosome.put(e.getKey(), new long[e.getValue()[0]]);
+      e.getValue()[0] = 0;
+    }
+    for (int i=0; i<n; i++) {
+      if (chromosomes[i]==null) {
+        status[i] = INVALID;
+        continue;
+      }
+      int[] count = counts.get(chromosomes[i]);
+      byChromosome.get(chromosomes[i])[count[0]++] = ((long) starts[i] << 32) | i;
+    }
+    
+    // Sort each chromosome, then lift chunks of sorted coordinates
+    List<Callable<Object>> sorts = new ArrayList<Callable<Object>>();
+    for (final long[] keys : byChromosome.values()) {
+      sorts.add(new Callable<Object>() {
+        public Object call() {
+          Arrays.sort(keys);
+          return null;
+        }
+      });
+    }
+    final double minMatch = liftOverMinMatch;
+    int chunkSize = Math.max(MIN_BULK_CHUNK_SIZE, n / Math.max(1, threads*4));
+    List<Callable<Object>> chunks = new ArrayList<Callable<Object>>();
+    for (Map.Entry<String, long[]> e : byChromosome.entrySet()) {
+      final String chromosome = e.getKey();
+      final long[] keys = e.getValue();
+      for (int from=0; from<keys.length; from+=chunkSize) {
+        final int chunkStart = from;
+        final int chunkEnd = Math.min(keys.length, from+chunkSize);
+        chunks.add(new Callable<Object>() {
+          public Object call() {
+            LiftOverSweep sweep = new LiftOverSweep(index, minMatch);
+            for (int k=chunkStart; k<chunkEnd; k++) {
+              int i = (int) keys[k];
+              byte s = sweep.liftOver(chromosome, starts[i], ends[i]);
+              status[i] = s;
+              if (s==LIFTED) {
+                toChromosomes[i] = sweep.getChromosome();
+                toStarts[i] = sweep.getStart();
+                toEnds[i] = sweep.getEnd();
+              }
+            }
+            return null;
+          }
+        });
+      }
+    }
+    
+    if (threads<=1 || chunks.size()<=1) {
+      try {
+        for (Callable<Object> c : sorts) {
+          c.call();
+        }
+        for (Callable<Object> c : chunks) {
+          c.call();
+        }
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+      return;
+    }
+    ExecutorService pool = ThreadManager.createDaemonPool("LiftOver", Math.min(threads, chunks.size()));
+    try {
+      invokeAll(pool, sorts);
+      invokeAll(pool, chunks);
+    } finally {
+      pool.shutdown();
+    }
+  }
+  
+  /**
+   * Runs all tasks and waits for them.
+   * @param pool
+   * @param tasks
+   */
+  private static void invokeAll(ExecutorService pool, List<Callable<Object>> tasks) {
+    try {
+      for (Future<Object> f : pool.invokeAll(tasks)) {
+        f.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+  
   /**
    * Convenient method for liftovers.
    * @param start
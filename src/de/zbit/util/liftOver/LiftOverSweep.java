@@ -0,0 +1,300 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.util.liftOver;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import de.zbit.util.liftOver.util.IntervalIndex;
+
+/**
+ * Lifts a stream of coordinates, that is sorted by chromosome and start,
+ * without creating objects per coordinate. Chains, that might overlap
+ * the current coordinate, are kept in an active set, which is advanced
+ * together with the coordinates (sorted-merge). Unsorted coordinates are
+ * also supported. They restart the sweep at the current position, using
+ * the {@link de.zbit.util.liftOver.util.IntervalIndex} of the chains.
+ * 
+ * <p>Results are equal to {@link LiftOver#liftOver(de.zbit.util.liftOver.util.Interval, double)},
+ * and are available via {@link #getChromosome()}, {@link #getStart()},
+ * {@link #getEnd()} and {@link #isNegativeStrand()} after each call of
+ * {@link #liftOver(String, int, int)}.
+ * 
+ * <p>Instances are not thread-safe; use one per thread (see
+ * {@link LiftOver#newSweep()}).
+ * 
+ * @version $Rev$
+ */
+public class LiftOverSweep {
+  
+  private final ChainIndex index;
+  
+  /**
+   * Minimum fraction of bases that must remap.
+   */
+  private final double liftOverMinMatch;
+  
+  /**
+   * Cache for normalized chromosome names (see
+   * {@link de.zbit.util.liftOver.util.Interval#getSequence()}).
+   */
+  private final Map<String, String> normalizedNames = new HashMap<String, String>();
+  
+  /**
+   * The current (normalized) chromosome and its chains.
+   */
+  private String currentChromosome = null;
+  private ChainIndex.SequenceChains chains = null;
+  
+  /**
+   * Start of the last coordinate on {@link #currentChromosome}.
+   */
+  private int lastStart = Integer.MIN_VALUE;
+  
+  /**
+   * Next chain (in order of start), that has not been activated.
+   */
+  private int nextChain = 0;
+  
+  /**
+   * Chains that started before and did not yet end.
+   */
+  private int[] active = new int[16];
+  private int numActive = 0;
+  
+  /**
+   * Finds active chains, when the sweep is restarted.
+   */
+  private final IntervalIndex.Cursor<Object> cursor = new IntervalIndex.Cursor<Object>();
+  
+  /**
+   * The result of the last call.
+   */
+  private String toChromosome;
+  private int toStart;
+  private int toEnd;
+  private boolean toNegativeStrand;
+  
+  /**
+   * @param index
+   * @param liftOverMinMatch
+   */
+  LiftOverSweep(ChainIndex index, double liftOverMinMatch) {
+    super();
+    this.index = index;
+    this.liftOverMinMatch = liftOverMinMatch;
+  }
+  
+  /**
+   * @param chromosome
+   * @return the chromosome name, as used for chains.
+   */
+  private String normalize(String chromosome) {
+    String ret = normalizedNames.get(chromosome);
+    if (ret==null) {
+      // Same as in Interval
+      ret = chromosome.toLowerCase().trim().startsWith("chr") ? chromosome : "chr" + chromosome;
+      normalizedNames.put(chromosome, ret);
+    }
+    return ret;
+  }
+  
+  /**
+   * Restarts the sweep on the given chromosome.
+   * @param chromosome
+   */
+  private void reset(String chromosome) {
+    currentChromosome = chromosome;
+    chains = index.get(chromosome);
+    nextChain = 0;
+    numActive = 0;
+    lastStart = Integer.MIN_VALUE;
+  }
+  
+  /**
+   * Adds a chain to the active set.
+   * @param chain
+   */
+  private void activate(int chain) {
+    if (numActive==active.length) {
+      int[] a = new int[active.length*2];
+      System.arraycopy(active, 0, a, 0, numActive);
+      active = a;
+    }
+    active[numActive++] = chain;
+  }
+  
+  /**
+   * Lift over the given coordinate.
+   * @param chromosome e.g., "chr1" or "1".
+   * @param start 1-based, inclusive start.
+   * @param end 1-based, inclusive end.
+   * @return one of {@link LiftOver#LIFTED}, {@link LiftOver#UNMAPPED},
+   * {@link LiftOver#MULTIPLE_HITS} or {@link LiftOver#INVALID}.
+   */
+  public byte liftOver(String chromosome, int start, int end) {
+    return liftOver(chromosome, start, end, liftOverMinMatch, false);
+  }
+  
+  /**
+   * Lift over the given coordinate.
+   * @param chromosome
+   * @param start 1-based, inclusive start.
+   * @param end 1-based, inclusive end.
+   * @param liftOverMinMatch minimum fraction of bases that must remap.
+   * @param restart if {@code true}, the active chains are always
+   * determined with the index of the chains, which is faster for single,
+   * unrelated coordinates.
+   * @return one of {@link LiftOver#LIFTED}, {@link LiftOver#UNMAPPED},
+   * {@link LiftOver#MULTIPLE_HITS} or {@link LiftOver#INVALID}.
+   */
+  byte liftOver(String chromosome, int start, int end, double liftOverMinMatch, boolean restart) {
+    toChromosome = null;
+    if (chromosome==null || end<start) {
+      return LiftOver.INVALID;
+    }
+    if (currentChromosome==null || !currentChromosome.equals(chromosome)) {
+      String normalized = normalize(chromosome);
+      if (!normalized.equals(currentChromosome)) {
+        reset(normalized);
+      }
+    }
+    if (chains==null) {
+      return LiftOver.UNMAPPED;
+    }
+    
+    // Convert to 0-based, half-open
+    int s = start-1;
+    int e = end;
+    if (restart || s<lastStart) {
+      // Not sorted: activate all chains that contain s
+      numActive = 0;
+      cursor.query(chains.index, s+1, s+1);
+      for (int i=cursor.next(); i>=0; i=cursor.next()) {
+        int c = chains.index.getId(i);
+        if (chains.fromEnd[c]>s) {
+          activate(c);
+        }
+      }
+      nextChain = chains.firstChainStartingAfter(s);
+    }
+    lastStart = s;
+    
+    // Remove chains that end before this coordinate and add new ones
+    int n = 0;
+    for (int i=0; i<numActive; i++) {
+      if (chains.fromEnd[active[i]]>s) {
+        active[n++] = active[i];
+      }
+    }
+    numActive = n;
+    while (nextChain<chains.size && chains.fromStart[nextChain]<e) {
+      if (chains.fromEnd[nextChain]>s) {
+        activate(nextChain);
+      }
+      nextChain++;
+    }
+    
+    // Find the appropriate chain (see LiftOver.liftOver(Interval, double))
+    double minMatchSize = liftOverMinMatch * (end-start+1);
+    int hit = -1, hitFirst = -1, hitLast = -1, hitStartOffset = 0, hitOffsetFromEnd = 0;
+    for (int i=0; i<numActive; i++) {
+      int c = active[i];
+      if (chains.fromStart[c]>=e) {
+        continue;
+      }
+      int first = -1, last = -1, startOffset = 0, offsetFromEnd = 0;
+      int intersectionLength = 0;
+      int blocksEnd = chains.blockOffset[c+1];
+      for (int b=chains.firstBlockEndingAfter(c, s); b<blocksEnd; b++) {
+        int bStart = chains.blockFromStart[b];
+        if (bStart>=e) {
+          break;
+        }
+        int bEnd = bStart + chains.blockLength[b];
+        if (first<0) {
+          first = b;
+          startOffset = s>bStart ? s-bStart : 0;
+        }
+        last = b;
+        offsetFromEnd = bEnd>e ? bEnd-e : 0;
+        intersectionLength += Math.min(e, bEnd) - Math.max(s, bStart);
+      }
+      if (intersectionLength>0 && intersectionLength>=minMatchSize) {
+        if (hit>=0) {
+          // In basic liftOver, multiple hits are not allowed.
+          return LiftOver.MULTIPLE_HITS;
+        }
+        hit = c;
+        hitFirst = first;
+        hitLast = last;
+        hitStartOffset = startOffset;
+        hitOffsetFromEnd = offsetFromEnd;
+      }
+    }
+    if (hit<0) {
+      return LiftOver.UNMAPPED;
+    }
+    
+    int from = chains.blockToStart[hitFirst] + hitStartOffset;
+    int to = chains.blockToStart[hitLast] + chains.blockLength[hitLast] - hitOffsetFromEnd;
+    toNegativeStrand = chains.toNegativeStrand[hit];
+    if (toNegativeStrand) {
+      // Flip if query is negative.
+      int size = chains.toSequenceSize[hit];
+      int negativeStart = size - to;
+      to = size - from;
+      from = negativeStart;
+    }
+    // Convert to 1-based, inclusive.
+    toChromosome = chains.toSequenceName[hit];
+    toStart = from+1;
+    toEnd = to;
+    return LiftOver.LIFTED;
+  }
+  
+  /**
+   * @return the chromosome of the last lifted coordinate or {@code null}
+   * if it could not be lifted.
+   */
+  public String getChromosome() {
+    return toChromosome;
+  }
+  
+  /**
+   * @return the 1-based start of the last lifted coordinate.
+   */
+  public int getStart() {
+    return toStart;
+  }
+  
+  /**
+   * @return the 1-based, inclusive end of the last lifted coordinate.
+   */
+  public int getEnd() {
+    return toEnd;
+  }
+  
+  /**
+   * @return {@code true} if the last coordinate has been lifted to the
+   * negative strand.
+   */
+  public boolean isNegativeStrand() {
+    return toNegativeStrand;
+  }
+  
+}
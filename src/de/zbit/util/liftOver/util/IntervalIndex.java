@@ -0,0 +1,606 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.util.liftOver.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An immutable index of closed intervals, that is built once and
+ * queried many times. In contrast to the {@link IntervalTree}, no
+ * objects are created per interval: all intervals are sorted by start
+ * and stored in primitive arrays, which are interpreted as an implicit,
+ * augmented binary search tree (the node at index {@code i} on level
+ * {@code k} has its children at {@code i +/- 2^(k-1)}). An additional
+ * array stores the maximum end of each subtree.
+ * 
+ * <p>Queries are answered by a {@link Cursor}, which can be reused for
+ * any number of queries on any index, without creating objects.
+ * Overlapping intervals are returned in the order of their start.
+ * 
+ * <p>Instances are created by a {@link Builder}. They are thread-safe,
+ * but each thread requires its own {@link Cursor}.
+ * 
+ * @version $Rev$
+ * @param <T> the type of the values, associated with the intervals.
+ */
+public class IntervalIndex<T> {
+  
+  /**
+   * Subtrees of this level (or below) are scanned linearly, which is
+   * faster than descending to the leaves.
+   */
+  private static final int SCAN_LEVEL = 3;
+  
+  /**
+   * Number of intervals.
+   */
+  private final int size;
+  
+  /**
+   * Starts of all intervals in ascending order, and the corresponding
+   * ends.
+   */
+  private final int[] starts;
+  private final int[] ends;
+  
+  /**
+   * Maximum end of all intervals in the subtree rooted at each index.
+   */
+  private final int[] maxEnds;
+  
+  /**
+   * Position of each interval in the order of {@link Builder#add(int, int, Object)}.
+   */
+  private final int[] ids;
+  
+  /**
+   * Value of each interval.
+   */
+  private final Object[] values;
+  
+  /**
+   * Level of the root node.
+   */
+  private final int rootLevel;
+  
+  /**
+   * @param size
+   * @param starts sorted in ascending order
+   * @param ends
+   * @param ids
+   * @param values
+   */
+  IntervalIndex(int size, int[] starts, int[] ends, int[] ids, Object[] values) {
+    super();
+    this.size = size;
+    this.starts = starts;
+    this.ends = ends;
+    this.ids = ids;
+    this.values = values;
+    this.maxEnds = new int[size];
+    this.rootLevel = buildMaxEnds();
+  }
+  
+  /**
+   * Creates an index from prebuilt arrays (see {@link #read(ByteBuffer)}).
+   * @param size
+   * @param starts
+   * @param ends
+   * @param ids
+   * @param values
+   * @param maxEnds
+   * @param rootLevel
+   */
+  private IntervalIndex(int size, int[] starts, int[] ends, int[] ids, Object[] values, int[] maxEnds, int rootLevel) {
+    super();
+    this.size = size;
+    this.starts = starts;
+    this.ends = ends;
+    this.ids = ids;
+    this.values = values;
+    this.maxEnds = maxEnds;
+    this.rootLevel = rootLevel;
+  }
+  
+  /**
+   * Fills {@link #maxEnds}, level by level, starting at the leaves. Nodes
+   * beyond {@link #size} do not exist, but may still be ancestors of
+   * existing nodes. For those, the maximum end of the last existing
+   * node on the same level is used.
+   * @return the level of the root node.
+   */
+  private int buildMaxEnds() {
+    if (size==0) {
+      return -1;
+    }
+    int lastIndex = 0;
+    int last = 0;
+    for (int i=0; i<size; i+=2) {
+      lastIndex = i;
+      last = maxEnds[i] = ends[i];
+    }
+    int k;
+    for (k=1; (1L<<k)<=size; k++) {
+      long x = 1L<<(k-1);
+      long step = x<<2;
+      for (long i=(x<<1)-1; i<size; i+=step) {
+        int max = Math.max(ends[(int) i], maxEnds[(int) (i-x)]);
+        max = Math.max(max, i+x<size ? maxEnds[(int) (i+x)] : last);
+        maxEnds[(int) i] = max;
+      }
+      // Move to the parent of the last node
+      lastIndex = ((lastIndex>>k)&1)!=0 ? (int) (lastIndex-x) : (int) (lastIndex+x);
+      if (lastIndex<size && maxEnds[lastIndex]>last) {
+        last = maxEnds[lastIndex];
+      }
+    }
+    return k-1;
+  }
+  
+  /**
+   * @return the number of intervals.
+   */
+  public int size() {
+    return size;
+  }
+  
+  /**
+   * @param i position in this index (as returned by {@link Cursor#next()}).
+   * @return the start of the interval at position {@code i}.
+   */
+  public int getStart(int i) {
+    return starts[i];
+  }
+  
+  /**
+   * @param i position in this index.
+   * @return the (inclusive) end of the interval at position {@code i}.
+   */
+  public int getEnd(int i) {
+    return ends[i];
+  }
+  
+  /**
+   * @param i position in this index.
+   * @return the number of intervals, that have been added to the
+   * {@link Builder} before the interval at position {@code i}.
+   */
+  public int getId(int i) {
+    return ids[i];
+  }
+  
+  /**
+   * @param i position in this index.
+   * @return the value of the interval at position {@code i}.
+   */
+  @SuppressWarnings("unchecked")
+  public T getValue(int i) {
+    return (T) values[i];
+  }
+  
+  /**
+   * Writes all intervals and the tree, but not the values, as
+   * {@code int size, int rootLevel, int[size] starts, ends, ids, maxEnds}.
+   * @param out
+   * @throws IOException
+   * @see #read(ByteBuffer)
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(size);
+    out.writeInt(rootLevel);
+    for (int[] array : new int[][] {starts, ends, ids, maxEnds}) {
+      for (int i=0; i<size; i++) {
+        out.writeInt(array[i]);
+      }
+    }
+  }
+  
+  /**
+   * Reads an index, written by {@link #write(DataOutput)}, without
+   * building the tree again. The position of {@code in} is moved behind
+   * the index.
+   * @param in
+   * @return the index. All values are {@code null}.
+   * @throws IOException if {@code in} does not contain a valid index.
+   */
+  public static <T> IntervalIndex<T> read(ByteBuffer in) throws IOException {
+    int size = in.getInt();
+    int rootLevel = in.getInt();
+    if (size<0 || (long) size*4*4>in.remaining() ||
+        rootLevel!=(size==0 ? -1 : 31-Integer.numberOfLeadingZeros(size))) {
+      throw new IOException("Invalid interval index of size " + size);
+    }
+    int[][] arrays = new int[4][size];
+    for (int[] array : arrays) {
+      in.asIntBuffer().get(array);
+      in.position(in.position() + size*4);
+    }
+    int[] starts = arrays[0], ends = arrays[1], ids = arrays[2];
+    for (int i=0; i<size; i++) {
+      if (starts[i]>ends[i] || ids[i]<0 || (i>0 && starts[i-1]>starts[i])) {
+        throw new IOException("Invalid interval at position " + i);
+      }
+    }
+    return new IntervalIndex<T>(size, starts, ends, ids, new Object[size], arrays[3], rootLevel);
+  }
+  
+  /**
+   * Convenient method to create a new {@link Cursor} for a single query.
+   * Use {@link Cursor#query(IntervalIndex, int, int)} on an existing
+   * cursor to avoid creating objects.
+   * @param start
+   * @param end inclusive
+   * @return a {@link Cursor} over all intervals that overlap
+   * {@code [start, end]}.
+   */
+  public Cursor<T> overlappers(int start, int end) {
+    return new Cursor<T>().query(this, start, end);
+  }
+  
+  /**
+   * Iterates over all intervals of an {@link IntervalIndex}, that overlap
+   * a query interval. The traversal of the implicit tree uses a fixed
+   * size stack, such that neither queries nor the iteration create any
+   * objects. Instances are not thread-safe.
+   * 
+   * @version $Rev$
+   * @param <T> the type of the values
+   */
+  public static class Cursor<T> {
+    /**
+     * Sufficient for any index with less than 2^31 intervals.
+     */
+    private static final int MAX_DEPTH = 64;
+    
+    /**
+     * Node, level and whether the left child has already been visited,
+     * for each pending node.
+     */
+    private final int[] stackNode = new int[MAX_DEPTH];
+    private final int[] stackLevel = new int[MAX_DEPTH];
+    private final boolean[] stackVisited = new boolean[MAX_DEPTH];
+    private int stackSize = 0;
+    
+    /**
+     * Range of positions, that are scanned linearly.
+     */
+    private int scanPosition = 0;
+    private int scanEnd = 0;
+    
+    private IntervalIndex<? extends T> index = null;
+    private int queryStart;
+    private int queryEnd;
+    
+    /**
+     * The position returned by the last call of {@link #next()}.
+     */
+    private int current = -1;
+    
+    /**
+     * Starts a new query. Any previous query is discarded.
+     * @param index the index to query. May be {@code null}, in which
+     * case no intervals are returned.
+     * @param start
+     * @param end inclusive
+     * @return this cursor.
+     */
+    public Cursor<T> query(IntervalIndex<? extends T> index, int start, int end) {
+      this.index = index;
+      this.queryStart = start;
+      this.queryEnd = end;
+      stackSize = 0;
+      scanPosition = scanEnd = 0;
+      current = -1;
+      if (index!=null && index.size>0 && start<=end) {
+        push((1<<index.rootLevel)-1, index.rootLevel, false);
+      }
+      return this;
+    }
+    
+    /**
+     * @param node
+     * @param level
+     * @param visited
+     */
+    private void push(int node, int level, boolean visited) {
+      stackNode[stackSize] = node;
+      stackLevel[stackSize] = level;
+      stackVisited[stackSize] = visited;
+      stackSize++;
+    }
+    
+    /**
+     * @return the position of the next overlapping interval in the
+     * queried index (see {@link IntervalIndex#getValue(int)}), or
+     * {@code -1} if there are no more overlapping intervals.
+     */
+    public int next() {
+      current = advance();
+      return current;
+    }
+    
+    /**
+     * @return the next position or {@code -1}.
+     */
+    private int advance() {
+      if (index==null) {
+        return -1;
+      }
+      int[] starts = index.starts;
+      int[] ends = index.ends;
+      int size = index.size;
+      while (true) {
+        while (scanPosition<scanEnd) {
+          int i = scanPosition++;
+          if (starts[i]>queryEnd) {
+            // All following intervals start after the query
+            scanPosition = scanEnd;
+          } else if (ends[i]>=queryStart) {
+            return i;
+          }
+        }
+        if (stackSize==0) {
+          return -1;
+        }
+        stackSize--;
+        int node = stackNode[stackSize];
+        int level = stackLevel[stackSize];
+        if (level<=SCAN_LEVEL) {
+          // Small subtree: scan all nodes
+          scanPosition = node>>level<<level;
+          scanEnd = Math.min(size, scanPosition + (1<<(level+1)) - 1);
+        } else if (!stackVisited[stackSize]) {
+          push(node, level, true);
+          int left = node - (1<<(level-1));
+          if (left>=size || index.maxEnds[left]>=queryStart) {
+            push(left, level-1, false);
+          }
+        } else if (node<size && starts[node]<=queryEnd) {
+          push(node + (1<<(level-1)), level-1, false);
+          if (ends[node]>=queryStart) {
+            return node;
+          }
+        }
+      }
+    }
+    
+    /**
+     * @return the value of the interval, returned by the last call of
+     * {@link #next()}.
+     */
+    public T getValue() {
+      return index.getValue(current);
+    }
+    
+    /**
+     * @return the start of the interval, returned by the last call of
+     * {@link #next()}.
+     */
+    public int getStart() {
+      return index.starts[current];
+    }
+    
+    /**
+     * @return the end of the interval, returned by the last call of
+     * {@link #next()}.
+     */
+    public int getEnd() {
+      return index.ends[current];
+    }
+  }
+  
+  /**
+   * Collects intervals and creates an {@link IntervalIndex}.
+   * 
+   * @version $Rev$
+   * @param <T> the type of the values
+   */
+  public static class Builder<T> {
+    private int size = 0;
+    private int[] starts;
+    private int[] ends;
+    private Object[] values;
+    
+    public Builder() {
+      this(16);
+    }
+    
+    /**
+     * @param expectedSize
+     */
+    public Builder(int expectedSize) {
+      super();
+      int capacity = Math.max(1, expectedSize);
+      starts = new int[capacity];
+      ends = new int[capacity];
+      values = new Object[capacity];
+    }
+    
+    /**
+     * Creates a builder, that contains all intervals of {@code index}, in
+     * the order of {@link IntervalIndex#getId(int)}.
+     * @param index
+     */
+    public Builder(IntervalIndex<? extends T> index) {
+      this(index.size);
+      if (isDense(index)) {
+        for (int i=0; i<index.size; i++) {
+          int id = index.ids[i];
+          starts[id] = index.starts[i];
+          ends[id] = index.ends[i];
+          values[id] = index.values[i];
+        }
+      } else {
+        // Some intervals have been removed as duplicates
+        compactById(index);
+      }
+      size = index.size;
+    }
+    
+    /**
+     * @param index
+     * @return {@code true} if the ids of {@code index} are
+     * {@code 0..size-1}.
+     */
+    private static boolean isDense(IntervalIndex<?> index) {
+      for (int i=0; i<index.size; i++) {
+        if (index.ids[i]>=index.size) {
+          return false;
+        }
+      }
+      return true;
+    }
+    
+    /**
+     * Copies the intervals of {@code index} in the order of their ids.
+     * @param index
+     */
+    private void compactById(IntervalIndex<? extends T> index) {
+      long[] keys = new long[index.size];
+      for (int i=0; i<index.size; i++) {
+        keys[i] = ((long) index.ids[i]<<32) | i;
+      }
+      Arrays.sort(keys);
+      for (int j=0; j<index.size; j++) {
+        int i = (int) keys[j];
+        starts[j] = index.starts[i];
+        ends[j] = index.ends[i];
+        values[j] = index.values[i];
+      }
+    }
+    
+    /**
+     * @param start
+     * @param end inclusive
+     * @param value may be {@code null}
+     * @return this builder.
+     */
+    public Builder<T> add(int start, int end, T value) {
+      if (start>end) {
+        throw new IllegalArgumentException("Start cannot exceed end.");
+      }
+      if (size==starts.length) {
+        int capacity = starts.length*2;
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        values = Arrays.copyOf(values, capacity);
+      }
+      starts[size] = start;
+      ends[size] = end;
+      values[size] = value;
+      size++;
+      return this;
+    }
+    
+    /**
+     * @return the number of added intervals.
+     */
+    public int size() {
+      return size;
+    }
+    
+    /**
+     * @return a new {@link IntervalIndex} with all added intervals.
+     */
+    public IntervalIndex<T> build() {
+      return build(false);
+    }
+    
+    /**
+     * Creates a new {@link IntervalIndex}. This builder may still be used
+     * afterwards.
+     * @param distinct if {@code true}, equal values (see
+     * {@link Object#equals(Object)} and {@link Object#hashCode()}) with
+     * identical intervals are only contained once (the first one added),
+     * as if the values of each interval were a {@link Set}.
+     * @return a new {@link IntervalIndex} with all added intervals.
+     */
+    public IntervalIndex<T> build(boolean distinct) {
+      // Sort by the composite key (start, end, insertion order): rank all
+      // intervals by (end, insertion order) and sort by (start, rank).
+      // Both keys are unique and fit into a long.
+      long[] keys = new long[size];
+      for (int i=0; i<size; i++) {
+        keys[i] = ((long) ends[i]<<32) | i;
+      }
+      Arrays.sort(keys);
+      int[] byRank = new int[size];
+      for (int r=0; r<size; r++) {
+        byRank[r] = (int) keys[r];
+        keys[r] = 0;
+      }
+      for (int r=0; r<size; r++) {
+        int id = byRank[r];
+        keys[id] = ((long) starts[id]<<32) | r;
+      }
+      Arrays.sort(keys);
+      int[] order = new int[size];
+      for (int i=0; i<size; i++) {
+        order[i] = byRank[(int) keys[i]];
+      }
+      keys = null;
+      byRank = null;
+      
+      // Identical intervals are adjacent now, remove duplicate values
+      int n = size;
+      if (distinct) {
+        n = 0;
+        Set<Object> seen = null;
+        for (int runStart=0; runStart<size; ) {
+          int first = order[runStart];
+          int runEnd = runStart+1;
+          while (runEnd<size && starts[order[runEnd]]==starts[first] && ends[order[runEnd]]==ends[first]) {
+            runEnd++;
+          }
+          if (runEnd-runStart==1) {
+            order[n++] = first;
+          } else {
+            if (seen==null) {
+              seen = new HashSet<Object>();
+            }
+            seen.clear();
+            for (int j=runStart; j<runEnd; j++) {
+              if (seen.add(values[order[j]])) {
+                order[n++] = order[j];
+              }
+            }
+          }
+          runStart = runEnd;
+        }
+      }
+      
+      int[] sortedStarts = new int[n];
+      int[] sortedEnds = new int[n];
+      int[] ids = new int[n];
+      Object[] sortedValues = new Object[n];
+      for (int i=0; i<n; i++) {
+        int id = order[i];
+        sortedStarts[i] = starts[id];
+        sortedEnds[i] = ends[id];
+        ids[i] = id;
+        sortedValues[i] = values[id];
+      }
+      return new IntervalIndex<T>(n, sortedStarts, sortedEnds, ids, sortedValues);
+    }
+  }
+  
+}
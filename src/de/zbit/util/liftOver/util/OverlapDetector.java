@@ -27,19 +27,26 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Utility class to efficiently do in memory overlap detection between a large
  * set of mapping like objects, and one or more candidate mappings.
+ * <p>
+ * Mappings are stored in one {@link IntervalIndex} per sequence, which is
+ * (re-)built on the first query after mappings have been added. Adding
+ * mappings is not thread-safe, but queries may be issued by multiple threads.
  * @version $Rev$
  * @since 1.0
  */
 public class OverlapDetector<T> {
-    private Map<Object, IntervalTree<Set<T>>> cache = new HashMap<Object, IntervalTree<Set<T>>>();
+    /** Built indices per sequence. */
+    private final Map<Object, IntervalIndex<T>> indices = new HashMap<Object, IntervalIndex<T>>();
+    /** Sequences with mappings, that have been added after the index was built. */
+    private final Map<Object, IntervalIndex.Builder<T>> builders = new HashMap<Object, IntervalIndex.Builder<T>>();
+    /** {@code true} if {@link #builders} is not empty. */
+    private volatile boolean modified = false;
     private final int lhsBuffer;
     private final int rhsBuffer;
 
@@ -57,27 +64,23 @@ public class OverlapDetector<T> {
 
     /** Adds a mapping to the set of mappings against which to match candidates. */
     public void addLhs(T object, Interval interval) {
-        Object seqId = interval.getSequence();
-
-        IntervalTree<Set<T>> tree = this.cache.get(seqId);
-        if (tree == null) {
-            tree = new IntervalTree<Set<T>>();
-            this.cache.put(seqId, tree);
-        }
-
         int start = interval.getStart() + this.lhsBuffer;
         int end   = interval.getEnd()   - this.lhsBuffer;
+        if (start > end) {
+            // Don't put in sequences that have no overlappable bases
+            return;
+        }
 
-        Set<T> objects = new HashSet<T>();
-        objects.add(object);
-        if (start <= end)  // Don't put in sequences that have no overlappable bases
-        {
-            Set<T> alreadyThere = tree.put(start, end, objects);
-            if (alreadyThere != null)
-            {
-                alreadyThere.add(object);
-                tree.put(start, end, alreadyThere);
+        Object seqId = interval.getSequence();
+        synchronized (this) {
+            IntervalIndex.Builder<T> builder = this.builders.get(seqId);
+            if (builder == null) {
+                IntervalIndex<T> index = this.indices.remove(seqId);
+                builder = index != null ? new IntervalIndex.Builder<T>(index) : new IntervalIndex.Builder<T>();
+                this.builders.put(seqId, builder);
             }
+            builder.add(start, end, object);
+            this.modified = true;
         }
     }
 
@@ -92,23 +95,53 @@ public class OverlapDetector<T> {
         }
     }
 
-    /** Gets the collection of objects that overlap the provided mapping. */
-    public Collection<T> getOverlaps(Interval rhs)  {
-        Collection<T> matches = new ArrayList<T>();
+    /**
+     * Builds the indices of all sequences, that have been modified. Identical
+     * objects with identical intervals are only kept once.
+     */
+    private synchronized void buildIndices() {
+        if (!this.modified) {
+            return;
+        }
+        for (Map.Entry<Object, IntervalIndex.Builder<T>> e : this.builders.entrySet()) {
+            this.indices.put(e.getKey(), e.getValue().build(true));
+        }
+        this.builders.clear();
+        this.modified = false;
+    }
 
-        Object seqId = rhs.getSequence();
-        IntervalTree<Set<T>> tree = this.cache.get(seqId);
+    /**
+     * @param seqId a sequence, as returned by {@link Interval#getSequence()}.
+     * @return the index of all mappings on {@code seqId} (not trimmed by the
+     * rhs buffer), or {@code null} if there are none.
+     */
+    public IntervalIndex<T> getIndex(Object seqId) {
+        if (this.modified) {
+            buildIndices();
+        }
+        return this.indices.get(seqId);
+    }
+
+    /**
+     * Queries the given cursor for all objects that overlap the provided
+     * mapping. In contrast to {@link #getOverlaps(Interval)}, no objects
+     * are created.
+     * @param rhs
+     * @param cursor a cursor, that may be reused for many queries.
+     * @return {@code cursor}, which iterates over all overlaps.
+     */
+    public IntervalIndex.Cursor<T> getOverlaps(Interval rhs, IntervalIndex.Cursor<T> cursor) {
         int start = rhs.getStart() + this.rhsBuffer;
         int end = rhs.getEnd() - this.rhsBuffer;
+        return cursor.query(getIndex(rhs.getSequence()), start, end);
+    }
 
-        if (tree != null && start <= end)
-        {
-            Iterator<IntervalTree.Node<Set<T>>> it = tree.overlappers(start, end);
-            while (it.hasNext())
-            {
-                IntervalTree.Node<Set<T>> node = it.next();
-                matches.addAll(node.getValue());
-            }
+    /** Gets the collection of objects that overlap the provided mapping. */
+    public Collection<T> getOverlaps(Interval rhs)  {
+        Collection<T> matches = new ArrayList<T>();
+        IntervalIndex.Cursor<T> cursor = getOverlaps(rhs, new IntervalIndex.Cursor<T>());
+        while (cursor.next() >= 0) {
+            matches.add(cursor.getValue());
         }
 
         return matches;
@@ -116,10 +149,13 @@ public class OverlapDetector<T> {
 
     /** Gets all the objects that could be returned by the overlap detector. */
     public Collection<T> getAll() {
+        if (this.modified) {
+            buildIndices();
+        }
         Collection<T> all = new HashSet<T>();
-        for (IntervalTree<Set<T>> tree : this.cache.values()) {
-            for (IntervalTree.Node<Set<T>> node : tree) {
-                all.addAll(node.getValue());
+        for (IntervalIndex<T> index : this.indices.values()) {
+            for (int i=0; i<index.size(); i++) {
+                all.add(index.getValue(i));
             }
         }
 
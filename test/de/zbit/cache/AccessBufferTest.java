@@ -0,0 +1,109 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.cache;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link AccessBuffer}.
+ * @version $Rev$
+ */
+public class AccessBufferTest {
+  
+  /**
+   * Counts recorded accesses.
+   */
+  private static class CountingPolicy extends LRUEvictionPolicy<Integer> {
+    int accesses = 0;
+    public CountingPolicy() {
+      super(10);
+    }
+    @Override
+    public void recordAccess(Integer key) {
+      accesses++;
+    }
+  }
+  
+  /**
+   * Accesses of a single thread must be replayed in their order.
+   */
+  @Test
+  public void testAccessesAreReplayedInOrder() {
+    AccessBuffer<Integer> buffer = new AccessBuffer<Integer>();
+    final List<Integer> recorded = new ArrayList<Integer>();
+    for (int i=0; i<10; i++) {
+      assertEquals(i+1, buffer.offer(i));
+    }
+    buffer.drainTo(new LRUEvictionPolicy<Integer>(10) {
+      @Override
+      public void recordAccess(Integer key) {
+        recorded.add(key);
+      }
+    });
+    assertEquals(10, recorded.size());
+    for (int i=0; i<10; i++) {
+      assertEquals(Integer.valueOf(i), recorded.get(i));
+    }
+    assertEquals(1, buffer.offer(10));
+  }
+  
+  /**
+   * Concurrent accesses must either be buffered or recorded directly,
+   * but never be discarded.
+   * @throws InterruptedException
+   */
+  @Test
+  public void testNoAccessIsLost() throws InterruptedException {
+    final AccessBuffer<Integer> buffer = new AccessBuffer<Integer>();
+    final CountingPolicy policy = new CountingPolicy();
+    final AtomicInteger direct = new AtomicInteger();
+    final int threads = 8, accesses = 10000;
+    Thread[] workers = new Thread[threads];
+    for (int t=0; t<threads; t++) {
+      workers[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i=0; i<accesses; i++) {
+            if (buffer.offer(i)<0) {
+              // Buffer full: record directly, as the InfoManagement does.
+              synchronized (policy) {
+                buffer.drainTo(policy);
+                policy.recordAccess(i);
+              }
+              direct.incrementAndGet();
+            }
+          }
+        }
+      };
+      workers[t].start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    synchronized (policy) {
+      buffer.drainTo(policy);
+    }
+    assertEquals(threads*accesses, policy.accesses);
+  }
+  
+}
@@ -0,0 +1,309 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the eviction and statistics of {@link InfoManagement}.
+ * @version $Rev$
+ */
+public class InfoManagementTest {
+  
+  /**
+   * Simple cache that "fetches" the id in upper case.
+   */
+  static class UpperCaseCache extends InfoManagement<String, String> {
+    private static final long serialVersionUID = 1L;
+    
+    transient int fetched = 0;
+    
+    /**
+     * Simulated latency of each fetch.
+     */
+    transient long delay = 0;
+    
+    /**
+     * If set, this id can not be fetched.
+     */
+    transient String missing = null;
+    
+    public UpperCaseCache(int maxCacheSize) {
+      super(maxCacheSize);
+    }
+    
+    @Override
+    protected String fetchInformation(String id) {
+      synchronized (this) {
+        fetched++;
+      }
+      if (delay>0) {
+        try {
+          Thread.sleep(delay);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return id.equals(missing) ? null : id.toUpperCase();
+    }
+    
+    @Override
+    protected String[] fetchMultipleInformations(String[] ids) {
+      synchronized (this) {
+        fetched++;
+      }
+      String[] ret = new String[ids.length];
+      for (int i=0; i<ids.length; i++) {
+        ret[i] = ids[i].toUpperCase();
+      }
+      return ret;
+    }
+    
+    @Override
+    protected void restoreUnserializableObject() {}
+    
+    @Override
+    protected void cleanupUnserializableObject() {}
+  }
+  
+  /**
+   * An {@link UpperCaseCache} with a maximum size of 10, serialized in
+   * the format of version 2 (before eviction policies, statistics and
+   * persistent stores had been introduced), after fetching "a", "b", "c",
+   * the missing "missing1" and "a" again.
+   */
+  private static final String BASELINE_CACHE =
+      "aced00057372002f64652e7a6269742e63616368652e496e666f4d616e6167656d656e745465737424557070" +
+      "657243617365436163686500000000000000010200007872001c64652e7a6269742e63616368652e496e666f" +
+      "4d616e6167656d656e74b83864a77ce0011903000449000b6d61784c69737453697a6549000776657273696f" +
+      "6e4c000f72656d656d6265726564496e666f7374000f4c6a6176612f7574696c2f4d61703b4c0013756e7375" +
+      "636365737366756c5175657269657374000f4c6a6176612f7574696c2f5365743b78700000000a0000000273" +
+      "7200116a6176612e7574696c2e486173684d61700507dac1c31660d103000246000a6c6f6164466163746f72" +
+      "4900097468726573686f6c6478703f4000000000000c77080000001000000003740001617372002064652e7a" +
+      "6269742e63616368652e4f626a656374416e6454696d657374616d70696f2fa4ad207e330200024a00096c61" +
+      "737455736167654c000b696e666f726d6174696f6e7400124c6a6176612f6c616e672f4f626a6563743b7870" +
+      "000001a1475e5f0b74000141740001627371007e0008000001a1475e5f0a74000142740001637371007e0008" +
+      "000001a1475e5f0a7400014378737200116a6176612e7574696c2e48617368536574ba44859596b8b7340300" +
+      "007870770c000000803f400000000000017400086d697373696e67317878";
+  
+  UpperCaseCache cache;
+  
+  @Before
+  public void setUp() {
+    cache = new UpperCaseCache(100);
+  }
+  
+  /**
+   * The cache must never exceed its maximum size.
+   */
+  @Test
+  public void testSizeLimit() {
+    for (int i=0; i<1000; i++) {
+      assertEquals("ID" + i, cache.getInformation("id" + i));
+    }
+    assertEquals(100, cache.getNumberOfCachedInfos());
+    assertEquals(900, cache.getStatistics().getEvictionCount());
+    assertEquals(1000, cache.getStatistics().getMissCount());
+  }
+  
+  /**
+   * Recently used elements must survive, with the default LRU policy.
+   */
+  @Test
+  public void testLRU() {
+    for (int i=0; i<100; i++) {
+      cache.getInformation("id" + i);
+    }
+    cache.getInformation("id0");
+    cache.getInformation("new");
+    
+    int fetched = cache.fetched;
+    cache.getInformation("id0");
+    assertEquals(fetched, cache.fetched);
+    cache.getInformation("id1");
+    assertEquals(fetched + 1, cache.fetched);
+  }
+  
+  /**
+   * Frequently used elements must survive a scan over many new elements
+   * with the {@link WTinyLFUEvictionPolicy}.
+   */
+  @Test
+  public void testWTinyLFUScanResistance() {
+    cache.setEvictionPolicy(new WTinyLFUEvictionPolicy<String>(cache.getCacheSize()));
+    for (int round=0; round<5; round++) {
+      for (int i=0; i<50; i++) {
+        cache.getInformation("hot" + i);
+      }
+    }
+    for (int i=0; i<5000; i++) {
+      cache.getInformation("scan" + i);
+    }
+    cache.getStatistics().reset();
+    for (int i=0; i<50; i++) {
+      cache.getInformation("hot" + i);
+    }
+    assertTrue(cache.getStatistics().getHitRate() > 0.9);
+    assertEquals(100, cache.getNumberOfCachedInfos());
+  }
+  
+  /**
+   * The eviction policy must be restored after deserialization.
+   * @throws Exception
+   */
+  @Test
+  public void testSerialization() throws Exception {
+    for (int i=0; i<150; i++) {
+      cache.getInformation("id" + i);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(cache);
+    out.close();
+    
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    UpperCaseCache loaded = (UpperCaseCache) in.readObject();
+    in.close();
+    assertEquals(100, loaded.getNumberOfCachedInfos());
+    assertEquals(100, loaded.getEvictionPolicy().size());
+    
+    loaded.setCacheSize(10);
+    assertEquals(10, loaded.getNumberOfCachedInfos());
+    assertEquals(10, loaded.getEvictionPolicy().size());
+  }
+  
+  /**
+   * Caches, serialized by previous versions, must still be readable.
+   * @throws Exception
+   */
+  @Test
+  public void testBaselineSerialization() throws Exception {
+    byte[] bytes = new byte[BASELINE_CACHE.length()/2];
+    for (int i=0; i<bytes.length; i++) {
+      bytes[i] = (byte) Integer.parseInt(BASELINE_CACHE.substring(i*2, i*2+2), 16);
+    }
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+    UpperCaseCache loaded = (UpperCaseCache) in.readObject();
+    in.close();
+    assertEquals(10, loaded.getCacheSize());
+    assertEquals(3, loaded.getNumberOfCachedInfos());
+    assertEquals(3, loaded.getEvictionPolicy().size());
+    assertEquals("A", loaded.getInformation("a"));
+    assertEquals("B", loaded.getInformation("b"));
+    assertEquals("C", loaded.getInformation("c"));
+    assertNull(loaded.getInformation("missing1"));
+    assertEquals(0, loaded.fetched);
+    assertEquals("D", loaded.getInformation("d"));
+    assertEquals(1, loaded.fetched);
+  }
+  
+  /**
+   * Concurrent requests for the same missing id must share one fetch.
+   * @throws InterruptedException
+   */
+  @Test
+  public void testConcurrentRequestsShareFetch() throws InterruptedException {
+    cache.delay = 200;
+    final AtomicInteger correct = new AtomicInteger(0);
+    ExecutorService pool = Executors.newFixedThreadPool(16);
+    for (int i=0; i<16; i++) {
+      pool.submit(new Runnable() {
+        public void run() {
+          if ("ID".equals(cache.getInformation("id"))) {
+            correct.incrementAndGet();
+          }
+        }
+      });
+    }
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(16, correct.get());
+    assertEquals(1, cache.fetched);
+  }
+  
+  /**
+   * Single asynchronous requests must be combined to batches.
+   * @throws Exception
+   */
+  @Test
+  public void testAsyncBatching() throws Exception {
+    cache.setBatching(1000, 10);
+    List<Future<String>> answers = new ArrayList<Future<String>>();
+    for (int i=0; i<50; i++) {
+      answers.add(cache.getInformationAsync("id" + i));
+    }
+    for (int i=0; i<50; i++) {
+      assertEquals("ID" + i, answers.get(i).get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(5, cache.fetched);
+    
+    // Cached now
+    assertEquals("ID0", cache.getInformationAsync("id0").get());
+    assertEquals(5, cache.fetched);
+  }
+  
+  /**
+   * Expired infos must be returned immediately and refreshed in the
+   * background. Unsuccessful queries must be retried after their own TTL.
+   * @throws Exception
+   */
+  @Test
+  public void testTimeToLive() throws Exception {
+    cache.setBatching(10, 10);
+    cache.setTimeToLive(50);
+    cache.setNegativeTimeToLive(50);
+    assertEquals("A", cache.getInformation("a"));
+    assertEquals(1, cache.fetched);
+    Thread.sleep(100);
+    
+    // Stale value is returned, but refreshed in background
+    assertEquals("A", cache.getInformation("a"));
+    for (int i=0; i<100 && cache.fetched<2; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(2, cache.fetched);
+    assertEquals("A", cache.getInformation("a"));
+    assertEquals(2, cache.fetched);
+    
+    cache.missing = "b";
+    assertNull(cache.getInformation("b"));
+    assertNull(cache.getInformation("b"));
+    assertEquals(3, cache.fetched);
+    cache.missing = null;
+    Thread.sleep(100);
+    assertEquals("B", cache.getInformation("b"));
+    assertEquals(4, cache.fetched);
+  }
+  
+}
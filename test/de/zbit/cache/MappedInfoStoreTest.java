@@ -0,0 +1,189 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2009-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link MappedInfoStore}.
+ * @version $Rev$
+ */
+public class MappedInfoStoreTest {
+  
+  File file;
+  
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("MappedInfoStoreTest", ".store");
+    file.delete();
+    file.deleteOnExit();
+    new File(file.getPath() + MappedInfoStore.INDEX_SUFFIX).deleteOnExit();
+  }
+  
+  /**
+   * Entries must be available after reopening the store.
+   * @throws IOException
+   */
+  @Test
+  public void testReopen() throws IOException {
+    MappedInfoStore<String, String> store = new MappedInfoStore<String, String>(file);
+    for (int i=0; i<100; i++) {
+      store.put("id" + i, "info" + i, i);
+    }
+    store.putUnsuccessful("unknown", 0);
+    assertEquals("info5", store.get("id5"));
+    store.close();
+    
+    store = new MappedInfoStore<String, String>(file);
+    assertEquals(100, store.size());
+    assertEquals("info99", store.get("id99"));
+    assertEquals(42, store.getTimestamp("id42"));
+    assertTrue(store.isUnsuccessful("unknown"));
+    assertNull(store.get("unknown"));
+    store.close();
+  }
+  
+  /**
+   * Removed and overwritten entries must disappear upon compaction.
+   * @throws IOException
+   */
+  @Test
+  public void testCompact() throws IOException {
+    MappedInfoStore<String, String> store = new MappedInfoStore<String, String>(file);
+    for (int i=0; i<10; i++) {
+      store.put("id" + i, "info" + i, i);
+    }
+    store.put("id0", "new", 20);
+    store.remove("id1");
+    assertFalse(store.contains("id1"));
+    assertTrue(store.getGarbageRatio() > 0);
+    
+    store.flush();
+    long length = file.length();
+    // Maps the data file
+    assertEquals("info9", store.get("id9"));
+    store.compact();
+    assertEquals(0d, store.getGarbageRatio(), 0d);
+    assertTrue(file.length() < length);
+    assertEquals(9, store.size());
+    assertEquals("new", store.get("id0"));
+    
+    store.clear();
+    assertEquals(0, store.size());
+    assertNull(store.get("id0"));
+    store.put("id0", "cleared", 30);
+    assertEquals("cleared", store.get("id0"));
+    store.close();
+  }
+  
+  /**
+   * Incomplete records (e.g., after a crash) must be ignored and a
+   * missing index must be rebuilt.
+   * @throws IOException
+   */
+  @Test
+  public void testRecovery() throws IOException {
+    MappedInfoStore<String, String> store = new MappedInfoStore<String, String>(file);
+    for (int i=0; i<10; i++) {
+      store.put("id" + i, "info" + i, i);
+    }
+    store.close();
+    
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.setLength(raf.length() - 3);
+    raf.close();
+    store = new MappedInfoStore<String, String>(file);
+    assertEquals(9, store.size());
+    store.close();
+    
+    new File(file.getPath() + MappedInfoStore.INDEX_SUFFIX).delete();
+    store = new MappedInfoStore<String, String>(file);
+    assertEquals(9, store.size());
+    assertEquals("info8", store.get("id8"));
+    store.put("id9", "info9", 9);
+    assertEquals("info9", store.get("id9"));
+    store.close();
+  }
+  
+  /**
+   * An index of another generation (e.g., if compaction has been
+   * interrupted after replacing the index) must not be used.
+   * @throws IOException
+   */
+  @Test
+  public void testGenerationMismatch() throws IOException {
+    MappedInfoStore<String, String> store = new MappedInfoStore<String, String>(file);
+    for (int i=0; i<10; i++) {
+      store.put("id" + i, "info" + i, i);
+    }
+    store.close();
+    
+    File other = File.createTempFile("MappedInfoStoreTest", ".store");
+    other.delete();
+    other.deleteOnExit();
+    File otherIndex = new File(other.getPath() + MappedInfoStore.INDEX_SUFFIX);
+    otherIndex.deleteOnExit();
+    MappedInfoStore<String, String> otherStore = new MappedInfoStore<String, String>(other);
+    otherStore.put("id5", "other", 5);
+    otherStore.put("x", "y", 1);
+    otherStore.close();
+    
+    File index = new File(file.getPath() + MappedInfoStore.INDEX_SUFFIX);
+    index.delete();
+    assertTrue(otherIndex.renameTo(index));
+    store = new MappedInfoStore<String, String>(file);
+    assertEquals(10, store.size());
+    assertFalse(store.contains("x"));
+    assertEquals("info5", store.get("id5"));
+    store.close();
+  }
+  
+  /**
+   * A record, that does not belong to the requested key, must be treated
+   * as a miss.
+   * @throws IOException
+   */
+  @Test
+  public void testKeyMismatch() throws IOException {
+    MappedInfoStore<String, String> store = new MappedInfoStore<String, String>(file);
+    store.put("id1", "info1", 1);
+    store.put("id2", "info2", 2);
+    store.close();
+    
+    // Change the key of the first record from "id1" to "ix1"
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.seek(16 + 1 + 8 + 1 + 4 + 1);
+    raf.write('x');
+    raf.close();
+    store = new MappedInfoStore<String, String>(file);
+    assertTrue(store.contains("id1"));
+    assertNull(store.get("id1"));
+    assertEquals("info2", store.get("id2"));
+    store.close();
+  }
+  
+}
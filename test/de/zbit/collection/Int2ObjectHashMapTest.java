@@ -0,0 +1,81 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @version $Rev$
+ */
+public class Int2ObjectHashMapTest {
+  
+  /**
+   * Random operations must give the same results as a {@link HashMap}.
+   */
+  @Test
+  public void testAgainstHashMap() {
+    Int2ObjectHashMap<String> map = new Int2ObjectHashMap<String>();
+    Map<Integer, String> expected = new HashMap<Integer, String>();
+    Random r = new Random(42);
+    for (int i=0; i<100000; i++) {
+      int key = r.nextInt(5000) - 100;
+      if (r.nextInt(3)==0) {
+        assertEquals(expected.remove(key), map.remove(key));
+      } else {
+        String value = "SYMBOL" + r.nextInt();
+        assertEquals(expected.put(key, value), map.put(key, value));
+      }
+    }
+    assertEquals(expected, map);
+    for (Integer key : expected.keySet()) {
+      assertEquals(expected.get(key), map.get(key.intValue()));
+    }
+    assertNull(map.get("no integer"));
+    assertNull(map.get(null));
+  }
+  
+  /**
+   * Entries must be removable while iterating.
+   */
+  @Test
+  public void testIteratorRemove() {
+    Int2ObjectHashMap<String> map = new Int2ObjectHashMap<String>();
+    for (int i=0; i<1000; i++) {
+      map.put(i, Integer.toString(i));
+    }
+    Iterator<Map.Entry<Integer, String>> it = map.entrySet().iterator();
+    while (it.hasNext()) {
+      if (it.next().getKey().intValue()%2==0) {
+        it.remove();
+      }
+    }
+    assertEquals(500, map.size());
+    assertFalse(map.containsKey(2));
+    assertTrue(map.containsKey(3));
+  }
+  
+}
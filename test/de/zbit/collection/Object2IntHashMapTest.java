@@ -0,0 +1,108 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @version $Rev$
+ */
+public class Object2IntHashMapTest {
+  
+  /**
+   * Random operations must give the same results as a {@link HashMap}.
+   */
+  @Test
+  public void testAgainstHashMap() {
+    Object2IntHashMap<String> map = new Object2IntHashMap<String>();
+    Map<String, Integer> expected = new HashMap<String, Integer>();
+    Random r = new Random(42);
+    for (int i=0; i<100000; i++) {
+      String key = "GENE" + r.nextInt(5000);
+      if (r.nextInt(3)==0) {
+        assertEquals(expected.remove(key), map.remove(key));
+      } else {
+        int value = r.nextInt();
+        assertEquals(expected.put(key, value), map.put(key, Integer.valueOf(value)));
+      }
+    }
+    assertEquals(expected, map);
+    assertEquals(expected.size(), map.size());
+    for (String key : expected.keySet()) {
+      assertEquals(expected.get(key).intValue(), map.getInt(key));
+    }
+    assertEquals(map.getNoEntryValue(), map.getInt("unknown"));
+    assertNull(map.get("unknown"));
+    assertNull(map.get(null));
+  }
+  
+  /**
+   * Entries must be removable while iterating.
+   */
+  @Test
+  public void testIteratorRemove() {
+    Object2IntHashMap<String> map = new Object2IntHashMap<String>();
+    for (int i=0; i<1000; i++) {
+      map.put(Integer.toString(i), i);
+    }
+    Iterator<Map.Entry<String, Integer>> it = map.entrySet().iterator();
+    while (it.hasNext()) {
+      if (it.next().getValue().intValue()%2==0) {
+        it.remove();
+      }
+    }
+    assertEquals(500, map.size());
+    assertFalse(map.containsKey("2"));
+    assertTrue(map.containsKey("3"));
+  }
+  
+  /**
+   * @throws Exception
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testSerialization() throws Exception {
+    Object2IntHashMap<String> map = new Object2IntHashMap<String>();
+    for (int i=0; i<100; i++) {
+      map.put(Integer.toString(i), i);
+    }
+    map.remove("5");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(map);
+    out.close();
+    Object2IntHashMap<String> read = (Object2IntHashMap<String>) new ObjectInputStream(
+      new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    assertEquals(map, read);
+    assertEquals(99, read.size());
+  }
+  
+}
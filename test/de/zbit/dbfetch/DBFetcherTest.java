@@ -0,0 +1,227 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.dbfetch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import uk.ac.ebi.webservices.jaxws.stubs.wsdbfetch.DatabaseInfo;
+import uk.ac.ebi.webservices.jaxws.stubs.wsdbfetch.DbfConnException;
+import uk.ac.ebi.webservices.jaxws.stubs.wsdbfetch.DbfConnException_Exception;
+import uk.ac.ebi.webservices.jaxws.stubs.wsdbfetch.DbfNoEntryFoundException;
+import uk.ac.ebi.webservices.jaxws.stubs.wsdbfetch.DbfNoEntryFoundException_Exception;
+import uk.ac.ebi.webservices.jaxws.stubs.wsdbfetch.FormatInfo;
+import uk.ac.ebi.webservices.jaxws.stubs.wsdbfetch.StyleInfo;
+import uk.ac.ebi.webservices.jaxws.stubs.wsdbfetch.WSDBFetchServer;
+
+/**
+ * Tests the concurrent batches of the {@link DBFetcher} with a local
+ * {@link WSDBFetchServer}.
+ * 
+ * @version $Rev$
+ */
+public class DBFetcherTest {
+  
+  /**
+   * Knows all ids with an even number and fails for batches, that are
+   * larger than {@link #maxBatch}.
+   */
+  private static class LocalServer implements WSDBFetchServer {
+    final int maxBatch;
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final AtomicInteger batches = new AtomicInteger();
+    final AtomicInteger singles = new AtomicInteger();
+    
+    LocalServer(int maxBatch) {
+      this.maxBatch = maxBatch;
+    }
+    
+    static boolean exists(String id) {
+      return Integer.parseInt(id.substring(1))%2==0;
+    }
+    
+    static String entry(String id) {
+      return "ID   " + id + "_HUMAN\nAC   " + id + ";\nSQ   SEQUENCE\n";
+    }
+    
+    public String fetchBatch(String db, String ids, String format, String style)
+      throws DbfConnException_Exception, DbfNoEntryFoundException_Exception {
+      int r = running.incrementAndGet();
+      try {
+        synchronized (maxRunning) {
+          maxRunning.set(Math.max(maxRunning.get(), r));
+        }
+        batches.incrementAndGet();
+        Thread.sleep(5);
+        String[] split = ids.split(",");
+        if (split.length>maxBatch) {
+          throw new DbfConnException_Exception("Too many ids", new DbfConnException());
+        }
+        StringBuilder ret = new StringBuilder();
+        for (String id : split) {
+          if (exists(id)) {
+            ret.append(entry(id)).append("//\n");
+          }
+        }
+        if (ret.length()==0) {
+          throw new DbfNoEntryFoundException_Exception("No result found", new DbfNoEntryFoundException());
+        }
+        return ret.append('\n').toString();
+      } catch (InterruptedException e) {
+        throw new DbfConnException_Exception("Interrupted", new DbfConnException());
+      } finally {
+        running.decrementAndGet();
+      }
+    }
+    
+    public String fetchData(String query, String format, String style) throws DbfNoEntryFoundException_Exception {
+      singles.incrementAndGet();
+      String id = query.substring(query.indexOf(':')+1);
+      if (!exists(id)) {
+        throw new DbfNoEntryFoundException_Exception("No result found", new DbfNoEntryFoundException());
+      }
+      return entry(id) + "//\n";
+    }
+    
+    public List<String> getSupportedDBs() {
+      return null;
+    }
+    public List<String> getSupportedFormats() {
+      return null;
+    }
+    public List<String> getSupportedStyles() {
+      return null;
+    }
+    public List<DatabaseInfo> getDatabaseInfoList() {
+      return null;
+    }
+    public DatabaseInfo getDatabaseInfo(String db) {
+      return null;
+    }
+    public List<String> getDbFormats(String db) {
+      return null;
+    }
+    public FormatInfo getFormatInfo(String db, String format) {
+      return null;
+    }
+    public List<String> getFormatStyles(String db, String format) {
+      return null;
+    }
+    public StyleInfo getStyleInfo(String db, String format, String style) {
+      return null;
+    }
+  }
+  
+  /**
+   * @param n
+   * @return n ids.
+   */
+  private static String[] createIDs(int n) {
+    String[] ids = new String[n];
+    for (int i=0; i<n; i++) {
+      ids[i] = String.format("P%05d", i);
+    }
+    return ids;
+  }
+  
+  /**
+   * @param ids
+   * @param entries
+   */
+  private static void assertEntries(String[] ids, String[] entries) {
+    assertEquals(ids.length, entries.length);
+    for (int i=0; i<ids.length; i++) {
+      if (LocalServer.exists(ids[i])) {
+        assertEquals(LocalServer.entry(ids[i]) + "//\n", entries[i]);
+      } else {
+        assertNull(entries[i]);
+      }
+    }
+  }
+  
+  /**
+   * All batches must be answered, with at most
+   * {@link DBFetcher#maxConcurrentRequests} at a time.
+   */
+  @Test
+  public void testConcurrentBatches() {
+    UniProtFetcher fetcher = new UniProtFetcher();
+    LocalServer server = new LocalServer(Integer.MAX_VALUE);
+    fetcher.setServer(server);
+    String[] ids = createIDs(2000);
+    
+    assertEntries(ids, fetcher.getInformations(ids));
+    assertTrue(server.maxRunning.get()<=DBFetcher.maxConcurrentRequests);
+    assertTrue(server.maxRunning.get()>1);
+    assertEquals(0, server.singles.get());
+    
+    // Cached
+    int batches = server.batches.get();
+    assertEntries(ids, fetcher.getInformations(ids));
+    assertEquals(batches, server.batches.get());
+  }
+  
+  /**
+   * Failed batches must be split until they succeed.
+   */
+  @Test
+  public void testSplitFailedBatches() {
+    UniProtFetcher fetcher = new UniProtFetcher();
+    LocalServer server = new LocalServer(10);
+    fetcher.setServer(server);
+    String[] ids = createIDs(500);
+    
+    BatchDispatcher dispatcher = new BatchDispatcher(fetcher, ids, 2, 20000);
+    String[] entries;
+    try {
+      entries = dispatcher.run(null);
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    }
+    for (int i=0; i<entries.length; i++) {
+      if (entries[i]!=null) {
+        entries[i] = fetcher.removeUnrequiredInformation(entries[i]);
+      }
+    }
+    assertEntries(ids, entries);
+    assertEquals(0, server.singles.get());
+    // Far less requests than fetching the ids one by one
+    assertTrue(dispatcher.getRequests()<ids.length/4);
+  }
+  
+  /**
+   * Single ids, that fail in a batch, are fetched one by one.
+   */
+  @Test
+  public void testSingleFallback() {
+    UniProtFetcher fetcher = new UniProtFetcher();
+    LocalServer server = new LocalServer(0);
+    fetcher.setServer(server);
+    String[] ids = createIDs(20);
+    
+    assertEntries(ids, fetcher.getInformations(ids));
+    assertEquals(ids.length, server.singles.get());
+  }
+  
+}
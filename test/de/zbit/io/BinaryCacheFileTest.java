@@ -0,0 +1,181 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests writing and validation of {@link BinaryCacheFile}s.
+ * 
+ * @version $Rev$
+ */
+public class BinaryCacheFileTest {
+  
+  private static final int MAGIC = 0x54455354;
+  
+  private static final int[] DATA = {1, 2, 3, Integer.MAX_VALUE, -1};
+  
+  private static final BinaryCacheFile.Writer WRITER = new BinaryCacheFile.Writer() {
+    public void write(DataOutputStream out) throws IOException {
+      BinaryCacheFile.writeString(out, "ints");
+      out.writeInt(DATA.length);
+      BinaryCacheFile.writeInts(out, DATA);
+    }
+  };
+  
+  private static final BinaryCacheFile.Reader<int[]> READER = new BinaryCacheFile.Reader<int[]>() {
+    public int[] read(ByteBuffer buffer) throws IOException {
+      assertEquals("ints", BinaryCacheFile.readString(buffer));
+      return BinaryCacheFile.readInts(buffer, BinaryCacheFile.readCount(buffer, 4));
+    }
+  };
+  
+  private File dir;
+  private File source;
+  
+  @Before
+  public void setUp() throws IOException {
+    dir = File.createTempFile("cache", "");
+    dir.delete();
+    dir.mkdir();
+    System.setProperty(BinaryCacheFile.CACHE_DIR_PROPERTY, dir.getPath());
+    source = new File(dir, "source.txt");
+    FileWriter w = new FileWriter(source);
+    w.write("content");
+    w.close();
+  }
+  
+  @After
+  public void tearDown() {
+    System.clearProperty(BinaryCacheFile.CACHE_DIR_PROPERTY);
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+  
+  /**
+   * @return the cache file of {@link #source}.
+   * @throws IOException
+   */
+  private File writeCache() throws IOException {
+    File cache = BinaryCacheFile.getCacheFile(source.getAbsolutePath(), ".test");
+    BinaryCacheFile.write(cache, MAGIC, 1, "key", BinaryCacheFile.Source.allOf(source), WRITER);
+    return cache;
+  }
+  
+  /**
+   * @param cache
+   * @param key
+   * @return the content of {@code cache}.
+   * @throws IOException
+   */
+  private int[] readCache(File cache, String key) throws IOException {
+    return BinaryCacheFile.read(cache, MAGIC, 1, key, BinaryCacheFile.Source.allOf(source), READER);
+  }
+  
+  /**
+   * @throws IOException
+   */
+  @Test
+  public void testReadWrite() throws IOException {
+    File cache = writeCache();
+    assertEquals(dir, cache.getParentFile());
+    assertArrayEquals(DATA, readCache(cache, "key"));
+    // Only the source and the cache, no temporary files
+    assertEquals(2, dir.listFiles().length);
+    // Overwriting an existing cache
+    writeCache();
+    assertArrayEquals(DATA, readCache(cache, "key"));
+  }
+  
+  /**
+   * Caches of other versions, keys or sources must be ignored.
+   * @throws IOException
+   */
+  @Test
+  public void testValidation() throws IOException {
+    File cache = writeCache();
+    assertNull(readCache(cache, "other key"));
+    assertNull(readCache(cache, null));
+    assertNull(BinaryCacheFile.read(cache, MAGIC, 2, "key", BinaryCacheFile.Source.allOf(source), READER));
+    assertNull(BinaryCacheFile.read(new File(dir, "missing"), MAGIC, 1, "key", BinaryCacheFile.Source.allOf(source), READER));
+    source.setLastModified(source.lastModified() + 2000);
+    assertNull(readCache(cache, "key"));
+  }
+  
+  /**
+   * Caches of other formats or changed sources are outdated.
+   * @throws IOException
+   */
+  @Test
+  public void testOutdated() throws IOException {
+    File cache = writeCache();
+    assertFalse(BinaryCacheFile.isOutdated(cache, MAGIC, 1));
+    assertTrue(BinaryCacheFile.isOutdated(cache, MAGIC, 2));
+    source.setLastModified(source.lastModified() + 2000);
+    assertTrue(BinaryCacheFile.isOutdated(cache, MAGIC, 1));
+    writeCache();
+    source.delete();
+    assertTrue(BinaryCacheFile.isOutdated(cache, MAGIC, 1));
+  }
+  
+  /**
+   * Truncated or corrupt caches must be reported as miss.
+   * @throws IOException
+   */
+  @Test
+  public void testCorrupt() throws IOException {
+    File cache = writeCache();
+    long length = cache.length();
+    RandomAccessFile raf = new RandomAccessFile(cache, "rw");
+    try {
+      // Count of the ints
+      raf.seek(length - DATA.length*4 - 4);
+      raf.writeInt(Integer.MAX_VALUE);
+      assertNull(readCache(cache, "key"));
+      raf.seek(length - DATA.length*4 - 4);
+      raf.writeInt(-7);
+      assertNull(readCache(cache, "key"));
+      raf.seek(length - DATA.length*4 - 4);
+      raf.writeInt(DATA.length);
+      assertArrayEquals(DATA, readCache(cache, "key"));
+      raf.setLength(length-1);
+      assertNull(readCache(cache, "key"));
+      raf.setLength(6);
+      assertNull(readCache(cache, "key"));
+    } finally {
+      raf.close();
+    }
+  }
+  
+}
@@ -0,0 +1,120 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import de.zbit.io.csv.CSVReader;
+import de.zbit.io.csv.CSVTable;
+
+/**
+ * @version $Rev$
+ */
+public class CSVTableTest {
+  
+  /**
+   * Number of data rows, spanning multiple chunks.
+   */
+  private static final int ROWS = 2*CSVTable.CHUNK_SIZE+17;
+  
+  /**
+   * @return a gzipped table with preamble, header and typed columns.
+   * @throws IOException
+   */
+  private static File createFile() throws IOException {
+    File file = File.createTempFile("table", ".txt.gz");
+    file.deleteOnExit();
+    Writer w = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)));
+    w.write("Some preamble\n\nID\tName\tValue\n");
+    for (int i=0; i<ROWS; i++) {
+      w.write(i + "\tGene " + i + "\t" + (i%100==0 ? "NA" : Double.toString(i*0.25)));
+      if (i%1000==0) {
+        w.write("\textra");
+      }
+      w.write('\n');
+    }
+    w.close();
+    return file;
+  }
+  
+  /**
+   * The single pass {@link CSVReader#read()} must return the same as
+   * {@link CSVReader#readUsingArrayList()}.
+   */
+  @Test
+  public void testRead() throws IOException {
+    File file = createFile();
+    CSVReader reference = new CSVReader(file.getPath());
+    String[][] expected = reference.readUsingArrayList();
+    CSVReader r = new CSVReader(file.getPath());
+    String[][] actual = r.read();
+    assertEquals(ROWS, actual.length);
+    for (int i=0; i<expected.length; i++) {
+      assertArrayEquals("row " + i, expected[i], actual[i]);
+    }
+    assertArrayEquals(reference.getHeader(), r.getHeader());
+    assertEquals(reference.getPreamble(), r.getPreamble());
+    assertEquals("Gene 5", r.getColumn(1)[5]);
+    assertEquals(ROWS/1000+1, r.getColumn(3).length);
+  }
+  
+  /**
+   * Numeric columns are kept as primitives.
+   */
+  @Test
+  public void testTypedColumns() throws IOException {
+    CSVReader r = new CSVReader(createFile().getPath());
+    r.setColumnType(0, Integer.class);
+    r.setColumnType(2, Double.class);
+    CSVTable table = r.readColumnar();
+    assertEquals(ROWS, table.getNumberOfRows());
+    assertEquals(4, table.getNumberOfColumns());
+    
+    int[] ids = table.getIntColumn(0);
+    double[] values = table.getDoubleColumn(2);
+    for (int i=0; i<ROWS; i++) {
+      assertEquals(i, ids[i]);
+      assertEquals(i%100==0 ? Double.NaN : i*0.25, values[i], 0d);
+    }
+    assertEquals(CSVTable.CHUNK_SIZE+1, table.getInt(CSVTable.CHUNK_SIZE+1, 0));
+    assertEquals("Gene 3", table.get(3, 1));
+    assertNull(table.get(100, 2));
+    assertEquals(4, table.getRowLength(1000));
+    assertEquals(3, table.getRowLength(1001));
+    
+    // The text of cells is preserved, regardless of column types
+    assertEquals("0.25", r.getData()[1][2]);
+    assertEquals("NA", r.getData()[100][2]);
+    assertEquals("NA", r.getColumn(2)[100]);
+    String[][] data = r.read();
+    assertNull(r.getTable());
+    assertEquals("NA", data[100][2]);
+    assertEquals("5", data[5][0]);
+  }
+  
+}
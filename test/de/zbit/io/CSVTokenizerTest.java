@@ -0,0 +1,120 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.zbit.io.csv.CSVReader;
+import de.zbit.io.csv.CSVTokenizer;
+
+/**
+ * @version $Rev$
+ */
+public class CSVTokenizerTest {
+  
+  /**
+   * Lines must be split exactly like {@link CSVReader#splitLine(String)}.
+   */
+  @Test
+  public void testSameAsSplitLine() throws IOException {
+    Random r = new Random(1);
+    String alphabet = "ab \t,;\"'";
+    for (char separator : new char[] {',', '\t', ' ', '\u0001'}) {
+      for (boolean skipConsecutive : new boolean[] {false, true}) {
+        CSVReader reader = new CSVReader(null);
+        reader.setSeparatorChar(separator);
+        reader.setTreatMultipleConsecutiveSeparatorsAsOne(skipConsecutive);
+        CSVTokenizer tokenizer = new CSVTokenizer(separator, skipConsecutive);
+        for (int i=0; i<5000; i++) {
+          StringBuilder line = new StringBuilder();
+          int length = r.nextInt(12);
+          for (int j=0; j<length; j++) {
+            line.append(alphabet.charAt(r.nextInt(alphabet.length())));
+          }
+          tokenizer.tokenize(line.toString());
+          assertArrayEquals(line.toString(), reader.splitLine(line.toString()), tokenizer.toArray());
+        }
+      }
+    }
+  }
+  
+  /**
+   * Reading a file with {@link CSVReader#nextTokenizedLine()} must return
+   * the same cells as {@link CSVReader#getNextLine()}.
+   */
+  @Test
+  public void testReadFile() throws IOException {
+    File file = File.createTempFile("tokenizer", ".txt");
+    file.deleteOnExit();
+    StringBuilder longCell = new StringBuilder();
+    for (int i=0; i<CSVTokenizer.DEFAULT_BUFFER_SIZE+10; i++) {
+      longCell.append((char)('a'+(i%26)));
+    }
+    Writer w = new FileWriter(file);
+    w.write("ID\tName\tValue\r\n");
+    for (int i=0; i<2000; i++) {
+      w.write(i + "\t\"Gene " + i + "\"\t" + (i*0.5) + (i%3==0 ? "\r\n" : "\n"));
+      if (i==1000) {
+        w.write("1000\t" + longCell + "\t1\n\n");
+      }
+    }
+    w.write("2000\tlast\t-7");
+    w.close();
+    
+    CSVReader expected = new CSVReader(file.getPath());
+    CSVReader actual = new CSVReader(file.getPath());
+    expected.setNull(2);
+    actual.setNull(2);
+    String[] cells = new String[3];
+    String[] line;
+    int lines = 0;
+    while ((line = expected.getNextLine())!=null) {
+      assertEquals(line.length, actual.getNextLine(cells));
+      assertArrayEquals("line " + lines, line, Arrays.copyOf(cells, line.length));
+      lines++;
+    }
+    assertEquals(-1, actual.getNextLine(cells));
+    assertEquals(2002, lines);
+    assertArrayEquals(new String[] {"ID", "Name", "Value"}, actual.getHeader());
+    
+    // Cell access without strings
+    actual.open();
+    CSVTokenizer t = actual.nextTokenizedLine();
+    assertEquals(0, t.getInt(0));
+    assertTrue(t.equals(1, "Gene 0"));
+    assertEquals("Gene 0", t.getView(1).toString());
+    assertNull(t.get(2));
+    
+    // Mixing both methods
+    assertArrayEquals(new String[] {"1", "Gene 1", null}, actual.getNextLine());
+    assertEquals(2, actual.nextTokenizedLine().getLong(0));
+    actual.close();
+  }
+  
+}
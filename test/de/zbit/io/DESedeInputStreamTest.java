@@ -0,0 +1,85 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.io;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @version $Rev$
+ */
+public class DESedeInputStreamTest {
+  
+  /**
+   * Sizes around block and chunk boundaries.
+   */
+  private static final int[] SIZES = new int[] {0, 1, 7, 8, 9, DESedeInputStream.CHUNK_SIZE-1,
+    DESedeInputStream.CHUNK_SIZE, DESedeInputStream.CHUNK_SIZE+8, 3*DESedeInputStream.CHUNK_SIZE+5};
+  
+  /**
+   * Data, encrypted with {@link ZIPUtils#enCrypt(InputStream, java.io.OutputStream)},
+   * must be decrypted to the original data, with one and multiple threads.
+   * @throws IOException
+   */
+  @Test
+  public void testRoundTrip() throws IOException {
+    Random r = new Random(1);
+    for (int size : SIZES) {
+      byte[] data = new byte[size];
+      r.nextBytes(data);
+      ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+      ZIPUtils.enCrypt(new ByteArrayInputStream(data), encrypted);
+      
+      for (int threads : new int[] {1, 4}) {
+        InputStream in = new DESedeInputStream(new ByteArrayInputStream(encrypted.toByteArray()), threads);
+        assertArrayEquals("size " + size, data, readAll(in));
+      }
+      ByteArrayOutputStream decrypted = (ByteArrayOutputStream) ZIPUtils.deCryptStream(
+        new ByteArrayInputStream(encrypted.toByteArray()));
+      assertArrayEquals(data, decrypted.toByteArray());
+    }
+  }
+  
+  /**
+   * @param in
+   * @return all bytes of {@code in}, read with small and odd buffers.
+   * @throws IOException
+   */
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[1000];
+    int b;
+    while ((b = in.read())>=0) {
+      out.write(b);
+      int n = in.read(buf);
+      if (n<0) {
+        break;
+      }
+      out.write(buf, 0, n);
+    }
+    in.close();
+    return out.toByteArray();
+  }
+  
+}
@@ -0,0 +1,120 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.io.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ParallelLineReader}.
+ * @version $Rev$
+ */
+public class ParallelLineReaderTest {
+  
+  File file;
+  
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("lines", ".txt");
+    file.deleteOnExit();
+    PrintWriter w = new PrintWriter(file);
+    w.println("Name\tValue");
+    for (int i=0; i<1000; i++) {
+      w.println("name" + i + "\t" + i);
+    }
+    w.close();
+  }
+  
+  /**
+   * @param threads
+   * @return an opened reader for {@link #file}.
+   * @throws IOException
+   */
+  private ParallelLineReader open(int threads) throws IOException {
+    CSVReader r = new CSVReader(file.getPath());
+    r.setSeparatorChar('\t');
+    r.setContainsHeaders(true);
+    r.open();
+    return new ParallelLineReader(r, threads, 10);
+  }
+  
+  /**
+   * Lines must be returned in the order of the file.
+   * @throws IOException
+   */
+  @Test
+  public void testGetNextLine() throws IOException {
+    ParallelLineReader lines = open(4);
+    for (int i=0; i<1000; i++) {
+      assertEquals("name" + i, lines.getNextLine()[0]);
+    }
+    assertNull(lines.getNextLine());
+    lines.close();
+  }
+  
+  /**
+   * Chunks must be converted on the workers and merged in file order,
+   * with and without worker threads.
+   * @throws IOException
+   */
+  @Test
+  public void testReadAll() throws IOException {
+    for (int threads : new int[] {1, 4}) {
+      final List<Integer> merged = new ArrayList<Integer>();
+      final List<String> workers = new ArrayList<String>();
+      ParallelLineReader lines = open(threads);
+      lines.readAll(new ParallelLineReader.ChunkHandler<int[]>() {
+        public int[] process(String[][] chunk) {
+          synchronized (workers) {
+            workers.add(Thread.currentThread().getName());
+          }
+          int[] ret = new int[chunk.length];
+          for (int i=0; i<chunk.length; i++) {
+            ret[i] = Integer.parseInt(chunk[i][1]);
+          }
+          return ret;
+        }
+        public void merge(int[] result) {
+          for (int value : result) {
+            merged.add(value);
+          }
+        }
+      });
+      lines.close();
+      
+      assertEquals(1000, merged.size());
+      for (int i=0; i<1000; i++) {
+        assertEquals(i, merged.get(i).intValue());
+      }
+      String caller = Thread.currentThread().getName();
+      for (String worker : workers) {
+        assertTrue((threads>1) != worker.equals(caller));
+      }
+    }
+  }
+  
+}
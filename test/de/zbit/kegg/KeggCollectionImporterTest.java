@@ -0,0 +1,140 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.kegg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.zbit.kegg.api.KeggInfos;
+import de.zbit.kegg.api.cache.KeggInfoManagement;
+import de.zbit.kegg.parser.KeggStreamParser;
+import de.zbit.kegg.parser.pathway.Pathway;
+import de.zbit.util.progressbar.AbstractProgressBar;
+
+/**
+ * Tests the {@link KeggCollectionImporter} without accessing the Kegg API.
+ * 
+ * @version $Rev$
+ */
+public class KeggCollectionImporterTest {
+  
+  private static final String SAMPLE = "files/kgmlSample.xml";
+  
+  /**
+   * Records all fetched ids and answers with empty information.
+   */
+  @SuppressWarnings("serial")
+  private static class RecordingManager extends KeggInfoManagement {
+    final List<String> fetched = new ArrayList<String>();
+    int maxBatch = 0;
+    
+    @Override
+    protected KeggInfos fetchInformation(String id) {
+      return fetchMultipleInformations(new String[] {id}, null)[0];
+    }
+    
+    @Override
+    protected KeggInfos[] fetchMultipleInformations(String[] ids, AbstractProgressBar progress) {
+      KeggInfos[] ret = new KeggInfos[ids.length];
+      synchronized (fetched) {
+        maxBatch = Math.max(maxBatch, ids.length);
+        for (int i=0; i<ids.length; i++) {
+          fetched.add(ids[i]);
+          ret[i] = new KeggInfos(ids[i], "ENTRY       " + ids[i] + "\n///");
+        }
+      }
+      return ret;
+    }
+  }
+  
+  /**
+   * Each id, that is required by any pathway, must be fetched at most
+   * once and in batches of at most {@link KeggInfoManagement#getBatchSize()}.
+   * @throws Exception
+   */
+  @Test
+  public void testSharedPrefetch() throws Exception {
+    List<Pathway> pathways = new ArrayList<Pathway>();
+    for (int i=0; i<3; i++) {
+      pathways.addAll(KeggStreamParser.parse(SAMPLE));
+    }
+    Set<String> expected = new HashSet<String>();
+    for (Pathway p : pathways) {
+      KeggTools.getPreFetchIDs(p, expected);
+    }
+    
+    RecordingManager manager = new RecordingManager();
+    KeggCollectionImporter importer = new KeggCollectionImporter(manager);
+    importer.process(pathways, null);
+    Set<String> fetched = new HashSet<String>(manager.fetched);
+    assertEquals(fetched.size(), manager.fetched.size());
+    assertTrue(fetched.containsAll(expected));
+    assertTrue(manager.maxBatch<=manager.getBatchSize());
+    
+    // Everything is cached now
+    int fetches = manager.fetched.size();
+    importer.process(pathways, null);
+    assertEquals(fetches, manager.fetched.size());
+  }
+  
+  /**
+   * The result must be equal to processing each pathway on its own.
+   * @throws Exception
+   */
+  @Test
+  public void testAutocompleteReactions() throws Exception {
+    List<Pathway> pathways = KeggStreamParser.parse(SAMPLE);
+    List<Pathway> single = KeggStreamParser.parse(SAMPLE);
+    
+    KeggCollectionImporter importer = new KeggCollectionImporter(new RecordingManager());
+    importer.setAutocompleteReactions(true, false);
+    importer.process(pathways, null);
+    
+    KeggInfoManagement manager = new RecordingManager();
+    for (Pathway p : single) {
+      KeggTools.preFetchInformation(p, manager, true, null);
+      KeggTools.autocompleteReactions(p, manager, false);
+    }
+    
+    assertEquals(single.size(), pathways.size());
+    for (int i=0; i<single.size(); i++) {
+      assertEquals(names(single.get(i).getReactions()), names(pathways.get(i).getReactions()));
+      assertEquals(single.get(i).getEntries().size(), pathways.get(i).getEntries().size());
+    }
+  }
+  
+  /**
+   * @param reactions
+   * @return the names of all reactions.
+   */
+  private static List<String> names(Collection<de.zbit.kegg.parser.pathway.Reaction> reactions) {
+    List<String> ret = new ArrayList<String>();
+    for (de.zbit.kegg.parser.pathway.Reaction r : reactions) {
+      ret.add(r.getName());
+    }
+    return ret;
+  }
+  
+}
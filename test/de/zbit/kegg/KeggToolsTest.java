@@ -0,0 +1,130 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.kegg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.zbit.kegg.api.KeggInfos;
+import de.zbit.kegg.api.cache.KeggInfoManagement;
+import de.zbit.kegg.parser.pathway.Entry;
+import de.zbit.kegg.parser.pathway.EntryType;
+import de.zbit.kegg.parser.pathway.Pathway;
+import de.zbit.kegg.parser.pathway.ReactionComponent;
+import de.zbit.util.progressbar.AbstractProgressBar;
+
+/**
+ * Tests, that single lookups of {@link KeggTools} and {@link Pathway}
+ * are combined to batches.
+ * @version $Rev$
+ */
+public class KeggToolsTest {
+  
+  /**
+   * Answers every id without querying KEGG and counts the requests.
+   */
+  private static class CountingManager extends KeggInfoManagement {
+    private static final long serialVersionUID = 1L;
+    
+    int singleFetches = 0;
+    int batchFetches = 0;
+    
+    public CountingManager() {
+      super(100, null);
+    }
+    
+    @Override
+    protected synchronized KeggInfos fetchInformation(String id) {
+      singleFetches++;
+      return new KeggInfos(id, "ENTRY       " + id);
+    }
+    
+    @Override
+    protected synchronized KeggInfos[] fetchMultipleInformations(String[] ids, AbstractProgressBar progress) {
+      batchFetches++;
+      KeggInfos[] ret = new KeggInfos[ids.length];
+      for (int i=0; i<ids.length; i++) {
+        ret[i] = new KeggInfos(ids[i], "ENTRY       " + ids[i]);
+      }
+      return ret;
+    }
+  }
+  
+  CountingManager manager;
+  
+  @Before
+  public void setUp() {
+    manager = new CountingManager();
+    // Long window, so only a full batch is dispatched during the test
+    manager.setBatching(10000, 3);
+  }
+  
+  /**
+   * All ids of an entry must be fetched with one request.
+   */
+  @Test
+  public void testGetKeggEnzymeNames() {
+    Pathway p = new Pathway("path:hsa00010", "hsa", 10);
+    Entry entry = new Entry(p, 1, "ec:1.1.1.1 ec:2.2.2.2 ec:3.3.3.3", EntryType.enzyme);
+    Collection<String> ecCodes = KeggTools.getKeggEnzymeNames(entry, manager);
+    assertEquals(3, ecCodes.size());
+    assertTrue(ecCodes.contains("2.2.2.2"));
+    assertEquals(1, manager.batchFetches);
+    assertEquals(0, manager.singleFetches);
+  }
+  
+  /**
+   * Concurrent synonym lookups for reaction components must share a batch.
+   * @throws InterruptedException
+   */
+  @Test
+  public void testGetEntryForReactionComponent() throws InterruptedException {
+    final Pathway p = new Pathway("path:hsa00010", "hsa", 10);
+    final List<Entry> found = new ArrayList<Entry>();
+    Thread[] threads = new Thread[3];
+    for (int i=0; i<threads.length; i++) {
+      final ReactionComponent rc = new ReactionComponent("cpd:C0000" + i);
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          Entry e = p.getEntryForReactionComponent(rc, true, manager);
+          synchronized (found) {
+            found.add(e);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(3, found.size());
+    assertEquals(1, manager.batchFetches);
+    assertEquals(0, manager.singleFetches);
+    assertNotNull(manager.getInformation("cpd:C00001"));
+    assertEquals(1, manager.batchFetches);
+  }
+  
+}
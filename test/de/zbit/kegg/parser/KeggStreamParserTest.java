@@ -0,0 +1,176 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.kegg.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import de.zbit.kegg.parser.pathway.Entry;
+import de.zbit.kegg.parser.pathway.Pathway;
+import de.zbit.kegg.parser.pathway.Reaction;
+import de.zbit.kegg.parser.pathway.Relation;
+import de.zbit.kegg.parser.pathway.ext.EntryExtended;
+
+/**
+ * Compares the {@link KeggStreamParser} with the {@link KeggParser}.
+ * 
+ * @version $Rev$
+ */
+public class KeggStreamParserTest {
+  
+  private static final String SAMPLE = "files/kgmlSample.xml";
+  
+  private static final String DOCUMENT = "<?xml version=\"1.0\"?>\n" +
+    "<!DOCTYPE pathway SYSTEM \"http://www.kegg.jp/kegg/xml/KGML_v0.7.1_.dtd\">\n" +
+    "<!-- Creation date: Feb 4, 2010 17:25:23 +0900 (JST) -->\n" +
+    "<pathway name=\"path:hsa00010\" org=\"hsa\" number=\"00010\" title=\"Glycolysis &amp; Gluconeogenesis\">\n" +
+    "  <entry id=\"1\" name=\"hsa:3101 hsa:3098\" type=\"gene\" reaction=\"rn:R01786\" entrezgene=\"3101\" compartment=\"cytoplasm\">\n" +
+    "    <graphics name=\"HK3\" type=\"rectangle\" x=\"10\" y=\"20\" width=\"46\" height=\"17\"/>\n" +
+    "    <graphics name=\"HK3\" type=\"line\" coords=\"1,2,3,4\"/>\n" +
+    "  </entry>\n" +
+    "  <entry id=\"2\" name=\"cpd:C00031\" type=\"compound\"><graphics name=\"C00031\" type=\"circle\"/></entry>\n" +
+    "  <entry id=\"3\" name=\"cpd:C00668\" type=\"compound\"/>\n" +
+    "  <entry id=\"4\" name=\"undefined\" type=\"group\">\n" +
+    "    <component id=\"1\"/>\n" +
+    "    <component id=\"2\"/>\n" +
+    "  </entry>\n" +
+    "  <relation entry1=\"1\" entry2=\"2\" type=\"ECrel\">\n" +
+    "    <subtype name=\"compound\" value=\"3\"/>\n" +
+    "  </relation>\n" +
+    "  <reaction id=\"1\" name=\"rn:R01786\" type=\"irreversible\">\n" +
+    "    <substrate id=\"2\" name=\"cpd:C00031\">\n" +
+    "      <alt name=\"cpd:C00267\"/>\n" +
+    "    </substrate>\n" +
+    "    <product id=\"3\" name=\"cpd:C00668\"/>\n" +
+    "  </reaction>\n" +
+    "</pathway>\n";
+  
+  /**
+   * Parses the sample file with both parsers.
+   * @throws Exception
+   */
+  @Test
+  public void testSample() throws Exception {
+    KeggParser.offlineVersion = true;
+    assertPathwaysEqual(KeggParser.parse(SAMPLE), KeggStreamParser.parse(SAMPLE));
+  }
+  
+  /**
+   * Parses a document with all elements and attributes.
+   * @throws Exception
+   */
+  @Test
+  public void testDocument() throws Exception {
+    KeggParser.offlineVersion = true;
+    List<Pathway> expected = KeggParser.parse(new InputSource(new StringReader(DOCUMENT)));
+    List<Pathway> actual = KeggStreamParser.parse(new StringReader(DOCUMENT));
+    assertPathwaysEqual(expected, actual);
+    
+    Pathway p = actual.get(0);
+    assertEquals("Glycolysis & Gluconeogenesis", p.getTitle());
+    assertEquals("Creation date: Feb 4, 2010 17:25:23 +0900 (JST)", p.getComment());
+    assertEquals(0.71, p.getVersion(), 1E-9);
+    assertTrue(p.getEntryForId(1) instanceof EntryExtended);
+    assertEquals(1, p.getEntryForId(1).getMoreGraphics().size());
+    assertSame(p.getEntryForId(4), p.getEntryForId(1).getParentNode());
+    Relation relation = p.getRelations().get(0);
+    assertEquals(1, relation.getSubtypes().size());
+    Reaction reaction = p.getReactions().get(0);
+    assertEquals("cpd:C00267", reaction.getSubstrates().get(0).getAlt().getName());
+    assertNull(reaction.getSubstrates().get(0).getAlt().getId());
+  }
+  
+  /**
+   * @param expected
+   * @param actual
+   */
+  private static void assertPathwaysEqual(List<Pathway> expected, List<Pathway> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i=0; i<expected.size(); i++) {
+      Pathway e = expected.get(i);
+      Pathway a = actual.get(i);
+      assertEquals(e, a);
+      assertEquals(e.getComment(), a.getComment());
+      assertEquals(e.getVersion(), a.getVersion(), 0);
+      assertEquals(e.getAdditionalText(), a.getAdditionalText());
+      assertEquals(e.getEntries().size(), a.getEntries().size());
+      for (int j=0; j<e.getEntries().size(); j++) {
+        Entry ee = e.getEntries().get(j);
+        Entry ae = a.getEntries().get(j);
+        assertEquals(ee, ae);
+        assertEquals(ee.getClass(), ae.getClass());
+        // Graphics.equals() compares the coords by identity
+        assertEquals(ee.isSetGraphics(), ae.isSetGraphics());
+        if (ee.isSetGraphics()) {
+          assertEquals(ee.getGraphics().getKGMLAttributes(), ae.getGraphics().getKGMLAttributes());
+          assertEquals(ee.getMoreGraphics().size(), ae.getMoreGraphics().size());
+          for (int k=0; k<ee.getMoreGraphics().size(); k++) {
+            assertEquals(ee.getMoreGraphics().get(k).getKGMLAttributes(), ae.getMoreGraphics().get(k).getKGMLAttributes());
+          }
+        }
+        assertEquals(ee.getParentNode(), ae.getParentNode());
+      }
+      assertEquals(e.getRelations(), a.getRelations());
+      assertEquals(e.getReactions(), a.getReactions());
+    }
+  }
+  
+  /**
+   * Documents of KGML version 0.5 contain invalid XML.
+   * @throws Exception
+   */
+  @Test
+  public void testOldVersion() throws Exception {
+    KeggParser.offlineVersion = true;
+    String document = DOCUMENT.replace("KGML_v0.7.1_", "KGML_v0.5_").replace("type=\"group\">", "type=\"group\" link=\"http://x?id=1&keywords=g\">");
+    List<Pathway> pathways = KeggStreamParser.parse(new StringReader(document));
+    assertEquals(0.5, pathways.get(0).getVersion(), 1E-9);
+    assertEquals("http://x?id=1g", pathways.get(0).getEntryForId(4).getLink());
+  }
+  
+  /**
+   * Parses files concurrently.
+   * @throws Exception
+   */
+  @Test
+  public void testParseCollection() throws Exception {
+    File file = File.createTempFile("kgml", ".xml");
+    file.deleteOnExit();
+    FileWriter w = new FileWriter(file);
+    w.write(DOCUMENT);
+    w.close();
+    
+    Map<String, List<Pathway>> pathways = KeggStreamParser.parse(Arrays.asList(SAMPLE, file.getPath(), SAMPLE));
+    assertEquals(2, pathways.size());
+    assertPathwaysEqual(KeggStreamParser.parse(SAMPLE), pathways.get(SAMPLE));
+    assertPathwaysEqual(KeggStreamParser.parse(file.getPath()), pathways.get(file.getPath()));
+    assertTrue(file.delete());
+  }
+  
+}
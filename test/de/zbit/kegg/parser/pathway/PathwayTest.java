@@ -0,0 +1,169 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.kegg.parser.pathway;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the indices of {@link Pathway}.
+ * 
+ * @version $Rev$
+ */
+public class PathwayTest {
+  
+  /**
+   * @param size
+   * @return a pathway with {@code size} gene entries.
+   */
+  private static Pathway createPathway(int size) {
+    Pathway p = new Pathway("path:hsa00010", "hsa", 10);
+    for (int i=1; i<=size; i++) {
+      p.addEntry(new Entry(p, i, "hsa:" + i + " hsa:" + (i+1000), EntryType.gene));
+    }
+    return p;
+  }
+  
+  /**
+   * Removes single entries and collections of entries.
+   */
+  @Test
+  public void testRemoveEntries() {
+    Pathway p = createPathway(100);
+    List<Entry> expected = new ArrayList<Entry>(p.getEntries());
+    List<Entry> toRemove = new ArrayList<Entry>();
+    for (int i=0; i<expected.size(); i+=3) {
+      toRemove.add(expected.get(i));
+    }
+    toRemove.add(expected.get(99));
+    p.removeEntries(toRemove);
+    expected.removeAll(toRemove);
+    assertEquals(expected, p.getEntries());
+    assertEquals(99, p.getMaxEntryId());
+    assertNull(p.getEntryForId(100));
+    assertNull(p.getEntriesForName("hsa:1001"));
+    assertNull(p.getEntriesForName("hsa:1"));
+    assertEquals(1, p.getEntriesForName("hsa:2").size());
+    
+    // Single removals
+    p.removeEntry(p.getEntryForId(99));
+    p.removeEntry(0);
+    expected.remove(expected.size()-1);
+    expected.remove(0);
+    assertEquals(expected, p.getEntries());
+    assertEquals(98, p.getMaxEntryId());
+    
+    // Adding an entry again
+    Entry e = toRemove.get(0);
+    e.setName("hsa:1");
+    p.addEntry(e);
+    p.addEntry(e);
+    expected.add(e);
+    assertEquals(expected, p.getEntries());
+    assertSame(e, p.getEntriesForName("hsa:1").iterator().next());
+  }
+  
+  /**
+   * The entry list is an unmodifiable snapshot, that is not affected by
+   * later removals and is shared until the next modification.
+   */
+  @Test
+  public void testGetEntries() {
+    Pathway p = createPathway(10);
+    List<Entry> entries = p.getEntries();
+    for (Entry e : entries) {
+      if (e.getId()%2==0) {
+        p.removeEntry(e);
+      }
+    }
+    assertEquals(10, entries.size());
+    assertEquals(5, p.getEntries().size());
+    for (Entry e : p.getEntries()) {
+      assertNotNull(e);
+      assertEquals(1, e.getId()%2);
+    }
+    assertSame(p.getEntries(), p.getEntries());
+    try {
+      p.getEntries().clear();
+      fail();
+    } catch (UnsupportedOperationException e) {
+      assertEquals(5, p.getEntries().size());
+    }
+    p.addEntry(new Entry(p, 11, "hsa:11", EntryType.gene));
+    assertEquals(6, p.getEntries().size());
+    assertEquals(11, p.getEntries().get(5).getId());
+  }
+  
+  /**
+   * Changes ids of entries.
+   */
+  @Test
+  public void testMaxEntryId() {
+    Pathway p = createPathway(10);
+    assertEquals(10, p.getMaxEntryId());
+    p.getEntryForId(10).setId(20);
+    assertEquals(20, p.getMaxEntryId());
+    p.getEntryForId(20).setId(5);
+    assertEquals(9, p.getMaxEntryId());
+    p.removeEntries(new ArrayList<Entry>(p.getEntries()));
+    assertEquals(0, p.getMaxEntryId());
+    assertTrue(p.getEntries().isEmpty());
+  }
+  
+  /**
+   * Relations and reactions of entries.
+   */
+  @Test
+  public void testReverseIndices() {
+    Pathway p = createPathway(5);
+    Relation r1 = new Relation(1, 2, RelationType.PPrel);
+    Relation r2 = new Relation(2, 3, RelationType.PPrel, new SubType(SubType.COMPOUND, "4"));
+    p.addRelation(r1);
+    p.addRelation(r2);
+    p.addRelation(new Relation(1, 2, RelationType.PPrel));
+    assertEquals(2, p.getRelations().size());
+    assertEquals(Arrays.asList(r1), new ArrayList<Relation>(p.getRelationsForEntry(p.getEntryForId(1))));
+    assertEquals(Arrays.asList(r1, r2), new ArrayList<Relation>(p.getRelationsForEntry(p.getEntryForId(2))));
+    assertEquals(Arrays.asList(r2), new ArrayList<Relation>(p.getRelationsForEntry(p.getEntryForId(4))));
+    assertTrue(p.getRelationsForEntry(p.getEntryForId(5)).isEmpty());
+    
+    Reaction reaction = new Reaction(p, 1, "rn:R00001", ReactionType.irreversible);
+    reaction.addSubstrate(new ReactionComponent(1, "hsa:1"));
+    reaction.addProduct(new ReactionComponent(0, "HSA:2 HSA:1002"));
+    assertTrue(p.getReactionsForComponent(p.getEntryForId(1)).isEmpty());
+    p.addReaction(reaction);
+    assertEquals(1, p.getReactionsForComponent(p.getEntryForId(1)).size());
+    assertEquals(1, p.getReactionsForComponent(p.getEntryForId(2)).size());
+    assertTrue(p.getReactionsForComponent(p.getEntryForId(3)).isEmpty());
+    reaction.addProduct(new ReactionComponent(3, "cpd:C00001"));
+    assertEquals(1, p.getReactionsForComponent(p.getEntryForId(3)).size());
+    reaction.clearReactants();
+    assertTrue(p.getReactionsForComponent(p.getEntryForId(1)).isEmpty());
+    assertTrue(p.getReactionsForComponent(p.getEntryForId(3)).isEmpty());
+  }
+  
+}
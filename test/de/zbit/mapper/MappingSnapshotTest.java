@@ -0,0 +1,240 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.mapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.zbit.io.BinaryCacheFile;
+import de.zbit.io.csv.CSVReader;
+
+/**
+ * Tests writing and reading of {@link MappingSnapshot}s by the
+ * {@link AbstractMapper}.
+ * 
+ * @version $Rev$
+ */
+public class MappingSnapshotTest {
+  
+  /**
+   * Maps symbols in the first column to ids in the second one.
+   */
+  public static class TestMapper extends AbstractMapper<String, Integer> {
+    private static final long serialVersionUID = 1L;
+    
+    private String file;
+    
+    transient int parsedLines = 0;
+    
+    public TestMapper(String file) throws IOException {
+      super(String.class, Integer.class);
+      this.file = file;
+      init();
+    }
+    
+    @Override
+    public String getRemoteURL() {
+      return null;
+    }
+    
+    @Override
+    public String getLocalFile() {
+      return file;
+    }
+    
+    @Override
+    public String getMappingName() {
+      return "TestSymbol2ID";
+    }
+    
+    @Override
+    public int getTargetColumn(CSVReader r) {
+      return 1;
+    }
+    
+    @Override
+    public int getSourceColumn(CSVReader r) {
+      return 0;
+    }
+    
+    @Override
+    protected boolean skipLine(String[] line) {
+      parsedLines++;
+      return false;
+    }
+  }
+  
+  File source;
+  
+  @Before
+  public void setUp() throws IOException {
+    File dir = File.createTempFile("snapshot", "");
+    dir.delete();
+    dir.mkdir();
+    dir.deleteOnExit();
+    source = new File(dir, "symbols.txt");
+    source.deleteOnExit();
+    writeSource(1000);
+    System.setProperty(BinaryCacheFile.CACHE_DIR_PROPERTY, dir.getPath());
+  }
+  
+  @After
+  public void tearDown() {
+    System.clearProperty(BinaryCacheFile.CACHE_DIR_PROPERTY);
+  }
+  
+  /**
+   * @param lines
+   * @throws IOException
+   */
+  private void writeSource(int lines) throws IOException {
+    PrintWriter w = new PrintWriter(source);
+    w.println("Symbol\tID");
+    for (int i=0; i<lines; i++) {
+      w.println("SYM" + i + "\t" + (i*7));
+    }
+    w.close();
+  }
+  
+  /**
+   * The second mapper must read the snapshot, written by the first one.
+   * @throws Exception
+   */
+  @Test
+  public void testWarmStart() throws Exception {
+    TestMapper cold = new TestMapper(source.getPath());
+    assertEquals(1000, cold.parsedLines);
+    File[] snapshots = source.getParentFile().listFiles();
+    assertEquals(2, snapshots.length);
+    for (File f : snapshots) {
+      f.deleteOnExit();
+    }
+    
+    TestMapper warm = new TestMapper(source.getPath());
+    assertEquals(0, warm.parsedLines);
+    assertEquals(cold.getMapping(), warm.getMapping());
+    assertEquals(Integer.valueOf(6993), warm.map("SYM999"));
+    assertNull(warm.map("unknown"));
+  }
+  
+  /**
+   * Changed mapping files must be parsed again.
+   * @throws Exception
+   */
+  @Test
+  public void testInvalidation() throws Exception {
+    new TestMapper(source.getPath());
+    writeSource(10);
+    source.setLastModified(System.currentTimeMillis() + 2000);
+    TestMapper mapper = new TestMapper(source.getPath());
+    assertEquals(10, mapper.parsedLines);
+    assertEquals(10, mapper.size());
+    assertFalse(mapper.getMapping().containsKey("SYM999"));
+    assertTrue(mapper.getMapping().containsKey("SYM9"));
+  }
+  
+  /**
+   * Corrupt snapshots must be ignored.
+   * @throws Exception
+   */
+  @Test
+  public void testCorruptSnapshot() throws Exception {
+    new TestMapper(source.getPath());
+    for (File f : source.getParentFile().listFiles()) {
+      if (!f.equals(source)) {
+        f.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+          raf.setLength(raf.length()/2);
+        } finally {
+          raf.close();
+        }
+      }
+    }
+    TestMapper mapper = new TestMapper(source.getPath());
+    assertEquals(1000, mapper.parsedLines);
+    assertEquals(1000, mapper.size());
+    assertEquals(Integer.valueOf(6993), mapper.map("SYM999"));
+  }
+  
+  /**
+   * Values are decoded on access. Changes, including elements added to
+   * decoded collections, must be kept.
+   * @throws Exception
+   */
+  @Test
+  public void testLazyMapping() throws Exception {
+    Map<String, Set<String>> expected = new HashMap<String, Set<String>>();
+    for (int i=0; i<100; i++) {
+      expected.put("key" + i, new HashSet<String>(Arrays.asList("a" + i, "b" + (i%10))));
+    }
+    File snapshot = new File(source.getParentFile(), "lazy" + MappingSnapshot.SUFFIX);
+    snapshot.deleteOnExit();
+    assertTrue(MappingSnapshot.write(snapshot, "key", new File[] {source}, expected, null));
+    Map<Object, Object> lazy = MappingSnapshot.read(snapshot, "key", new File[] {source});
+    assertEquals(expected, lazy);
+    
+    ((Set<?>) lazy.get("key1")).clear();
+    expected.get("key1").clear();
+    lazy.put("new", new HashSet<String>());
+    expected.put("new", new HashSet<String>());
+    lazy.remove("key2");
+    expected.remove("key2");
+    assertNull(lazy.get("key2"));
+    assertFalse(lazy.containsKey("key2"));
+    assertEquals(100, lazy.size());
+    assertEquals(expected, lazy);
+    assertEquals(expected, new HashMap<Object, Object>(lazy));
+  }
+  
+  /**
+   * Snapshots of the same mapper, whose source file has been deleted, must
+   * be deleted, when a new snapshot is written.
+   * @throws Exception
+   */
+  @Test
+  public void testStaleSnapshots() throws Exception {
+    new TestMapper(source.getPath());
+    File other = new File(source.getParentFile(), "other.txt");
+    other.deleteOnExit();
+    assertTrue(source.renameTo(other));
+    new TestMapper(other.getPath());
+    File[] files = source.getParentFile().listFiles();
+    assertEquals(2, files.length);
+    for (File f : files) {
+      f.deleteOnExit();
+      assertTrue(f.equals(other) || f.getName().startsWith("TestSymbol2ID_"));
+    }
+  }
+  
+}
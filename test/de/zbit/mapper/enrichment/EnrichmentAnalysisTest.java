@@ -0,0 +1,202 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.mapper.enrichment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.zbit.math.MathUtils;
+
+/**
+ * Compares the {@link EnrichmentAnalysis} with a straightforward
+ * implementation.
+ * 
+ * @version $Rev$
+ */
+public class EnrichmentAnalysisTest {
+  
+  /**
+   * Random genes in random pathways, some genes occur in many pathways.
+   */
+  private static Map<String, Collection<String>> createMapping(Random r, int genes, int pathways) {
+    Map<String, Collection<String>> mapping = new HashMap<String, Collection<String>>();
+    for (int g=0; g<genes; g++) {
+      List<String> list = new ArrayList<String>();
+      int n = r.nextInt(10)==0 ? 20 : 1+r.nextInt(3);
+      for (int i=0; i<n; i++) {
+        list.add("path:" + r.nextInt(pathways));
+      }
+      mapping.put("gene" + g, list);
+    }
+    return mapping;
+  }
+  
+  @Test
+  public void testAnalyze() throws InterruptedException {
+    Random r = new Random(42);
+    Map<String, Collection<String>> mapping = createMapping(r, 3000, 700);
+    EnrichmentAnalysis<String, String> analysis = new EnrichmentAnalysis<String, String>(mapping);
+    assertEquals(mapping.size(), analysis.getGenomeSize());
+    
+    // Naive pathway members
+    Map<String, Set<String>> members = new HashMap<String, Set<String>>();
+    for (Map.Entry<String, Collection<String>> e : mapping.entrySet()) {
+      for (String p : e.getValue()) {
+        Set<String> set = members.get(p);
+        if (set==null) {
+          set = new HashSet<String>();
+          members.put(p, set);
+        }
+        set.add(e.getKey());
+      }
+    }
+    assertEquals(members.size(), analysis.getEnrichmentClasses().size());
+    
+    List<List<String>> lists = new ArrayList<List<String>>();
+    for (int l=0; l<6; l++) {
+      List<String> list = new ArrayList<String>();
+      for (int i=0; i<50+l*100; i++) {
+        list.add("gene" + r.nextInt(3500));
+      }
+      lists.add(list);
+    }
+    List<List<EnrichmentAnalysis.Result<String>>> results = analysis.analyze(lists);
+    assertEquals(lists.size(), results.size());
+    for (int l=0; l<lists.size(); l++) {
+      Set<String> known = new HashSet<String>(lists.get(l));
+      known.retainAll(mapping.keySet());
+      int tested = 0;
+      for (Set<String> m : members.values()) {
+        if (!java.util.Collections.disjoint(m, known)) {
+          tested++;
+        }
+      }
+      List<EnrichmentAnalysis.Result<String>> list = results.get(l);
+      assertEquals(tested, list.size());
+      double last = 0;
+      for (EnrichmentAnalysis.Result<String> result : list) {
+        Set<String> overlap = new HashSet<String>(members.get(result.getEnrichmentClass()));
+        overlap.retainAll(known);
+        assertEquals(overlap.size(), result.getOverlap());
+        assertEquals(members.get(result.getEnrichmentClass()).size(), result.getClassSize());
+        assertEquals(known.size(), result.getListSize());
+        assertEquals(MathUtils.enrichment_significance(mapping.size(), known.size(),
+          result.getClassSize(), result.getOverlap()), result.getPValue(), 1E-12);
+        assertTrue(result.getPValue()>=last);
+        assertTrue(result.getQValue()>=result.getPValue());
+        last = result.getPValue();
+      }
+    }
+  }
+  
+  /**
+   * Random lists are a null model of the hypergeometric test. Hence,
+   * empirical p-values must agree with hypergeometric p-values.
+   */
+  @Test
+  public void testPermutation() throws InterruptedException {
+    Random r = new Random(7);
+    Map<String, Collection<String>> mapping = createMapping(r, 1000, 100);
+    EnrichmentAnalysis<String, String> analysis = new EnrichmentAnalysis<String, String>(mapping);
+    // Enrich the list with genes of one pathway
+    List<String> list = new ArrayList<String>();
+    for (Map.Entry<String, Collection<String>> e : mapping.entrySet()) {
+      if (e.getValue().contains("path:1") || r.nextInt(10)==0) {
+        list.add(e.getKey());
+      }
+    }
+    List<EnrichmentAnalysis.Result<String>> expected = analysis.analyze(list);
+    Map<String, Double> pValues = new HashMap<String, Double>();
+    for (EnrichmentAnalysis.Result<String> result : expected) {
+      pValues.put(result.getEnrichmentClass(), result.getPValue());
+    }
+    
+    EnrichmentPermutationTest<String, String> test = new EnrichmentPermutationTest<String, String>(analysis);
+    test.setPermutations(5000);
+    test.setSeed(1);
+    List<EnrichmentAnalysis.Result<String>> results = test.analyze(list);
+    assertEquals(expected.size(), results.size());
+    assertEquals("path:1", results.get(0).getEnrichmentClass());
+    assertEquals(5000, results.get(0).getPermutations());
+    assertEquals(1d/5001, results.get(0).getPValue(), 1E-15);
+    int stopped = 0;
+    for (EnrichmentAnalysis.Result<String> result : results) {
+      double p = pValues.get(result.getEnrichmentClass());
+      int n = result.getPermutations();
+      if (n<5000) {
+        stopped++;
+        assertTrue(p>0.001);
+      } else {
+        assertEquals(p, result.getPValue(), 5*Math.sqrt(p*(1-p)/n) + 1d/n);
+      }
+    }
+    assertTrue(stopped>0);
+    
+    // Reproducible
+    List<EnrichmentAnalysis.Result<String>> again = test.analyze(list);
+    for (int i=0; i<results.size(); i++) {
+      assertEquals(results.get(i).getEnrichmentClass(), again.get(i).getEnrichmentClass());
+      assertEquals(results.get(i).getPValue(), again.get(i).getPValue(), 0);
+    }
+    
+    // Lists larger than half of the genome
+    list = new ArrayList<String>(mapping.keySet()).subList(0, 800);
+    results = test.analyze(list);
+    assertEquals(analysis.analyze(list).size(), results.size());
+    assertTrue(results.get(results.size()-1).getPValue()>0.5);
+  }
+  
+  @Test
+  public void testCorrection() {
+    double[] p = new double[] {0.04, 0.01, 0.03, 0.5};
+    assertArrayEquals(new double[] {0.04, 0.01, 0.03, 0.5},
+      EnrichmentAnalysis.correct(p, EnrichmentAnalysis.Correction.NONE), 1E-15);
+    assertArrayEquals(new double[] {0.16, 0.04, 0.12, 1},
+      EnrichmentAnalysis.correct(p, EnrichmentAnalysis.Correction.BONFERRONI), 1E-15);
+    // 0.01*4/1, 0.03*4/2, 0.04*4/3, 0.5*4/4
+    assertArrayEquals(new double[] {0.04*4/3, 0.04, 0.04*4/3, 0.5},
+      EnrichmentAnalysis.correct(p, EnrichmentAnalysis.Correction.BENJAMINI_HOCHBERG), 1E-15);
+  }
+  
+  @Test
+  public void testCompressedBitSet() {
+    int[] elements = new int[] {3, 64, 65, 1000, 100000};
+    CompressedBitSet set = new CompressedBitSet(elements, elements.length);
+    assertEquals(5, set.cardinality());
+    assertEquals(4, set.getNumberOfWords());
+    for (int i=0; i<100100; i++) {
+      assertEquals(Arrays.binarySearch(elements, i)>=0, set.get(i));
+    }
+    long[] bits = CompressedBitSet.toWords(new int[] {3, 4, 65, 100000}, 4, 100001);
+    assertEquals(3, set.intersectionCount(bits));
+    assertEquals(1, set.intersectionCount(CompressedBitSet.toWords(new int[] {3}, 1, 10)));
+  }
+  
+}
@@ -0,0 +1,132 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.math;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import org.junit.Test;
+
+/**
+ * Validates the {@link Hypergeometric} distribution against the
+ * {@link java.math.BigInteger} based implementation in {@link MathUtils}.
+ * 
+ * @version $Rev$
+ */
+public class HypergeometricTest {
+  
+  /**
+   * Compares all p-values of small urns with
+   * {@link MathUtils#enrichment_significance(int, int, int, int)}. If
+   * {@code n+t>m}, small overlaps are impossible, but
+   * {@link MathUtils#binomialCoefficient(int, int)} is not zero for
+   * {@code k>n}. Hence, these urns are compared with an exact sum.
+   */
+  @Test
+  public void testEnrichmentSignificance() {
+    for (int m : new int[] {1, 2, 7, 20, 64, 150}) {
+      for (int n=0; n<=m; n+=Math.max(1, m/9)) {
+        for (int t=0; t<=m; t+=Math.max(1, m/7)) {
+          for (int r=0; r<=Math.min(n, t)+1; r++) {
+            double expected = n+t<=m ? MathUtils.enrichment_significance(m, n, t, r)
+                : exactUpperTail(m, t, n, Math.max(r, n+t-m));
+            double actual = Hypergeometric.enrichmentSignificance(m, n, t, r);
+            assertEquals(String.format("m=%s, n=%s, t=%s, r=%s", m, n, t, r),
+              expected, actual, Hypergeometric.TOLERANCE);
+          }
+        }
+      }
+    }
+  }
+  
+  /**
+   * Compares p-values of typical gene set enrichments in a genome with
+   * {@link MathUtils#enrichment_significance(int, int, int, int)}.
+   */
+  @Test
+  public void testLargeUrns() {
+    int[][] cases = new int[][] {{3000, 50, 120}, {3000, 900, 40}, {20000, 200, 150},
+        {20000, 2000, 500}, {20000, 60, 15}};
+    for (int[] c : cases) {
+      for (int r=0; r<=Math.min(c[1], c[2]); r+=1+r) {
+        assertEquals(String.format("m=%s, n=%s, t=%s, r=%s", c[0], c[1], c[2], r),
+          MathUtils.enrichment_significance(c[0], c[1], c[2], r),
+          Hypergeometric.enrichmentSignificance(c[0], c[1], c[2], r), Hypergeometric.TOLERANCE);
+      }
+    }
+  }
+  
+  /**
+   * Very small p-values must have full relative precision.
+   */
+  @Test
+  public void testSmallPValues() {
+    int[][] cases = new int[][] {{20000, 300, 150, 40}, {20000, 1000, 500, 120},
+        {5000, 50, 50, 50}, {30000, 2000, 40, 30}};
+    for (int[] c : cases) {
+      double expected = exactUpperTail(c[0], c[2], c[1], c[3]);
+      double actual = Hypergeometric.enrichmentSignificance(c[0], c[1], c[2], c[3]);
+      assertTrue(expected>0 && expected<1E-20);
+      assertEquals(1, actual/expected, 1E-9);
+    }
+  }
+  
+  /**
+   * Probabilities must match {@link MathUtils#hypergeometric_distribution(int, int, int, int)}.
+   */
+  @Test
+  public void testProbability() {
+    for (int k=0; k<=30; k++) {
+      assertEquals(MathUtils.hypergeometric_distribution(1000, 80, 30, k),
+        Hypergeometric.probability(1000, 80, 30, k), Hypergeometric.TOLERANCE);
+    }
+    assertEquals(0, Hypergeometric.probability(10, 2, 5, 3), 0);
+  }
+  
+  /**
+   * The table and Stirling's series must be consistent.
+   */
+  @Test
+  public void testLogFactorial() {
+    assertEquals(0, Hypergeometric.logFactorial(0), 0);
+    assertEquals(Math.log(3628800), Hypergeometric.logFactorial(10), 1E-12);
+    int n = Hypergeometric.MAX_TABLE_SIZE;
+    double expected = Hypergeometric.logFactorial(n-1) + Math.log(n);
+    assertEquals(1, Hypergeometric.logFactorial(n)/expected, 1E-14);
+  }
+  
+  /**
+   * @param N
+   * @param m
+   * @param n
+   * @param k
+   * @return {@code P(X >= k)} with 40 significant digits.
+   */
+  private static double exactUpperTail(int N, int m, int n, int k) {
+    MathContext mc = new MathContext(40);
+    BigDecimal sum = BigDecimal.ZERO;
+    for (int x=k; x<=Math.min(n, m); x++) {
+      sum = sum.add(new BigDecimal(MathUtils.binomialCoefficient(m, x).multiply(
+        MathUtils.binomialCoefficient(N-m, n-x))));
+    }
+    return sum.divide(new BigDecimal(MathUtils.binomialCoefficient(N, n)), mc).doubleValue();
+  }
+  
+}
@@ -0,0 +1,78 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.junit.Test;
+
+/**
+ * Tests reading a UniDomInt file into a {@link UniDomIntNetwork}.
+ * 
+ * @version $Rev$
+ */
+public class UniDomIntNetworkTest {
+  
+  /**
+   * @param domain1
+   * @param domain2
+   * @param value of all flag columns
+   * @return a line of a UniDomInt file.
+   */
+  private static String line(String domain1, String domain2, int value) {
+    StringBuilder sb = new StringBuilder(domain1).append('\t').append(domain2);
+    for (int c=2; c<23; c++) {
+      sb.append('\t').append(c==11 || c==21 ? 9*value : value);
+    }
+    return sb.append("\t0.5").toString();
+  }
+  
+  @Test
+  public void testRead() throws IOException {
+    File file = File.createTempFile("UniDomInt", ".tsv");
+    file.deleteOnExit();
+    PrintWriter out = new PrintWriter(file);
+    out.println(line("PF00001", "PF00002", 1));
+    out.println(line("PF00002", "PF00001", 0));
+    out.println(line("PF00003", "PF00003", 1));
+    out.println(line("PF00001", "PF00002", 0));
+    out.close();
+    
+    UniDomIntNetwork network = UniDomIntNetwork.read(file.getPath());
+    assertEquals(4, network.getNumberOfRows());
+    assertEquals(3, network.getNumberOfPairs());
+    assertEquals(3, network.getNumberOfDomains());
+    int pair = network.findPair("PF00001", "PF00002");
+    assertTrue(pair>=0);
+    assertEquals(pair, network.getPair(0));
+    assertEquals(pair, network.getPair(3));
+    assertTrue(network.findPair("PF00002", "PF00001")!=pair);
+    assertEquals(-1, network.findPair("PF00003", "PF00001"));
+    assertEquals(-1, network.findPair("PF00001", "PF99999"));
+    assertEquals("PF00003", network.getDomain(network.getDomain1(network.getPair(2))));
+    assertEquals(1, network.getColumn(2)[0], 0);
+    assertEquals(0, network.getColumn(2)[1], 0);
+    assertEquals(9, network.getColumn(11)[2], 0);
+    assertEquals(0.5, network.getColumn(23)[3], 0);
+  }
+  
+}
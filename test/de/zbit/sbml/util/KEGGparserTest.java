@@ -0,0 +1,194 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.sbml.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Test;
+
+import de.zbit.io.BinaryCacheFile;
+
+/**
+ * Tests the {@link KEGGparser} with its {@link KEGGindex}.
+ * 
+ * @version $Rev$
+ */
+public class KEGGparserTest {
+  
+  private static final String COMPOUNDS =
+      "ENTRY       C00001                      Compound\n" +
+      "NAME        H2O;\n" +
+      "            Water\n" +
+      "FORMULA     H2O\n" +
+      "REACTION    R00001 R00002\n" +
+      "///\n" +
+      "ENTRY       C00002                      Compound\n" +
+      "NAME        ATP\n" +
+      "REACTION    R00002\n" +
+      "            R00003\n" +
+      "///\n" +
+      "ENTRY       C00002                      Compound\n" +
+      "NAME        Adenosine triphosphate\n" +
+      "REACTION    R00004\n" +
+      "///\n";
+  
+  private static final String REACTIONS =
+      "ENTRY       R00001                      Reaction\n" +
+      "NAME        first reaction\n" +
+      "ENZYME      1.1.1.1\n" +
+      "///\n" +
+      "ENTRY       R00002                      Reaction\n" +
+      "NAME        second reaction;\n" +
+      "            alternative name\n" +
+      "ENZYME      1.1.1.1         2.7.1.1\n" +
+      "///\n";
+  
+  /**
+   * @param dir
+   * @param name
+   * @param content
+   * @return the written file.
+   * @throws IOException
+   */
+  private static File write(File dir, String name, String content) throws IOException {
+    File f = new File(dir, name);
+    FileWriter w = new FileWriter(f);
+    try {
+      w.write(content);
+    } finally {
+      w.close();
+    }
+    return f;
+  }
+  
+  /**
+   * @return a new, empty directory, that is also used for the index.
+   * @throws IOException
+   */
+  private static File createDirectory() throws IOException {
+    File dir = File.createTempFile("kegg", "");
+    dir.delete();
+    dir.mkdir();
+    dir.deleteOnExit();
+    System.setProperty(BinaryCacheFile.CACHE_DIR_PROPERTY, dir.getPath());
+    return dir;
+  }
+  
+  @After
+  public void tearDown() {
+    System.clearProperty(BinaryCacheFile.CACHE_DIR_PROPERTY);
+  }
+  
+  /**
+   * @param parser
+   * @throws IOException
+   */
+  private static void assertLookups(KEGGparser parser) throws IOException {
+    assertArrayEquals(new String[] {"H2O", "Water"}, parser.searchCompoundsByID("C00001"));
+    // Both records of C00002 are merged
+    assertArrayEquals(new String[] {"ATP", "Adenosine triphosphate"}, parser.searchCompoundsByID("C00002"));
+    assertArrayEquals(new String[] {"rn:R00002", "rn:R00003", "rn:R00004"}, parser.getReactionsByCompound("cpd:C00002"));
+    assertArrayEquals(new String[] {"cpd:C00002"}, parser.getCompoundsByReaction("rn:R00004"));
+    assertEquals("H2O", parser.getCompoundForURI("urn:miriam:kegg.compound:C00001").getFormula());
+    assertArrayEquals(new String[] {"C00001"}, parser.searchCompoundsByName("water"));
+    assertArrayEquals(new String[] {"cpd:C00001", "cpd:C00002"}, parser.getCompoundsByReaction("rn:R00002"));
+    assertArrayEquals(new String[] {"second reaction", "alternative name"}, parser.getNamesOfReaction("rn:R00002"));
+    assertArrayEquals(new String[] {"rn:R00001", "rn:R00002"}, parser.getReactionsByEnzyme("1.1.1.1"));
+    assertArrayEquals(new String[] {"rn:R00002"}, parser.getReactionsByEnzyme("2.7.1.1"));
+    assertEquals(0, parser.searchCompoundsByID("C99999").length);
+    assertEquals(0, parser.getReactionsByEnzyme("9.9.9.9").length);
+    assertNull(parser.getReactionForURI("urn:miriam:kegg.reaction:R00003"));
+  }
+  
+  /**
+   * Lookups must be equal with a new index and with the stored index.
+   * @throws IOException
+   */
+  @Test
+  public void testIndex() throws IOException {
+    File dir = createDirectory();
+    File compound = write(dir, "compound", COMPOUNDS);
+    File reaction = write(dir, "reaction", REACTIONS);
+    File enzyme = write(dir, "enzyme", "");
+    File index = KEGGindex.getIndexFile(compound);
+    try {
+      assertLookups(new KEGGparser(compound.getPath(), reaction.getPath(), enzyme.getPath()));
+      assertTrue(index.isFile());
+      assertLookups(new KEGGparser(compound.getPath(), reaction.getPath(), enzyme.getPath()));
+      
+      // Outdated indices must be ignored
+      write(dir, "reaction", REACTIONS.replace("2.7.1.1", "2.7.1.2"));
+      reaction.setLastModified(reaction.lastModified() + 2000);
+      KEGGparser parser = new KEGGparser(compound.getPath(), reaction.getPath(), enzyme.getPath());
+      assertEquals(0, parser.getReactionsByEnzyme("2.7.1.1").length);
+      assertArrayEquals(new String[] {"rn:R00002"}, parser.getReactionsByEnzyme("2.7.1.2"));
+    } finally {
+      index.delete();
+      compound.delete();
+      reaction.delete();
+      enzyme.delete();
+      dir.delete();
+    }
+  }
+  
+  /**
+   * Corrupt or truncated indices must be created again.
+   * @throws IOException
+   */
+  @Test
+  public void testCorruptIndex() throws IOException {
+    File dir = createDirectory();
+    File compound = write(dir, "compound", COMPOUNDS);
+    File reaction = write(dir, "reaction", REACTIONS);
+    File enzyme = write(dir, "enzyme", "");
+    File index = KEGGindex.getIndexFile(compound);
+    try {
+      new KEGGparser(compound.getPath(), reaction.getPath(), enzyme.getPath());
+      long length = index.length();
+      for (long keep : new long[] {length-1, length/2}) {
+        RandomAccessFile raf = new RandomAccessFile(index, "rw");
+        try {
+          raf.seek(keep);
+          for (long i=keep; i<length; i++) {
+            raf.write(0xff);
+          }
+          raf.setLength(keep + (length-keep)/2);
+        } finally {
+          raf.close();
+        }
+        assertLookups(new KEGGparser(compound.getPath(), reaction.getPath(), enzyme.getPath()));
+        assertEquals(length, index.length());
+      }
+    } finally {
+      index.delete();
+      compound.delete();
+      reaction.delete();
+      enzyme.delete();
+      dir.delete();
+    }
+  }
+  
+}
@@ -16,8 +16,19 @@
  */
 package de.zbit.sequence;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import org.junit.Test;
 
+import de.zbit.util.StringUtil;
 import de.zbit.util.Timer;
 
 /**
@@ -27,6 +38,100 @@ import de.zbit.util.Timer;
  */
 public class DNAsequenceTest {
   
+  /**
+   * @param r
+   * @param length
+   * @return a random DNA string.
+   */
+  private static String randomSequence(Random r, int length) {
+    char[] c = new char[length];
+    for (int i=0; i<length; i++) {
+      c[i] = "ACGT".charAt(r.nextInt(4));
+    }
+    return new String(c);
+  }
+  
+  /**
+   * All operations must equal the corresponding ones on strings, for
+   * sequences with and without partially filled words.
+   */
+  @Test
+  public void testPackedOperations() throws IOException, ClassNotFoundException {
+    Random r = new Random(42);
+    for (int length=0; length<140; length++) {
+      String s = randomSequence(r, length);
+      DNAsequence seq = new DNAsequence(s.toLowerCase());
+      assertEquals(s, seq.toString());
+      assertEquals(length, seq.length());
+      for (int i=0; i<length; i++) {
+        assertEquals(s.charAt(i), seq.charAt(i));
+      }
+      
+      // Appending in pieces
+      DNAsequence appended = new DNAsequence(1);
+      for (int i=0; i<length; ) {
+        int end = Math.min(length, i+r.nextInt(40));
+        if (r.nextBoolean() && end>i) {
+          appended.append(s.charAt(i++));
+        } else {
+          appended.append(s, i, end);
+          i = end;
+        }
+      }
+      assertEquals(seq, appended);
+      assertEquals(seq.hashCode(), appended.hashCode());
+      
+      int start = length==0 ? 0 : r.nextInt(length);
+      int end = start + r.nextInt(length-start+1);
+      assertEquals(s.substring(start, end), seq.subSequence(start, end).toString());
+      
+      String reverseComplement = StringUtil.reverse(DNAsequenceUtils.complement(s)).toUpperCase();
+      assertEquals(reverseComplement, seq.reverseComplement().toString());
+      assertEquals(DNAsequenceUtils.complement(s).toUpperCase(), seq.complement().toString());
+      
+      String other = randomSequence(r, length);
+      assertEquals(Integer.signum(s.compareTo(other)), Integer.signum(seq.compareTo(new DNAsequence(other))));
+      
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(seq);
+      out.close();
+      assertEquals(seq, new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject());
+    }
+  }
+  
+  /**
+   * K-mers must equal those of {@link DNAsequenceUtils#DNA2Num(String)}.
+   */
+  @Test
+  public void testKmers() throws IOException {
+    Random r = new Random(7);
+    String s = randomSequence(r, 1000);
+    DNAsequence seq = new DNAsequence(s);
+    for (int k : new int[] {1, 2, 3, 6, 31, 32}) {
+      DNAsequence.KmerIterator it = seq.kmers(k);
+      for (int i=0; i+k<=s.length(); i++) {
+        long expected = 0;
+        for (int j=0; j<k; j++) {
+          expected = expected*4 + DNAsequenceUtils.DNA2Num(s.charAt(i+j));
+        }
+        assertEquals(expected, it.next());
+        assertEquals(i, it.getStart());
+      }
+      assertEquals(false, it.hasNext());
+      
+      if (k<=6) {
+        int[] expected = new int[1<<(2*k)];
+        for (int i=0; i+k<=s.length(); i++) {
+          expected[DNAsequenceUtils.DNA2Num(s.substring(i, i+k))]++;
+        }
+        assertArrayEquals(expected, seq.countKmers(k));
+        assertArrayEquals(expected, DNAsequenceUtils.countNucleotides(s, k));
+        assertArrayEquals(expected, DNAsequenceUtils.countNucleotides(seq, k));
+      }
+    }
+  }
+  
   public static void main(String[] args) throws IOException, InterruptedException {
     int testCount = 30000000; // number of dna characters to add
     
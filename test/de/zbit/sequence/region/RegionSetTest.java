@@ -0,0 +1,145 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.sequence.region;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @version $Rev$
+ */
+public class RegionSetTest {
+  
+  /**
+   * @param r
+   * @param n
+   * @return a set with {@code n} random regions on 3 chromosomes.
+   */
+  private static RegionSet createRandomSet(Random r, int n) {
+    RegionSet set = new RegionSet();
+    for (int i=0; i<n; i++) {
+      int start = r.nextInt(1000000);
+      set.add((byte) (r.nextInt(3)-1), start, start + r.nextInt(r.nextBoolean() ? 100 : 20000));
+    }
+    return set;
+  }
+  
+  /**
+   * @param set
+   * @param row
+   * @param chromosome
+   * @param start
+   * @param end
+   * @return {@code true} if the region in {@code row} overlaps the
+   * given region.
+   */
+  private static boolean overlaps(RegionSet set, int row, byte chromosome, int start, int end) {
+    return set.getChromosome(row)==chromosome && set.getStart(row)<=end && set.getEnd(row)>=start;
+  }
+  
+  /**
+   * Overlaps and nearest regions must equal those found by checking all
+   * regions.
+   */
+  @Test
+  public void testQueries() {
+    Random r = new Random(42);
+    RegionSet set = createRandomSet(r, 5000);
+    RegionSet.Cursor cursor = set.cursor();
+    for (int q=0; q<2000; q++) {
+      byte chromosome = (byte) (r.nextInt(4)-1);
+      int start = r.nextInt(1010000)-5000;
+      int end = start + r.nextInt(q%2==0 ? 10 : 5000);
+      
+      List<Integer> expected = new ArrayList<Integer>();
+      long nearestDistance = Long.MAX_VALUE;
+      for (int row=0; row<set.size(); row++) {
+        if (set.getChromosome(row)==chromosome) {
+          if (overlaps(set, row, chromosome, start, end)) {
+            expected.add(row);
+          }
+          nearestDistance = Math.min(nearestDistance, distance(set, row, start, end));
+        }
+      }
+      
+      List<Integer> actual = new ArrayList<Integer>();
+      cursor.query(chromosome, start, end);
+      for (int row=cursor.next(); row>=0; row=cursor.next()) {
+        actual.add(row);
+      }
+      Collections.sort(expected);
+      Collections.sort(actual);
+      assertEquals(expected, actual);
+      
+      int found = set.getNearest(chromosome, start, end);
+      assertEquals(nearestDistance, found<0 ? Long.MAX_VALUE : distance(set, found, start, end));
+    }
+  }
+  
+  /**
+   * @param set
+   * @param row
+   * @param start
+   * @param end
+   * @return the gap between the region in {@code row} and the given
+   * region, such that the smallest value belongs to the region,
+   * {@link RegionSet#getNearest(byte, int, int)} should return.
+   */
+  private static long distance(RegionSet set, int row, int start, int end) {
+    if (set.getStart(row)<=end && set.getEnd(row)>=start) {
+      // Overlapping: prefer the smallest start (and end)
+      return (-1L<<60) + ((long) set.getStart(row)<<21) + set.getEnd(row);
+    } else if (set.getEnd(row)<start) {
+      return (start-set.getEnd(row))*2L;
+    } else {
+      return (set.getStart(row)-end)*2L+1;
+    }
+  }
+  
+  /**
+   * A join must report all overlapping pairs exactly once.
+   */
+  @Test
+  public void testJoin() {
+    Random r = new Random(7);
+    RegionSet a = createRandomSet(r, 2000);
+    RegionSet b = createRandomSet(r, 3000);
+    final List<Long> actual = new ArrayList<Long>();
+    a.join(b, new RegionSet.OverlapHandler() {
+      public void overlap(int row, int otherRow) {
+        actual.add(((long) row<<32) | otherRow);
+      }
+    });
+    List<Long> expected = new ArrayList<Long>();
+    for (int i=0; i<a.size(); i++) {
+      for (int j=0; j<b.size(); j++) {
+        if (overlaps(b, j, a.getChromosome(i), a.getStart(i), a.getEnd(i))) {
+          expected.add(((long) i<<32) | j);
+        }
+      }
+    }
+    Collections.sort(actual);
+    assertEquals(expected, actual);
+  }
+  
+}
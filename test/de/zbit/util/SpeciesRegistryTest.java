@@ -0,0 +1,157 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.zbit.resources.Resource;
+
+/**
+ * Compares {@link SpeciesRegistry} with the linear
+ * {@link Species#search(List, String, int)} on the bundled speclist.
+ * 
+ * @version $Rev$
+ */
+public class SpeciesRegistryTest {
+  
+  private List<Species> species;
+  private SpeciesRegistry registry;
+  
+  @Before
+  public void setUp() throws IOException {
+    species = Species.parseSpeclist(new BufferedReader(new InputStreamReader(
+      Resource.class.getResourceAsStream("speclist.txt"))));
+    // KEGG is not queried, hence, annotate some species by hand
+    for (int i=0; i<species.size(); i+=101) {
+      Species s = species.get(i);
+      s.setShortName("k" + Integer.toString(i, 36));
+      s.addSynonym("Synonym " + i);
+    }
+    // Species without taxonomy id, and names that collide with others
+    Species s = new Species("9606", "_NOTAX", "Mus musculus", null);
+    s.addSynonym("10090");
+    species.add(s);
+    species.add(new Species("Homo sapiens", "_HUMAN2", "human", null, Integer.valueOf(9606)));
+    registry = new SpeciesRegistry(species);
+  }
+  
+  /**
+   * @param query
+   */
+  private void assertSameResult(String query) {
+    for (int type : new int[] {-1, Species.UNIPROT_EXTENSION, Species.SCIENTIFIC_NAME}) {
+      assertSame(query, Species.search(species, query, type), registry.search(query, type));
+    }
+  }
+  
+  @Test
+  public void testSearch() {
+    List<String> queries = new ArrayList<String>();
+    for (int i=0; i<species.size(); i+=211) {
+      Species s = species.get(i);
+      for (int type : new int[] {Species.SCIENTIFIC_NAME, Species.COMMON_NAME,
+          Species.KEGG_ABBR, Species.UNIPROT_EXTENSION}) {
+        String name = s.getName(type);
+        if (name!=null) {
+          queries.add(name);
+          queries.add(name.toUpperCase());
+          queries.add(name.replace(' ', '.'));
+        }
+      }
+      queries.add(s.getEnsemblName());
+      queries.add(s.getUniprotExtension().substring(1));
+      if (s.getNCBITaxonID()!=null) {
+        queries.add(s.getNCBITaxonID().toString());
+      }
+      if (s.getSynonyms()!=null) {
+        queries.addAll(s.getSynonyms());
+      }
+    }
+    queries.add("9606");
+    queries.add("10090");
+    queries.add("H. sapiens");
+    queries.add("hsapiens");
+    queries.add("Mus musculus");
+    queries.add("_notax");
+    queries.add("");
+    queries.add("unknown species");
+    queries.add("123456789");
+    for (String query : queries) {
+      assertSameResult(query);
+    }
+    assertNull(registry.search(null, -1));
+    assertNull(registry.search("unknown species"));
+  }
+  
+  @Test
+  public void testTaxonomyId() {
+    Species human = registry.getByTaxonomyId(9606);
+    assertNotNull(human);
+    assertEquals("Homo sapiens", human.getScientificName());
+    assertSame(human, registry.search(human.getUniprotExtension()));
+    assertNull(registry.getByTaxonomyId(-1));
+  }
+  
+  @Test
+  public void testCache() throws IOException {
+    File cache = File.createTempFile("speclist", SpeclistCache.SUFFIX);
+    try {
+      SpeclistCache.write(cache, "test", 1, 2, species);
+      assertNull(SpeclistCache.read(cache, "test", 1, 3));
+      assertNull(SpeclistCache.read(cache, "other", 1, 2));
+      List<Species> read = SpeclistCache.read(cache, "test", 1, 2);
+      assertEquals(species.size(), read.size());
+      for (int i=0; i<species.size(); i++) {
+        Species expected = species.get(i);
+        Species actual = read.get(i);
+        assertEquals(expected.toCSV(0), actual.toCSV(0));
+        assertEquals(expected.getSynonyms(), actual.getSynonyms());
+        assertEquals(expected.getNCBITaxonID(), actual.getNCBITaxonID());
+      }
+      
+      // Corrupt caches are a miss
+      RandomAccessFile raf = new RandomAccessFile(cache, "rw");
+      try {
+        raf.seek(raf.length()-8);
+        raf.writeInt(-2);
+        raf.writeInt(Integer.MAX_VALUE);
+        assertNull(SpeclistCache.read(cache, "test", 1, 2));
+        raf.setLength(raf.length()/2);
+        assertNull(SpeclistCache.read(cache, "test", 1, 2));
+      } finally {
+        raf.close();
+      }
+    } finally {
+      cache.delete();
+    }
+  }
+  
+}
@@ -0,0 +1,281 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.util.liftOver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.zbit.io.BinaryCacheFile;
+import de.zbit.io.FileTools;
+import de.zbit.io.OpenFile;
+import de.zbit.util.liftOver.util.Interval;
+
+/**
+ * @version $Rev$
+ */
+public class LiftOverTest {
+  
+  private static LiftOver liftOver;
+  
+  private static final int ROWS = 100000;
+  private static String[] chromosomes = new String[ROWS];
+  private static int[] starts = new int[ROWS];
+  private static int[] ends = new int[ROWS];
+  
+  @BeforeClass
+  public static void setUp() throws IOException {
+    liftOver = new LiftOver(OpenFile.searchFileAndGetInputStream("de/zbit/resources/liftover/hg19ToHg18.over.chain"));
+    Random r = new Random(42);
+    String[] names = new String[] {"chr1", "1", "chr2", "chr7", "chrX", "chr6_mann_hap4", "chrUnknown"};
+    for (int i=0; i<ROWS; i++) {
+      chromosomes[i] = names[r.nextInt(names.length)];
+      starts[i] = 1 + r.nextInt(200000000);
+      ends[i] = starts[i] + (r.nextInt(50)==0 ? -1 : r.nextInt(r.nextBoolean() ? 100 : 100000));
+    }
+    chromosomes[0] = null;
+  }
+  
+  /**
+   * Lifts {@code interval} over with the chains, reported by
+   * {@link LiftOver#diagnosticLiftover(Interval)}, i.e., with the
+   * {@link Chain}s and without the {@link ChainIndex}.
+   * @param interval
+   * @return all lifted intervals, that reach the minimum match.
+   */
+  private static List<Interval> referenceLiftOver(Interval interval) {
+    List<Interval> ret = new ArrayList<Interval>();
+    for (LiftOver.PartialLiftover partial : liftOver.diagnosticLiftover(interval)) {
+      if (partial.toInterval!=null && partial.percentLiftedOver>=LiftOver.DEFAULT_LIFTOVER_MINMATCH) {
+        ret.add(partial.toInterval);
+      }
+    }
+    return ret;
+  }
+  
+  /**
+   * Bulk lift overs must agree with the chains, reported by
+   * {@link LiftOver#diagnosticLiftover(Interval)}.
+   */
+  @Test
+  public void testBulkLiftOver() {
+    for (int threads : new int[] {1, 4}) {
+      String[] toChromosomes = new String[ROWS];
+      int[] toStarts = new int[ROWS];
+      int[] toEnds = new int[ROWS];
+      byte[] status = new byte[ROWS];
+      liftOver.liftOver(chromosomes, starts, ends, toChromosomes, toStarts, toEnds, status, threads);
+      int lifted = 0;
+      for (int i=0; i<ROWS; i++) {
+        if (chromosomes[i]==null || ends[i]<starts[i]) {
+          assertEquals(LiftOver.INVALID, status[i]);
+          continue;
+        }
+        List<Interval> expected = referenceLiftOver(new Interval(chromosomes[i], starts[i], ends[i]));
+        if (expected.size()!=1) {
+          assertEquals(expected.isEmpty() ? LiftOver.UNMAPPED : LiftOver.MULTIPLE_HITS, status[i]);
+          assertNull(toChromosomes[i]);
+        } else {
+          lifted++;
+          assertEquals(LiftOver.LIFTED, status[i]);
+          assertEquals(expected.get(0).toString(),
+            new Interval(toChromosomes[i], toStarts[i], toEnds[i]).toString());
+        }
+      }
+      assertEquals(true, lifted>ROWS/4);
+    }
+  }
+  
+  /**
+   * Lift overs must agree with the chains, reported by
+   * {@link LiftOver#diagnosticLiftover(Interval)}.
+   */
+  @Test
+  public void testDiagnosticLiftover() {
+    for (int i=1; i<2000; i++) {
+      if (ends[i]<starts[i]) {
+        continue;
+      }
+      Interval interval = new Interval(chromosomes[i], starts[i], ends[i]);
+      List<Interval> expected = referenceLiftOver(interval);
+      Interval actual = liftOver.liftOver(interval);
+      assertEquals(expected.size()==1 ? expected.get(0).toString() : null, actual==null ? null : actual.toString());
+    }
+  }
+  
+  /**
+   * The binary cache of a chain file must be created, used and
+   * invalidated if the chain file changes or the cache is corrupt.
+   */
+  @Test
+  public void testChainCache() throws IOException {
+    File chainFile = File.createTempFile("test", ".over.chain");
+    File cacheDirectory = createTempDirectory();
+    File cache = ChainCache.getCacheFile(cacheDirectory, chainFile);
+    try {
+      FileTools.copyStream(OpenFile.searchFileAndGetInputStream("de/zbit/resources/liftover/hg19ToHg18.over.chain"), chainFile);
+      new LiftOver(chainFile, cacheDirectory);
+      assertTrue(cache.isFile());
+      assertNotNull(ChainCache.read(cache, chainFile));
+      
+      LiftOver cached = new LiftOver(chainFile, cacheDirectory);
+      for (int i=1; i<ROWS; i+=10) {
+        if (ends[i]<starts[i]) {
+          continue;
+        }
+        Interval expected = liftOver.liftOver(new Interval(chromosomes[i], starts[i], ends[i]));
+        Interval actual = cached.liftOver(new Interval(chromosomes[i], starts[i], ends[i]));
+        assertEquals(expected==null ? null : expected.toString(), actual==null ? null : actual.toString());
+      }
+      assertEquals(1, cached.diagnosticLiftover(new Interval("chr1", 1000000, 1200000)).size());
+      
+      // Invalidate
+      assertTrue(chainFile.setLastModified(chainFile.lastModified()-10000));
+      assertNull(ChainCache.read(cache, chainFile));
+      new LiftOver(chainFile, cacheDirectory);
+      assertNotNull(ChainCache.read(cache, chainFile));
+      
+      // Corrupt caches, which might not be detected
+      long length = cache.length();
+      for (long position : new long[] {length/3, length/2, length-10}) {
+        RandomAccessFile raf = new RandomAccessFile(cache, "rw");
+        try {
+          raf.seek(position);
+          raf.writeInt(Integer.MAX_VALUE);
+          raf.writeInt(-1);
+        } finally {
+          raf.close();
+        }
+        // Must neither fail while loading nor while lifting over
+        LiftOver corrupt = new LiftOver(chainFile, cacheDirectory);
+        for (int i=1; i<ROWS; i+=100) {
+          if (ends[i]>=starts[i]) {
+            corrupt.liftOver(chromosomes[i], starts[i], ends[i]);
+          }
+        }
+      }
+      RandomAccessFile raf = new RandomAccessFile(cache, "rw");
+      try {
+        raf.setLength(length/2);
+      } finally {
+        raf.close();
+      }
+      assertNull(ChainCache.read(cache, chainFile));
+      new LiftOver(chainFile, cacheDirectory);
+      assertEquals(length, cache.length());
+      assertNotNull(ChainCache.read(cache, chainFile));
+    } finally {
+      chainFile.delete();
+      cache.delete();
+      cacheDirectory.delete();
+    }
+  }
+  
+  /**
+   * Without a cache directory, no cache must be written.
+   */
+  @Test
+  public void testNoChainCache() throws IOException {
+    File chainFile = File.createTempFile("test", ".over.chain");
+    File cacheDirectory = createTempDirectory();
+    System.setProperty(BinaryCacheFile.CACHE_DIR_PROPERTY, cacheDirectory.getPath());
+    try {
+      FileTools.copyStream(OpenFile.searchFileAndGetInputStream("de/zbit/resources/liftover/hg19ToHg18.over.chain"), chainFile);
+      new LiftOver(chainFile);
+      assertEquals(0, cacheDirectory.listFiles().length);
+    } finally {
+      System.clearProperty(BinaryCacheFile.CACHE_DIR_PROPERTY);
+      chainFile.delete();
+      cacheDirectory.delete();
+    }
+  }
+  
+  /**
+   * Caches of a chain file, that has been moved, must be deleted, when
+   * the cache of its new location is written.
+   */
+  @Test
+  public void testOutdatedChainCache() throws IOException {
+    File chainFile = File.createTempFile("test", ".over.chain");
+    File moved = new File(createTempDirectory(), chainFile.getName());
+    File cacheDirectory = createTempDirectory();
+    try {
+      FileTools.copyStream(OpenFile.searchFileAndGetInputStream("de/zbit/resources/liftover/hg19ToHg18.over.chain"), chainFile);
+      new LiftOver(chainFile, cacheDirectory);
+      File outdated = ChainCache.getCacheFile(cacheDirectory, chainFile);
+      assertTrue(outdated.isFile());
+      
+      FileTools.copyStream(OpenFile.searchFileAndGetInputStream("de/zbit/resources/liftover/hg19ToHg18.over.chain"), moved);
+      assertTrue(chainFile.delete());
+      new LiftOver(moved, cacheDirectory);
+      File[] caches = cacheDirectory.listFiles();
+      assertEquals(1, caches.length);
+      assertEquals(ChainCache.getCacheFile(cacheDirectory, moved), caches[0]);
+    } finally {
+      chainFile.delete();
+      moved.delete();
+      moved.getParentFile().delete();
+      for (File f : cacheDirectory.listFiles()) {
+        f.delete();
+      }
+      cacheDirectory.delete();
+    }
+  }
+  
+  /**
+   * @return a new, empty directory.
+   * @throws IOException
+   */
+  private static File createTempDirectory() throws IOException {
+    File dir = File.createTempFile("cache", "");
+    dir.delete();
+    dir.mkdir();
+    return dir;
+  }
+  
+  /**
+   * Unsorted coordinates must be supported by a sweep.
+   */
+  @Test
+  public void testUnsortedSweep() {
+    LiftOverSweep sweep = liftOver.newSweep();
+    for (int i=1; i<1000; i++) {
+      if (ends[i]<starts[i]) {
+        continue;
+      }
+      Interval expected = liftOver.liftOver(new Interval(chromosomes[i], starts[i], ends[i]));
+      byte status = sweep.liftOver(chromosomes[i], starts[i], ends[i]);
+      assertEquals(expected!=null, status==LiftOver.LIFTED);
+      if (expected!=null) {
+        assertEquals(expected.getStart(), sweep.getStart());
+        assertEquals(expected.getEnd(), sweep.getEnd());
+      }
+    }
+  }
+  
+}
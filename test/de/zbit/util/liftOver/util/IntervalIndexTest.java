@@ -0,0 +1,169 @@
+/*
+ * $Id$
+ * $URL$
+ * ---------------------------------------------------------------------
+ * This file is part of the SysBio API library.
+ *
+ * Copyright (C) 2011-2016 by the University of Tuebingen, Germany.
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation. A copy of the license
+ * agreement is provided in the file named "LICENSE.txt" included with
+ * this software distribution and also available online as
+ * <http://www.gnu.org/licenses/lgpl-3.0-standalone.html>.
+ * ---------------------------------------------------------------------
+ */
+package de.zbit.util.liftOver.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @version $Rev$
+ */
+public class IntervalIndexTest {
+  
+  /**
+   * Overlaps must equal those of an {@link IntervalTree}, for indices
+   * of all sizes up to a few thousand intervals.
+   */
+  @Test
+  public void testOverlapsEqualIntervalTree() {
+    Random r = new Random(42);
+    IntervalIndex.Cursor<Integer> cursor = new IntervalIndex.Cursor<Integer>();
+    for (int size : new int[] {0, 1, 2, 3, 7, 8, 9, 15, 16, 17, 31, 100, 1000, 5000}) {
+      IntervalTree<Set<Integer>> tree = new IntervalTree<Set<Integer>>();
+      IntervalIndex.Builder<Integer> builder = new IntervalIndex.Builder<Integer>();
+      for (int i=0; i<size; i++) {
+        int start = r.nextInt(100000);
+        int end = start + (r.nextBoolean() ? r.nextInt(100) : r.nextInt(10000));
+        Integer value = Integer.valueOf(r.nextInt(size));
+        builder.add(start, end, value);
+        IntervalTree.Node<Set<Integer>> node = tree.find(start, end);
+        Set<Integer> values = node == null ? null : node.getValue();
+        if (values == null) {
+          values = new HashSet<Integer>();
+          tree.put(start, end, values);
+        }
+        values.add(value);
+      }
+      IntervalIndex<Integer> index = builder.build(true);
+      
+      for (int q=0; q<500; q++) {
+        int start = r.nextInt(110000) - 5000;
+        int end = start + r.nextInt(q%2==0 ? 10 : 20000);
+        List<String> expected = new ArrayList<String>();
+        Iterator<IntervalTree.Node<Set<Integer>>> it = tree.overlappers(start, end);
+        while (it.hasNext()) {
+          IntervalTree.Node<Set<Integer>> node = it.next();
+          for (Integer value : node.getValue()) {
+            expected.add(node.getStart() + "-" + node.getEnd() + ":" + value);
+          }
+        }
+        List<String> actual = new ArrayList<String>();
+        int lastStart = Integer.MIN_VALUE;
+        cursor.query(index, start, end);
+        for (int i=cursor.next(); i>=0; i=cursor.next()) {
+          assertTrue("Overlaps must be sorted by start", index.getStart(i) >= lastStart);
+          lastStart = index.getStart(i);
+          actual.add(cursor.getStart() + "-" + cursor.getEnd() + ":" + cursor.getValue());
+        }
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals("size " + size + ", query " + start + "-" + end, expected, actual);
+      }
+    }
+  }
+  
+  /**
+   * A {@link IntervalIndex.Builder}, initialized with an index, must
+   * contain the same intervals.
+   */
+  @Test
+  public void testRebuild() {
+    IntervalIndex.Builder<String> builder = new IntervalIndex.Builder<String>();
+    builder.add(10, 20, "a").add(5, 8, "b").add(10, 20, "a").add(10, 15, "c");
+    IntervalIndex<String> index = builder.build(true);
+    assertEquals(3, index.size());
+    assertEquals(4, builder.build().size());
+    
+    IntervalIndex<String> copy = new IntervalIndex.Builder<String>(index).add(1, 100, "d").build();
+    assertEquals(4, copy.size());
+    IntervalIndex.Cursor<String> cursor = copy.overlappers(9, 12);
+    StringBuilder found = new StringBuilder();
+    while (cursor.next()>=0) {
+      found.append(cursor.getValue());
+    }
+    assertEquals("dca", found.toString());
+    assertEquals(-1, copy.overlappers(101, 200).next());
+    assertEquals(-1, copy.overlappers(12, 9).next());
+  }
+  
+  /**
+   * Intervals must be sorted by start, end and insertion order, also for
+   * long runs of equal starts, and only the first of equal values of
+   * identical intervals must be kept.
+   */
+  @Test
+  public void testSortOrder() {
+    Random r = new Random(7);
+    IntervalIndex.Builder<Integer> builder = new IntervalIndex.Builder<Integer>();
+    int size = 50000;
+    for (int i=0; i<size; i++) {
+      int start = r.nextInt(3);
+      builder.add(start, start + r.nextInt(100), Integer.valueOf(r.nextInt(4)));
+    }
+    IntervalIndex<Integer> all = builder.build();
+    assertEquals(size, all.size());
+    for (int i=1; i<size; i++) {
+      assertTrue(compare(all, i-1, i) < 0);
+    }
+    
+    IntervalIndex<Integer> distinct = builder.build(true);
+    Map<String, Integer> firstIds = new HashMap<String, Integer>();
+    for (int i=0; i<all.size(); i++) {
+      String key = all.getStart(i) + "-" + all.getEnd(i) + ":" + all.getValue(i);
+      if (!firstIds.containsKey(key)) {
+        firstIds.put(key, Integer.valueOf(all.getId(i)));
+      }
+    }
+    assertEquals(firstIds.size(), distinct.size());
+    for (int i=0; i<distinct.size(); i++) {
+      if (i>0) {
+        assertTrue(compare(distinct, i-1, i) < 0);
+      }
+      String key = distinct.getStart(i) + "-" + distinct.getEnd(i) + ":" + distinct.getValue(i);
+      assertEquals(firstIds.get(key).intValue(), distinct.getId(i));
+    }
+  }
+  
+  /**
+   * @param index
+   * @param i
+   * @param j
+   * @return the comparison of the intervals at both positions by start,
+   * end and id.
+   */
+  private static int compare(IntervalIndex<?> index, int i, int j) {
+    if (index.getStart(i)!=index.getStart(j)) {
+      return index.getStart(i)<index.getStart(j) ? -1 : 1;
+    } else if (index.getEnd(i)!=index.getEnd(j)) {
+      return index.getEnd(i)<index.getEnd(j) ? -1 : 1;
+    }
+    return index.getId(i)<index.getId(j) ? -1 : (index.getId(i)==index.getId(j) ? 0 : 1);
+  }
+  
+}